@@ -189,7 +189,8 @@ public static DiskStorageHistory getChangeSetFromFile(File file) {
         if (Settings.settings().HISTORY.USE_DISK) {
             throw new IllegalArgumentException("History on disk not enabled!");
         }
-        if (!file.getName().toLowerCase(Locale.ROOT).endsWith(".bd")) {
+        String lowerName = file.getName().toLowerCase(Locale.ROOT);
+        if (!lowerName.endsWith(".bd") && !lowerName.endsWith(".bdc")) {
             throw new IllegalArgumentException("Not a BD file!");
         }
         String[] path = file.getPath().split(File.separatorChar == '\\' ? "\\\\" : File.separator);
@@ -248,7 +249,7 @@ public static List<DiskStorageHistory> getBDFiles(Location origin, UUID user, in
             }
             ArrayList<Integer> ids = new ArrayList<>();
             for (File file : userFile.listFiles()) {
-                if (file.getName().endsWith(".bd")) {
+                if (file.getName().endsWith(".bd") || file.getName().endsWith(".bdc")) {
                     if (timediff >= Integer.MAX_VALUE || now - file.lastModified() <= timediff) {
                         files.add(file);
                         if (files.size() > 2048) {
@@ -261,8 +262,8 @@ public static List<DiskStorageHistory> getBDFiles(Location origin, UUID user, in
         files.sort((a, b) -> {
             String aName = a.getName();
             String bName = b.getName();
-            int aI = Integer.parseInt(aName.substring(0, aName.length() - 3));
-            int bI = Integer.parseInt(bName.substring(0, bName.length() - 3));
+            int aI = Integer.parseInt(aName.substring(0, aName.lastIndexOf('.')));
+            int bI = Integer.parseInt(bName.substring(0, bName.lastIndexOf('.')));
             long value = aI - bI;
             return value == 0 ? 0 : value < 0 ? -1 : 1;
         });
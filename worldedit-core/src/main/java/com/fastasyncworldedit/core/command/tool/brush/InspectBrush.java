@@ -17,6 +17,8 @@
 import com.sk89q.worldedit.internal.util.LogManagerCompat;
 import com.sk89q.worldedit.math.BlockVector3;
 import com.sk89q.worldedit.math.Vector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
 import com.sk89q.worldedit.util.Location;
 import com.sk89q.worldedit.util.formatting.text.TextComponent;
 import com.sk89q.worldedit.util.formatting.text.TranslatableComponent;
@@ -84,7 +86,13 @@ public boolean perform(final Player player, LocalSession session, boolean rightC
             for (Supplier<RollbackOptimizedHistory> supplier : db.getEdits(target, false)) {
                 count++;
                 RollbackOptimizedHistory edit = supplier.get();
-                Iterator<MutableFullBlockChange> iter = edit.getFullBlockIterator(null, 0, false);
+                // Only the target's chunk has to be read if the edit is chunk indexed
+                Iterator<MutableFullBlockChange> iter = edit.getFullBlockIterator(
+                        null,
+                        0,
+                        false,
+                        new Region[]{new CuboidRegion(target, target)}
+                );
                 while (iter.hasNext()) {
                     MutableFullBlockChange change = iter.next();
                     if (change.x != x || change.y != y || change.z != z) {
@@ -95,7 +103,7 @@ public boolean perform(final Player player, LocalSession session, boolean rightC
                     UUID uuid = edit.getUUID();
                     String name = Fawe.platform().getName(uuid);
                     int index = edit.getIndex();
-                    long age = System.currentTimeMillis() - edit.getBDFile().lastModified();
+                    long age = System.currentTimeMillis() - edit.getBlockFile().lastModified();
                     String ageFormatted = MainUtil.secToTime(age / 1000);
                     BlockState blockFrom = BlockState.getFromOrdinal(from);
                     BlockState blockTo = BlockState.getFromOrdinal(to);
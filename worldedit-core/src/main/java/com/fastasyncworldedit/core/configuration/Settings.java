@@ -467,6 +467,13 @@ public static class HISTORY {
                 " - Must be in the range [64, 33554432]",
         })
         public int BUFFER_SIZE = 531441;
+        @Comment({
+                "Compress history with a Zstd dictionary trained on existing history:",
+                " - Much smaller history for small edits",
+                " - Train or retrain it with /history traindictionary",
+                " - Has no effect until a dictionary is trained, or with compression-level 0",
+        })
+        public boolean ZSTD_DICTIONARY = false;
 
         @Comment("Delete history on disk after a number of days")
         public int DELETE_AFTER_DAYS = 7;
@@ -490,6 +497,13 @@ public static class HISTORY {
                 " - Reduces history size by ~10%",
         })
         public boolean SMALL_EDITS = false;
+        @Comment({
+                "Store block history in compressed runs per chunk, with a chunk index:",
+                " - Area rollbacks and inspection only read the chunks involved",
+                " - History is slightly larger",
+                " - Existing history remains readable either way",
+        })
+        public boolean CHUNK_INDEXED = false;
 
     }
 
@@ -525,6 +539,24 @@ public static class QUEUE {
         })
         public int EXTRA_TIME_MS = 0;
 
+        @Comment({
+                "Size the time spent on the main thread each tick from the measured tick duration",
+                " - Grows while ticks are on time, e.g. on an empty server at night, and backs off as soon as they run late",
+                " - Chunks of small edits are committed before chunks of edits that have already committed many",
+                " - Commits of the same chunk always keep their order, and no commit waits for more than 1024 later ones",
+                " - extra-time-ms still shifts the most time FAWE may use per tick",
+                " - Disable to use the fixed allocation (18 TPS target) and commit-slice-ms instead",
+        })
+        public boolean ADAPTIVE_TICK_BUDGET = true;
+
+        @Comment({
+                "Time (ms) per tick the main thread may spend swapping in prepared chunk sections, tiles and entities",
+                " - Chunk sections are prepared off the main thread, only the final swap is done on it",
+                " - At least one chunk is always committed per tick, the rest wait for the next tick",
+                " - Only used if adaptive-tick-budget is disabled",
+        })
+        public int COMMIT_SLICE_MS = 10;
+
         @Comment({
                 "Loading the right amount of chunks beforehand can speed up operations",
                 " - Low values may result in FAWE waiting on requests to the main thread",
@@ -537,6 +569,13 @@ public static class QUEUE {
         // wayyy too much...
         public int PRELOAD_CHUNK_COUNT = 512;
 
+        @Comment({
+                "The maximum number of edited chunks resent to a single player each tick",
+                " - Lower it if players with slow connections time out during large edits",
+                " - Only used by platforms that resend chunks themselves, e.g. PNX",
+        })
+        public int CHUNK_RESENDS_PER_PLAYER = 8;
+
         @Comment({
                 "If pooling is enabled (reduces GC, higher memory usage)",
                 " - Enable to improve performance at the expense of memory",
@@ -709,6 +748,25 @@ public static class CLIPBOARD {
                 " - levels over 6 require ZSTD 1.4.8+ to be installed to the system"
         })
         public int COMPRESSION_LEVEL = 1;
+        @Comment({
+                "Store in-memory clipboards as 16x16x16 sections with a small palette each:",
+                " - Close to the memory use of compression for mostly empty clipboards, with fast random access",
+                " - Takes priority over compression-level, has no effect with use-disk",
+        })
+        public boolean PALETTE = false;
+        @Comment({
+                "Paste clipboards one chunk column at a time, waiting for finished chunks to be placed:",
+                " - Keeps memory use constant when pasting very large clipboards",
+                " - Not used when a source mask is set",
+                " - Single threaded, so slower than a normal paste for clipboards that fit in memory",
+        })
+        public boolean STREAM_PASTE = false;
+        @Comment({
+                "Compress clipboards in memory with a Zstd dictionary trained on clipboards on disk:",
+                " - Train or retrain it with /history traindictionary",
+                " - Has no effect until a dictionary is trained, or with compression-level 0",
+        })
+        public boolean ZSTD_DICTIONARY = false;
         @Comment("Number of days to keep history on disk before deleting it")
         public int DELETE_AFTER_DAYS = 1;
         @Comment({
@@ -21,6 +21,7 @@
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
@@ -37,7 +38,11 @@ public class RollbackDatabase extends AsyncNotifyQueue {
     private final File dbLocation;
     private final World world;
     private final ConcurrentLinkedQueue<RollbackOptimizedHistory> historyChanges = new ConcurrentLinkedQueue<>();
+    // Guarded by historyChanges, the batch that will pick up newly logged edits
+    private Future<?> pendingBatch;
     private Connection connection;
+    // If the edits are indexed in an R*Tree, false if the SQLite build doesn't have the module
+    private boolean spatialIndex;
 
     RollbackDatabase(World world) throws SQLException, ClassNotFoundException {
         super((t, e) -> e.printStackTrace());
@@ -77,10 +82,46 @@ public Future<Boolean> init() {
                 stmt.executeUpdate();
             } catch (SQLException ignored) {
             } // Already updated
+            spatialIndex = initSpatialIndex();
             return true;
         });
     }
 
+    /**
+     * Create the R*Tree over the bounds and time of each edit, kept in sync with the edits table by triggers, and index
+     * any edits logged before it existed. The edits table has no stable rowid (VACUUM may renumber it), so each edit is
+     * given an explicit integer key in a separate table, which the R*Tree is keyed on.
+     *
+     * @return true if the index is available
+     */
+    private boolean initSpatialIndex() {
+        String edits = "`" + this.prefix + "edits`";
+        String keys = "`" + this.prefix + "edits_key`";
+        String index = "`" + this.prefix + "edits_index`";
+        String key = "(SELECT `key` FROM " + keys + " WHERE `player`=%1$s.`player` AND `id`=%1$s.`id`)";
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS " + keys + " (`key` INTEGER PRIMARY KEY, `player` BLOB(16) NOT NULL, " +
+                    "`id` INT NOT NULL, UNIQUE (`player`, `id`))");
+            stmt.executeUpdate("CREATE VIRTUAL TABLE IF NOT EXISTS " + index + " USING rtree_i32(`id`, `x1`, `x2`, `z1`, " +
+                    "`z2`, `y1`, `y2`, `t1`, `t2`)");
+            stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS `" + this.prefix + "edits_index_insert` AFTER INSERT ON " + edits +
+                    " BEGIN INSERT OR IGNORE INTO " + keys + " (`player`, `id`) VALUES (NEW.`player`, NEW.`id`); INSERT INTO " +
+                    index + " VALUES (" + String.format(key, "NEW") + ", NEW.`x1`, NEW.`x2`, NEW.`z1`, NEW.`z2`, NEW.`y1`, " +
+                    "NEW.`y2`, NEW.`time`, NEW.`time`); END");
+            stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS `" + this.prefix + "edits_index_delete` AFTER DELETE ON " + edits +
+                    " BEGIN DELETE FROM " + index + " WHERE `id`=" + String.format(key, "OLD") + "; DELETE FROM " + keys +
+                    " WHERE `player`=OLD.`player` AND `id`=OLD.`id`; END");
+            stmt.executeUpdate("INSERT OR IGNORE INTO " + keys + " (`player`, `id`) SELECT `player`, `id` FROM " + edits);
+            stmt.executeUpdate("INSERT INTO " + index + " SELECT k.`key`, e.`x1`, e.`x2`, e.`z1`, e.`z2`, e.`y1`, e.`y2`, " +
+                    "e.`time`, e.`time` FROM " + edits + " e JOIN " + keys + " k ON k.`player`=e.`player` AND k.`id`=e.`id` " +
+                    "WHERE k.`key` NOT IN (SELECT `id` FROM " + index + ")");
+            return true;
+        } catch (SQLException e) {
+            LOGGER.warn("Unable to create the spatial index for {}, edit lookups will scan all edits", dbLocation, e);
+            return false;
+        }
+    }
+
     public Future<Integer> delete(UUID uuid, int id) {
         return call(() -> {
             try (PreparedStatement stmt = connection.prepareStatement("DELETE FROM`" + this.prefix + "edits` WHERE `player`=? AND `id`=?")) {
@@ -159,14 +200,16 @@ public Iterable<Supplier<RollbackOptimizedHistory>> getEdits(
         Future<Integer> future = call(() -> {
             try {
                 int count = 0;
-                String stmtStr = ascending ? uuid == null ? "SELECT * FROM`" + this.prefix + "edits` WHERE `time`>? AND `x2`>=? AND" +
-                        " `x1`<=? AND `z2`>=? AND `z1`<=? AND `y2`>=? AND `y1`<=? ORDER BY `time` , `id`" :
-                        "SELECT * FROM`" + this.prefix + "edits` WHERE `time`>? AND" +
-                                " `x2`>=? AND `x1`<=? AND `z2`>=? AND `z1`<=? AND `y2`>=? AND `y1`<=? AND `player`=? ORDER BY `time` ASC, `id` ASC" :
-                        uuid == null ? "SELECT * FROM`" + this.prefix + "edits` WHERE `time`>? AND `x2`>=? AND `x1`<=? AND `z2`>=? " +
-                                "AND `z1`<=? AND `y2`>=? AND `y1`<=? ORDER BY `time` DESC, `id` DESC" :
-                                "SELECT * FROM`" + this.prefix + "edits` WHERE `time`>? AND `x2`>=? AND `x1`<=? AND" +
-                                        " `z2`>=? AND `z1`<=? AND `y2`>=? AND `y1`<=? AND `player`=? ORDER BY `time` DESC, `id` DESC";
+                String order = ascending ? " ORDER BY e.`time` ASC, e.`id` ASC" : " ORDER BY e.`time` DESC, e.`id` DESC";
+                String player = uuid == null ? "" : " AND e.`player`=?";
+                // The R*Tree stores the time as a dimension too, so both bounds and age are answered by the index
+                String stmtStr = spatialIndex
+                        ? "SELECT e.* FROM`" + this.prefix + "edits_index` i JOIN`" + this.prefix + "edits_key` k ON k.`key`=i.`id`" +
+                        " JOIN`" + this.prefix + "edits` e ON e.`player`=k.`player` AND e.`id`=k.`id`" +
+                        " WHERE i.`t2`>? AND i.`x2`>=? AND i.`x1`<=? AND i.`z2`>=? AND i.`z1`<=? AND i.`y2`>=? AND i.`y1`<=?" +
+                        player + order
+                        : "SELECT * FROM`" + this.prefix + "edits` e WHERE `time`>? AND `x2`>=? AND `x1`<=? AND `z2`>=? AND" +
+                        " `z1`<=? AND `y2`>=? AND `y1`<=?" + player + order;
                 try (PreparedStatement stmt = connection.prepareStatement(stmtStr)) {
                     stmt.setInt(1, (int) (minTime / 1000));
                     stmt.setInt(2, pos1.getBlockX());
@@ -219,12 +262,27 @@ public Iterable<Supplier<RollbackOptimizedHistory>> getEdits(
         return yieldIterable;
     }
 
+    /**
+     * Queue an edit to be logged. Edits logged before the pending batch runs are inserted together in one transaction.
+     *
+     * @param history the edit
+     * @return the batch the edit will be inserted with
+     */
     public Future<?> logEdit(RollbackOptimizedHistory history) {
         historyChanges.add(history);
-        return call(this::sendBatch);
+        synchronized (historyChanges) {
+            if (pendingBatch == null) {
+                pendingBatch = call(this::sendBatch);
+            }
+            return pendingBatch;
+        }
     }
 
     private boolean sendBatch() throws SQLException {
+        synchronized (historyChanges) {
+            // Edits logged from now on need a new batch
+            pendingBatch = null;
+        }
         int size = Math.min(1048572, historyChanges.size());
 
         if (size == 0) {
@@ -239,8 +297,18 @@ private boolean sendBatch() throws SQLException {
         RollbackOptimizedHistory[] copy = IntStream.range(0, size)
                 .mapToObj(i -> historyChanges.poll()).toArray(RollbackOptimizedHistory[]::new);
 
-        try (PreparedStatement stmt = connection.prepareStatement("INSERT OR REPLACE INTO`" + this.prefix + "edits`" +
-                " (`player`,`id`,`time`,`x1`,`x2`,`z1`,`z2`,`y1`,`y2`,`command`,`size`) VALUES(?,?,?,?,?,?,?,?,?,?,?)")) {
+        // Delete and insert rather than replace, as replacing does not fire the delete trigger of the spatial index
+        try (PreparedStatement delete = connection.prepareStatement("DELETE FROM`" + this.prefix + "edits` WHERE `player`=? AND `id`=?");
+             PreparedStatement stmt = connection.prepareStatement("INSERT INTO`" + this.prefix + "edits`" +
+                     " (`player`,`id`,`time`,`x1`,`x2`,`z1`,`z2`,`y1`,`y2`,`command`,`size`) VALUES(?,?,?,?,?,?,?,?,?,?,?)")) {
+            for (RollbackOptimizedHistory change : copy) {
+                UUID uuid = change.getUUID();
+                byte[] uuidBytes = toBytes(uuid);
+                delete.setBytes(1, uuidBytes);
+                delete.setInt(2, change.getIndex());
+                delete.addBatch();
+            }
+            delete.executeBatch();
             // `player`,`id`,`time`,`x1`,`x2`,`z1`,`z2`,`y1`,`y2`,`command`,`size`) VALUES(?,?,?,?,?,?,?,?,?,?,?)"
             for (RollbackOptimizedHistory change : copy) {
                 UUID uuid = change.getUUID();
@@ -261,12 +329,18 @@ private boolean sendBatch() throws SQLException {
                 stmt.setInt(9, pos2.getY() - 128);
                 stmt.setString(10, change.getCommand());
                 stmt.setInt(11, change.size());
-                stmt.executeUpdate();
-                stmt.clearParameters();
+                stmt.addBatch();
             }
+            stmt.executeBatch();
         } finally {
             commit();
         }
+        synchronized (historyChanges) {
+            // Edits over the size limit, logged before this batch started, still need a batch
+            if (pendingBatch == null && !historyChanges.isEmpty()) {
+                pendingBatch = call(this::sendBatch);
+            }
+        }
         return true;
     }
 
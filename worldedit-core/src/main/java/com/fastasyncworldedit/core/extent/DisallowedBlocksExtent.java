@@ -6,6 +6,7 @@
 import com.fastasyncworldedit.core.queue.IChunk;
 import com.fastasyncworldedit.core.queue.IChunkGet;
 import com.fastasyncworldedit.core.queue.IChunkSet;
+import com.fastasyncworldedit.core.queue.SectionSummary;
 import com.fastasyncworldedit.core.util.ExtentTraverser;
 import com.sk89q.worldedit.WorldEditException;
 import com.sk89q.worldedit.extension.factory.parser.DefaultBlockParser;
@@ -128,45 +129,64 @@ public IChunkSet processSet(final IChunk chunk, final IChunkGet get, final IChun
             return set;
         }
         for (int layer = set.getMinSectionPosition(); layer <= set.getMaxSectionPosition(); layer++) {
-            if (!set.hasSection(layer)) {
+            SectionSummary summary = set.getSectionSummary(layer);
+            if (summary == null) {
                 continue;
             }
             char[] blocks = Objects.requireNonNull(set.loadIfPresent(layer));
-            it:
-            for (int i = 0; i < blocks.length; i++) {
-                char block = blocks[i];
-                if (block == BlockTypesCache.ReservedIDs.__RESERVED__) {
-                    continue;
-                }
-                BlockState state = BlockTypesCache.states[block];
-                if (blockedBlocks != null) {
-                    if (blockedBlocks.contains(state.getBlockType().getId())) {
-                        blocks[i] = BlockTypesCache.ReservedIDs.__RESERVED__;
-                        continue;
+            boolean changed = false;
+            if (summary.isUniform()) {
+                // Every set block is the same, so only check it once
+                char block = summary.getUniform();
+                char result = process(block);
+                if (result != block) {
+                    for (int i = summary.nextChanged(0); i != -1; i = summary.nextChanged(i + 1)) {
+                        blocks[i] = result;
                     }
+                    changed = true;
                 }
-                if (blockedStates == null) {
-                    continue;
-                }
-                for (FuzzyBlockState fuzzy : blockedStates) {
-                    if (fuzzy.equalsFuzzy(state)) {
-                        blocks[i] = BlockTypesCache.ReservedIDs.__RESERVED__;
-                        continue it;
+            } else {
+                for (int i = summary.nextChanged(0); i != -1; i = summary.nextChanged(i + 1)) {
+                    char block = blocks[i];
+                    char result = process(block);
+                    if (result != block) {
+                        blocks[i] = result;
+                        changed = true;
                     }
                 }
-                if (remaps == null || remaps.isEmpty()) {
-                    blocks[i] = block;
-                    continue;
-                }
-                for (PropertyRemap<?> remap : remaps) {
-                    state = remap.apply(state);
-                }
-                blocks[i] = state.getOrdinalChar();
+            }
+            if (changed) {
+                // Let the summary be recomputed for later processors
+                set.setBlocks(layer, blocks);
             }
         }
         return set;
     }
 
+    private char process(char block) {
+        BlockState state = BlockTypesCache.states[block];
+        if (blockedBlocks != null) {
+            if (blockedBlocks.contains(state.getBlockType().getId())) {
+                return BlockTypesCache.ReservedIDs.__RESERVED__;
+            }
+        }
+        if (blockedStates == null) {
+            return block;
+        }
+        for (FuzzyBlockState fuzzy : blockedStates) {
+            if (fuzzy.equalsFuzzy(state)) {
+                return BlockTypesCache.ReservedIDs.__RESERVED__;
+            }
+        }
+        if (remaps == null || remaps.isEmpty()) {
+            return block;
+        }
+        for (PropertyRemap<?> remap : remaps) {
+            state = remap.apply(state);
+        }
+        return state.getOrdinalChar();
+    }
+
     @Nullable
     @Override
     public Extent construct(final Extent child) {
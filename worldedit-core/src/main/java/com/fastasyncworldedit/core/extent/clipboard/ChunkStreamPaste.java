@@ -0,0 +1,389 @@
+package com.fastasyncworldedit.core.extent.clipboard;
+
+import com.fastasyncworldedit.core.configuration.Caption;
+import com.fastasyncworldedit.core.configuration.Settings;
+import com.fastasyncworldedit.core.queue.implementation.SingleThreadQueueExtent;
+import com.fastasyncworldedit.core.util.ExtentTraverser;
+import com.google.common.annotations.VisibleForTesting;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.entity.Entity;
+import com.sk89q.worldedit.entity.metadata.EntityProperties;
+import com.sk89q.worldedit.extent.Extent;
+import com.sk89q.worldedit.extent.clipboard.BlockArrayClipboard;
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.extent.transform.BlockTransformExtent;
+import com.sk89q.worldedit.function.entity.ExtentEntityCopy;
+import com.sk89q.worldedit.function.operation.Operation;
+import com.sk89q.worldedit.function.operation.Operations;
+import com.sk89q.worldedit.function.operation.RunContext;
+import com.sk89q.worldedit.function.visitor.EntityVisitor;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.math.Vector3;
+import com.sk89q.worldedit.math.transform.AffineTransform;
+import com.sk89q.worldedit.math.transform.Identity;
+import com.sk89q.worldedit.math.transform.Transform;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.util.formatting.text.Component;
+import com.sk89q.worldedit.util.formatting.text.TextComponent;
+import com.sk89q.worldedit.world.biome.BiomeType;
+import com.sk89q.worldedit.world.block.BaseBlock;
+import com.sk89q.worldedit.world.block.BlockState;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Pastes a clipboard one destination chunk column at a time.
+ * <p>
+ * Each column is read from the clipboard (by index from the backing array or mapped file of a {@link LinearClipboard}),
+ * with the inverse transform applied once per chunk, and submitted to the destination's queue as soon as it is
+ * complete. Submitting waits while too many chunks are still being processed, so the number of chunks held in memory
+ * stays bounded regardless of the size of the clipboard.
+ */
+public class ChunkStreamPaste implements Operation {
+
+    private final Clipboard clipboard;
+    private final Extent destination;
+    private final BlockVector3 to;
+    private final boolean pasteAir;
+    private final boolean pasteBiomes;
+    private final boolean pasteEntities;
+    @Nullable
+    private final Transform transform;
+    @Nullable
+    private final Transform inverse;
+    @Nullable
+    private final Vector3 stepX;
+    @Nullable
+    private final Vector3 stepY;
+    @Nullable
+    private final Vector3 stepZ;
+    @Nullable
+    private BlockTransformExtent transformExtent;
+    @Nullable
+    private final SingleThreadQueueExtent queue;
+    private final int maxPendingChunks;
+
+    private final Region region;
+    private final boolean cuboid;
+    private final BlockVector3 origin;
+    @Nullable
+    private final LinearClipboard linear;
+    private final int sourceMinX;
+    private final int sourceMinY;
+    private final int sourceMinZ;
+    private final int sourceMaxX;
+    private final int sourceMaxY;
+    private final int sourceMaxZ;
+    private final int minX;
+    private final int minY;
+    private final int minZ;
+    private final int maxX;
+    private final int maxY;
+    private final int maxZ;
+    private final int minChunkX;
+    private final int maxChunkX;
+    private final int maxChunkZ;
+
+    private int chunkX;
+    private int chunkZ;
+    private int affected;
+
+    /**
+     * Create a new paste.
+     *
+     * @param clipboard     clipboard to paste
+     * @param destination   extent to paste to, usually an {@link com.sk89q.worldedit.EditSession}
+     * @param to            position the clipboard origin is pasted at
+     * @param pasteAir      if air should be pasted
+     * @param pasteBiomes   if biomes should be pasted
+     * @param pasteEntities if entities should be pasted
+     * @param transform     transform to apply, may be null
+     */
+    public ChunkStreamPaste(
+            Clipboard clipboard, Extent destination, BlockVector3 to, boolean pasteAir, boolean pasteBiomes,
+            boolean pasteEntities, @Nullable Transform transform
+    ) {
+        this.clipboard = clipboard;
+        this.destination = destination;
+        this.to = to;
+        this.pasteAir = pasteAir;
+        this.pasteBiomes = pasteBiomes && clipboard.hasBiomes();
+        this.pasteEntities = pasteEntities;
+        if (transform != null && !transform.isIdentity()) {
+            this.transform = transform;
+            this.inverse = transform.inverse();
+        } else {
+            this.transform = null;
+            this.inverse = null;
+        }
+        if (inverse instanceof AffineTransform) {
+            // Source offset per destination step, so the transform is only applied once per chunk
+            Vector3 zero = inverse.apply(Vector3.ZERO);
+            this.stepX = inverse.apply(Vector3.UNIT_X).subtract(zero);
+            this.stepY = inverse.apply(Vector3.UNIT_Y).subtract(zero);
+            this.stepZ = inverse.apply(Vector3.UNIT_Z).subtract(zero);
+        } else {
+            this.stepX = null;
+            this.stepY = null;
+            this.stepZ = null;
+        }
+        this.queue = new ExtentTraverser<>(destination).findAndGet(SingleThreadQueueExtent.class);
+        this.maxPendingChunks = Settings.settings().QUEUE.PARALLEL_THREADS * 2;
+
+        this.region = clipboard.getRegion();
+        this.cuboid = region instanceof CuboidRegion;
+        this.origin = clipboard.getOrigin();
+        if (clipboard instanceof BlockArrayClipboard blockArray && blockArray.getParent() instanceof LinearClipboard parent) {
+            // Its offset is the region's minimum point, read the parent by index instead
+            this.linear = parent;
+        } else {
+            this.linear = null;
+        }
+        this.sourceMinX = region.getMinimumPoint().getX();
+        this.sourceMinY = region.getMinimumPoint().getY();
+        this.sourceMinZ = region.getMinimumPoint().getZ();
+        this.sourceMaxX = region.getMaximumPoint().getX();
+        this.sourceMaxY = region.getMaximumPoint().getY();
+        this.sourceMaxZ = region.getMaximumPoint().getZ();
+        BlockVector3 min = region.getMinimumPoint().subtract(origin);
+        BlockVector3 max = region.getMaximumPoint().subtract(origin);
+        if (this.transform != null) {
+            // Bounding box of the transformed corners
+            int[] bounds = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+                    Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+            for (int corner = 0; corner < 8; corner++) {
+                Vector3 point = this.transform.apply(Vector3.at(
+                        (corner & 1) == 0 ? min.getX() : max.getX(),
+                        (corner & 2) == 0 ? min.getY() : max.getY(),
+                        (corner & 4) == 0 ? min.getZ() : max.getZ()
+                ));
+                bounds[0] = Math.min(bounds[0], (int) Math.floor(point.getX()));
+                bounds[1] = Math.min(bounds[1], (int) Math.floor(point.getY()));
+                bounds[2] = Math.min(bounds[2], (int) Math.floor(point.getZ()));
+                bounds[3] = Math.max(bounds[3], (int) Math.ceil(point.getX()));
+                bounds[4] = Math.max(bounds[4], (int) Math.ceil(point.getY()));
+                bounds[5] = Math.max(bounds[5], (int) Math.ceil(point.getZ()));
+            }
+            min = BlockVector3.at(bounds[0], bounds[1], bounds[2]);
+            max = BlockVector3.at(bounds[3], bounds[4], bounds[5]);
+        }
+        this.minX = min.getX() + to.getX();
+        this.minY = Math.max(destination.getMinY(), min.getY() + to.getY());
+        this.minZ = min.getZ() + to.getZ();
+        this.maxX = max.getX() + to.getX();
+        this.maxY = Math.min(destination.getMaxY(), max.getY() + to.getY());
+        this.maxZ = max.getZ() + to.getZ();
+        this.minChunkX = minX >> 4;
+        this.maxChunkX = maxX >> 4;
+        this.maxChunkZ = maxZ >> 4;
+        this.chunkX = minChunkX;
+        this.chunkZ = minZ >> 4;
+    }
+
+    @Override
+    public Operation resume(RunContext run) throws WorldEditException {
+        if (chunkZ > maxChunkZ) {
+            return null;
+        }
+        if (minY <= maxY) {
+            pasteColumn(chunkX, chunkZ);
+            if (queue != null) {
+                queue.submitAndWait(chunkX, chunkZ, maxPendingChunks);
+            }
+        }
+        if (++chunkX > maxChunkX) {
+            chunkX = minChunkX;
+            chunkZ++;
+        }
+        if (chunkZ <= maxChunkZ) {
+            return this;
+        }
+        if (pasteEntities) {
+            pasteEntities();
+        }
+        return null;
+    }
+
+    private void pasteColumn(int chunkX, int chunkZ) {
+        forEachInColumn(chunkX, chunkZ, linear != null ? this::pasteLinear : this::pasteBlock);
+    }
+
+    /**
+     * Visit every destination position of a chunk column together with the clipboard position pasted there, in y, z, x
+     * order so that rows along x follow the layout of the linear clipboards. An affine transform is applied once per
+     * chunk and stepped from there; positions mapping outside the clipboard's bounding box are skipped.
+     */
+    @VisibleForTesting
+    void forEachInColumn(int chunkX, int chunkZ, ColumnVisitor visitor) {
+        final int x1 = Math.max(minX, chunkX << 4);
+        final int x2 = Math.min(maxX, (chunkX << 4) + 15);
+        final int z1 = Math.max(minZ, chunkZ << 4);
+        final int z2 = Math.min(maxZ, (chunkZ << 4) + 15);
+        if (inverse == null) {
+            final int relX = origin.getX() - to.getX();
+            final int relY = origin.getY() - to.getY();
+            final int relZ = origin.getZ() - to.getZ();
+            final int sx1 = Math.max(x1, sourceMinX - relX);
+            final int sx2 = Math.min(x2, sourceMaxX - relX);
+            for (int y = Math.max(minY, sourceMinY - relY); y <= maxY && y + relY <= sourceMaxY; y++) {
+                for (int z = Math.max(z1, sourceMinZ - relZ); z <= z2 && z + relZ <= sourceMaxZ; z++) {
+                    for (int x = sx1; x <= sx2; x++) {
+                        visitor.visit(x, y, z, x + relX, y + relY, z + relZ);
+                    }
+                }
+            }
+            return;
+        }
+        Vector3 base = null;
+        if (stepX != null) {
+            base = inverse.apply(Vector3.at(x1 - to.getX(), minY - to.getY(), z1 - to.getZ()));
+        }
+        for (int y = minY; y <= maxY; y++) {
+            for (int z = z1; z <= z2; z++) {
+                for (int x = x1; x <= x2; x++) {
+                    double px;
+                    double py;
+                    double pz;
+                    if (base != null) {
+                        int dx = x - x1;
+                        int dy = y - minY;
+                        int dz = z - z1;
+                        px = base.getX() + dx * stepX.getX() + dy * stepY.getX() + dz * stepZ.getX();
+                        py = base.getY() + dx * stepX.getY() + dy * stepY.getY() + dz * stepZ.getY();
+                        pz = base.getZ() + dx * stepX.getZ() + dy * stepY.getZ() + dz * stepZ.getZ();
+                    } else {
+                        Vector3 source = inverse.apply(Vector3.at(x - to.getX(), y - to.getY(), z - to.getZ()));
+                        px = source.getX();
+                        py = source.getY();
+                        pz = source.getZ();
+                    }
+                    int sx = (int) Math.floor(px + 0.5) + origin.getX();
+                    int sy = (int) Math.floor(py + 0.5) + origin.getY();
+                    int sz = (int) Math.floor(pz + 0.5) + origin.getZ();
+                    if (sx < sourceMinX || sy < sourceMinY || sz < sourceMinZ
+                            || sx > sourceMaxX || sy > sourceMaxY || sz > sourceMaxZ) {
+                        continue;
+                    }
+                    visitor.visit(x, y, z, sx, sy, sz);
+                }
+            }
+        }
+    }
+
+    private void pasteLinear(int x, int y, int z, int sx, int sy, int sz) {
+        if (!cuboid && !region.contains(sx, sy, sz)) {
+            return;
+        }
+        // Linear clipboards store x, then z, then y, and the block read is straight from the backing array or file
+        int index = (sx - sourceMinX) + (sz - sourceMinZ) * linear.getWidth() + (sy - sourceMinY) * linear.getArea();
+        pasteBiome(x, y, z, sx, sy, sz);
+        BlockState state = linear.getBlock(index);
+        if (!pasteAir && state.getBlockType().getMaterial().isAir()) {
+            return;
+        }
+        if (state.getMaterial().isTile()) {
+            setBlock(x, y, z, linear.getFullBlock(index));
+        } else {
+            setBlock(x, y, z, state);
+        }
+    }
+
+    private void pasteBlock(int x, int y, int z, int sx, int sy, int sz) {
+        if (!cuboid && !region.contains(sx, sy, sz)) {
+            return;
+        }
+        pasteBiome(x, y, z, sx, sy, sz);
+        BlockState state = clipboard.getBlock(sx, sy, sz);
+        if (!pasteAir && state.getBlockType().getMaterial().isAir()) {
+            return;
+        }
+        if (state.getMaterial().isTile()) {
+            setBlock(x, y, z, clipboard.getFullBlock(sx, sy, sz));
+        } else {
+            setBlock(x, y, z, state);
+        }
+    }
+
+    private void pasteBiome(int x, int y, int z, int sx, int sy, int sz) {
+        if (pasteBiomes) {
+            BiomeType biome = clipboard.getBiomeType(sx, sy, sz);
+            if (biome != null) {
+                destination.setBiome(x, y, z, biome);
+            }
+        }
+    }
+
+    private void setBlock(int x, int y, int z, BlockState state) {
+        if (transform != null) {
+            // Cached per state by the transform extent
+            state = getTransformExtent().transform(state);
+        }
+        if (destination.setBlock(x, y, z, state)) {
+            affected++;
+        }
+    }
+
+    private void setBlock(int x, int y, int z, BaseBlock block) {
+        if (transform != null) {
+            block = getTransformExtent().transform(block);
+        }
+        if (destination.setBlock(x, y, z, block)) {
+            affected++;
+        }
+    }
+
+    private BlockTransformExtent getTransformExtent() {
+        if (transformExtent == null) {
+            transformExtent = new BlockTransformExtent(clipboard, transform);
+        }
+        return transformExtent;
+    }
+
+    private void pasteEntities() throws WorldEditException {
+        List<? extends Entity> entities = new ArrayList<>(clipboard.getEntities(region));
+        entities.removeIf(entity -> {
+            EntityProperties properties = entity.getFacet(EntityProperties.class);
+            return properties != null && !properties.isPasteable();
+        });
+        if (entities.isEmpty()) {
+            return;
+        }
+        ExtentEntityCopy entityCopy = new ExtentEntityCopy(
+                clipboard,
+                origin.toVector3(),
+                destination,
+                to.toVector3(),
+                transform != null ? transform : new Identity()
+        );
+        Operations.completeBlindly(new EntityVisitor(entities.iterator(), entityCopy));
+    }
+
+    @Override
+    public void cancel() {
+        chunkZ = maxChunkZ + 1;
+    }
+
+    @Override
+    public Iterable<Component> getStatusMessages() {
+        return Collections.singletonList(Caption.of(
+                "fawe.worldedit.visitor.visitor.block",
+                TextComponent.of(getAffected())
+        ));
+    }
+
+    public int getAffected() {
+        return affected;
+    }
+
+    @FunctionalInterface
+    interface ColumnVisitor {
+
+        void visit(int x, int y, int z, int sourceX, int sourceY, int sourceZ);
+
+    }
+
+}
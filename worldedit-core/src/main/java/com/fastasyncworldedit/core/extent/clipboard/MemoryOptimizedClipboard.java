@@ -4,6 +4,7 @@
 import com.fastasyncworldedit.core.jnbt.streamer.IntValueReader;
 import com.fastasyncworldedit.core.math.IntTriple;
 import com.fastasyncworldedit.core.util.MainUtil;
+import com.fastasyncworldedit.core.util.ZstdDictionary;
 import com.sk89q.jnbt.CompoundTag;
 import com.sk89q.jnbt.IntTag;
 import com.sk89q.jnbt.Tag;
@@ -44,6 +45,8 @@ public class MemoryOptimizedClipboard extends LinearClipboard {
     private boolean saveOrdinals = false;
 
     private final int compressionLevel;
+    // Used instead of LZ4 for the ordinal blocks if set
+    private final ZstdDictionary dictionary;
 
     public MemoryOptimizedClipboard(Region region) {
         this(region, Settings.settings().CLIPBOARD.COMPRESSION_LEVEL);
@@ -54,6 +57,9 @@ public MemoryOptimizedClipboard(Region region, int compressionLevel) {
         states = new byte[1 + (getVolume() >> BLOCK_SHIFT)][];
         nbtMap = new HashMap<>();
         this.compressionLevel = compressionLevel;
+        this.dictionary = compressionLevel > 0 && Settings.settings().CLIPBOARD.ZSTD_DICTIONARY
+                ? ZstdDictionary.getLatest(ZstdDictionary.Kind.CLIPBOARD)
+                : null;
     }
 
 
@@ -125,7 +131,7 @@ private int getOrdinal(int index) {
             saveOrdinals();
             byte[] compressed = states[lastOrdinalsI = i];
             if (compressed != null) {
-                lastOrdinals = MainUtil.decompress(compressed, lastOrdinals, BLOCK_SIZE, compressionLevel);
+                lastOrdinals = decompress(compressed);
             } else {
                 lastOrdinals = null;
                 return 0;
@@ -139,11 +145,20 @@ private int getOrdinal(int index) {
 
     private void saveOrdinals() {
         if (saveOrdinals && lastOrdinals != null) {
-            states[lastOrdinalsI] = MainUtil.compress(lastOrdinals, buffer, compressionLevel);
+            states[lastOrdinalsI] = dictionary != null
+                    ? dictionary.compress(lastOrdinals, ZstdDictionary.toZstdLevel(compressionLevel))
+                    : MainUtil.compress(lastOrdinals, buffer, compressionLevel);
         }
         saveOrdinals = false;
     }
 
+    private byte[] decompress(byte[] compressed) {
+        if (dictionary != null) {
+            return dictionary.decompress(compressed, lastOrdinals, BLOCK_SIZE);
+        }
+        return MainUtil.decompress(compressed, lastOrdinals, BLOCK_SIZE, compressionLevel);
+    }
+
     private int lastI;
     private int lastIMin;
     private int lastIMax;
@@ -163,7 +178,7 @@ private void setOrdinal(int index, int v) {
             saveOrdinals();
             byte[] compressed = states[lastOrdinalsI = i];
             if (compressed != null) {
-                lastOrdinals = MainUtil.decompress(compressed, lastOrdinals, BLOCK_SIZE, compressionLevel);
+                lastOrdinals = decompress(compressed);
             } else {
                 lastOrdinals = null;
             }
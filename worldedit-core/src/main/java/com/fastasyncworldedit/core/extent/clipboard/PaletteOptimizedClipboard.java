@@ -0,0 +1,468 @@
+package com.fastasyncworldedit.core.extent.clipboard;
+
+import com.fastasyncworldedit.core.jnbt.streamer.IntValueReader;
+import com.fastasyncworldedit.core.math.BitArray;
+import com.fastasyncworldedit.core.math.IntTriple;
+import com.google.common.annotations.VisibleForTesting;
+import com.sk89q.jnbt.CompoundTag;
+import com.sk89q.jnbt.IntTag;
+import com.sk89q.jnbt.Tag;
+import com.sk89q.worldedit.internal.util.LogManagerCompat;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.world.biome.BiomeType;
+import com.sk89q.worldedit.world.block.BaseBlock;
+import com.sk89q.worldedit.world.block.BlockState;
+import com.sk89q.worldedit.world.block.BlockStateHolder;
+import com.sk89q.worldedit.world.block.BlockTypesCache;
+import it.unimi.dsi.fastutil.chars.Char2IntOpenHashMap;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory clipboard that stores blocks in 16x16x16 sections, each either a single value or a local palette with bit
+ * packed indices. Gives a memory footprint close to {@link MemoryOptimizedClipboard} for clipboards that are mostly air,
+ * while keeping constant time random access like {@link CPUOptimizedClipboard}.
+ */
+public class PaletteOptimizedClipboard extends LinearClipboard {
+
+    private static final Logger LOGGER = LogManagerCompat.getLogger();
+
+    private static final int SECTION_VOLUME = 4096;
+    /**
+     * Sections with more distinct blocks than fit into this many bits store a {@code char} per block instead.
+     */
+    private static final int MAX_PALETTE_BITS = 8;
+
+    private final int sectionsX;
+    private final int sectionsXZ;
+    /**
+     * The value of each section without a {@link Section}, i.e. a section of a single block.
+     */
+    private final char[] uniform;
+    private final Section[] sections;
+
+    private BiomeType[] biomes = null;
+
+    private final HashMap<IntTriple, CompoundTag> nbtMapLoc;
+    private final HashMap<Integer, CompoundTag> nbtMapIndex;
+
+    public PaletteOptimizedClipboard(Region region) {
+        super(region.getDimensions(), region.getMinimumPoint());
+        this.sectionsX = (getWidth() + 15) >> 4;
+        this.sectionsXZ = sectionsX * ((getLength() + 15) >> 4);
+        int count = sectionsXZ * ((getHeight() + 15) >> 4);
+        this.uniform = new char[count];
+        Arrays.fill(uniform, (char) BlockTypesCache.ReservedIDs.AIR);
+        this.sections = new Section[count];
+        nbtMapLoc = new HashMap<>();
+        nbtMapIndex = new HashMap<>();
+    }
+
+    @Override
+    public boolean hasBiomes() {
+        return biomes != null;
+    }
+
+    @Override
+    public boolean setBiome(BlockVector3 position, BiomeType biome) {
+        return setBiome(position.getX(), position.getY(), position.getZ(), biome);
+    }
+
+    @Override
+    public boolean setBiome(int x, int y, int z, BiomeType biome) {
+        setBiome(getBiomeIndex(x, y, z), biome);
+        return true;
+    }
+
+    @Override
+    public void setBiome(int index, BiomeType biome) {
+        if (biomes == null) {
+            biomes = new BiomeType[((getHeight() >> 2) + 1) * ((getLength() >> 2) + 1) * ((getWidth() >> 2) + 1)];
+        }
+        biomes[index] = biome;
+    }
+
+    @Override
+    public void streamBiomes(IntValueReader task) {
+        if (!hasBiomes()) {
+            return;
+        }
+        try {
+            for (int y = 0; y < getHeight(); y++) {
+                for (int z = 0; z < getLength(); z++) {
+                    for (int x = 0; x < getWidth(); x++) {
+                        task.applyInt(getIndex(x, y, z), biomes[getBiomeIndex(x, y, z)].getInternalId());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Unable to stream the clipboard biomes", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public BiomeType getBiome(int index) {
+        if (!hasBiomes()) {
+            return null;
+        }
+        return biomes[index];
+    }
+
+    @Override
+    public BiomeType getBiomeType(int x, int y, int z) {
+        return getBiome(getBiomeIndex(x, y, z));
+    }
+
+    @Override
+    public BiomeType getBiome(BlockVector3 position) {
+        return getBiome(getBiomeIndex(position.getX(), position.getY(), position.getZ()));
+    }
+
+    public void convertTilesToIndex() {
+        if (nbtMapLoc.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<IntTriple, CompoundTag> entry : nbtMapLoc.entrySet()) {
+            IntTriple key = entry.getKey();
+            setTile(getIndex(key.x(), key.y(), key.z()), entry.getValue());
+        }
+        nbtMapLoc.clear();
+    }
+
+    private CompoundTag getTag(int index) {
+        convertTilesToIndex();
+        return nbtMapIndex.get(index);
+    }
+
+    public int getBiomeIndex(int x, int y, int z) {
+        return (x >> 2) + (y >> 2) * (getWidth() >> 2) * (getLength() >> 2) + (z >> 2) * (getWidth() >> 2);
+    }
+
+    public int getIndex(int x, int y, int z) {
+        return x + y * getArea() + z * getWidth();
+    }
+
+    private int getSectionIndex(int x, int y, int z) {
+        return (x >> 4) + (z >> 4) * sectionsX + (y >> 4) * sectionsXZ;
+    }
+
+    private static int getLocalIndex(int x, int y, int z) {
+        return (y & 15) << 8 | (z & 15) << 4 | x & 15;
+    }
+
+    @VisibleForTesting
+    char getOrdinal(int x, int y, int z) {
+        int sectionIndex = getSectionIndex(x, y, z);
+        Section section = sections[sectionIndex];
+        if (section == null) {
+            return uniform[sectionIndex];
+        }
+        return section.get(getLocalIndex(x, y, z));
+    }
+
+    @VisibleForTesting
+    void setOrdinal(int x, int y, int z, char ordinal) {
+        int sectionIndex = getSectionIndex(x, y, z);
+        Section section = sections[sectionIndex];
+        if (section == null) {
+            char value = uniform[sectionIndex];
+            if (value == ordinal) {
+                return;
+            }
+            sections[sectionIndex] = section = new Section(value);
+        }
+        section.set(getLocalIndex(x, y, z), ordinal);
+    }
+
+    @Override
+    public BaseBlock getFullBlock(int x, int y, int z) {
+        BlockState block = getBlock(x, y, z);
+        if (block.getMaterial().hasContainer()) {
+            CompoundTag nbt = getTag(getIndex(x, y, z));
+            if (nbt != null) {
+                return block.toBaseBlock(nbt);
+            }
+        }
+        return block.toBaseBlock();
+    }
+
+    @Override
+    public BaseBlock getFullBlock(int index) {
+        int y = index / getArea();
+        int rem = index - y * getArea();
+        int z = rem / getWidth();
+        int x = rem - z * getWidth();
+        return getFullBlock(x, y, z);
+    }
+
+    @Override
+    public BlockState getBlock(int index) {
+        int y = index / getArea();
+        int rem = index - y * getArea();
+        int z = rem / getWidth();
+        int x = rem - z * getWidth();
+        return getBlock(x, y, z);
+    }
+
+    @Override
+    public BlockState getBlock(int x, int y, int z) {
+        return BlockState.getFromOrdinal(getOrdinal(x, y, z));
+    }
+
+    @Override
+    public Collection<CompoundTag> getTileEntities() {
+        convertTilesToIndex();
+        nbtMapIndex.replaceAll((index, tag) -> {
+            Map<String, Tag> values = new HashMap<>(tag.getValue());
+            if (!values.containsKey("x")) {
+                int y = index / getArea();
+                index -= y * getArea();
+                int z = index / getWidth();
+                int x = index - (z * getWidth());
+                values.put("x", new IntTag(x));
+                values.put("y", new IntTag(y));
+                values.put("z", new IntTag(z));
+                return new CompoundTag(values);
+            } else {
+                return tag;
+            }
+        });
+        return nbtMapIndex.values();
+    }
+
+    @Override
+    public boolean setTile(int x, int y, int z, CompoundTag tag) {
+        nbtMapLoc.put(new IntTriple(x, y, z), new CompoundTag(tag.getValue()));
+        return true;
+    }
+
+    private boolean setTile(int index, CompoundTag tag) {
+        final Map<String, Tag> values = new HashMap<>(tag.getValue());
+        values.remove("x");
+        values.remove("y");
+        values.remove("z");
+        nbtMapIndex.put(index, new CompoundTag(values));
+        return true;
+    }
+
+    @Override
+    public <B extends BlockStateHolder<B>> boolean setBlock(int x, int y, int z, B block) {
+        char ordinal = block.getOrdinalChar();
+        if (ordinal == BlockTypesCache.ReservedIDs.__RESERVED__) {
+            ordinal = BlockTypesCache.ReservedIDs.AIR;
+        }
+        setOrdinal(x, y, z, ordinal);
+        boolean hasNbt = block instanceof BaseBlock && block.hasNbtData();
+        if (hasNbt) {
+            setTile(getIndex(x, y, z), block.getNbtData());
+        }
+        return true;
+    }
+
+    @Override
+    public <B extends BlockStateHolder<B>> boolean setBlock(int index, B block) {
+        int y = index / getArea();
+        int rem = index - y * getArea();
+        int z = rem / getWidth();
+        int x = rem - z * getWidth();
+        return setBlock(x, y, z, block);
+    }
+
+    /**
+     * Repack every section with the smallest palette for the blocks it holds, collapsing sections of a single block.
+     * Slots of edge sections that lie outside the clipboard are ignored.
+     */
+    @Override
+    public void flush() {
+        Char2IntOpenHashMap lookup = new Char2IntOpenHashMap();
+        char[] blocks = new char[SECTION_VOLUME];
+        for (int i = 0; i < sections.length; i++) {
+            Section section = sections[i];
+            if (section == null) {
+                continue;
+            }
+            int sectionY = i / sectionsXZ;
+            int sectionZ = (i - sectionY * sectionsXZ) / sectionsX;
+            int sectionX = i - sectionY * sectionsXZ - sectionZ * sectionsX;
+            int maxX = Math.min(16, getWidth() - (sectionX << 4));
+            int maxY = Math.min(16, getHeight() - (sectionY << 4));
+            int maxZ = Math.min(16, getLength() - (sectionZ << 4));
+            // Local (0, 0, 0) is always inside the clipboard, use it for the slots outside so they add nothing
+            char outside = section.get(0);
+            for (int y = 0, index = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    for (int x = 0; x < 16; x++, index++) {
+                        blocks[index] = x < maxX && y < maxY && z < maxZ ? section.get(index) : outside;
+                    }
+                }
+            }
+            lookup.clear();
+            sections[i] = Section.pack(blocks, lookup);
+            if (sections[i] == null) {
+                uniform[i] = blocks[0];
+            }
+        }
+    }
+    /**
+     * Get the number of sections stored with a palette or directly, i.e. not collapsed to a single block.
+     */
+    @VisibleForTesting
+    int getPackedSectionCount() {
+        int count = 0;
+        for (Section section : sections) {
+            if (section != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of distinct blocks in the palette of the section containing the given position, 1 if the section
+     * is a single block or -1 if the section stores its blocks directly.
+     */
+    @VisibleForTesting
+    int getPaletteSize(int x, int y, int z) {
+        Section section = sections[getSectionIndex(x, y, z)];
+        if (section == null) {
+            return 1;
+        }
+        return section.direct != null ? -1 : section.paletteSize;
+    }
+
+    /**
+     * The blocks of a section with more than one distinct block.
+     */
+    private static final class Section {
+
+        private int bitsPerEntry;
+        private char[] palette;
+        private int paletteSize;
+        private BitArray indices;
+        /**
+         * Set instead of the palette once the palette would need more than {@link #MAX_PALETTE_BITS} bits.
+         */
+        private char[] direct;
+
+        /**
+         * Create a section where every block is the given value.
+         */
+        private Section(char value) {
+            this.bitsPerEntry = 1;
+            this.palette = new char[2];
+            this.palette[0] = value;
+            this.paletteSize = 1;
+            this.indices = new BitArray(1, SECTION_VOLUME);
+        }
+
+        private Section(int bitsPerEntry, char[] palette, int paletteSize, BitArray indices) {
+            this.bitsPerEntry = bitsPerEntry;
+            this.palette = palette;
+            this.paletteSize = paletteSize;
+            this.indices = indices;
+        }
+
+        private Section(char[] direct) {
+            this.direct = direct;
+        }
+
+        char get(int index) {
+            if (direct != null) {
+                return direct[index];
+            }
+            return palette[indices.get(index)];
+        }
+
+        void set(int index, char value) {
+            if (direct != null) {
+                direct[index] = value;
+                return;
+            }
+            int paletteIndex = indexOf(value);
+            if (paletteIndex < 0) {
+                if (paletteSize == palette.length) {
+                    if (bitsPerEntry == MAX_PALETTE_BITS) {
+                        toDirect();
+                        direct[index] = value;
+                        return;
+                    }
+                    resize(bitsPerEntry + 1);
+                }
+                paletteIndex = paletteSize++;
+                palette[paletteIndex] = value;
+            }
+            indices.set(index, paletteIndex);
+        }
+
+        private int indexOf(char value) {
+            final char[] palette = this.palette;
+            for (int i = 0; i < paletteSize; i++) {
+                if (palette[i] == value) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void resize(int bits) {
+            int[] raw = indices.toRaw(new int[SECTION_VOLUME]);
+            indices = new BitArray(bits, SECTION_VOLUME);
+            indices.fromRaw(raw);
+            palette = Arrays.copyOf(palette, 1 << bits);
+            bitsPerEntry = bits;
+        }
+
+        private void toDirect() {
+            char[] blocks = new char[SECTION_VOLUME];
+            for (int i = 0; i < SECTION_VOLUME; i++) {
+                blocks[i] = palette[indices.get(i)];
+            }
+            direct = blocks;
+            palette = null;
+            indices = null;
+        }
+
+        /**
+         * Pack the blocks of a section.
+         *
+         * @param blocks section blocks, indexed {@code y << 8 | z << 4 | x}
+         * @param lookup empty map to use for the palette lookup
+         * @return the packed section, or null if every block is the same
+         */
+        static Section pack(char[] blocks, Char2IntOpenHashMap lookup) {
+            lookup.defaultReturnValue(-1);
+            int[] raw = new int[SECTION_VOLUME];
+            for (int i = 0; i < SECTION_VOLUME; i++) {
+                char value = blocks[i];
+                int paletteIndex = lookup.get(value);
+                if (paletteIndex < 0) {
+                    paletteIndex = lookup.size();
+                    if (paletteIndex == 1 << MAX_PALETTE_BITS) {
+                        return new Section(blocks.clone());
+                    }
+                    lookup.put(value, paletteIndex);
+                }
+                raw[i] = paletteIndex;
+            }
+            int size = lookup.size();
+            if (size == 1) {
+                return null;
+            }
+            int bits = 32 - Integer.numberOfLeadingZeros(size - 1);
+            char[] palette = new char[1 << bits];
+            lookup.char2IntEntrySet().fastForEach(entry -> palette[entry.getIntValue()] = entry.getCharKey());
+            BitArray indices = new BitArray(bits, SECTION_VOLUME);
+            indices.fromRaw(raw);
+            return new Section(bits, palette, size, indices);
+        }
+
+    }
+
+}
@@ -1,6 +1,8 @@
 package com.fastasyncworldedit.core.extent.clipboard.io;
 
 import com.fastasyncworldedit.core.FaweCache;
+import com.fastasyncworldedit.core.configuration.Settings;
+import com.fastasyncworldedit.core.extent.clipboard.ChunkStreamPaste;
 import com.fastasyncworldedit.core.extent.clipboard.LinearClipboard;
 import com.fastasyncworldedit.core.extent.clipboard.SimpleClipboard;
 import com.fastasyncworldedit.core.internal.io.FastByteArrayOutputStream;
@@ -9,25 +11,40 @@
 import com.fastasyncworldedit.core.internal.io.FaweOutputStream;
 import com.fastasyncworldedit.core.jnbt.streamer.StreamDelegate;
 import com.fastasyncworldedit.core.jnbt.streamer.ValueReader;
+import com.fastasyncworldedit.core.queue.implementation.SingleThreadQueueExtent;
+import com.fastasyncworldedit.core.util.ExtentTraverser;
+import com.fastasyncworldedit.core.util.MathMan;
 import com.sk89q.jnbt.AdventureNBTConverter;
 import com.sk89q.jnbt.CompoundTag;
 import com.sk89q.jnbt.IntTag;
 import com.sk89q.jnbt.NBTInputStream;
 import com.sk89q.jnbt.StringTag;
 import com.sk89q.jnbt.Tag;
+import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.EditSessionBuilder;
 import com.sk89q.worldedit.WorldEdit;
+import com.sk89q.worldedit.WorldEditException;
 import com.sk89q.worldedit.entity.BaseEntity;
 import com.sk89q.worldedit.entity.Entity;
 import com.sk89q.worldedit.extension.input.InputParseException;
 import com.sk89q.worldedit.extension.platform.Capability;
+import com.sk89q.worldedit.extent.Extent;
 import com.sk89q.worldedit.extent.clipboard.BlockArrayClipboard;
 import com.sk89q.worldedit.extent.clipboard.Clipboard;
 import com.sk89q.worldedit.extent.clipboard.io.NBTSchematicReader;
+import com.sk89q.worldedit.extent.transform.BlockTransformExtent;
+import com.sk89q.worldedit.function.entity.ExtentEntityCopy;
+import com.sk89q.worldedit.function.operation.Operations;
+import com.sk89q.worldedit.function.visitor.EntityVisitor;
 import com.sk89q.worldedit.internal.Constants;
 import com.sk89q.worldedit.internal.util.LogManagerCompat;
 import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.math.Vector3;
+import com.sk89q.worldedit.math.transform.Identity;
+import com.sk89q.worldedit.math.transform.Transform;
 import com.sk89q.worldedit.util.Location;
 import com.sk89q.worldedit.world.DataFixer;
+import com.sk89q.worldedit.world.World;
 import com.sk89q.worldedit.world.biome.BiomeType;
 import com.sk89q.worldedit.world.biome.BiomeTypes;
 import com.sk89q.worldedit.world.block.BlockState;
@@ -35,10 +52,13 @@
 import com.sk89q.worldedit.world.block.BlockTypesCache;
 import com.sk89q.worldedit.world.entity.EntityType;
 import com.sk89q.worldedit.world.entity.EntityTypes;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import net.jpountz.lz4.LZ4BlockInputStream;
 import net.jpountz.lz4.LZ4BlockOutputStream;
 import org.apache.logging.log4j.Logger;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -79,6 +99,8 @@ public class FastSchematicReader extends NBTSchematicReader {
     private char[] palette;
     private char[] biomePalette;
     private BlockVector3 min = BlockVector3.ZERO;
+    // bit per WEOffset tag read, a paste can only be streamed once all three are known
+    private int offsetsRead;
     private boolean brokenEntities = false;
     private boolean isWorldEdit = false;
 
@@ -140,7 +162,11 @@ private String fixBiome(String biomePalettePart) {
 
     public StreamDelegate createVersionDelegate() {
         StreamDelegate root = new StreamDelegate();
-        StreamDelegate schematic = root.add("Schematic");
+        addVersions(root.add("Schematic"));
+        return root;
+    }
+
+    private void addVersions(StreamDelegate schematic) {
         schematic.add("DataVersion").withInt((i, v) -> dataVersion = v);
         schematic.add("Version").withInt((i, v) -> {
             version = v;
@@ -148,50 +174,70 @@ public StreamDelegate createVersionDelegate() {
                 dataVersion = Constants.DATA_VERSION_MC_1_13_2;
             }
         });
-        return root;
     }
 
     public StreamDelegate createDelegate() {
         StreamDelegate root = new StreamDelegate();
         StreamDelegate schematic = root.add("Schematic");
+        addDimensions(schematic);
+
+        StreamDelegate paletteDelegate = schematic.add("Palette");
+        paletteDelegate.withValue((ValueReader<Map<String, Object>>) (ignore, v) -> palette = parsePalette(v));
+        StreamDelegate blockData = schematic.add("BlockData");
+        blockData.withInfo((length, type) -> {
+            blocksOut = new FastByteArrayOutputStream();
+            blocks = new FaweOutputStream(new LZ4BlockOutputStream(blocksOut));
+        });
+        blockData.withInt((index, value) -> blocks.write(value));
+
+        addEntities(schematic);
+        addBiomes(schematic);
+        return root;
+    }
+
+    private void addDimensions(StreamDelegate schematic) {
         schematic.add("Width").withInt((i, v) -> width = v);
         schematic.add("Height").withInt((i, v) -> height = v);
         schematic.add("Length").withInt((i, v) -> length = v);
         schematic.add("Offset").withValue((ValueReader<int[]>) (index, v) -> min = BlockVector3.at(v[0], v[1], v[2]));
 
         StreamDelegate metadata = schematic.add("Metadata");
-        metadata.add("WEOffsetX").withInt((i, v) -> offsetX = v);
-        metadata.add("WEOffsetY").withInt((i, v) -> offsetY = v);
-        metadata.add("WEOffsetZ").withInt((i, v) -> offsetZ = v);
+        metadata.add("WEOffsetX").withInt((i, v) -> {
+            offsetX = v;
+            offsetsRead |= 1;
+        });
+        metadata.add("WEOffsetY").withInt((i, v) -> {
+            offsetY = v;
+            offsetsRead |= 2;
+        });
+        metadata.add("WEOffsetZ").withInt((i, v) -> {
+            offsetZ = v;
+            offsetsRead |= 4;
+        });
         metadata.add("FAWEVersion").withInt((i, v) -> faweWritten = v);
 
         StreamDelegate worldEditSection = metadata.add("WorldEdit");
         worldEditSection.withValue((ValueReader<Object>) (index, v) -> isWorldEdit = true);
+    }
 
-
-        StreamDelegate paletteDelegate = schematic.add("Palette");
-        paletteDelegate.withValue((ValueReader<Map<String, Object>>) (ignore, v) -> {
-            palette = new char[v.size()];
-            for (Entry<String, Object> entry : v.entrySet()) {
-                BlockState state;
-                String palettePart = fix(entry.getKey());
-                try {
-                    state = BlockState.get(palettePart);
-                } catch (InputParseException ignored) {
-                    LOGGER.warn("Invalid BlockState in palette: {}. Block will be replaced with air.", palettePart);
-                    state = BlockTypes.AIR.getDefaultState();
-                }
-                int index = (int) entry.getValue();
-                palette[index] = (char) state.getOrdinal();
+    private char[] parsePalette(Map<String, Object> v) {
+        char[] palette = new char[v.size()];
+        for (Entry<String, Object> entry : v.entrySet()) {
+            BlockState state;
+            String palettePart = fix(entry.getKey());
+            try {
+                state = BlockState.get(palettePart);
+            } catch (InputParseException ignored) {
+                LOGGER.warn("Invalid BlockState in palette: {}. Block will be replaced with air.", palettePart);
+                state = BlockTypes.AIR.getDefaultState();
             }
-        });
-        StreamDelegate blockData = schematic.add("BlockData");
-        blockData.withInfo((length, type) -> {
-            blocksOut = new FastByteArrayOutputStream();
-            blocks = new FaweOutputStream(new LZ4BlockOutputStream(blocksOut));
-        });
-        blockData.withInt((index, value) -> blocks.write(value));
+            int index = (int) entry.getValue();
+            palette[index] = (char) state.getOrdinal();
+        }
+        return palette;
+    }
 
+    private void addEntities(StreamDelegate schematic) {
         StreamDelegate tilesDelegate = schematic.add("BlockEntities");
         tilesDelegate.withInfo((length, type) -> tiles = new ArrayList<>(length));
         tilesDelegate.withElem((ValueReader<Map<String, Object>>) (index, tile) -> tiles.add(tile));
@@ -204,29 +250,37 @@ public StreamDelegate createDelegate() {
         StreamDelegate entitiesDelegate = schematic.add("Entities");
         entitiesDelegate.withInfo((length, type) -> entities = new ArrayList<>(length));
         entitiesDelegate.withElem((ValueReader<Map<String, Object>>) (index, entity) -> entities.add(entity));
+    }
 
+    private void addBiomes(StreamDelegate schematic) {
         StreamDelegate biomePaletteDelegate = schematic.add("BiomePalette");
-        biomePaletteDelegate.withValue((ValueReader<Map<String, Object>>) (ignore, v) -> {
-            biomePalette = new char[v.size()];
-            for (Entry<String, Object> entry : v.entrySet()) {
-                BiomeType biome = null;
-                try {
-                    String biomePalettePart = fixBiome(entry.getKey());
-                    biome = BiomeTypes.get(biomePalettePart);
-                } catch (InputParseException e) {
-                    e.printStackTrace();
-                }
-                int index = (int) entry.getValue();
-                biomePalette[index] = (char) biome.getInternalId();
+        biomePaletteDelegate.withValue((ValueReader<Map<String, Object>>) (ignore, v) -> biomePalette = parseBiomePalette(v));
+        addBiomeData(schematic);
+    }
+
+    private char[] parseBiomePalette(Map<String, Object> v) {
+        char[] biomePalette = new char[v.size()];
+        for (Entry<String, Object> entry : v.entrySet()) {
+            BiomeType biome = null;
+            try {
+                String biomePalettePart = fixBiome(entry.getKey());
+                biome = BiomeTypes.get(biomePalettePart);
+            } catch (InputParseException e) {
+                e.printStackTrace();
             }
-        });
+            int index = (int) entry.getValue();
+            biomePalette[index] = (char) biome.getInternalId();
+        }
+        return biomePalette;
+    }
+
+    private void addBiomeData(StreamDelegate schematic) {
         StreamDelegate biomeData = schematic.add("BiomeData");
         biomeData.withInfo((length, type) -> {
             biomesOut = new FastByteArrayOutputStream();
             biomes = new FaweOutputStream(new LZ4BlockOutputStream(biomesOut));
         });
         biomeData.withInt((index, value) -> biomes.write(value));
-        return root;
     }
 
     private BlockState getBlockState(int id) {
@@ -253,6 +307,7 @@ public Clipboard read(UUID uuid, Function<BlockVector3, Clipboard> createOutput)
                     " if the schematic has been created on a version lower than 1.13.2, the extension MUST be `.schematic`," +
                     " elsewise the schematic can't be read properly.");
         }
+        int volume = checkVolume((long) width * height * length);
 
         if (blocks != null) {
             blocks.close();
@@ -276,7 +331,6 @@ public Clipboard read(UUID uuid, Function<BlockVector3, Clipboard> createOutput)
         if (blocksOut != null && blocksOut.getSize() != 0) {
             try (FaweInputStream fis = new FaweInputStream(new LZ4BlockInputStream(new FastByteArraysInputStream(blocksOut.toByteArrays())))) {
                 if (clipboard instanceof LinearClipboard linear) {
-                    int volume = width * height * length;
                     if (palette.length < 128) {
                         for (int index = 0; index < volume; index++) {
                             int ordinal = fis.read();
@@ -421,6 +475,567 @@ public Clipboard read(UUID uuid, Function<BlockVector3, Clipboard> createOutput)
         return clipboard;
     }
 
+    /**
+     * Check that a number of blocks fits into an array.
+     *
+     * @param volume number of blocks
+     * @return the number of blocks
+     * @throws IOException if there are too many blocks
+     */
+    private static int checkVolume(long volume) throws IOException {
+        if (volume > Integer.MAX_VALUE - 8) {
+            throw new IOException("Schematic is too large, " + volume + " blocks do not fit into an array.");
+        }
+        return (int) volume;
+    }
+
+    /**
+     * Read the schematic and paste it into a world, without creating a clipboard. See {@link
+     * #paste(Extent, BlockVector3, boolean, boolean, Transform)}.
+     *
+     * @param world         world to paste to
+     * @param to            position the schematic origin is pasted at
+     * @param allowUndo     if the paste should be recorded in history
+     * @param pasteAir      if air should be pasted
+     * @param pasteEntities if entities should be pasted
+     * @param transform     transform to apply, may be null
+     * @return the edit session used, already closed
+     * @throws IOException thrown on I/O error
+     */
+    public EditSession paste(
+            World world, BlockVector3 to, boolean allowUndo, boolean pasteAir,
+            boolean pasteEntities, @Nullable Transform transform
+    ) throws IOException {
+        checkNotNull(world);
+        checkNotNull(to);
+        EditSession editSession;
+        if (world instanceof EditSession) {
+            editSession = (EditSession) world;
+        } else {
+            EditSessionBuilder builder = WorldEdit
+                    .getInstance()
+                    .newEditSessionBuilder()
+                    .world(world)
+                    .checkMemory(false)
+                    .allowedRegionsEverywhere()
+                    .limitUnlimited();
+            if (allowUndo) {
+                editSession = builder.build();
+            } else {
+                editSession = builder.changeSetNull().fastMode(true).build();
+            }
+        }
+        try {
+            paste(editSession, to, pasteAir, pasteEntities, transform);
+        } finally {
+            editSession.close();
+        }
+        return editSession;
+    }
+
+    /**
+     * Read the schematic and paste it into an extent, without creating a clipboard.
+     * <p>
+     * Palette indices are decoded straight from the stream into a buffer of 16 layers, which is pasted one chunk column
+     * at a time whenever a destination section is complete and then reused, so each column is submitted to the
+     * destination's queue once per section. Biomes and block entities are pasted once the file is read. If the version,
+     * data version, palette, dimensions or offsets come after the block data in the file, the block data is buffered
+     * compressed like {@link #read(UUID, Function)} does until they are known.
+     * <p>
+     * Only transforms keeping the y axis, such as rotations around it and flips along x or z, can be streamed. Other
+     * transforms read the schematic into a clipboard first.
+     *
+     * @param destination   extent to paste to, usually an {@link EditSession}
+     * @param to            position the schematic origin is pasted at
+     * @param pasteAir      if air should be pasted
+     * @param pasteEntities if entities should be pasted
+     * @param transform     transform to apply, may be null
+     * @return the number of blocks changed
+     * @throws IOException thrown on I/O error
+     */
+    public int paste(
+            Extent destination, BlockVector3 to, boolean pasteAir, boolean pasteEntities,
+            @Nullable Transform transform
+    ) throws IOException {
+        if (transform != null && !transform.isIdentity() && !keepsLayers(transform)) {
+            Clipboard clipboard = read();
+            try {
+                ChunkStreamPaste paste = new ChunkStreamPaste(clipboard, destination, to, pasteAir, clipboard.hasBiomes(),
+                        pasteEntities, transform
+                );
+                Operations.completeBlindly(paste);
+                return paste.getAffected();
+            } finally {
+                clipboard.close();
+            }
+        }
+        return new StreamPaste(destination, to, pasteAir, pasteEntities, transform).paste();
+    }
+
+    /**
+     * Check that a transform maps every layer of blocks to a whole layer, so each destination column is a single column
+     * of the schematic.
+     */
+    private static boolean keepsLayers(Transform transform) {
+        Vector3 zero = transform.apply(Vector3.ZERO);
+        Vector3 unitX = transform.apply(Vector3.UNIT_X).subtract(zero);
+        Vector3 unitY = transform.apply(Vector3.UNIT_Y).subtract(zero);
+        Vector3 unitZ = transform.apply(Vector3.UNIT_Z).subtract(zero);
+        return Math.abs(unitX.getY()) < 1e-6 && Math.abs(unitZ.getY()) < 1e-6
+                && unitY.distanceSq(Vector3.UNIT_Y) < 1e-6
+                && Math.abs(zero.getY() - Math.rint(zero.getY())) < 1e-6;
+    }
+
+    /**
+     * State of a paste done while reading, see {@link #paste(Extent, BlockVector3, boolean, boolean, Transform)}.
+     */
+    private final class StreamPaste {
+
+        private final Extent destination;
+        private final BlockVector3 to;
+        private final boolean pasteAir;
+        private final boolean pasteEntities;
+        @Nullable
+        private final Transform transform;
+        @Nullable
+        private final Transform inverse;
+        private final int shiftY;
+        @Nullable
+        private final SingleThreadQueueExtent queue;
+        private final int maxPendingChunks;
+
+        private Map<String, Object> rawPalette;
+        private Map<String, Object> rawBiomePalette;
+        // palette index to the transformed ordinal, and if it is air
+        private char[] ordinals;
+        private boolean[] air;
+        // palette indices of up to 16 layers, indexed by ((y & 15) * length + z) * width + x with y in the destination,
+        // reused for every section
+        private char[] layers;
+        private int baseY;
+        private int minX;
+        private int minY;
+        private int minZ;
+        private int maxX;
+        private int maxY;
+        private int maxZ;
+
+        // position of the next block read, and the varint being read
+        private int blockX;
+        private int blockY;
+        private int blockZ;
+        private int varInt;
+        private int varIntShift;
+        private int affected;
+
+        private StreamPaste(
+                Extent destination, BlockVector3 to, boolean pasteAir, boolean pasteEntities,
+                @Nullable Transform transform
+        ) {
+            this.destination = destination;
+            this.to = to;
+            this.pasteAir = pasteAir;
+            this.pasteEntities = pasteEntities;
+            if (transform != null && !transform.isIdentity()) {
+                this.transform = transform;
+                this.inverse = transform.inverse();
+                this.shiftY = (int) Math.rint(transform.apply(Vector3.ZERO).getY());
+            } else {
+                this.transform = null;
+                this.inverse = null;
+                this.shiftY = 0;
+            }
+            this.queue = new ExtentTraverser<>(destination).findAndGet(SingleThreadQueueExtent.class);
+            this.maxPendingChunks = Settings.settings().QUEUE.PARALLEL_THREADS * 2;
+        }
+
+        private int paste() throws IOException {
+            StreamDelegate root = new StreamDelegate();
+            StreamDelegate schematic = root.add("Schematic");
+            addVersions(schematic);
+            addDimensions(schematic);
+            schematic.add("Palette").withValue((ValueReader<Map<String, Object>>) (ignore, v) -> rawPalette = v);
+            StreamDelegate blockData = schematic.add("BlockData");
+            blockData.withInfo((size, type) -> {
+                if (canStream()) {
+                    start();
+                } else {
+                    blocksOut = new FastByteArrayOutputStream();
+                    blocks = new FaweOutputStream(new LZ4BlockOutputStream(blocksOut));
+                }
+            });
+            blockData.withInt((index, value) -> {
+                if (blocks != null) {
+                    blocks.write(value);
+                } else {
+                    accept(value);
+                }
+            });
+            addEntities(schematic);
+            // Only needed once the blocks are pasted, when the data version is final
+            schematic.add("BiomePalette").withValue((ValueReader<Map<String, Object>>) (ignore, v) -> rawBiomePalette = v);
+            addBiomeData(schematic);
+            inputStream.readNamedTagLazy(root);
+
+            if (version != 1 && version != 2) {
+                throw new IOException("This schematic version is not supported; Version: " + version
+                        + ", DataVersion: " + dataVersion + ".");
+            }
+            if (blocks != null) {
+                blocks.close();
+                blocks = null;
+                if (rawPalette != null && blocksOut.getSize() != 0 && width > 0 && height > 0 && length > 0) {
+                    start();
+                    try (FaweInputStream fis = new FaweInputStream(new LZ4BlockInputStream(new FastByteArraysInputStream(
+                            blocksOut.toByteArrays())))) {
+                        int value;
+                        while ((value = fis.read()) != -1) {
+                            accept(value);
+                        }
+                    }
+                }
+                blocksOut = null;
+            }
+            if (biomes != null) {
+                biomes.close();
+                biomes = null;
+            }
+            if (ordinals == null) {
+                return affected;
+            }
+            char[] biomeColumns = null;
+            if (biomesOut != null && biomesOut.getSize() != 0 && rawBiomePalette != null && !rawBiomePalette.isEmpty()) {
+                biomeColumns = readBiomes();
+            }
+            Long2ObjectMap<List<CompoundTag>> tilesByChunk = null;
+            if (tiles != null && !tiles.isEmpty()) {
+                tilesByChunk = readTiles();
+            }
+            if (biomeColumns != null || tilesByChunk != null) {
+                pasteBiomesAndTiles(biomeColumns, tilesByChunk);
+            }
+            if (pasteEntities && entities != null && !entities.isEmpty()) {
+                pasteEntities();
+            }
+            return affected;
+        }
+
+        /**
+         * Check if the blocks can be pasted as they are read, i.e. if everything needed to place and fix them up has
+         * been read before the block data.
+         */
+        private boolean canStream() {
+            return (version == 1 || version == 2) && dataVersion != -1 && rawPalette != null && offsetsRead == 7
+                    && width > 0 && height > 0 && length > 0;
+        }
+
+        private void start() throws IOException {
+            checkVolume((long) width * height * length);
+            layers = new char[checkVolume(16L * length * width)];
+            palette = parsePalette(rawPalette);
+            ordinals = new char[palette.length];
+            air = new boolean[palette.length];
+            for (int i = 0; i < palette.length; i++) {
+                BlockState state = BlockTypesCache.states[palette[i]];
+                air[i] = state.getBlockType().getMaterial().isAir();
+                if (transform != null) {
+                    state = BlockTransformExtent.transform(state, transform);
+                }
+                ordinals[i] = state.getOrdinalChar();
+            }
+
+            baseY = to.getY() + offsetY + shiftY;
+            minY = Math.max(destination.getMinY(), baseY);
+            maxY = Math.min(destination.getMaxY(), baseY + height - 1);
+            int x1 = offsetX;
+            int z1 = offsetZ;
+            int x2 = offsetX + width - 1;
+            int z2 = offsetZ + length - 1;
+            if (transform != null) {
+                // Bounding box of the transformed corners
+                int[] bounds = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+                for (int corner = 0; corner < 4; corner++) {
+                    Vector3 point = transform.apply(Vector3.at(
+                            (corner & 1) == 0 ? x1 : x2,
+                            0,
+                            (corner & 2) == 0 ? z1 : z2
+                    ));
+                    bounds[0] = Math.min(bounds[0], (int) Math.floor(point.getX()));
+                    bounds[1] = Math.min(bounds[1], (int) Math.floor(point.getZ()));
+                    bounds[2] = Math.max(bounds[2], (int) Math.ceil(point.getX()));
+                    bounds[3] = Math.max(bounds[3], (int) Math.ceil(point.getZ()));
+                }
+                x1 = bounds[0];
+                z1 = bounds[1];
+                x2 = bounds[2];
+                z2 = bounds[3];
+            }
+            minX = x1 + to.getX();
+            minZ = z1 + to.getZ();
+            maxX = x2 + to.getX();
+            maxZ = z2 + to.getZ();
+        }
+
+        /**
+         * Accept a byte of the varint encoded block data.
+         */
+        private void accept(int value) {
+            varInt |= (value & 127) << varIntShift;
+            if ((value & 128) != 0) {
+                varIntShift += 7;
+                return;
+            }
+            if (blockY < height) {
+                // Out of range indices are kept out of range, and skipped when pasting
+                layers[(((baseY + blockY) & 15) * length + blockZ) * width + blockX] = (char) Math.min(
+                        varInt,
+                        Character.MAX_VALUE
+                );
+                if (++blockX == width) {
+                    blockX = 0;
+                    if (++blockZ == length) {
+                        blockZ = 0;
+                        blockY++;
+                        if (((baseY + blockY) & 15) == 0 || blockY == height) {
+                            pasteLayers(baseY + blockY - 1);
+                        }
+                    }
+                }
+            }
+            varInt = 0;
+            varIntShift = 0;
+        }
+
+        /**
+         * Paste the layers read for the destination section containing the given y, submitting each chunk column once.
+         */
+        private void pasteLayers(int lastY) {
+            int y1 = Math.max(minY, lastY & ~15);
+            int y2 = Math.min(maxY, lastY);
+            if (y1 > y2) {
+                return;
+            }
+            int layerSize = length * width;
+            try {
+                for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+                    for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+                        int x1 = Math.max(minX, chunkX << 4);
+                        int x2 = Math.min(maxX, (chunkX << 4) + 15);
+                        int z1 = Math.max(minZ, chunkZ << 4);
+                        int z2 = Math.min(maxZ, (chunkZ << 4) + 15);
+                        for (int z = z1; z <= z2; z++) {
+                            for (int x = x1; x <= x2; x++) {
+                                int column = getColumn(x, z);
+                                if (column == -1) {
+                                    continue;
+                                }
+                                for (int y = y1; y <= y2; y++) {
+                                    int index = layers[(y & 15) * layerSize + column];
+                                    if (index >= ordinals.length || !pasteAir && air[index]) {
+                                        continue;
+                                    }
+                                    if (destination.setBlock(x, y, z, BlockTypesCache.states[ordinals[index]])) {
+                                        affected++;
+                                    }
+                                }
+                            }
+                        }
+                        if (queue != null) {
+                            queue.submitAndWait(chunkX, chunkZ, maxPendingChunks);
+                        }
+                    }
+                }
+            } catch (WorldEditException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * Paste biomes and block entities, which come after the block data, submitting each chunk column once more.
+         */
+        private void pasteBiomesAndTiles(
+                @Nullable char[] biomeColumns,
+                @Nullable Long2ObjectMap<List<CompoundTag>> tilesByChunk
+        ) {
+            if (minY > maxY) {
+                return;
+            }
+            try {
+                for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+                    for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+                        List<CompoundTag> chunkTiles = tilesByChunk == null ? null : tilesByChunk.remove(MathMan.pairInt(
+                                chunkX,
+                                chunkZ
+                        ));
+                        if (biomeColumns == null && chunkTiles == null) {
+                            continue;
+                        }
+                        if (biomeColumns != null) {
+                            int x1 = Math.max(minX, chunkX << 4);
+                            int x2 = Math.min(maxX, (chunkX << 4) + 15);
+                            int z1 = Math.max(minZ, chunkZ << 4);
+                            int z2 = Math.min(maxZ, (chunkZ << 4) + 15);
+                            for (int z = z1; z <= z2; z++) {
+                                for (int x = x1; x <= x2; x++) {
+                                    int column = getColumn(x, z);
+                                    if (column == -1) {
+                                        continue;
+                                    }
+                                    BiomeType biome = BiomeTypes.get(biomeColumns[column]);
+                                    // Biomes are stored per 4x4x4 cube
+                                    for (int y = minY; y <= maxY; y = (y & ~3) + 4) {
+                                        destination.setBiome(x, y, z, biome);
+                                    }
+                                }
+                            }
+                        }
+                        if (chunkTiles != null) {
+                            for (CompoundTag tile : chunkTiles) {
+                                destination.setTile(tile.getInt("x"), tile.getInt("y"), tile.getInt("z"), tile);
+                            }
+                        }
+                        if (queue != null) {
+                            queue.submitAndWait(chunkX, chunkZ, maxPendingChunks);
+                        }
+                    }
+                }
+            } catch (WorldEditException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * Get the index of the schematic column pasted at the given destination column, or -1 if there is none.
+         */
+        private int getColumn(int x, int z) {
+            int sx;
+            int sz;
+            if (inverse == null) {
+                sx = x - to.getX() - offsetX;
+                sz = z - to.getZ() - offsetZ;
+            } else {
+                Vector3 source = inverse.apply(Vector3.at(x - to.getX(), 0, z - to.getZ()));
+                sx = (int) Math.floor(source.getX() + 0.5) - offsetX;
+                sz = (int) Math.floor(source.getZ() + 0.5) - offsetZ;
+            }
+            if (sx < 0 || sz < 0 || sx >= width || sz >= length) {
+                return -1;
+            }
+            return sz * width + sx;
+        }
+
+        private BlockVector3 getDestination(int x, int y, int z) {
+            if (transform == null) {
+                return to.add(x + offsetX, y + offsetY, z + offsetZ);
+            }
+            Vector3 target = transform.apply(Vector3.at(x + offsetX, y + offsetY, z + offsetZ));
+            return to.add(
+                    (int) Math.floor(target.getX() + 0.5),
+                    (int) Math.floor(target.getY() + 0.5),
+                    (int) Math.floor(target.getZ() + 0.5)
+            );
+        }
+
+        /**
+         * Read the internal biome id of each schematic column, indexed z * width + x.
+         */
+        private char[] readBiomes() throws IOException {
+            biomePalette = parseBiomePalette(rawBiomePalette);
+            char[] columns = new char[length * width];
+            try (FaweInputStream fis = new FaweInputStream(new LZ4BlockInputStream(new FastByteArraysInputStream(
+                    biomesOut.toByteArrays())))) {
+                for (int i = 0; i < columns.length; i++) {
+                    columns[i] = biomePalette[fis.readVarInt()];
+                }
+            }
+            return columns;
+        }
+
+        /**
+         * Move block entities to their destination and group them by chunk, so each chunk gets its block entities at once.
+         */
+        private Long2ObjectMap<List<CompoundTag>> readTiles() {
+            Long2ObjectMap<List<CompoundTag>> tilesByChunk = new Long2ObjectOpenHashMap<>();
+            for (Map<String, Object> tileRaw : tiles) {
+                CompoundTag tile = FaweCache.INSTANCE.asTag(tileRaw);
+                int[] pos = tile.getIntArray("Pos");
+                BlockVector3 target;
+                if (pos.length != 3) {
+                    if (!tile.containsKey("x") || !tile.containsKey("y") || !tile.containsKey("z")) {
+                        continue;
+                    }
+                    target = getDestination(tile.getInt("x"), tile.getInt("y"), tile.getInt("z"));
+                } else {
+                    target = getDestination(pos[0], pos[1], pos[2]);
+                }
+                Map<String, Tag> values = new HashMap<>(tile.getValue());
+                Tag id = values.get("Id");
+                if (id != null) {
+                    values.put("id", id);
+                }
+                values.put("x", new IntTag(target.getX()));
+                values.put("y", new IntTag(target.getY()));
+                values.put("z", new IntTag(target.getZ()));
+                values.remove("Id");
+                values.remove("Pos");
+                tilesByChunk.computeIfAbsent(
+                        MathMan.pairInt(target.getX() >> 4, target.getZ() >> 4),
+                        k -> new ArrayList<>()
+                ).add(fixBlockEntity(new CompoundTag(values)));
+            }
+            return tilesByChunk;
+        }
+
+        private void pasteEntities() {
+            BlockVector3 dimensions = BlockVector3.at(width, height, length);
+            BlockVector3 max = min.add(dimensions).subtract(BlockVector3.ONE);
+            List<Entity> pasted = new ArrayList<>(entities.size());
+            for (Map<String, Object> entRaw : entities) {
+                Map<String, Tag> value = new HashMap<>(FaweCache.INSTANCE.asTag(entRaw).getValue());
+                StringTag id = (StringTag) value.get("Id");
+                if (id == null) {
+                    id = (StringTag) value.get("id");
+                    if (id == null) {
+                        continue;
+                    }
+                }
+                value.put("id", id);
+                value.remove("Id");
+
+                EntityType type = EntityTypes.parse(id.getValue());
+                if (type == null) {
+                    LOGGER.error("Invalid entity: {}", id);
+                    continue;
+                }
+                CompoundTag ent = fixEntity(new CompoundTag(value));
+                Location loc = ent.getEntityLocation(destination);
+                if (!brokenEntities) {
+                    if (!isWorldEdit && faweWritten == -1) {
+                        int locX = loc.getBlockX();
+                        int locY = loc.getBlockY();
+                        int locZ = loc.getBlockZ();
+                        if (locX < min.getX() || locY < min.getY() || locZ < min.getZ()
+                                || locX > max.getX() || locY > max.getY() || locZ > max.getZ()) {
+                            LOGGER.error("Detected schematic entity outside clipboard region. FAWE will not load entities. "
+                                    + "Please try loading the schematic with the format \"legacyentity\"");
+                            return;
+                        }
+                    }
+                    loc = loc.setPosition(loc.subtract(min.toVector3()));
+                }
+                pasted.add(new BlockArrayClipboard.ClipboardEntity(loc, new BaseEntity(type, ent)));
+            }
+            ExtentEntityCopy entityCopy = new ExtentEntityCopy(
+                    Vector3.at(-offsetX, -offsetY, -offsetZ),
+                    destination,
+                    to.toVector3(),
+                    transform != null ? transform : new Identity()
+            );
+            Operations.completeBlindly(new EntityVisitor(pasted.iterator(), entityCopy));
+        }
+
+    }
+
     @Override
     public void close() throws IOException {
         inputStream.close();
@@ -3,9 +3,13 @@
 import com.fastasyncworldedit.core.extent.filter.block.DelegateFilter;
 import com.fastasyncworldedit.core.extent.filter.block.FilterBlock;
 import com.fastasyncworldedit.core.queue.Filter;
+import com.fastasyncworldedit.core.queue.IChunk;
 import com.sk89q.worldedit.function.mask.AbstractExtentMask;
+import com.sk89q.worldedit.function.mask.ExpressionMask;
 import com.sk89q.worldedit.function.mask.Mask;
+import com.sk89q.worldedit.regions.Region;
 
+import javax.annotation.Nullable;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -17,6 +21,7 @@
 
     private final Mask mask;
     private final AtomicInteger changes;
+    private Region region;
 
     public MaskFilter(T other, Mask root) {
         this(other, root, new AtomicInteger());
@@ -35,12 +40,34 @@ public void applyBlock(FilterBlock block) {
                 getParent().applyBlock(block);
                 this.changes.incrementAndGet();
             }
+        } else if (mask instanceof ExpressionMask expressionMask) {
+            if (expressionMask.testSection(block, region)) {
+                getParent().applyBlock(block);
+                this.changes.incrementAndGet();
+            }
         } else if (mask.test(block)) {
             getParent().applyBlock(block);
             this.changes.incrementAndGet();
         }
     }
 
+    @Override
+    public <V extends IChunk> V applyChunk(V chunk, @Nullable Region region) {
+        this.region = region;
+        if (mask instanceof ExpressionMask expressionMask) {
+            expressionMask.resetSection();
+        }
+        return getParent().applyChunk(chunk, region);
+    }
+
+    @Override
+    public void finishChunk(IChunk chunk) {
+        if (mask instanceof ExpressionMask expressionMask) {
+            expressionMask.resetSection();
+        }
+        getParent().finishChunk(chunk);
+    }
+
     /**
      * Get the number of blocks which passed the Mask test and were applied to
      *
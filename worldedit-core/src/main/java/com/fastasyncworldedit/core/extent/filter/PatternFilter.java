@@ -0,0 +1,38 @@
+package com.fastasyncworldedit.core.extent.filter;
+
+import com.fastasyncworldedit.core.extent.filter.block.FilterBlock;
+import com.fastasyncworldedit.core.queue.Filter;
+import com.sk89q.worldedit.function.pattern.Pattern;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Filter applying a Pattern to each block, counting the blocks for which the Pattern reported a change.
+ */
+public class PatternFilter implements Filter {
+
+    private final Pattern pattern;
+    private final AtomicInteger changes;
+
+    public PatternFilter(Pattern pattern) {
+        this.pattern = pattern;
+        this.changes = new AtomicInteger();
+    }
+
+    @Override
+    public void applyBlock(FilterBlock block) {
+        if (pattern.apply(block, block, block)) {
+            changes.incrementAndGet();
+        }
+    }
+
+    /**
+     * Get the number of blocks the Pattern reported as changed
+     *
+     * @return number of blocks changed
+     */
+    public int getChanges() {
+        return changes.get();
+    }
+
+}
@@ -6,6 +6,7 @@
 import com.fastasyncworldedit.core.queue.IChunk;
 import com.fastasyncworldedit.core.queue.IChunkGet;
 import com.fastasyncworldedit.core.queue.IChunkSet;
+import com.fastasyncworldedit.core.queue.SectionSummary;
 import com.sk89q.worldedit.extent.Extent;
 import com.sk89q.worldedit.world.block.BlockState;
 import com.sk89q.worldedit.world.block.BlockTypesCache;
@@ -59,9 +60,35 @@ public IChunkSet processSet(IChunk chunk, IChunkGet get, IChunkSet set) {
             if (!(hasSectionSet || hasSectionGet)) {
                 continue;
             }
+            SectionSummary summary = hasSectionSet ? set.getSectionSummary(layer) : null;
+            if (summary == null) {
+                hasSectionSet = false;
+            } else if (summary.isFull() && summary.isUniform()) {
+                // The whole section is replaced by a single block, so the top of the section decides every column
+                char ordinal = summary.getUniform();
+                BlockState block = ordinal < 4 ? null : BlockTypesCache.states[ordinal];
+                if (block != null) {
+                    int height = ((layer - get.getMinSectionPosition()) << 4) + 16;
+                    for (int i = 0; i < TYPES.length; i++) {
+                        if ((skip & (1 << i)) != 0 || !TYPES[i].includes(block)) {
+                            continue;
+                        }
+                        for (int j = 0; j < BLOCKS_PER_Y; j++) {
+                            if (!updated[i][j]) {
+                                heightmaps[i][j] = height;
+                                updated[i][j] = true;
+                            }
+                        }
+                        skip |= 1 << i;
+                    }
+                    if (skip == allSkipped) {
+                        break;
+                    }
+                }
+                continue;
+            }
             char[] setSection = hasSectionSet ? set.loadIfPresent(layer) : null;
-            if (setSection == null || Arrays.equals(setSection, FaweCache.INSTANCE.EMPTY_CHAR_4096) ||
-                    Arrays.equals(setSection, AIR_LAYER)) {
+            if (setSection == null) {
                 hasSectionSet = false;
             }
             if (!hasSectionSet && !hasSectionGet) {
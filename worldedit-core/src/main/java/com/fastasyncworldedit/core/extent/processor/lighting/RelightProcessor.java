@@ -31,7 +31,7 @@ public IChunkSet processSet(IChunk chunk, IChunkGet get, IChunkSet set) {
             byte[] fix = new byte[get.getSectionCount()];
             boolean relight = false;
             for (int i = get.getMaxSectionPosition(); i >= get.getMinSectionPosition(); i--) {
-                if (!set.hasSection(i)) {
+                if (set.getSectionSummary(i) == null) {
                     // Array index cannot be < 0 so "add" the min
                     fix[i - get.getMinSectionPosition()] = Relighter.SkipReason.AIR;
                     continue;
@@ -0,0 +1,404 @@
+package com.fastasyncworldedit.core.history;
+
+import com.fastasyncworldedit.core.internal.io.ByteBufferInputStream;
+import com.fastasyncworldedit.core.internal.io.FastByteArrayOutputStream;
+import com.fastasyncworldedit.core.internal.io.FaweInputStream;
+import com.fastasyncworldedit.core.internal.io.FaweOutputStream;
+import com.fastasyncworldedit.core.util.MainUtil;
+import com.fastasyncworldedit.core.util.MathMan;
+import com.fastasyncworldedit.core.util.ZstdDictionary;
+import com.sk89q.worldedit.internal.util.LogManagerCompat;
+import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.world.block.BlockTypesCache;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Block history stored in compressed runs per chunk, followed by a chunk index, so that the changes of a few chunks can
+ * be read without decompressing the whole edit.
+ * <pre>
+ * [header]  the {@link com.fastasyncworldedit.core.history.changeset.FaweStreamChangeSet} header, uncompressed
+ * [runs]... compressed { byte x &lt;&lt; 4 | z, short y, varint from[, varint to] } of a single chunk
+ * [index]   { int chunk x, int chunk z, long offset, int length, int count } per run, in file order
+ * [trailer] { int runs, long index offset, int magic }
+ * </pre>
+ * A chunk may have several runs. The "to" id is only stored if the header's mode stores redo.
+ */
+public final class ChunkIndexedBlockFile {
+
+    private static final Logger LOGGER = LogManagerCompat.getLogger();
+
+    private static final int MAGIC = 0x46424443; // "FBDC"
+    private static final int TRAILER_SIZE = 16;
+    private static final int INDEX_ENTRY_SIZE = 24;
+    /**
+     * Size at which a chunk's buffered changes are compressed and written as a run.
+     */
+    private static final int RUN_SIZE = 1 << 16;
+    /**
+     * Total buffered size at which all buffered chunks are written, to bound memory use of large edits.
+     */
+    private static final int MAX_BUFFERED = 1 << 24;
+    private static final int READ_BUFFER = 8192;
+
+    private ChunkIndexedBlockFile() {
+    }
+
+    private static boolean storesRedo(int mode) {
+        return mode == 3 || mode == 4;
+    }
+
+    /**
+     * Receives the decoded changes of a run.
+     *
+     * @param <T> the change type
+     */
+    @FunctionalInterface
+    public interface ChangeReader<T> {
+
+        T read(int x, int y, int z, int from, int to);
+
+    }
+
+    /**
+     * Appends changes to a new file. Not usable for reading until closed.
+     */
+    public static final class Writer implements Closeable {
+
+        private final DataOutputStream out;
+        private final int compression;
+        @Nullable
+        private final ZstdDictionary dictionary;
+        private final boolean storeTo;
+        private final Long2ObjectOpenHashMap<FaweOutputStream> buffers = new Long2ObjectOpenHashMap<>();
+        private final Long2IntOpenHashMap counts = new Long2IntOpenHashMap();
+        private final LongArrayList indexChunks = new LongArrayList();
+        private final LongArrayList indexOffsets = new LongArrayList();
+        private final IntArrayList indexLengths = new IntArrayList();
+        private final IntArrayList indexCounts = new IntArrayList();
+        private long offset;
+        private long buffered;
+
+        /**
+         * Create a new file, replacing any existing one.
+         *
+         * @param file        file to write
+         * @param header      change set header, its first byte is the mode
+         * @param compression compression level, see {@link MainUtil#getCompressedOS(java.io.OutputStream, int)}
+         * @param dictionary  dictionary to compress runs with, may be null
+         * @throws IOException if the file could not be created
+         */
+        public Writer(File file, byte[] header, int compression, @Nullable ZstdDictionary dictionary) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), READ_BUFFER));
+            this.compression = compression;
+            this.dictionary = dictionary;
+            this.storeTo = storesRedo(header[0]);
+            out.write(header);
+            offset = header.length;
+        }
+
+        public synchronized void add(int x, int y, int z, int from, int to) throws IOException {
+            final long chunk = MathMan.pairInt(x >> 4, z >> 4);
+            FaweOutputStream buffer = buffers.get(chunk);
+            if (buffer == null) {
+                buffer = new FaweOutputStream(new FastByteArrayOutputStream(1024));
+                buffers.put(chunk, buffer);
+            }
+            final int before = buffer.size();
+            buffer.write((x & 15) << 4 | z & 15);
+            buffer.writeShort(y);
+            buffer.writeVarInt(from);
+            if (storeTo) {
+                buffer.writeVarInt(to);
+            }
+            counts.addTo(chunk, 1);
+            buffered += buffer.size() - before;
+            if (buffer.size() >= RUN_SIZE) {
+                writeRun(chunk, buffers.remove(chunk));
+            }
+            if (buffered >= MAX_BUFFERED) {
+                writeAll();
+            }
+        }
+
+        private void writeRun(long chunk, FaweOutputStream buffer) throws IOException {
+            final FastByteArrayOutputStream raw = (FastByteArrayOutputStream) buffer.getParent();
+            final FastByteArrayOutputStream compressed = new FastByteArrayOutputStream(raw.getSize() / 2 + 64);
+            final int bufferSize = Math.max(64, raw.getSize());
+            try (FaweOutputStream compressor = dictionary != null
+                    ? MainUtil.getCompressedOS(compressed, compression, bufferSize, dictionary)
+                    : MainUtil.getCompressedOS(compressed, compression, bufferSize)) {
+                raw.writeTo(compressor);
+            }
+            compressed.writeTo(out);
+            buffered -= raw.getSize();
+            indexChunks.add(chunk);
+            indexOffsets.add(offset);
+            indexLengths.add(compressed.getSize());
+            indexCounts.add(counts.remove(chunk));
+            offset += compressed.getSize();
+        }
+
+        private void writeAll() throws IOException {
+            // Chunk order, so runs of neighbouring chunks end up close together
+            final long[] chunks = buffers.keySet().toLongArray();
+            Arrays.sort(chunks);
+            for (long chunk : chunks) {
+                writeRun(chunk, buffers.remove(chunk));
+            }
+        }
+
+        /**
+         * Write the remaining changes and the index, and close the file.
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            writeAll();
+            final long indexOffset = offset;
+            for (int i = 0; i < indexChunks.size(); i++) {
+                final long chunk = indexChunks.getLong(i);
+                out.writeInt(MathMan.unpairIntX(chunk));
+                out.writeInt(MathMan.unpairIntY(chunk));
+                out.writeLong(indexOffsets.getLong(i));
+                out.writeInt(indexLengths.getInt(i));
+                out.writeInt(indexCounts.getInt(i));
+            }
+            out.writeInt(indexChunks.size());
+            out.writeLong(indexOffset);
+            out.writeInt(MAGIC);
+            out.close();
+        }
+
+    }
+
+    /**
+     * Reads a closed file. Runs are memory mapped one at a time, so files larger than 2 GiB are supported.
+     */
+    public static final class Reader implements Closeable {
+
+        private final FileChannel channel;
+        private final int mode;
+        private final int[] chunkX;
+        private final int[] chunkZ;
+        private final long[] offsets;
+        private final int[] lengths;
+        private final int[] counts;
+
+        /**
+         * Open a file and read its index.
+         *
+         * @param file file to read
+         * @throws IOException if the file could not be read or is not a complete chunk indexed file
+         */
+        public Reader(File file) throws IOException {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                final long size = channel.size();
+                if (size < TRAILER_SIZE + 1) {
+                    throw new EOFException("Truncated history file: " + file);
+                }
+                final ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, size - TRAILER_SIZE, TRAILER_SIZE);
+                final int runs = trailer.getInt();
+                final long indexOffset = trailer.getLong();
+                if (trailer.getInt() != MAGIC) {
+                    // Not closed properly, the index was never written
+                    throw new IOException("Incomplete history file: " + file);
+                }
+                final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, 1);
+                this.mode = header.get();
+                final ByteBuffer index = channel.map(
+                        FileChannel.MapMode.READ_ONLY,
+                        indexOffset,
+                        (long) runs * INDEX_ENTRY_SIZE
+                );
+                chunkX = new int[runs];
+                chunkZ = new int[runs];
+                offsets = new long[runs];
+                lengths = new int[runs];
+                counts = new int[runs];
+                for (int i = 0; i < runs; i++) {
+                    chunkX[i] = index.getInt();
+                    chunkZ[i] = index.getInt();
+                    offsets[i] = index.getLong();
+                    lengths[i] = index.getInt();
+                    counts[i] = index.getInt();
+                }
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Get the uncompressed header, as written by the change set.
+         *
+         * @throws IOException if the header could not be read
+         */
+        public InputStream getHeader() throws IOException {
+            final long end = offsets.length == 0 ? channel.size() - TRAILER_SIZE : offsets[0];
+            return new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(end, 64)));
+        }
+
+        /**
+         * If the "to" id of each change is stored, i.e. the changes can be redone. Otherwise "to" is always air.
+         */
+        public boolean isRedoStored() {
+            return storesRedo(mode);
+        }
+
+        /**
+         * Get the number of changes in the file.
+         */
+        public long getChangeCount() {
+            long total = 0;
+            for (int count : counts) {
+                total += count;
+            }
+            return total;
+        }
+
+        /**
+         * Get the number of compressed runs in the file.
+         */
+        public int getRunCount() {
+            return offsets.length;
+        }
+
+        /**
+         * Decompress the start of a run, e.g. to sample it.
+         *
+         * @param run       index of the run, in file order
+         * @param maxLength maximum number of bytes to read
+         * @return the decompressed bytes, at most {@code maxLength}
+         * @throws IOException if the run could not be read
+         */
+        public byte[] readRun(int run, int maxLength) throws IOException {
+            try (FaweInputStream is = MainUtil.getCompressedIS(
+                    new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, offsets[run], lengths[run])),
+                    READ_BUFFER
+            )) {
+                return is.readNBytes(maxLength);
+            }
+        }
+
+        /**
+         * Iterate the changes of the chunks intersecting any of the given regions, in the order they were written. Only
+         * the runs of those chunks are decompressed. The reader is closed once the iterator is exhausted.
+         *
+         * @param regions regions to read, or null to read every chunk
+         * @param reader  converts each change, may return the same mutable instance every time
+         * @param <T>     the change type
+         * @return the changes
+         */
+        public <T> Iterator<T> iterator(@Nullable Region[] regions, ChangeReader<T> reader) {
+            final int[] runs = selectRuns(regions);
+            final boolean storeTo = storesRedo(mode);
+            final int air = BlockTypesCache.ReservedIDs.AIR;
+            return new Iterator<>() {
+                private int run = -1;
+                private int remaining;
+                private int bx;
+                private int bz;
+                private FaweInputStream is;
+                private T last = read();
+
+                private T read() {
+                    try {
+                        while (remaining == 0) {
+                            if (is != null) {
+                                is.close();
+                                is = null;
+                            }
+                            if (++run >= runs.length) {
+                                close();
+                                return null;
+                            }
+                            final int i = runs[run];
+                            bx = chunkX[i] << 4;
+                            bz = chunkZ[i] << 4;
+                            remaining = counts[i];
+                            is = MainUtil.getCompressedIS(
+                                    new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, offsets[i], lengths[i])),
+                                    READ_BUFFER
+                            );
+                        }
+                        remaining--;
+                        final int xz = is.read();
+                        final int y = is.readShort();
+                        final int from = is.readVarInt();
+                        final int to = storeTo ? is.readVarInt() : air;
+                        return reader.read(bx | xz >> 4, y, bz | xz & 15, from, to);
+                    } catch (IOException e) {
+                        LOGGER.error("Unable to read chunk indexed history", e);
+                        try {
+                            close();
+                        } catch (IOException ignored) {
+                        }
+                        return null;
+                    }
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return last != null || ((last = read()) != null);
+                }
+
+                @Override
+                public T next() {
+                    T tmp = last;
+                    if (tmp == null) {
+                        tmp = read();
+                        if (tmp == null) {
+                            throw new NoSuchElementException();
+                        }
+                    }
+                    last = null;
+                    return tmp;
+                }
+            };
+        }
+
+        private int[] selectRuns(@Nullable Region[] regions) {
+            final IntArrayList selected = new IntArrayList(chunkX.length);
+            for (int i = 0; i < chunkX.length; i++) {
+                if (regions == null) {
+                    selected.add(i);
+                    continue;
+                }
+                for (Region region : regions) {
+                    if (region.containsChunk(chunkX[i], chunkZ[i])) {
+                        selected.add(i);
+                        break;
+                    }
+                }
+            }
+            return selected.toIntArray();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+    }
+
+}
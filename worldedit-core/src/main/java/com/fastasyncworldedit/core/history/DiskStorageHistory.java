@@ -4,6 +4,8 @@
 import com.fastasyncworldedit.core.configuration.Settings;
 import com.fastasyncworldedit.core.database.DBHandler;
 import com.fastasyncworldedit.core.database.RollbackDatabase;
+import com.fastasyncworldedit.core.history.change.MutableBlockChange;
+import com.fastasyncworldedit.core.history.change.MutableFullBlockChange;
 import com.fastasyncworldedit.core.history.changeset.FaweStreamChangeSet;
 import com.fastasyncworldedit.core.history.changeset.SimpleChangeSetSummary;
 import com.fastasyncworldedit.core.internal.io.FaweInputStream;
@@ -14,14 +16,23 @@
 import com.sk89q.jnbt.NBTOutputStream;
 import com.sk89q.worldedit.EditSession;
 import com.sk89q.worldedit.extension.platform.Actor;
+import com.sk89q.worldedit.extent.inventory.BlockBag;
 import com.sk89q.worldedit.function.operation.ChangeSetExecutor;
+import com.sk89q.worldedit.internal.util.LogManagerCompat;
 import com.sk89q.worldedit.regions.Region;
 import com.sk89q.worldedit.world.World;
+import com.sk89q.worldedit.world.block.BlockTypesCache;
+import org.apache.logging.log4j.Logger;
 
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -35,10 +46,13 @@
  */
 public class DiskStorageHistory extends FaweStreamChangeSet {
 
+    private static final Logger LOGGER = LogManagerCompat.getLogger();
+
     private static final Map<String, Map<UUID, Integer>> NEXT_INDEX = new ConcurrentHashMap<>();
 
     private UUID uuid;
     private File bdFile;
+    private File bdcFile;
     private File bioFile;
     private File nbtfFile;
     private File nbttFile;
@@ -55,6 +69,8 @@ public class DiskStorageHistory extends FaweStreamChangeSet {
      * { short rel x, short rel z, unsigned byte y, short combinedFrom, short combinedTo }
      */
     private FaweOutputStream osBD;
+    // Block data, chunk indexed (see ChunkIndexedBlockFile), used instead of osBD if enabled
+    private ChunkIndexedBlockFile.Writer osBDC;
     // biome
     private FaweOutputStream osBIO;
     // NBT From
@@ -67,6 +83,9 @@ public class DiskStorageHistory extends FaweStreamChangeSet {
     private NBTOutputStream osENTCT;
 
     private int index;
+    private boolean chunkIndexed;
+    // Restricts block reads to the chunks of these regions during a partial undo or redo
+    private Region[] readRegions;
 
     public DiskStorageHistory(World world, UUID uuid) {
         super(world);
@@ -105,6 +124,8 @@ private void initFiles(File folder) {
         //Switch file ending due to new (sort-of) format. (Added e for Extended height)
         bdFile = new File(folder, index + ".bd");
         bioFile = new File(folder, index + ".bio");
+        bdcFile = new File(folder, index + ".bdc");
+        chunkIndexed = bdcFile.exists() || (!bdFile.exists() && Settings.settings().HISTORY.CHUNK_INDEXED);
     }
 
     private void init(UUID uuid, int i) {
@@ -128,6 +149,7 @@ public void delete() {
 
     public void deleteFiles() {
         bdFile.delete();
+        bdcFile.delete();
         nbtfFile.delete();
         nbttFile.delete();
         entfFile.delete();
@@ -142,7 +164,12 @@ public void undo(Actor actor, Region[] regions) {
             return;
         }
         EditSession session = toEditSession(actor, regions);
-        session.setBlocks(this, ChangeSetExecutor.Type.UNDO);
+        readRegions = regions;
+        try {
+            session.setBlocks(this, ChangeSetExecutor.Type.UNDO);
+        } finally {
+            readRegions = null;
+        }
         deleteFiles();
     }
 
@@ -158,7 +185,12 @@ public void redo(Actor actor, Region[] regions) {
             return;
         }
         EditSession session = toEditSession(actor, regions);
-        session.setBlocks(this, ChangeSetExecutor.Type.REDO);
+        readRegions = regions;
+        try {
+            session.setBlocks(this, ChangeSetExecutor.Type.REDO);
+        } finally {
+            readRegions = null;
+        }
     }
 
     public void redo(Actor actor) {
@@ -173,6 +205,29 @@ public File getBDFile() {
         return bdFile;
     }
 
+    /**
+     * Get the chunk indexed block file, which is used instead of the {@link #getBDFile() BD file} if
+     * {@link #isChunkIndexed()}.
+     */
+    public File getBDCFile() {
+        return bdcFile;
+    }
+
+    /**
+     * If block changes are stored in the chunk indexed format, allowing the changes of a few chunks to be read without
+     * reading the whole edit.
+     */
+    public boolean isChunkIndexed() {
+        return chunkIndexed;
+    }
+
+    /**
+     * Get the file block changes are stored in.
+     */
+    public File getBlockFile() {
+        return chunkIndexed ? bdcFile : bdFile;
+    }
+
     public File getNbtfFile() {
         return nbtfFile;
     }
@@ -235,6 +290,10 @@ public void close() throws IOException {
                     osBD.close();
                     osBD = null;
                 }
+                if (osBDC != null) {
+                    osBDC.close();
+                    osBDC = null;
+                }
                 if (osBIO != null) {
                     osBIO.close();
                     osBIO = null;
@@ -263,7 +322,8 @@ public void close() throws IOException {
 
     @Override
     public int getCompressedSize() {
-        return bdFile.exists() ? (int) bdFile.length() : 0;
+        final File file = getBlockFile();
+        return file.exists() ? (int) file.length() : 0;
     }
 
     @Override
@@ -277,6 +337,9 @@ public long getSizeOnDisk() {
         if (bdFile.exists()) {
             total += bdFile.length();
         }
+        if (bdcFile.exists()) {
+            total += bdcFile.length();
+        }
         if (bioFile.exists()) {
             total += bioFile.length();
         }
@@ -309,6 +372,35 @@ public FaweOutputStream getBlockOS(int x, int y, int z) throws IOException {
         }
     }
 
+    @Override
+    public void add(int x, int y, int z, int combinedFrom, int combinedTo) {
+        if (!chunkIndexed) {
+            super.add(x, y, z, combinedFrom, combinedTo);
+            return;
+        }
+        blockSize++;
+        try {
+            getBlockChunkOS(x, y, z).add(x, y, z, combinedFrom, combinedTo);
+        } catch (IOException e) {
+            LOGGER.error("Unable to write chunk indexed history", e);
+        }
+    }
+
+    private ChunkIndexedBlockFile.Writer getBlockChunkOS(int x, int y, int z) throws IOException {
+        if (osBDC != null) {
+            return osBDC;
+        }
+        synchronized (this) {
+            if (osBDC == null) {
+                bdcFile.getParentFile().mkdirs();
+                ByteArrayOutputStream header = new ByteArrayOutputStream(HEADER_SIZE + 1);
+                writeHeader(header, x, y, z);
+                osBDC = new ChunkIndexedBlockFile.Writer(bdcFile, header.toByteArray(), getCompression(), getDictionary());
+            }
+            return osBDC;
+        }
+    }
+
     @Override
     public FaweOutputStream getBiomeOS() throws IOException {
         if (osBIO != null) {
@@ -376,6 +468,77 @@ public FaweInputStream getBlockIS() throws IOException {
         return is;
     }
 
+    @Override
+    public Iterator<MutableBlockChange> getBlockIterator(boolean dir) throws IOException {
+        if (!chunkIndexed) {
+            return super.getBlockIterator(dir);
+        }
+        ChunkIndexedBlockFile.Reader reader = getBlockChunkIS();
+        if (reader == null) {
+            return super.getBlockIterator(dir);
+        }
+        // Like the .bd format, history without redo always yields the previous block
+        final boolean redo = dir && reader.isRedoStored();
+        final MutableBlockChange change = new MutableBlockChange(0, 0, 0, BlockTypesCache.ReservedIDs.AIR);
+        return reader.iterator(readRegions, (x, y, z, from, to) -> {
+            change.x = x;
+            change.y = y;
+            change.z = z;
+            change.ordinal = redo ? to : from;
+            return change;
+        });
+    }
+
+    @Override
+    public Iterator<MutableFullBlockChange> getFullBlockIterator(BlockBag blockBag, int inventory, boolean dir) throws
+            IOException {
+        return getFullBlockIterator(blockBag, inventory, dir, readRegions);
+    }
+
+    /**
+     * Iterate the block changes of the chunks intersecting the given regions. Only those chunks are read if
+     * {@link #isChunkIndexed()}, otherwise every change is returned.
+     *
+     * @param blockBag  block bag, may be null
+     * @param inventory inventory mode
+     * @param dir       true for redo, false for undo
+     * @param regions   regions to read, or null for all chunks
+     * @return the block changes
+     * @throws IOException if the history could not be read
+     */
+    public Iterator<MutableFullBlockChange> getFullBlockIterator(
+            BlockBag blockBag,
+            int inventory,
+            boolean dir,
+            @Nullable Region[] regions
+    ) throws IOException {
+        ChunkIndexedBlockFile.Reader reader = chunkIndexed ? getBlockChunkIS() : null;
+        if (reader == null) {
+            return super.getFullBlockIterator(blockBag, inventory, dir);
+        }
+        final MutableFullBlockChange change = new MutableFullBlockChange(blockBag, inventory, dir);
+        return reader.iterator(regions, (x, y, z, from, to) -> {
+            change.x = x;
+            change.y = y;
+            change.z = z;
+            change.from = from;
+            change.to = to;
+            return change;
+        });
+    }
+
+    @Nullable
+    private ChunkIndexedBlockFile.Reader getBlockChunkIS() throws IOException {
+        if (!bdcFile.exists()) {
+            return null;
+        }
+        ChunkIndexedBlockFile.Reader reader = new ChunkIndexedBlockFile.Reader(bdcFile);
+        try (InputStream header = reader.getHeader()) {
+            readHeader(header);
+        }
+        return reader;
+    }
+
     @Override
     public FaweInputStream getBiomeIS() throws IOException {
         if (!bioFile.exists()) {
@@ -421,13 +584,42 @@ public SimpleChangeSetSummary summarize(Region region, boolean shallow) {
         if (bdFile.exists()) {
             return super.summarize(region, shallow);
         }
-        return null;
+        if (!bdcFile.exists()) {
+            return null;
+        }
+        readHeader();
+        SimpleChangeSetSummary summary = summarizeShallow();
+        if (shallow || (region != null && !region.contains(getOriginX(), getOriginZ()))) {
+            return summary;
+        }
+        // Read at most as many changes as the stream format does
+        int amount = (Settings.settings().HISTORY.BUFFER_SIZE - HEADER_SIZE) / 9;
+        try {
+            Iterator<MutableFullBlockChange> iter = getFullBlockIterator(null, 0, false, null);
+            for (int i = 0; i < amount && iter.hasNext(); i++) {
+                MutableFullBlockChange change = iter.next();
+                summary.add(change.x, change.z, change.to);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Unable to summarize chunk indexed history", e);
+        }
+        return summary;
     }
 
     public IntPair readHeader() {
         int ox = getOriginX();
         int oz = getOriginZ();
-        if (ox == 0 && oz == 0 && bdFile.exists()) {
+        if (ox == 0 && oz == 0 && !bdFile.exists() && bdcFile.exists()) {
+            try (FileInputStream fis = new FileInputStream(bdcFile)) {
+                // The header of the chunk indexed format is not compressed
+                readHeader(fis);
+            } catch (EOFException ignored) {
+            } catch (IOException e) {
+                LOGGER.error("Unable to read the chunk indexed history header", e);
+            }
+            ox = getOriginX();
+            oz = getOriginZ();
+        } else if (ox == 0 && oz == 0 && bdFile.exists()) {
             try (FileInputStream fis = new FileInputStream(bdFile)) {
                 final FaweInputStream gis = MainUtil.getCompressedIS(fis);
                 // skip mode
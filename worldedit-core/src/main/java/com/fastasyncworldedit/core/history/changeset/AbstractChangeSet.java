@@ -8,6 +8,7 @@
 import com.fastasyncworldedit.core.queue.IChunk;
 import com.fastasyncworldedit.core.queue.IChunkGet;
 import com.fastasyncworldedit.core.queue.IChunkSet;
+import com.fastasyncworldedit.core.queue.SectionSummary;
 import com.fastasyncworldedit.core.util.MainUtil;
 import com.fastasyncworldedit.core.util.TaskManager;
 import com.google.common.util.concurrent.Futures;
@@ -157,7 +158,8 @@ public final synchronized IChunkSet processSet(IChunk chunk, IChunkGet get, IChu
             }
         }
         for (int layer = get.getMinSectionPosition(); layer <= get.getMaxSectionPosition(); layer++) {
-            if (!set.hasSection(layer)) {
+            SectionSummary summary = set.getSectionSummary(layer);
+            if (summary == null) {
                 continue;
             }
             // add each block and tile
@@ -174,22 +176,16 @@ public final synchronized IChunkSet processSet(IChunk chunk, IChunkGet get, IChu
 
             // Account for negative layers
             int by = layer << 4;
-            for (int y = 0, index = 0; y < 16; y++) {
-                int yy = y + by;
-                for (int z = 0; z < 16; z++) {
-                    int zz = z + bz;
-                    for (int x = 0; x < 16; x++, index++) {
-                        int xx = bx + x;
-                        int from = blocksGet[index];
-                        if (from == BlockTypesCache.ReservedIDs.__RESERVED__) {
-                            from = BlockTypesCache.ReservedIDs.AIR;
-                        }
-                        final int combinedFrom = from;
-                        final int combinedTo = blocksSet[index];
-                        if (combinedTo != BlockTypesCache.ReservedIDs.__RESERVED__) {
-                            add(xx, yy, zz, combinedFrom, combinedTo);
-                        }
-                    }
+            // Only visit the blocks that are set, in index order
+            for (int index = summary.nextChanged(0); index != -1; index = summary.nextChanged(index + 1)) {
+                int from = blocksGet[index];
+                if (from == BlockTypesCache.ReservedIDs.__RESERVED__) {
+                    from = BlockTypesCache.ReservedIDs.AIR;
+                }
+                final int combinedFrom = from;
+                final int combinedTo = blocksSet[index];
+                if (combinedTo != BlockTypesCache.ReservedIDs.__RESERVED__) {
+                    add(bx + (index & 15), by + (index >> 8), bz + (index >> 4 & 15), combinedFrom, combinedTo);
                 }
             }
         }
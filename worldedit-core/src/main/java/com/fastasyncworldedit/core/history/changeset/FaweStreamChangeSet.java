@@ -11,6 +11,7 @@
 import com.fastasyncworldedit.core.internal.io.FaweOutputStream;
 import com.fastasyncworldedit.core.util.MainUtil;
 import com.fastasyncworldedit.core.util.MathMan;
+import com.fastasyncworldedit.core.util.ZstdDictionary;
 import com.sk89q.jnbt.CompoundTag;
 import com.sk89q.jnbt.NBTInputStream;
 import com.sk89q.jnbt.NBTOutputStream;
@@ -21,6 +22,7 @@
 import com.sk89q.worldedit.world.biome.BiomeType;
 import com.sk89q.worldedit.world.block.BlockTypes;
 
+import javax.annotation.Nullable;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -250,9 +252,30 @@ public void readHeader(InputStream is) throws IOException {
     }
 
     public FaweOutputStream getCompressedOS(OutputStream os) throws IOException {
+        ZstdDictionary dictionary = getDictionary();
+        if (dictionary != null) {
+            return MainUtil.getCompressedOS(os, compression, Settings.settings().HISTORY.BUFFER_SIZE, dictionary);
+        }
         return MainUtil.getCompressedOS(os, compression);
     }
 
+    /**
+     * Get the dictionary new streams are compressed with.
+     *
+     * @return the dictionary, or null if disabled or none has been trained
+     */
+    @Nullable
+    public ZstdDictionary getDictionary() {
+        if (compression == 0 || !Settings.settings().HISTORY.ZSTD_DICTIONARY) {
+            return null;
+        }
+        return ZstdDictionary.getLatest(ZstdDictionary.Kind.HISTORY);
+    }
+
+    public int getCompression() {
+        return compression;
+    }
+
     @Override
     public boolean isEmpty() {
         if (blockSize > 0) {
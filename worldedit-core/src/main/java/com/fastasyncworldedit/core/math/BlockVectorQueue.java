@@ -0,0 +1,54 @@
+package com.fastasyncworldedit.core.math;
+
+import com.sk89q.worldedit.math.BitMath;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of block positions, each packed into a long like {@link
+ * com.sk89q.worldedit.math.BlockVector3#toLongPackedForm()}. Used for the levels of a flood fill, where a position is
+ * added once and read back by index, without allocating a vector per position.
+ */
+public class BlockVectorQueue {
+
+    private static final long BITS_26 = BitMath.mask(26);
+    private static final long BITS_12 = BitMath.mask(12);
+
+    private long[] positions = new long[64];
+    private int size;
+
+    public void add(int x, int y, int z) {
+        if (size == positions.length) {
+            positions = Arrays.copyOf(positions, size << 1);
+        }
+        positions[size++] = (x & BITS_26) | ((z & BITS_26) << 26) | ((y & BITS_12) << (26 + 26));
+    }
+
+    public int getX(int index) {
+        return BitMath.unpackX(positions[index]);
+    }
+
+    public int getY(int index) {
+        return BitMath.unpackY(positions[index]);
+    }
+
+    public int getZ(int index) {
+        return BitMath.unpackZ(positions[index]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove all positions, keeping the allocated array.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+}
@@ -131,6 +131,22 @@ public BlockVector3 next() {
         };
     }
 
+    /**
+     * Visit every position in the set, without creating a vector for each. The index passed to the visitor is the index
+     * within the backing local set, not within this set.
+     *
+     * @param visitor visitor receiving the world coordinates of each position
+     */
+    public void forEach(LocalBlockVectorSet.BlockVectorSetVisitor visitor) {
+        for (Long2ObjectMap.Entry<LocalBlockVectorSet> entry : localSets.long2ObjectEntrySet()) {
+            long triple = entry.getLongKey();
+            final int bx = (int) MathMan.untripleWorldCoordX(triple) << 11;
+            final int by = (int) MathMan.untripleWorldCoordY(triple) << 9;
+            final int bz = (int) MathMan.untripleWorldCoordZ(triple) << 11;
+            entry.getValue().forEach((x, y, z, index) -> visitor.run(bx + x, by + y, bz + z, index));
+        }
+    }
+
     @Override
     public boolean add(BlockVector3 vector) {
         return add(vector.getBlockX(), vector.getBlockY(), vector.getBlockZ());
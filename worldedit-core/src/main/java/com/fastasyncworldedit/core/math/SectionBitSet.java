@@ -0,0 +1,128 @@
+package com.fastasyncworldedit.core.math;
+
+import com.fastasyncworldedit.core.util.MathMan;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+/**
+ * A set of block positions made for flood fills, storing a dense 4096 bit word for each chunk section touched.
+ * <p>
+ * Adding and testing positions takes primitive coordinates and does not allocate, apart from the words of a new
+ * section. The last section used is cached, as neighbouring positions are mostly in the same section. Reading from
+ * several threads at once is safe as long as nothing is added meanwhile.
+ */
+public class SectionBitSet {
+
+    private final Long2ObjectMap<Section> sections = new Long2ObjectOpenHashMap<>();
+    private Section last;
+    private int size;
+
+    /**
+     * Add a position.
+     *
+     * @return true if the position was not in the set yet
+     */
+    public boolean add(int x, int y, int z) {
+        Section section = getSection(x, y, z, true);
+        int index = index(x, y, z);
+        long bit = 1L << index;
+        long word = section.words[index >> 6];
+        if ((word & bit) != 0) {
+            return false;
+        }
+        section.words[index >> 6] = word | bit;
+        size++;
+        return true;
+    }
+
+    /**
+     * Check if a position is in the set.
+     */
+    public boolean contains(int x, int y, int z) {
+        Section section = getSection(x, y, z, false);
+        if (section == null) {
+            return false;
+        }
+        int index = index(x, y, z);
+        return (section.words[index >> 6] & 1L << index) != 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        sections.clear();
+        last = null;
+        size = 0;
+    }
+
+    /**
+     * Visit each position in the set, section by section. The index passed to the visitor is the index of the position
+     * in its section.
+     *
+     * @param visitor visitor to use
+     */
+    public void forEach(LocalBlockVectorSet.BlockVectorSetVisitor visitor) {
+        for (Section section : sections.values()) {
+            int baseX = section.x << 4;
+            int baseY = section.y << 4;
+            int baseZ = section.z << 4;
+            long[] words = section.words;
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    int index = (i << 6) | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    visitor.run(baseX + (index & 15), baseY + (index >> 8), baseZ + ((index >> 4) & 15), index);
+                }
+            }
+        }
+    }
+
+    private Section getSection(int x, int y, int z, boolean create) {
+        int sectionX = x >> 4;
+        int sectionY = y >> 4;
+        int sectionZ = z >> 4;
+        // Read once, other threads may be replacing it while testing
+        Section section = last;
+        if (section != null && section.x == sectionX && section.y == sectionY && section.z == sectionZ) {
+            return section;
+        }
+        long key = MathMan.tripleWorldCoord(sectionX, sectionY, sectionZ);
+        section = sections.get(key);
+        if (section == null) {
+            if (!create) {
+                return null;
+            }
+            section = new Section(sectionX, sectionY, sectionZ);
+            sections.put(key, section);
+        }
+        last = section;
+        return section;
+    }
+
+    private static int index(int x, int y, int z) {
+        return (y & 15) << 8 | (z & 15) << 4 | x & 15;
+    }
+
+    private static final class Section {
+
+        private final int x;
+        private final int y;
+        private final int z;
+        private final long[] words = new long[64];
+
+        private Section(int x, int y, int z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.fastasyncworldedit.core.queue;
 
 import com.fastasyncworldedit.core.extent.processor.heightmap.HeightMapType;
+import com.fastasyncworldedit.core.queue.implementation.CommitSource;
 import com.sk89q.jnbt.CompoundTag;
 import com.sk89q.worldedit.extent.InputExtent;
 import com.sk89q.worldedit.math.BlockVector3;
@@ -52,6 +53,14 @@ default void optimize() {
 
     void setCreateCopy(boolean createCopy);
 
+    /**
+     * Set the edit the next {@link #call(IChunkSet, Runnable)} commits for, used to schedule its main thread work.
+     *
+     * @param source the edit, may be null
+     */
+    default void setCommitSource(@Nullable CommitSource source) {
+    }
+
     @Nullable
     default IChunkGet getCopy() {
         return null;
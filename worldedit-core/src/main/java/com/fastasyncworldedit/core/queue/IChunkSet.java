@@ -116,6 +116,20 @@ default Operation commit() {
      */
     boolean hasBiomes(int layer);
 
+    /**
+     * Get a summary of the blocks to be set in a layer, so processors can skip unchanged blocks and use fast paths for
+     * sections filled with a single block. Changes written directly into an array from {@link #loadIfPresent(int)} are
+     * only picked up once the array is passed back with {@link #setBlocks(int, char[])}.
+     *
+     * @param layer layer to summarise. Can be negative
+     * @return the summary, or null if no blocks are set in the layer
+     */
+    @Nullable
+    default SectionSummary getSectionSummary(int layer) {
+        char[] blocks = hasSection(layer) ? loadIfPresent(layer) : null;
+        return blocks == null ? null : SectionSummary.of(blocks);
+    }
+
     /**
      * Create an entirely distinct copy of this SET instance. All mutable data must be copied to sufficiently prevent leakage
      * between the copy and the original.
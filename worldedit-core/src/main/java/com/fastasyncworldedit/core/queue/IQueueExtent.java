@@ -2,6 +2,7 @@
 
 import com.fastasyncworldedit.core.extent.filter.block.ChunkFilterBlock;
 import com.fastasyncworldedit.core.extent.processor.IBatchProcessorHolder;
+import com.fastasyncworldedit.core.queue.implementation.CommitSource;
 import com.sk89q.worldedit.extent.Extent;
 import com.sk89q.worldedit.function.operation.Operation;
 import com.sk89q.worldedit.math.BlockVector2;
@@ -37,6 +38,16 @@ default boolean isQueueEnabled() {
     @Override
     void disableQueue();
 
+    /**
+     * Get the edit chunks of this queue are committed for, used to schedule their main thread work.
+     *
+     * @return the edit, or null if unknown
+     */
+    @Nullable
+    default CommitSource getCommitSource() {
+        return null;
+    }
+
 
     /**
      * Initialize the queue (for reusability)
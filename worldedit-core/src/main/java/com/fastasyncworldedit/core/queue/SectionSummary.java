@@ -0,0 +1,156 @@
+package com.fastasyncworldedit.core.queue;
+
+import com.sk89q.worldedit.world.block.BlockTypesCache;
+
+import javax.annotation.Nullable;
+
+/**
+ * Summary of the blocks to be set in one section of an {@link IChunkSet}: which entries are set, the single value they
+ * are all set to if there is one, and the range of local y levels with set entries. Lets processors skip what has not
+ * changed instead of scanning every section.
+ * <p>
+ * Entries are indexed {@code y << 8 | z << 4 | x}.
+ */
+public final class SectionSummary {
+
+    private final long[] changed;
+    private final int count;
+    private final char uniform;
+    private final int minY;
+    private final int maxY;
+
+    private SectionSummary(long[] changed, int count, char uniform, int minY, int maxY) {
+        this.changed = changed;
+        this.count = count;
+        this.uniform = uniform;
+        this.minY = minY;
+        this.maxY = maxY;
+    }
+
+    /**
+     * Summarise a section of blocks to be set, where {@link BlockTypesCache.ReservedIDs#__RESERVED__} means unchanged.
+     *
+     * @param blocks section blocks
+     * @return the summary, or null if no block is set
+     */
+    @Nullable
+    public static SectionSummary of(char[] blocks) {
+        final long[] changed = new long[64];
+        int count = 0;
+        int minY = -1;
+        int maxY = -1;
+        char first = BlockTypesCache.ReservedIDs.__RESERVED__;
+        boolean uniform = true;
+        for (int y = 0, index = 0; y < 16; y++) {
+            final int before = count;
+            // 4 words of 64 entries per y level
+            for (int word = y << 2, end = word + 4; word < end; word++) {
+                long bits = 0;
+                for (int bit = 0; bit < 64; bit++, index++) {
+                    final char value = blocks[index];
+                    if (value == BlockTypesCache.ReservedIDs.__RESERVED__) {
+                        continue;
+                    }
+                    if (first == BlockTypesCache.ReservedIDs.__RESERVED__) {
+                        first = value;
+                    } else if (value != first) {
+                        uniform = false;
+                    }
+                    bits |= 1L << bit;
+                    count++;
+                }
+                changed[word] = bits;
+            }
+            if (count != before) {
+                if (minY == -1) {
+                    minY = y;
+                }
+                maxY = y;
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        return new SectionSummary(changed, count, uniform ? first : BlockTypesCache.ReservedIDs.__RESERVED__, minY, maxY);
+    }
+
+    /**
+     * Get if the entry at an index is set.
+     */
+    public boolean isChanged(int index) {
+        return (changed[index >> 6] & 1L << index) != 0;
+    }
+
+    /**
+     * Get the next set entry at or after an index.
+     *
+     * @param index index to start at
+     * @return the index of the next set entry, or -1 if there is none
+     */
+    public int nextChanged(int index) {
+        int word = index >> 6;
+        if (word >= 64) {
+            return -1;
+        }
+        long bits = changed[word] & -1L << index;
+        while (bits == 0) {
+            if (++word == 64) {
+                return -1;
+            }
+            bits = changed[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * Get the bitmap of set entries, one bit per entry. Must not be modified.
+     */
+    public long[] getChanged() {
+        return changed;
+    }
+
+    /**
+     * Get the number of set entries.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Get if every entry of the section is set.
+     */
+    public boolean isFull() {
+        return count == 4096;
+    }
+
+    /**
+     * Get if every set entry is set to the same value. Together with {@link #isFull()} this is e.g. a section filled by
+     * {@code //set} of a single block.
+     */
+    public boolean isUniform() {
+        return uniform != BlockTypesCache.ReservedIDs.__RESERVED__;
+    }
+
+    /**
+     * Get the value every set entry is set to, or {@link BlockTypesCache.ReservedIDs#__RESERVED__} if the section is not
+     * {@link #isUniform() uniform}.
+     */
+    public char getUniform() {
+        return uniform;
+    }
+
+    /**
+     * Get the lowest local y level (0-15) with a set entry.
+     */
+    public int getMinY() {
+        return minY;
+    }
+
+    /**
+     * Get the highest local y level (0-15) with a set entry.
+     */
+    public int getMaxY() {
+        return maxY;
+    }
+
+}
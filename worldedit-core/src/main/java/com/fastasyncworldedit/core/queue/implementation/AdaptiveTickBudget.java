@@ -0,0 +1,88 @@
+package com.fastasyncworldedit.core.queue.implementation;
+
+import com.fastasyncworldedit.core.configuration.Settings;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sizes the time FAWE may spend on the main thread each tick from the measured tick duration.
+ * <p>
+ * The time between two ticks includes the idle time of a server that keeps up, so it can only show that ticks run late,
+ * not how much headroom there is. While ticks are on time the budget grows by a millisecond per tick in which it was used
+ * up, towards {@link Settings.QUEUE#EXTRA_TIME_MS} short of a full tick. A late tick cuts it to what would have kept that
+ * tick on time, given how long the rest of the tick took, and by at least a quarter. On an idle server big edits get most
+ * of each tick, on a busy one they back off to a couple of milliseconds.
+ * <p>
+ * Main thread only.
+ */
+public final class AdaptiveTickBudget {
+
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long TOLERANCE = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final long STEP = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MIN_BUDGET = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final long MAX_BUDGET = TimeUnit.MILLISECONDS.toNanos(40);
+
+    private long tickStart;
+    private long used;
+    private long budget = TimeUnit.MILLISECONDS.toNanos(10);
+    private long tickEwma = TICK;
+
+    /**
+     * Start a tick.
+     *
+     * @param now {@link System#nanoTime()}
+     * @return the time FAWE may use this tick, in nanoseconds
+     */
+    public long startTick(long now) {
+        if (tickStart != 0) {
+            final long interval = now - tickStart;
+            tickEwma += (interval - tickEwma) / 8;
+            final long max = Math.max(
+                    MIN_BUDGET,
+                    Math.min(TICK - STEP, MAX_BUDGET + TimeUnit.MILLISECONDS.toNanos(Settings.settings().QUEUE.EXTRA_TIME_MS))
+            );
+            if (interval > TICK + TOLERANCE) {
+                // The rest of the tick took interval - used, this is what would have fit next to it
+                final long fit = TICK - (interval - used);
+                budget = Math.min(budget - budget / 4, fit);
+            } else if (used >= budget - STEP) {
+                budget += STEP;
+            }
+            budget = Math.max(MIN_BUDGET, Math.min(max, budget));
+        }
+        tickStart = now;
+        return budget;
+    }
+
+    /**
+     * End a tick started with {@link #startTick(long)}.
+     *
+     * @param now {@link System#nanoTime()}
+     */
+    public void endTick(long now) {
+        used = now - tickStart;
+    }
+
+    /**
+     * Get the average measured tick duration, including idle time, in milliseconds.
+     */
+    public double getTickMillis() {
+        return tickEwma / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Get the current budget per tick, in milliseconds.
+     */
+    public double getBudgetMillis() {
+        return budget / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Get the time used in the last tick, in milliseconds.
+     */
+    public double getUsedMillis() {
+        return used / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+}
@@ -0,0 +1,219 @@
+package com.fastasyncworldedit.core.queue.implementation;
+
+import com.fastasyncworldedit.core.util.MathMan;
+import com.sk89q.worldedit.math.BlockVector2;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Hands out the chunks of an operation to a fixed number of workers in spatially coherent tiles.
+ * <p>
+ * Chunks are grouped into square tiles, ordered along a Z-order (Morton) curve, and the ordered tiles are split into one
+ * contiguous run per worker, so each worker mostly processes neighbouring chunks. A worker takes tiles from the front of
+ * its own run and, once that is exhausted, steals tiles from the back of another worker's run. Per worker counters of
+ * processed chunks, stolen tiles and busy time are kept for inspection.
+ */
+public class ChunkTileScheduler {
+
+    /**
+     * Largest tile edge length in chunks, as a shift.
+     */
+    private static final int MAX_TILE_SHIFT = 2;
+    /**
+     * Minimum number of tiles per worker before tiles are made smaller, so stealing has something to balance.
+     */
+    private static final int MIN_TILES_PER_WORKER = 4;
+
+    private final ConcurrentLinkedDeque<long[]>[] queues;
+    private final AtomicLongArray chunksProcessed;
+    private final AtomicLongArray tilesStolen;
+    private final AtomicLongArray busyNanos;
+    private final int tileShift;
+
+    /**
+     * Create a new scheduler.
+     *
+     * @param chunks  chunks to process
+     * @param workers number of workers that will call {@link #next(int)}
+     */
+    @SuppressWarnings("unchecked")
+    public ChunkTileScheduler(Collection<BlockVector2> chunks, int workers) {
+        int shift = MAX_TILE_SHIFT;
+        while (shift > 0 && (chunks.size() >> (shift << 1)) < workers * MIN_TILES_PER_WORKER) {
+            shift--;
+        }
+        this.tileShift = shift;
+        this.queues = new ConcurrentLinkedDeque[workers];
+        this.chunksProcessed = new AtomicLongArray(workers);
+        this.tilesStolen = new AtomicLongArray(workers);
+        this.busyNanos = new AtomicLongArray(workers);
+
+        final List<long[]> tiles = buildTiles(chunks);
+        for (int worker = 0; worker < workers; worker++) {
+            final ConcurrentLinkedDeque<long[]> queue = new ConcurrentLinkedDeque<>();
+            final int from = (int) ((long) tiles.size() * worker / workers);
+            final int to = (int) ((long) tiles.size() * (worker + 1) / workers);
+            queue.addAll(tiles.subList(from, to));
+            queues[worker] = queue;
+        }
+    }
+
+    private List<long[]> buildTiles(Collection<BlockVector2> chunks) {
+        int minX = Integer.MAX_VALUE;
+        int minZ = Integer.MAX_VALUE;
+        for (BlockVector2 chunk : chunks) {
+            minX = Math.min(minX, chunk.getX());
+            minZ = Math.min(minZ, chunk.getZ());
+        }
+        // Group by tile, keyed by the tile's Morton code relative to the minimum corner
+        final Long2ObjectOpenHashMap<LongArrayList> byTile = new Long2ObjectOpenHashMap<>();
+        for (BlockVector2 chunk : chunks) {
+            final int relX = chunk.getX() - minX;
+            final int relZ = chunk.getZ() - minZ;
+            byTile.computeIfAbsent(morton(relX >> tileShift, relZ >> tileShift), k -> new LongArrayList())
+                    .add(morton(relX, relZ));
+        }
+        final long[] tileKeys = byTile.keySet().toLongArray();
+        Arrays.sort(tileKeys);
+        final List<long[]> tiles = new ArrayList<>(tileKeys.length);
+        for (long tileKey : tileKeys) {
+            final long[] codes = byTile.get(tileKey).toLongArray();
+            Arrays.sort(codes);
+            final long[] tile = new long[codes.length];
+            for (int i = 0; i < codes.length; i++) {
+                tile[i] = MathMan.pairInt(unmorton(codes[i]) + minX, unmorton(codes[i] >>> 1) + minZ);
+            }
+            tiles.add(tile);
+        }
+        return tiles;
+    }
+
+    /**
+     * Get the next tile for a worker, stealing from other workers once its own tiles are done.
+     *
+     * @param worker worker index
+     * @return chunk positions, packed with {@link MathMan#pairInt(int, int)}, or {@code null} if all tiles are taken
+     */
+    @Nullable
+    public long[] next(int worker) {
+        long[] tile = queues[worker].pollFirst();
+        if (tile != null) {
+            return tile;
+        }
+        // Steal from the far end of another worker's run, away from where its owner is working
+        for (int i = 1; i < queues.length; i++) {
+            tile = queues[(worker + i) % queues.length].pollLast();
+            if (tile != null) {
+                tilesStolen.incrementAndGet(worker);
+                return tile;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Record that a worker finished a tile.
+     *
+     * @param worker  worker index
+     * @param chunks  number of chunks in the tile
+     * @param nanos   time spent on the tile
+     */
+    public void complete(int worker, int chunks, long nanos) {
+        chunksProcessed.addAndGet(worker, chunks);
+        busyNanos.addAndGet(worker, nanos);
+    }
+
+    /**
+     * Get the number of workers.
+     */
+    public int getWorkers() {
+        return queues.length;
+    }
+
+    /**
+     * Get the number of chunks a worker processed.
+     */
+    public long getChunksProcessed(int worker) {
+        return chunksProcessed.get(worker);
+    }
+
+    /**
+     * Get the number of tiles a worker stole from other workers.
+     */
+    public long getTilesStolen(int worker) {
+        return tilesStolen.get(worker);
+    }
+
+    /**
+     * Get the time a worker spent processing tiles, in nanoseconds.
+     */
+    public long getBusyNanos(int worker) {
+        return busyNanos.get(worker);
+    }
+
+    /**
+     * Get the throughput of a worker while busy, in chunks per second.
+     */
+    public double getThroughput(int worker) {
+        final long nanos = busyNanos.get(worker);
+        return nanos == 0 ? 0 : chunksProcessed.get(worker) * 1e9 / nanos;
+    }
+
+    /**
+     * Get the tile edge length in chunks.
+     */
+    public int getTileSize() {
+        return 1 << tileShift;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("ChunkTileScheduler{tileSize=").append(getTileSize());
+        for (int worker = 0; worker < queues.length; worker++) {
+            builder.append(", ").append(worker).append('=')
+                    .append(getChunksProcessed(worker)).append(" chunks/")
+                    .append(getTilesStolen(worker)).append(" stolen/")
+                    .append(Math.round(getThroughput(worker))).append(" cps");
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * Interleave the bits of two non-negative ints, x in the even bits.
+     */
+    private static long morton(int x, int z) {
+        return spread(x) | spread(z) << 1;
+    }
+
+    private static long spread(int value) {
+        long v = value & 0xFFFFFFFFL;
+        v = (v | v << 16) & 0x0000FFFF0000FFFFL;
+        v = (v | v << 8) & 0x00FF00FF00FF00FFL;
+        v = (v | v << 4) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | v << 2) & 0x3333333333333333L;
+        v = (v | v << 1) & 0x5555555555555555L;
+        return v;
+    }
+
+    /**
+     * Extract the even bits of a Morton code.
+     */
+    private static int unmorton(long code) {
+        long v = code & 0x5555555555555555L;
+        v = (v | v >>> 1) & 0x3333333333333333L;
+        v = (v | v >>> 2) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | v >>> 4) & 0x00FF00FF00FF00FFL;
+        v = (v | v >>> 8) & 0x0000FFFF0000FFFFL;
+        v = (v | v >>> 16) & 0x00000000FFFFFFFFL;
+        return (int) v;
+    }
+
+}
@@ -0,0 +1,125 @@
+package com.fastasyncworldedit.core.queue.implementation;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies of the stages chunks go through when an edit is committed to the world. Recorded from any thread.
+ */
+public final class CommitMetrics {
+
+    /**
+     * A stage of committing a chunk.
+     */
+    public enum Stage {
+        /**
+         * Running the queue's processors over the chunk, on a worker thread.
+         */
+        PROCESS,
+        /**
+         * Building the new sections, biomes and light of the chunk, on a worker thread.
+         */
+        PREPARE,
+        /**
+         * Waiting for the main thread to pick up the prepared chunk.
+         */
+        WAIT,
+        /**
+         * Swapping the prepared sections in and placing tiles and entities, on the main thread.
+         */
+        APPLY,
+        /**
+         * Marking the chunk changed, sending it to players and running post-processors, on a worker thread.
+         */
+        FINALIZE
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final LongAdder[] counts = new LongAdder[STAGES.length];
+    private final LongAdder[] totals = new LongAdder[STAGES.length];
+    private final AtomicLong[] maxima = new AtomicLong[STAGES.length];
+
+    public CommitMetrics() {
+        for (int i = 0; i < STAGES.length; i++) {
+            counts[i] = new LongAdder();
+            totals[i] = new LongAdder();
+            maxima[i] = new AtomicLong();
+        }
+    }
+
+    /**
+     * Record the time a chunk spent in a stage.
+     *
+     * @param stage stage
+     * @param nanos time spent, in nanoseconds
+     */
+    public void record(Stage stage, long nanos) {
+        int i = stage.ordinal();
+        counts[i].increment();
+        totals[i].add(nanos);
+        maxima[i].accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Get the number of chunks recorded for a stage.
+     */
+    public long getCount(Stage stage) {
+        return counts[stage.ordinal()].sum();
+    }
+
+    /**
+     * Get the total time recorded for a stage, in nanoseconds.
+     */
+    public long getTotalNanos(Stage stage) {
+        return totals[stage.ordinal()].sum();
+    }
+
+    /**
+     * Get the mean time recorded for a stage, in nanoseconds.
+     */
+    public long getMeanNanos(Stage stage) {
+        long count = getCount(stage);
+        return count == 0 ? 0 : getTotalNanos(stage) / count;
+    }
+
+    /**
+     * Get the longest time recorded for a stage, in nanoseconds.
+     */
+    public long getMaxNanos(Stage stage) {
+        return maxima[stage.ordinal()].get();
+    }
+
+    /**
+     * Clear all recorded times.
+     */
+    public void reset() {
+        for (int i = 0; i < STAGES.length; i++) {
+            counts[i].reset();
+            totals[i].reset();
+            maxima[i].set(0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Stage stage : STAGES) {
+            if (!builder.isEmpty()) {
+                builder.append('\n');
+            }
+            builder.append(String.format(
+                    Locale.ROOT,
+                    "%s: %d chunks, mean %.3fms, max %.3fms",
+                    stage.name().toLowerCase(Locale.ROOT),
+                    getCount(stage),
+                    getMeanNanos(stage) / (double) TimeUnit.MILLISECONDS.toNanos(1),
+                    getMaxNanos(stage) / (double) TimeUnit.MILLISECONDS.toNanos(1)
+            ));
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.fastasyncworldedit.core.queue.implementation;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Main thread commit statistics of everything edited by one player (or the console): how many chunks are waiting to be
+ * committed and how long they have been waiting. See {@link QueueHandler#getCommitOwners()}.
+ */
+public final class CommitOwner {
+
+    private final UUID uuid;
+    private final String name;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder committed = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private volatile long lastActive = System.nanoTime();
+
+    CommitOwner(UUID uuid, String name) {
+        this.uuid = uuid;
+        this.name = name;
+    }
+
+    void submitted() {
+        pending.incrementAndGet();
+        lastActive = System.nanoTime();
+    }
+
+    void started(long waited) {
+        pending.decrementAndGet();
+        committed.increment();
+        waitNanos.add(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+        lastActive = System.nanoTime();
+    }
+
+    long getLastActive() {
+        return lastActive;
+    }
+
+    public UUID getUniqueId() {
+        return uuid;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the number of chunks waiting to be committed on the main thread.
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Get the number of chunks committed on the main thread.
+     */
+    public long getCommitted() {
+        return committed.sum();
+    }
+
+    /**
+     * Get the mean time chunks waited for the main thread, in nanoseconds.
+     */
+    public long getMeanWaitNanos() {
+        long count = getCommitted();
+        return count == 0 ? 0 : waitNanos.sum() / count;
+    }
+
+    /**
+     * Get the longest time a chunk waited for the main thread, in nanoseconds.
+     */
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    /**
+     * Clear the recorded commits and wait times. Chunks still pending are kept.
+     */
+    public void reset() {
+        committed.reset();
+        waitNanos.reset();
+        maxWaitNanos.set(0);
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.fastasyncworldedit.core.queue.implementation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The edit chunk commits belong to. Commits are ranked by the number of chunks their edit committed before them, so a
+ * small interactive edit is committed ahead of a bulk edit that has already been running for a while.
+ */
+public final class CommitSource {
+
+    private final CommitOwner owner;
+    private final AtomicInteger commits = new AtomicInteger();
+
+    /**
+     * Create a new source for an edit.
+     *
+     * @param owner the player (or console) the edit is made by
+     */
+    public CommitSource(CommitOwner owner) {
+        this.owner = owner;
+    }
+
+    public CommitOwner getOwner() {
+        return owner;
+    }
+
+    /**
+     * Get the number of chunks of the edit submitted to be committed so far.
+     */
+    public int getCommits() {
+        return commits.get();
+    }
+
+    int nextRank() {
+        return commits.getAndIncrement();
+    }
+
+}
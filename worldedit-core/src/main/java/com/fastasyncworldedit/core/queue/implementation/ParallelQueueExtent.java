@@ -9,6 +9,7 @@
 import com.fastasyncworldedit.core.extent.filter.CountFilter;
 import com.fastasyncworldedit.core.extent.filter.DistrFilter;
 import com.fastasyncworldedit.core.extent.filter.LinkedFilter;
+import com.fastasyncworldedit.core.extent.filter.PatternFilter;
 import com.fastasyncworldedit.core.extent.filter.block.ChunkFilterBlock;
 import com.fastasyncworldedit.core.extent.processor.BatchProcessorHolder;
 import com.fastasyncworldedit.core.extent.processor.MultiBatchProcessor;
@@ -17,6 +18,8 @@
 import com.fastasyncworldedit.core.queue.Filter;
 import com.fastasyncworldedit.core.queue.IQueueChunk;
 import com.fastasyncworldedit.core.queue.IQueueExtent;
+import com.fastasyncworldedit.core.regions.VectorSetRegion;
+import com.fastasyncworldedit.core.util.MathMan;
 import com.sk89q.worldedit.MaxChangedBlocksException;
 import com.sk89q.worldedit.extent.clipboard.Clipboard;
 import com.sk89q.worldedit.function.mask.BlockMask;
@@ -36,6 +39,7 @@
 import com.sk89q.worldedit.world.block.BlockType;
 import org.apache.logging.log4j.Logger;
 
+import javax.annotation.Nullable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -57,6 +61,8 @@ public class ParallelQueueExtent extends PassthroughExtent {
     private int changes;
     private int lastException = Integer.MIN_VALUE;
     private int exceptionCount = 0;
+    @Nullable
+    private CommitSource commitSource;
 
     public ParallelQueueExtent(QueueHandler handler, World world, boolean fastmode) {
         super(handler.getQueue(world, new BatchProcessorHolder(), new BatchProcessorHolder()));
@@ -89,11 +95,35 @@ public boolean cancel() {
         return false;
     }
 
+    /**
+     * Set the edit chunks are committed for, shared by the queue of each thread.
+     *
+     * @param commitSource the edit, may be null
+     */
+    public void setCommitSource(@Nullable CommitSource commitSource) {
+        this.commitSource = commitSource;
+        if (getExtent() instanceof SingleThreadQueueExtent queue) {
+            queue.setCommitSource(commitSource);
+        }
+    }
+
     @SuppressWarnings("rawtypes")
     private IQueueExtent<IQueueChunk> getNewQueue() {
         return handler.getQueue(world, this.processor, this.postProcessor);
     }
 
+    /**
+     * Create a queue that only reads the world, for a single worker thread. It shares the world's chunk cache, but not the
+     * changes queued in this extent, and must not be used to set blocks. Create it on the thread using it.
+     *
+     * @return a new queue
+     */
+    public IQueueExtent<IQueueChunk> createReadQueue() {
+        IQueueExtent<IQueueChunk> queue = handler.create();
+        queue.init(world, handler.getOrCreateWorldCache(world), null);
+        return queue;
+    }
+
     @Override
     @SuppressWarnings("rawtypes")
     public <T extends Filter> T apply(Region region, T filter, boolean full) {
@@ -107,30 +137,34 @@ public <T extends Filter> T apply(Region region, T filter, boolean full) {
             BlockVector2 pos = chunksIter.next();
             getExtent().apply(null, filter, region, pos.getX(), pos.getZ(), full);
         } else {
-            final ForkJoinTask[] tasks = IntStream.range(0, size).mapToObj(i -> handler.submit(() -> {
+            // Workers take neighbouring chunks in tiles, stealing tiles from each other once their own are done
+            final ChunkTileScheduler scheduler = new ChunkTileScheduler(chunks, size);
+            final ForkJoinTask[] tasks = IntStream.range(0, size).mapToObj(worker -> handler.submit(() -> {
                 try {
                     final Filter newFilter = filter.fork();
                     // Create a chunk that we will reuse/reset for each operation
                     final SingleThreadQueueExtent queue = (SingleThreadQueueExtent) getNewQueue();
                     queue.setFastMode(fastmode);
                     queue.setFaweExceptionArray(faweExceptionReasonsUsed);
+                    queue.setCommitSource(commitSource);
                     synchronized (queue) {
                         try {
                             ChunkFilterBlock block = null;
 
-                            while (true) {
-                                // Get the next chunk posWeakChunk
-                                final int chunkX;
-                                final int chunkZ;
-                                synchronized (chunksIter) {
-                                    if (!chunksIter.hasNext()) {
-                                        break;
-                                    }
-                                    final BlockVector2 pos = chunksIter.next();
-                                    chunkX = pos.getX();
-                                    chunkZ = pos.getZ();
+                            long[] tile;
+                            while ((tile = scheduler.next(worker)) != null) {
+                                final long start = System.nanoTime();
+                                for (long chunk : tile) {
+                                    block = queue.apply(
+                                            block,
+                                            newFilter,
+                                            region,
+                                            MathMan.unpairIntX(chunk),
+                                            MathMan.unpairIntY(chunk),
+                                            full
+                                    );
                                 }
-                                block = queue.apply(block, newFilter, region, chunkX, chunkZ, full);
+                                scheduler.complete(worker, tile.length, System.nanoTime() - start);
                             }
                             queue.flush();
                         } catch (Throwable t) {
@@ -163,6 +197,7 @@ public <T extends Filter> T apply(Region region, T filter, boolean full) {
                 }
             }
             filter.join();
+            LOGGER.debug("Applied {} over {} chunks: {}", filter.getClass().getSimpleName(), chunks.size(), scheduler);
         }
         return filter;
     }
@@ -195,13 +230,8 @@ public int setBlocks(Set<BlockVector3> vset, Pattern pattern) {
             this.changes = setBlocks((Region) vset, pattern);
             return this.changes;
         }
-        // TODO optimize parallel
-        for (BlockVector3 blockVector3 : vset) {
-            if (pattern.apply(this, blockVector3, blockVector3)) {
-                this.changes++;
-            }
-        }
-        return this.changes;
+        // Group the positions by chunk, so they can be filtered in parallel like any other region
+        return this.changes = apply(new VectorSetRegion(vset), new PatternFilter(pattern), true).getChanges();
     }
 
     @Override
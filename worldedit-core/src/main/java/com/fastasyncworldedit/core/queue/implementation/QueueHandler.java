@@ -19,12 +19,19 @@
 import com.google.common.util.concurrent.Futures;
 import com.sk89q.worldedit.world.World;
 
+import javax.annotation.Nullable;
 import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Queue;
+import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -32,7 +39,10 @@
 import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
 /**
@@ -42,6 +52,12 @@
 public abstract class QueueHandler implements Trimable, Runnable {
 
     private static final int PROCESSORS = Runtime.getRuntime().availableProcessors();
+    private static final int OWNER_PRUNE_TICKS = 1200;
+    private static final long OWNER_EXPIRY = TimeUnit.MINUTES.toNanos(10);
+    /**
+     * Most commits submitted later that may be committed ahead of a commit, so chunks of bulk edits are never starved.
+     */
+    private static final int MAX_COMMIT_RANK = 1024;
 
     /**
      * Primary queue should be used for tasks that are unlikely to wait on other tasks, IO, etc. (i.e. spend most of their
@@ -78,6 +94,23 @@ public abstract class QueueHandler implements Trimable, Runnable {
      * after completing all tasks in the syncTasks queue
      */
     private final ConcurrentLinkedQueue<FutureTask> syncWhenFree = new ConcurrentLinkedQueue<>();
+    /**
+     * Queue for prepared chunks to be committed on the main thread. Run first each tick, chunks of small edits before those
+     * of edits that have already committed many. Only holds the oldest commit of each chunk, see {@link #chunkCommits}
+     */
+    private final PriorityBlockingQueue<CommitTask<?>> commitTasks = new PriorityBlockingQueue<>(
+            64,
+            Comparator.<CommitTask<?>>comparingLong(task -> task.order)
+    );
+    /**
+     * Commits waiting for each chunk in the order they were submitted, the first of which is in {@link #commitTasks}. Later
+     * commits of a chunk are only queued once the one before has run
+     */
+    private final Map<Object, ArrayDeque<CommitTask<?>>> chunkCommits = new HashMap<>();
+    private final AtomicLong commitSequence = new AtomicLong();
+    private final CommitMetrics commitMetrics = new CommitMetrics();
+    private final Map<UUID, CommitOwner> commitOwners = new ConcurrentHashMap<>();
+    private final AdaptiveTickBudget tickBudget = new AdaptiveTickBudget();
 
     private final Map<World, WeakReference<IChunkCache<IChunkGet>>> chunkGetCache = new HashMap<>();
     private final CleanableThreadLocal<IQueueExtent<IQueueChunk>> queuePool = new CleanableThreadLocal<>(QueueHandler.this::create);
@@ -97,6 +130,13 @@ public void run() {
         if (!Fawe.isMainThread()) {
             throw new IllegalStateException("Not main thread");
         }
+        if (Settings.settings().QUEUE.ADAPTIVE_TICK_BUDGET) {
+            runAdaptive();
+            return;
+        }
+        if (!commitTasks.isEmpty()) {
+            operateCommits(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Settings.settings().QUEUE.COMMIT_SLICE_MS));
+        }
         if (!syncTasks.isEmpty()) {
             long currentAllocate = getAllocate();
 
@@ -114,6 +154,29 @@ public void run() {
         }
     }
 
+    /**
+     * Run the main thread work of a tick within the budget sized by {@link AdaptiveTickBudget}, shared by commits, sync tasks
+     * and, if time is left, tasks submitted to run when free.
+     */
+    private void runAdaptive() {
+        final long start = System.nanoTime();
+        final long deadline = start + tickBudget.startTick(start);
+        if (!commitTasks.isEmpty()) {
+            operateCommits(deadline);
+        }
+        final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (!syncTasks.isEmpty()) {
+            operate(syncTasks, System.currentTimeMillis(), remaining);
+        } else if (!syncWhenFree.isEmpty() && remaining > 0) {
+            operate(syncWhenFree, System.currentTimeMillis(), remaining);
+        }
+        final long end = System.nanoTime();
+        tickBudget.endTick(end);
+        if (Fawe.instance().getTimer().getTick() % OWNER_PRUNE_TICKS == 0) {
+            commitOwners.values().removeIf(owner -> owner.getPending() == 0 && end - owner.getLastActive() > OWNER_EXPIRY);
+        }
+    }
+
     /**
      * Get if the {@code blockingExecutor} is saturated with tasks or not. Under-utilisation implies the queue has space for
      * more submissions.
@@ -165,6 +228,17 @@ private void operate(Queue<FutureTask> queue, long start, long currentAllocate)
         } while (System.currentTimeMillis() - start < currentAllocate);
     }
 
+    private void operateCommits(long deadline) {
+        // Always commit at least one chunk so edits progress even when the slice is exhausted by a single chunk
+        CommitTask<?> task;
+        do {
+            task = commitTasks.poll();
+            if (task != null) {
+                task.run();
+            }
+        } while (task != null && System.nanoTime() < deadline);
+    }
+
     /**
      * @deprecated For removal without replacement.
      */
@@ -357,12 +431,201 @@ private <T> Future<T> sync(Supplier<T> call, Queue<FutureTask> queue) {
         return result;
     }
 
+    /**
+     * Submit the main thread part of committing a prepared chunk to the world. Commits are run before any other sync task
+     * each tick, within the tick budget (see {@link Settings.QUEUE#ADAPTIVE_TICK_BUDGET}). Chunks not committed in a tick's
+     * slice wait for the next tick. Runs immediately if called from the main thread.
+     *
+     * @param call Task to run
+     * @param <T>  Value type
+     * @return Future representing task
+     */
+    public <T> Future<T> syncCommit(Callable<T> call) throws Exception {
+        return syncCommit(null, null, call);
+    }
+
+    /**
+     * Submit the main thread part of committing a prepared chunk of an edit to the world. Commits are run before any other
+     * sync task each tick, within the tick budget (see {@link Settings.QUEUE#ADAPTIVE_TICK_BUDGET}). If the adaptive budget
+     * is enabled, the first chunks of an edit are committed ahead of chunks of edits that have already committed many, so
+     * small edits are not held up by bulk edits. Otherwise, and for commits without a source, commits run in the order they
+     * were submitted. Commits of the same chunk always run in the order they were submitted. Chunks not committed in a
+     * tick's slice wait for the next tick. Runs immediately if called from the main thread, after any commits of the same
+     * chunk still waiting.
+     *
+     * @param source edit the chunk belongs to, may be null
+     * @param chunk  the chunk being committed, commits of equal chunks are kept in order. May be null
+     * @param call   Task to run
+     * @param <T>    Value type
+     * @return Future representing task
+     */
+    public <T> Future<T> syncCommit(@Nullable CommitSource source, @Nullable Object chunk, Callable<T> call) throws Exception {
+        if (Fawe.isMainThread()) {
+            if (chunk != null) {
+                final ArrayDeque<CommitTask<?>> waiting;
+                synchronized (chunkCommits) {
+                    waiting = chunkCommits.remove(chunk);
+                }
+                if (waiting != null) {
+                    commitTasks.remove(waiting.peekFirst());
+                    for (CommitTask<?> task : waiting) {
+                        task.run();
+                    }
+                }
+            }
+            final long start = System.nanoTime();
+            try {
+                return Futures.immediateFuture(call.call());
+            } finally {
+                commitMetrics.record(CommitMetrics.Stage.APPLY, System.nanoTime() - start);
+            }
+        }
+        final CommitTask<T> result = new CommitTask<>(call, source, chunk);
+        if (chunk != null) {
+            synchronized (chunkCommits) {
+                final ArrayDeque<CommitTask<?>> waiting = chunkCommits.computeIfAbsent(chunk, k -> new ArrayDeque<>());
+                waiting.add(result);
+                if (waiting.size() > 1) {
+                    // Queued once the commits before it have run
+                    return result;
+                }
+            }
+        }
+        commitTasks.add(result);
+        return result;
+    }
+
+    /**
+     * Get the commit statistics of a player, creating them if needed. Used to create a {@link CommitSource} for each edit.
+     *
+     * @param uuid player UUID, {@link com.sk89q.worldedit.session.SessionOwner#getUniqueId()}
+     * @param name player name
+     * @return the commit statistics of the player
+     */
+    public CommitOwner getCommitOwner(UUID uuid, String name) {
+        return commitOwners.computeIfAbsent(uuid, k -> new CommitOwner(uuid, name));
+    }
+
+    /**
+     * Get the commit statistics of the players with chunks recently committed or waiting to be committed.
+     *
+     * @return the commit statistics of each player
+     */
+    public Collection<CommitOwner> getCommitOwners() {
+        return Collections.unmodifiableCollection(commitOwners.values());
+    }
+
+    /**
+     * Get the main thread time budget per tick, see {@link Settings.QUEUE#ADAPTIVE_TICK_BUDGET}.
+     *
+     * @return the tick budget
+     */
+    public AdaptiveTickBudget getTickBudget() {
+        return tickBudget;
+    }
+
+    /**
+     * Get the latencies of the stages chunks go through when being committed to the world.
+     *
+     * @return the commit metrics
+     */
+    public CommitMetrics getCommitMetrics() {
+        return commitMetrics;
+    }
+
+    /**
+     * Get the number of prepared chunks waiting to be committed on the main thread.
+     *
+     * @return the number of waiting commits
+     */
+    public int getPendingCommits() {
+        int pending = commitTasks.size();
+        synchronized (chunkCommits) {
+            for (ArrayDeque<CommitTask<?>> waiting : chunkCommits.values()) {
+                // The first is in the commit queue
+                pending += waiting.size() - 1;
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Queue the next commit of the chunk of a commit that has run.
+     */
+    private void nextChunkCommit(CommitTask<?> task) {
+        synchronized (chunkCommits) {
+            final ArrayDeque<CommitTask<?>> waiting = chunkCommits.get(task.chunk);
+            if (waiting == null || waiting.peekFirst() != task) {
+                // Run from the main thread along with a later commit of the chunk
+                return;
+            }
+            waiting.pollFirst();
+            final CommitTask<?> next = waiting.peekFirst();
+            if (next == null) {
+                chunkCommits.remove(task.chunk);
+            } else {
+                commitTasks.add(next);
+            }
+        }
+    }
+
     private void notifySync(Object object) {
         synchronized (object) {
             object.notifyAll();
         }
     }
 
+    /**
+     * Main thread part of a chunk commit, recording how long it waited to be run and how long it ran for.
+     */
+    private final class CommitTask<T> extends FutureTask<T> {
+
+        private final long submitted = System.nanoTime();
+        /**
+         * Position in the commit queue, the submission order pushed back by the rank of the commit within its edit
+         */
+        private final long order;
+        @Nullable
+        private final CommitOwner owner;
+        @Nullable
+        private final Object chunk;
+
+        private CommitTask(Callable<T> callable, @Nullable CommitSource source, @Nullable Object chunk) {
+            super(callable);
+            this.chunk = chunk;
+            final long sequence = commitSequence.getAndIncrement();
+            if (source != null) {
+                final int rank = source.nextRank();
+                this.owner = source.getOwner();
+                this.owner.submitted();
+                this.order = Settings.settings().QUEUE.ADAPTIVE_TICK_BUDGET
+                        ? sequence + Math.min(rank, MAX_COMMIT_RANK)
+                        : sequence;
+            } else {
+                this.order = sequence;
+                this.owner = null;
+            }
+        }
+
+        @Override
+        public void run() {
+            final long start = System.nanoTime();
+            commitMetrics.record(CommitMetrics.Stage.WAIT, start - submitted);
+            if (owner != null) {
+                owner.started(start - submitted);
+            }
+            try {
+                super.run();
+            } finally {
+                commitMetrics.record(CommitMetrics.Stage.APPLY, System.nanoTime() - start);
+                if (chunk != null) {
+                    nextChunkCommit(this);
+                }
+            }
+        }
+
+    }
+
     /**
      * Internal use only. Specifically for submitting {@link IQueueChunk} for "processing" an edit. Submits to the blocking
      * executor, the main "work-horse" queue for FAWE. Handles chunk submission (and chunk submission alone). Blocking in order
@@ -32,6 +32,7 @@
 import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
 import org.apache.logging.log4j.Logger;
 
+import javax.annotation.Nullable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -71,6 +72,8 @@ public class SingleThreadQueueExtent extends ExtentBatchProcessorHolder implemen
     private boolean[] faweExceptionReasonsUsed = new boolean[FaweException.Type.values().length];
     private int lastException = Integer.MIN_VALUE;
     private int exceptionCount = 0;
+    @Nullable
+    private CommitSource commitSource;
 
     public SingleThreadQueueExtent() {
     }
@@ -135,6 +138,22 @@ public void setFaweExceptionArray(final boolean[] faweExceptionReasonsUsed) {
         this.faweExceptionReasonsUsed = faweExceptionReasonsUsed;
     }
 
+    /**
+     * Set the edit chunks of this queue are committed for. Like {@link #setFaweExceptionArray(boolean[])}, the same source
+     * should be shared by every queue of an edit.
+     *
+     * @param commitSource the edit, may be null
+     */
+    public void setCommitSource(@Nullable CommitSource commitSource) {
+        this.commitSource = commitSource;
+    }
+
+    @Nullable
+    @Override
+    public CommitSource getCommitSource() {
+        return commitSource;
+    }
+
     /**
      * Resets the queue.
      */
@@ -158,6 +177,7 @@ protected synchronized void reset() {
         this.setProcessor(EmptyBatchProcessor.getInstance());
         this.setPostProcessor(EmptyBatchProcessor.getInstance());
         this.world = null;
+        this.commitSource = null;
     }
 
     /**
@@ -217,6 +237,37 @@ public <V extends Future<V>> V submit(IQueueChunk chunk) {
         return future;
     }
 
+    /**
+     * Submit a chunk that will not be edited again, then wait until at most the given number of submitted chunks are
+     * still being processed. Lets operations that complete one chunk at a time keep the number of chunks in memory bounded.
+     *
+     * @param chunkX         chunk X coordinate
+     * @param chunkZ         chunk Z coordinate
+     * @param maxSubmissions maximum number of chunks to leave in flight
+     */
+    public void submitAndWait(int chunkX, int chunkZ, int maxSubmissions) {
+        final long pair = MathMan.pairInt(chunkX, chunkZ);
+        final IQueueChunk chunk;
+        getChunkLock.lock();
+        try {
+            chunk = chunks.remove(pair);
+            if (lastPair == pair) {
+                lastPair = Long.MAX_VALUE;
+                lastChunk = null;
+            }
+        } finally {
+            getChunkLock.unlock();
+        }
+        if (chunk == null) {
+            return;
+        }
+        final Future future = submitUnchecked(chunk);
+        if (future != null && !future.isDone()) {
+            pollSubmissions(maxSubmissions, true);
+            submissions.add(future);
+        }
+    }
+
     /**
      * Submit without first checking that it has been removed from the chunk map
      */
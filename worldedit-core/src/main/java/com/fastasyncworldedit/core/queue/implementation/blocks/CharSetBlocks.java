@@ -6,6 +6,7 @@
 import com.fastasyncworldedit.core.math.BlockVector3ChunkMap;
 import com.fastasyncworldedit.core.queue.IChunkSet;
 import com.fastasyncworldedit.core.queue.Pool;
+import com.fastasyncworldedit.core.queue.SectionSummary;
 import com.sk89q.jnbt.CompoundTag;
 import com.sk89q.worldedit.WorldEditException;
 import com.sk89q.worldedit.math.BlockVector3;
@@ -42,6 +43,9 @@ public static CharSetBlocks newInstance() {
     public EnumMap<HeightMapType, int[]> heightMaps;
     private boolean fastMode = false;
     private int bitMask = -1;
+    // Cached section summaries, cleared when a section is written to
+    private SectionSummary[] summaries;
+    private boolean[] summarised;
 
     private CharSetBlocks() {
         // Expand as we go
@@ -112,6 +116,7 @@ public boolean setBiome(int x, int y, int z, BiomeType biome) {
     @Override
     public <T extends BlockStateHolder<T>> boolean setBlock(int x, int y, int z, T holder) {
         updateSectionIndexRange(y >> 4);
+        invalidateSummary(y >> 4);
         set(x, y, z, holder.getOrdinalChar());
         holder.applyTileEntity(this, x, y, z);
         return true;
@@ -120,6 +125,7 @@ public <T extends BlockStateHolder<T>> boolean setBlock(int x, int y, int z, T h
     @Override
     public void setBlocks(int layer, char[] data) {
         updateSectionIndexRange(layer);
+        invalidateSummary(layer);
         layer -= minSectionPosition;
         this.sections[layer] = data == null ? EMPTY : FULL;
         this.blocks[layer] = data;
@@ -322,10 +328,47 @@ public IChunkSet reset() {
         light = null;
         skyLight = null;
         heightMaps = null;
+        summaries = null;
+        summarised = null;
         super.reset();
         return null;
     }
 
+    @Override
+    public SectionSummary getSectionSummary(int layer) {
+        if (layer < minSectionPosition || layer > maxSectionPosition) {
+            return null;
+        }
+        final int index = layer - minSectionPosition;
+        SectionSummary[] summaries = this.summaries;
+        boolean[] summarised = this.summarised;
+        if (summaries == null || summarised == null) {
+            this.summaries = summaries = new SectionSummary[sectionCount];
+            this.summarised = summarised = new boolean[sectionCount];
+        }
+        if (summarised[index]) {
+            return summaries[index];
+        }
+        char[] blocks = loadIfPresent(layer);
+        SectionSummary summary = blocks == null ? null : SectionSummary.of(blocks);
+        summaries[index] = summary;
+        summarised[index] = true;
+        return summary;
+    }
+
+    @Override
+    public void reset(int layer) {
+        invalidateSummary(layer);
+        super.reset(layer);
+    }
+
+    private void invalidateSummary(int layer) {
+        final boolean[] summarised = this.summarised;
+        if (summarised != null) {
+            summarised[layer - minSectionPosition] = false;
+        }
+    }
+
     @Override
     public boolean hasBiomes(int layer) {
         layer -= minSectionPosition;
@@ -394,6 +437,8 @@ static char[][] createLightCopy(char[][] lightArr, int sectionCount) {
     @Override
     public char[] load(final int layer) {
         updateSectionIndexRange(layer);
+        // The returned array may be written to
+        invalidateSummary(layer);
         return super.load(layer);
     }
 
@@ -437,6 +482,8 @@ private void resizeSectionsArrays(int diff, boolean appendNew) {
         blocks = tmpBlocks;
         sections = tmpSections;
         sectionLocks = tmpSectionLocks;
+        summaries = null;
+        summarised = null;
         if (biomes != null) {
             BiomeType[][] tmpBiomes = new BiomeType[sectionCount][64];
             System.arraycopy(biomes, 0, tmpBiomes, destPos, biomes.length);
@@ -1,5 +1,6 @@
 package com.fastasyncworldedit.core.queue.implementation.chunk;
 
+import com.fastasyncworldedit.core.Fawe;
 import com.fastasyncworldedit.core.FaweCache;
 import com.fastasyncworldedit.core.configuration.Settings;
 import com.fastasyncworldedit.core.extent.filter.block.ChunkFilterBlock;
@@ -12,6 +13,7 @@
 import com.fastasyncworldedit.core.queue.IQueueChunk;
 import com.fastasyncworldedit.core.queue.IQueueExtent;
 import com.fastasyncworldedit.core.queue.Pool;
+import com.fastasyncworldedit.core.queue.implementation.CommitMetrics;
 import com.sk89q.jnbt.CompoundTag;
 import com.sk89q.worldedit.math.BlockVector3;
 import com.sk89q.worldedit.regions.Region;
@@ -1072,7 +1074,13 @@ public synchronized T call(IChunkSet set, Runnable finalize) {
             IChunkGet get = getOrCreateGet();
             boolean postProcess = !(getExtent().getPostProcessor() instanceof EmptyBatchProcessor);
             get.setCreateCopy(postProcess);
+            get.setCommitSource(getExtent().getCommitSource());
+            final long start = System.nanoTime();
             final IChunkSet iChunkSet = getExtent().processSet(this, get, set);
+            Fawe.instance().getQueueHandler().getCommitMetrics().record(
+                    CommitMetrics.Stage.PROCESS,
+                    System.nanoTime() - start
+            );
             Runnable finalizer;
             if (postProcess) {
                 finalizer = () -> {
@@ -0,0 +1,192 @@
+package com.fastasyncworldedit.core.regions;
+
+import com.fastasyncworldedit.core.configuration.Caption;
+import com.fastasyncworldedit.core.extent.filter.block.ChunkFilterBlock;
+import com.fastasyncworldedit.core.math.BlockVectorSet;
+import com.fastasyncworldedit.core.queue.Filter;
+import com.fastasyncworldedit.core.queue.IChunk;
+import com.fastasyncworldedit.core.queue.IChunkGet;
+import com.fastasyncworldedit.core.queue.IChunkSet;
+import com.fastasyncworldedit.core.util.MathMan;
+import com.sk89q.worldedit.math.BlockVector2;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.AbstractRegion;
+import com.sk89q.worldedit.regions.RegionOperationException;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Read-only region over an arbitrary set of positions, grouped by chunk so it can be applied through the chunk based
+ * filter path (e.g. {@link com.fastasyncworldedit.core.queue.implementation.ParallelQueueExtent#apply}). Only the given
+ * positions are filtered, each exactly once.
+ */
+public class VectorSetRegion extends AbstractRegion {
+
+    private final Set<BlockVector3> positions;
+    /**
+     * Positions per chunk, packed as {@code y << 8 | z << 4 | x} with chunk local x and z, sorted so that each section
+     * is visited once.
+     */
+    private final Long2ObjectOpenHashMap<int[]> byChunk;
+    private final int size;
+    private int minX;
+    private int minY;
+    private int minZ;
+    private int maxX;
+    private int maxY;
+    private int maxZ;
+
+    {
+        minX = minY = minZ = Integer.MAX_VALUE;
+        maxX = maxY = maxZ = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Create a new region from a set of positions. The set must not be modified while the region is in use.
+     *
+     * @param positions the positions
+     */
+    public VectorSetRegion(Set<BlockVector3> positions) {
+        super(null);
+        this.positions = positions;
+        final Long2ObjectOpenHashMap<IntArrayList> lists = new Long2ObjectOpenHashMap<>();
+        if (positions instanceof BlockVectorSet vectorSet) {
+            // Visit the backing bit sets directly rather than creating a vector per position
+            vectorSet.forEach((x, y, z, index) -> add(lists, x, y, z));
+        } else {
+            for (BlockVector3 position : positions) {
+                add(lists, position.getX(), position.getY(), position.getZ());
+            }
+        }
+        this.byChunk = new Long2ObjectOpenHashMap<>(lists.size());
+        int count = 0;
+        for (Long2ObjectMap.Entry<IntArrayList> entry : lists.long2ObjectEntrySet()) {
+            final int[] packed = entry.getValue().toIntArray();
+            Arrays.sort(packed);
+            byChunk.put(entry.getLongKey(), packed);
+            count += packed.length;
+        }
+        this.size = count;
+    }
+
+    private void add(Long2ObjectOpenHashMap<IntArrayList> lists, int x, int y, int z) {
+        lists.computeIfAbsent(MathMan.pairInt(x >> 4, z >> 4), k -> new IntArrayList()).add(y << 8 | (z & 15) << 4 | x & 15);
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        minZ = Math.min(minZ, z);
+        maxX = Math.max(maxX, x);
+        maxY = Math.max(maxY, y);
+        maxZ = Math.max(maxZ, z);
+    }
+
+    @Override
+    public void filter(
+            final IChunk chunk,
+            final Filter filter,
+            ChunkFilterBlock block,
+            final IChunkGet get,
+            final IChunkSet set,
+            boolean full
+    ) {
+        final int[] packed = byChunk.get(MathMan.pairInt(chunk.getX(), chunk.getZ()));
+        if (packed == null) {
+            return;
+        }
+        block = block.initChunk(chunk.getX(), chunk.getZ());
+        int currentLayer = Integer.MIN_VALUE;
+        boolean skipLayer = true;
+        for (int value : packed) {
+            final int y = value >> 8;
+            final int layer = y >> 4;
+            if (layer != currentLayer) {
+                currentLayer = layer;
+                skipLayer = layer < get.getMinSectionPosition() || layer > get.getMaxSectionPosition()
+                        || (!full && !get.hasSection(layer)) || !filter.appliesLayer(chunk, layer);
+                if (!skipLayer) {
+                    block = block.initLayer(get, set, layer);
+                }
+            }
+            if (!skipLayer) {
+                block.filter(filter, value & 15, y & 15, (value >> 4) & 15);
+            }
+        }
+    }
+
+    @Override
+    public Set<BlockVector2> getChunks() {
+        final Set<BlockVector2> chunks = new HashSet<>(byChunk.size());
+        for (long key : byChunk.keySet()) {
+            chunks.add(BlockVector2.at(MathMan.unpairIntX(key), MathMan.unpairIntY(key)));
+        }
+        return chunks;
+    }
+
+    @Override
+    public boolean containsChunk(int chunkX, int chunkZ) {
+        return byChunk.containsKey(MathMan.pairInt(chunkX, chunkZ));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long getVolume() {
+        return size;
+    }
+
+    @Nonnull
+    @Override
+    public Iterator<BlockVector3> iterator() {
+        return positions.iterator();
+    }
+
+    @Override
+    public boolean contains(int x, int y, int z) {
+        return positions.contains(BlockVector3.at(x, y, z));
+    }
+
+    @Override
+    public boolean contains(BlockVector3 position) {
+        return positions.contains(position);
+    }
+
+    @Override
+    public BlockVector3 getMinimumPoint() {
+        return BlockVector3.at(minX, minY, minZ);
+    }
+
+    @Override
+    public BlockVector3 getMaximumPoint() {
+        return BlockVector3.at(maxX, maxY, maxZ);
+    }
+
+    @Override
+    public void expand(BlockVector3... changes) throws RegionOperationException {
+        throw new RegionOperationException(Caption.of("fawe.error.selection-expand"));
+    }
+
+    @Override
+    public void contract(BlockVector3... changes) throws RegionOperationException {
+        throw new RegionOperationException(Caption.of("fawe.error.selection-contract"));
+    }
+
+    @Override
+    public void shift(BlockVector3 change) throws RegionOperationException {
+        throw new RegionOperationException(Caption.of("fawe.error.selection-shift"));
+    }
+
+    @Override
+    public boolean containsEntireCuboid(int bx, int tx, int by, int ty, int bz, int tz) {
+        return false;
+    }
+
+}
@@ -216,6 +216,11 @@ public static FaweOutputStream getCompressedOS(OutputStream os, int amount) thro
         return getCompressedOS(os, amount, Settings.settings().HISTORY.BUFFER_SIZE);
     }
 
+    /**
+     * Mode of streams compressed with a {@link ZstdDictionary}, followed by the dictionary's kind and version.
+     */
+    private static final int DICTIONARY_MODE = 32;
+
     private static final LZ4Factory FACTORY = LZ4Factory.fastestInstance();
     private static final LZ4Compressor COMPRESSOR = FACTORY.fastCompressor();
     private static final LZ4FastDecompressor DECOMPRESSOR = FACTORY.fastDecompressor();
@@ -301,12 +306,45 @@ public static FaweOutputStream getCompressedOS(OutputStream os, int amount, int
         return new FaweOutputStream(os);
     }
 
+    /**
+     * Get a stream compressing with a trained Zstd dictionary. It can be read with {@link #getCompressedIS(InputStream)}
+     * as long as the dictionary exists.
+     * Note: The returned stream is not thread safe.
+     *
+     * @param os         stream to write to
+     * @param amount     compression level, see {@link #getCompressedOS(OutputStream, int)}
+     * @param buffer     buffer size
+     * @param dictionary dictionary to compress with
+     */
+    public static FaweOutputStream getCompressedOS(OutputStream os, int amount, int buffer, ZstdDictionary dictionary) throws
+            IOException {
+        int version = dictionary.getVersion();
+        os.write(DICTIONARY_MODE);
+        os.write(dictionary.getKind().ordinal());
+        os.write(version >>> 24);
+        os.write(version >>> 16);
+        os.write(version >>> 8);
+        os.write(version);
+        os = new FastBufferedOutputStream(os, buffer);
+        int level = ZstdDictionary.toZstdLevel(amount);
+        ZstdOutputStream zstd = new ZstdOutputStream(os, level);
+        zstd.setDict(dictionary.getCompressor(level));
+        return new FaweOutputStream(new FastBufferedOutputStream(zstd, buffer));
+    }
+
     public static FaweInputStream getCompressedIS(InputStream is) throws IOException {
         return getCompressedIS(is, Settings.settings().HISTORY.BUFFER_SIZE);
     }
 
     public static FaweInputStream getCompressedIS(InputStream is, int buffer) throws IOException {
         int mode = (byte) is.read();
+        if (mode == DICTIONARY_MODE) {
+            ZstdDictionary.Kind kind = ZstdDictionary.Kind.values()[is.read()];
+            int version = (is.read() << 24) + (is.read() << 16) + (is.read() << 8) + is.read();
+            ZstdInputStream zstd = new ZstdInputStream(new FastBufferedInputStream(is, buffer));
+            zstd.setDict(ZstdDictionary.get(kind, version).getDecompressor());
+            return new FaweInputStream(new FastBufferedInputStream(zstd));
+        }
         is = new FastBufferedInputStream(is, buffer);
         if (mode == 0) {
             return new FaweInputStream(is);
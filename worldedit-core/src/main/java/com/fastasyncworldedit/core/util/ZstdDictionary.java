@@ -0,0 +1,396 @@
+package com.fastasyncworldedit.core.util;
+
+import com.fastasyncworldedit.core.Fawe;
+import com.fastasyncworldedit.core.configuration.Settings;
+import com.fastasyncworldedit.core.history.ChunkIndexedBlockFile;
+import com.fastasyncworldedit.core.internal.io.FaweInputStream;
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.google.common.annotations.VisibleForTesting;
+import com.sk89q.worldedit.internal.util.LogManagerCompat;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * A trained Zstd dictionary, used to compress the many small history and clipboard streams without each paying the full
+ * cost of building a model from scratch.
+ * <p>
+ * Dictionaries are stored as {@code dictionaries/<kind>-<version>.zdict} in the FAWE directory. Streams record the kind
+ * and version of the dictionary they were written with, and old versions are kept so those streams stay readable.
+ */
+public final class ZstdDictionary {
+
+    private static final Logger LOGGER = LogManagerCompat.getLogger();
+
+    private static final String FOLDER = "dictionaries";
+    private static final String EXTENSION = ".zdict";
+    private static final int DICTIONARY_SIZE = 112640;
+    private static final int MAX_SAMPLES = 4096;
+    private static final int MAX_SAMPLE_SIZE = 1 << 17;
+    private static final int MAX_TOTAL_SAMPLE_SIZE = 1 << 27;
+    private static final int MIN_SAMPLES = 8;
+    // so a few large chunk indexed edits do not make up the whole sample
+    private static final int MAX_RUNS_PER_FILE = 32;
+
+    private static final Map<String, ZstdDictionary> LOADED = new ConcurrentHashMap<>();
+    // Also caches that there is no dictionary, so streams don't list the folder each time
+    private static final Map<Kind, Optional<ZstdDictionary>> LATEST = new ConcurrentHashMap<>();
+
+    /**
+     * What a dictionary is trained for.
+     */
+    public enum Kind {
+        /**
+         * History streams, see {@link com.fastasyncworldedit.core.history.changeset.FaweStreamChangeSet}.
+         */
+        HISTORY,
+        /**
+         * Blocks of clipboard ordinals, two bytes per block.
+         */
+        CLIPBOARD;
+
+        private String fileName(int version) {
+            return name().toLowerCase(Locale.ROOT) + "-" + version + EXTENSION;
+        }
+    }
+
+    private final Kind kind;
+    private final int version;
+    private final byte[] dictionary;
+    private final ZstdDictCompress[] compressors = new ZstdDictCompress[Zstd.maxCompressionLevel() + 1];
+    private volatile ZstdDictDecompress decompressor;
+
+    @VisibleForTesting
+    ZstdDictionary(Kind kind, int version, byte[] dictionary) {
+        this.kind = kind;
+        this.version = version;
+        this.dictionary = dictionary;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the Zstd level for a FAWE compression level.
+     *
+     * @param amount FAWE compression level, 1-9 for history, higher for clipboards
+     * @return the Zstd level
+     */
+    public static int toZstdLevel(int amount) {
+        return Math.max(1, Math.min(Zstd.maxCompressionLevel(), 1 + amount * 2));
+    }
+
+    /**
+     * Get a compressor for this dictionary.
+     *
+     * @param level Zstd level
+     * @return the compressor, shared
+     */
+    public ZstdDictCompress getCompressor(int level) {
+        ZstdDictCompress compressor = compressors[level];
+        if (compressor == null) {
+            synchronized (compressors) {
+                compressor = compressors[level];
+                if (compressor == null) {
+                    compressors[level] = compressor = new ZstdDictCompress(dictionary, level);
+                }
+            }
+        }
+        return compressor;
+    }
+
+    /**
+     * Get a decompressor for this dictionary.
+     *
+     * @return the decompressor, shared
+     */
+    public ZstdDictDecompress getDecompressor() {
+        ZstdDictDecompress result = decompressor;
+        if (result == null) {
+            synchronized (compressors) {
+                result = decompressor;
+                if (result == null) {
+                    decompressor = result = new ZstdDictDecompress(dictionary);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compress a block of data.
+     *
+     * @param bytes data to compress
+     * @param level Zstd level
+     * @return the compressed data
+     */
+    public byte[] compress(byte[] bytes, int level) {
+        return Zstd.compress(bytes, getCompressor(level));
+    }
+
+    /**
+     * Decompress a block of data compressed with {@link #compress(byte[], int)}.
+     *
+     * @param bytes  compressed data
+     * @param buffer array to decompress into, may be null
+     * @param length decompressed length
+     * @return the decompressed data
+     */
+    public byte[] decompress(byte[] bytes, @Nullable byte[] buffer, int length) {
+        if (buffer == null) {
+            buffer = new byte[length];
+        }
+        long result = Zstd.decompress(buffer, bytes, getDecompressor());
+        if (Zstd.isError(result)) {
+            throw new IllegalStateException("Zstd decompression failed: " + Zstd.getErrorName(result));
+        }
+        return buffer;
+    }
+
+    /**
+     * Get the newest dictionary of a kind.
+     *
+     * @param kind dictionary kind
+     * @return the dictionary, or null if none has been trained
+     */
+    @Nullable
+    public static ZstdDictionary getLatest(Kind kind) {
+        return LATEST.computeIfAbsent(kind, ZstdDictionary::loadLatest).orElse(null);
+    }
+
+    private static Optional<ZstdDictionary> loadLatest(Kind kind) {
+        int version = findLatestVersion(kind);
+        if (version <= 0) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(get(kind, version));
+        } catch (IOException e) {
+            LOGGER.error("Unable to load the {} compression dictionary", kind, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Get a specific dictionary, e.g. the one a stream was written with.
+     *
+     * @param kind    dictionary kind
+     * @param version dictionary version
+     * @return the dictionary
+     * @throws IOException if the dictionary does not exist or could not be read
+     */
+    public static ZstdDictionary get(Kind kind, int version) throws IOException {
+        String name = kind.fileName(version);
+        ZstdDictionary loaded = LOADED.get(name);
+        if (loaded != null) {
+            return loaded;
+        }
+        File file = new File(getFolder(), name);
+        if (!file.exists()) {
+            throw new IOException("Missing compression dictionary: " + file);
+        }
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        return LOADED.computeIfAbsent(name, k -> new ZstdDictionary(kind, version, bytes));
+    }
+
+    /**
+     * Train a new version of a dictionary and make it the latest.
+     *
+     * @param kind    dictionary kind
+     * @param samples sample data, e.g. decompressed streams
+     * @return the new dictionary, or null if there were not enough samples
+     * @throws IOException if the dictionary could not be written
+     */
+    @Nullable
+    public static synchronized ZstdDictionary train(Kind kind, List<byte[]> samples) throws IOException {
+        if (samples.size() < MIN_SAMPLES) {
+            return null;
+        }
+        long total = 0;
+        for (byte[] sample : samples) {
+            total += sample.length;
+        }
+        ZstdDictTrainer trainer = new ZstdDictTrainer((int) Math.min(Integer.MAX_VALUE, total), DICTIONARY_SIZE);
+        for (byte[] sample : samples) {
+            trainer.addSample(sample);
+        }
+        byte[] bytes = trainer.trainSamples();
+        int version = findLatestVersion(kind) + 1;
+        File folder = getFolder();
+        folder.mkdirs();
+        File file = new File(folder, kind.fileName(version));
+        File tmp = new File(folder, file.getName() + ".tmp");
+        Files.write(tmp.toPath(), bytes);
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        ZstdDictionary dictionary = new ZstdDictionary(kind, version, bytes);
+        LOADED.put(file.getName(), dictionary);
+        LATEST.put(kind, Optional.of(dictionary));
+        return dictionary;
+    }
+
+    /**
+     * Collect training samples from the history on disk: the decompressed start of randomly chosen history files, and
+     * randomly chosen runs of chunk indexed history files.
+     *
+     * @return the samples
+     */
+    public static List<byte[]> sampleHistory() {
+        File folder = MainUtil.getFile(Fawe.platform().getDirectory(), Settings.settings().PATHS.HISTORY);
+        List<File> files = listFiles(folder, ".bd", ".bdc", ".bio");
+        List<byte[]> samples = new ArrayList<>();
+        long total = 0;
+        for (File file : files) {
+            if (samples.size() >= MAX_SAMPLES || total >= MAX_TOTAL_SAMPLE_SIZE) {
+                break;
+            }
+            if (file.getName().endsWith(".bdc")) {
+                total += sampleRuns(file, samples);
+                continue;
+            }
+            try (FaweInputStream in = MainUtil.getCompressedIS(new FileInputStream(file))) {
+                byte[] sample = in.readNBytes(MAX_SAMPLE_SIZE);
+                if (sample.length > 0) {
+                    samples.add(sample);
+                    total += sample.length;
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.debug("Skipping unreadable history file {}", file, e);
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Add randomly chosen runs of a chunk indexed history file to the samples. Runs are compressed separately, so each
+     * one is a sample of its own.
+     *
+     * @return the number of bytes added
+     */
+    private static long sampleRuns(File file, List<byte[]> samples) {
+        long added = 0;
+        try (ChunkIndexedBlockFile.Reader reader = new ChunkIndexedBlockFile.Reader(file)) {
+            List<Integer> runs = new ArrayList<>(reader.getRunCount());
+            for (int run = 0; run < reader.getRunCount(); run++) {
+                runs.add(run);
+            }
+            Collections.shuffle(runs);
+            for (int i = 0; i < runs.size() && i < MAX_RUNS_PER_FILE; i++) {
+                if (samples.size() >= MAX_SAMPLES || added >= MAX_TOTAL_SAMPLE_SIZE) {
+                    break;
+                }
+                byte[] sample = reader.readRun(runs.get(i), MAX_SAMPLE_SIZE);
+                if (sample.length > 0) {
+                    samples.add(sample);
+                    added += sample.length;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Skipping unreadable history file {}", file, e);
+        }
+        return added;
+    }
+
+    /**
+     * Collect training samples from the clipboards on disk: random slices of their block ordinals.
+     *
+     * @return the samples
+     */
+    public static List<byte[]> sampleClipboards() {
+        File folder = MainUtil.getFile(Fawe.platform().getDirectory(), Settings.settings().PATHS.CLIPBOARD);
+        List<File> files = listFiles(folder, ".bd");
+        List<byte[]> samples = new ArrayList<>();
+        long total = 0;
+        for (File file : files) {
+            if (samples.size() >= MAX_SAMPLES || total >= MAX_TOTAL_SAMPLE_SIZE) {
+                break;
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                // The block ordinals follow the header, see DiskOptimizedClipboard
+                raf.seek(2);
+                int headerSize = raf.readChar() == 1 ? 22 : 27;
+                long blocks = raf.length() - headerSize;
+                if (blocks <= 0) {
+                    continue;
+                }
+                int length = (int) Math.min(MAX_SAMPLE_SIZE, blocks) & ~1;
+                long offset = headerSize + (ThreadLocalRandom.current().nextLong(blocks - length + 1) & ~1L);
+                byte[] sample = new byte[length];
+                raf.seek(offset);
+                raf.readFully(sample);
+                samples.add(sample);
+                total += sample.length;
+            } catch (IOException e) {
+                LOGGER.debug("Skipping unreadable clipboard file {}", file, e);
+            }
+        }
+        return samples;
+    }
+
+    private static List<File> listFiles(File folder, String... extensions) {
+        if (!folder.exists()) {
+            return Collections.emptyList();
+        }
+        List<File> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(folder.toPath())) {
+            paths.map(Path::toFile).filter(File::isFile).forEach(file -> {
+                for (String extension : extensions) {
+                    if (file.getName().endsWith(extension)) {
+                        files.add(file);
+                        return;
+                    }
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.error("Unable to list {}", folder, e);
+        }
+        Collections.shuffle(files);
+        return files;
+    }
+
+    private static File getFolder() {
+        return MainUtil.getFile(Fawe.platform().getDirectory(), FOLDER);
+    }
+
+    private static int findLatestVersion(Kind kind) {
+        String[] names = getFolder().list();
+        if (names == null) {
+            return 0;
+        }
+        String prefix = kind.name().toLowerCase(Locale.ROOT) + "-";
+        int latest = 0;
+        for (String name : names) {
+            if (name.startsWith(prefix) && name.endsWith(EXTENSION)) {
+                Integer version = StringMan.toInteger(name, prefix.length(), name.length() - EXTENSION.length());
+                if (version != null && version > latest) {
+                    latest = version;
+                }
+            }
+        }
+        return latest;
+    }
+
+}
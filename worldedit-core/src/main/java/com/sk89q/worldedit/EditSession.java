@@ -1501,6 +1501,9 @@ public int fillXZ(BlockVector3 origin, Pattern pattern, double radius, int depth
         //FAWE start - provide extent for preloading, min/max y
         if (recursive) {
             visitor = new RecursiveVisitor(mask, replace, (int) (radius * 2 + 1), minY, maxY, this);
+            // The replace only changes visited blocks, so workers reading the world see the same blocks unless this
+            // edit changed some before
+            visitor.setParallel(getBlockChangeCount() == 0);
         } else {
             visitor = new DownwardVisitor(mask, replace, origin.getBlockY(), (int) (radius * 2 + 1), minY, maxY, this);
         }
@@ -2029,8 +2032,9 @@ public int drainArea(BlockVector3 origin, double radius, boolean waterlogged, bo
         } else {
             replace = new BlockReplace(this, BlockTypes.AIR.getDefaultState());
         }
-        //FAWE start - provide extent for preloading, min/max y
+        //FAWE start - provide extent for preloading, min/max y, parallel levels
         RecursiveVisitor visitor = new RecursiveVisitor(mask, replace, (int) (radius * 2 + 1), minY, maxY, this);
+        visitor.setParallel(getBlockChangeCount() == 0);
         //FAWE end
 
         // Around the origin in a 3x3 block
@@ -49,7 +49,10 @@
 import com.fastasyncworldedit.core.queue.IBatchProcessor;
 import com.fastasyncworldedit.core.queue.IQueueChunk;
 import com.fastasyncworldedit.core.queue.IQueueExtent;
+import com.fastasyncworldedit.core.queue.implementation.CommitSource;
 import com.fastasyncworldedit.core.queue.implementation.ParallelQueueExtent;
+import com.fastasyncworldedit.core.queue.implementation.QueueHandler;
+import com.fastasyncworldedit.core.queue.implementation.SingleThreadQueueExtent;
 import com.fastasyncworldedit.core.regions.RegionWrapper;
 import com.fastasyncworldedit.core.util.MemUtil;
 import com.fastasyncworldedit.core.util.Permission;
@@ -480,6 +483,18 @@ public EditSessionBuilder compile() {
                 wnaMode = true;
                 extent = world;
             }
+            // Queues of the edit itself, not a world that is a queue
+            if (queue != null && queue != unwrapped) {
+                QueueHandler queueHandler = Fawe.instance().getQueueHandler();
+                CommitSource commitSource = new CommitSource(actor == null
+                        ? queueHandler.getCommitOwner(Identifiable.CONSOLE, "Console")
+                        : queueHandler.getCommitOwner(actor.getUniqueId(), actor.getName()));
+                if (extent instanceof ParallelQueueExtent parallel) {
+                    parallel.setCommitSource(commitSource);
+                } else if (queue instanceof SingleThreadQueueExtent singleThreadQueue) {
+                    singleThreadQueue.setCommitSource(commitSource);
+                }
+            }
             if (combineStages == null) {
                 combineStages =
                         // If it's enabled in the settings
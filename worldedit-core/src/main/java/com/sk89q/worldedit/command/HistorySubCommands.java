@@ -11,6 +11,7 @@
 import com.fastasyncworldedit.core.regions.RegionWrapper;
 import com.fastasyncworldedit.core.util.MainUtil;
 import com.fastasyncworldedit.core.util.StringMan;
+import com.fastasyncworldedit.core.util.ZstdDictionary;
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 import com.sk89q.worldedit.LocalSession;
@@ -24,6 +25,7 @@
 import com.sk89q.worldedit.entity.Player;
 import com.sk89q.worldedit.extension.platform.Actor;
 import com.sk89q.worldedit.history.changeset.ChangeSet;
+import com.sk89q.worldedit.internal.util.LogManagerCompat;
 import com.sk89q.worldedit.math.BlockVector2;
 import com.sk89q.worldedit.math.BlockVector3;
 import com.sk89q.worldedit.regions.Region;
@@ -40,6 +42,7 @@
 import com.sk89q.worldedit.util.formatting.text.event.HoverEvent;
 import com.sk89q.worldedit.world.World;
 import com.sk89q.worldedit.world.block.BlockState;
+import org.apache.logging.log4j.Logger;
 import org.enginehub.piston.annotation.Command;
 import org.enginehub.piston.annotation.CommandContainer;
 import org.enginehub.piston.annotation.param.Arg;
@@ -50,6 +53,7 @@
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.File;
+import java.io.IOException;
 import java.lang.ref.Reference;
 import java.lang.ref.SoftReference;
 import java.util.List;
@@ -63,6 +67,8 @@
 @CommandContainer(superTypes = CommandPermissionsConditionGenerator.Registration.class)
 public class HistorySubCommands {
 
+    private static final Logger LOGGER = LogManagerCompat.getLogger();
+
     private final HistoryCommands parent;
 
     public HistorySubCommands(HistoryCommands parent) {
@@ -184,13 +190,13 @@ public synchronized void importdb(Actor actor) throws WorldEditException {
                                 UUID uuid = UUID.fromString(userUUID);
                                 for (File historyFile : userFolder.listFiles()) {
                                     String name = historyFile.getName();
-                                    if (!name.endsWith(".bd")) {
+                                    if (!name.endsWith(".bd") && !name.endsWith(".bdc")) {
                                         continue;
                                     }
                                     RollbackOptimizedHistory rollback = new RollbackOptimizedHistory(
                                             world, uuid,
                                             Integer.parseInt(
-                                                    name.substring(0, name.length() - 3))
+                                                    name.substring(0, name.lastIndexOf('.')))
                                     );
                                     SimpleChangeSetSummary summary = rollback
                                             .summarize(RegionWrapper.GLOBAL(), false);
@@ -218,6 +224,38 @@ public synchronized void importdb(Actor actor) throws WorldEditException {
         }
     }
 
+    @Command(
+            name = "traindictionary",
+            desc = "Train the Zstd dictionaries used to compress history and clipboards\n"
+                    + " - Samples existing history and clipboards on disk\n"
+                    + " - Enable with history.zstd-dictionary and clipboard.zstd-dictionary"
+    )
+    @CommandPermissions("fawe.history.traindictionary")
+    @Confirm
+    public synchronized void trainDictionary(Actor actor) throws WorldEditException {
+        for (ZstdDictionary.Kind kind : ZstdDictionary.Kind.values()) {
+            List<byte[]> samples = kind == ZstdDictionary.Kind.HISTORY
+                    ? ZstdDictionary.sampleHistory()
+                    : ZstdDictionary.sampleClipboards();
+            try {
+                ZstdDictionary dictionary = ZstdDictionary.train(kind, samples);
+                if (dictionary == null) {
+                    actor.print(Caption.of("fawe.worldedit.history.dictionary.not-enough-samples", kind, samples.size()));
+                } else {
+                    actor.print(Caption.of(
+                            "fawe.worldedit.history.dictionary.trained",
+                            kind,
+                            dictionary.getVersion(),
+                            samples.size()
+                    ));
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("Unable to train the {} dictionary", kind, e);
+                actor.print(Caption.of("fawe.worldedit.history.dictionary.failed", kind, e.getMessage()));
+            }
+        }
+    }
+
     @Command(
             name = "info",
             aliases = {"summary", "summarize"},
@@ -253,7 +291,7 @@ public synchronized void summary(
         BlockVector2 dirVec = BlockVector2.at(edit.getOriginX() - origin.getX(), edit.getOriginZ() - origin.getZ());
         Direction direction = Direction.findClosest(dirVec.toVector3(), Direction.Flag.ALL);
 
-        long seconds = (System.currentTimeMillis() - edit.getBDFile().lastModified()) / 1000;
+        long seconds = (System.currentTimeMillis() - edit.getBlockFile().lastModified()) / 1000;
         String timeStr = MainUtil.secToTime(seconds);
 
         int size = edit.size();
@@ -337,7 +375,7 @@ public Component apply(@Nullable Supplier<? extends ChangeSet> input) {
                             );
                             Direction direction = Direction.findClosest(dirVec.toVector3(), Direction.Flag.ALL);
 
-                            long seconds = (System.currentTimeMillis() - rollback.getBDFile().lastModified()) / 1000;
+                            long seconds = (System.currentTimeMillis() - rollback.getBlockFile().lastModified()) / 1000;
                             String timeStr = MainUtil.secToTime(seconds);
 
                             int size = edit.size();
@@ -27,6 +27,7 @@
 import com.fastasyncworldedit.core.extent.clipboard.io.schematic.MinecraftStructure;
 import com.fastasyncworldedit.core.util.MainUtil;
 import com.google.common.collect.Multimap;
+import com.sk89q.worldedit.EditSession;
 import com.sk89q.worldedit.LocalConfiguration;
 import com.sk89q.worldedit.LocalSession;
 import com.sk89q.worldedit.WorldEdit;
@@ -45,6 +46,7 @@
 import com.sk89q.worldedit.extent.clipboard.io.ClipboardWriter;
 import com.sk89q.worldedit.function.operation.Operations;
 import com.sk89q.worldedit.internal.util.LogManagerCompat;
+import com.sk89q.worldedit.math.BlockVector3;
 import com.sk89q.worldedit.math.transform.AffineTransform;
 import com.sk89q.worldedit.math.transform.Transform;
 import com.sk89q.worldedit.session.ClipboardHolder;
@@ -315,11 +317,13 @@ public void load(
                     String filename,
             @Arg(desc = "Format name.", def = "fast")
                     String formatName,
-            //FAWE start - random rotation
+            //FAWE start - random rotation, direct paste
             @Switch(name = 'r', desc = "Apply random rotation to the clipboard")
-                    boolean randomRotate
+                    boolean randomRotate,
+            @Switch(name = 'p', desc = "Paste the schematic at your position instead of loading it into your clipboard")
+                    boolean pasteDirectly
             //FAWE end
-    ) throws FilenameException {
+    ) throws WorldEditException {
         LocalConfiguration config = worldEdit.getConfiguration();
 
         //FAWE start
@@ -399,6 +403,27 @@ public void load(
                 in = new FileInputStream(file);
                 uri = file.toURI();
             }
+            if (pasteDirectly) {
+                if (!actor.hasPermission("worldedit.clipboard.paste")) {
+                    actor.print(Caption.of("fawe.error.no-perm", "worldedit.clipboard.paste"));
+                    return;
+                }
+                AffineTransform transform = new AffineTransform();
+                if (randomRotate) {
+                    transform = transform.rotateY(90 * ThreadLocalRandom.current().nextInt(4));
+                }
+                BlockVector3 to = session.getPlacementPosition(actor);
+                // Sponge schematics are pasted without loading them into a clipboard first
+                try (EditSession editSession = session.createEditSession(actor)) {
+                    try {
+                        format.paste(in, editSession, to, true, false, transform);
+                    } finally {
+                        session.remember(editSession);
+                    }
+                }
+                actor.print(Caption.of("worldedit.paste.pasted", TextComponent.of(to.toString())));
+                return;
+            }
             format.hold(actor, uri, in);
             if (randomRotate) {
                 AffineTransform transform = new AffineTransform();
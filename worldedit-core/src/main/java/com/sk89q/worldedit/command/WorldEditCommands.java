@@ -22,6 +22,10 @@
 import com.fastasyncworldedit.core.Fawe;
 import com.fastasyncworldedit.core.FaweVersion;
 import com.fastasyncworldedit.core.configuration.Caption;
+import com.fastasyncworldedit.core.queue.implementation.AdaptiveTickBudget;
+import com.fastasyncworldedit.core.queue.implementation.CommitMetrics;
+import com.fastasyncworldedit.core.queue.implementation.CommitOwner;
+import com.fastasyncworldedit.core.queue.implementation.QueueHandler;
 import com.fastasyncworldedit.core.util.UpdateNotification;
 import com.intellectualsites.paster.IncendoPaster;
 import com.sk89q.worldedit.LocalSession;
@@ -51,6 +55,7 @@
 import java.time.format.TextStyle;
 import java.time.zone.ZoneRulesException;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 @CommandContainer(superTypes = {CommandPermissionsConditionGenerator.Registration.class})
@@ -139,6 +144,49 @@ public void threads(Actor actor) throws WorldEditException {
             }
         }
     }
+
+    @Command(
+            name = "queuestats",
+            desc = "Print the main thread budget and the latencies of committing chunks to the world, per player"
+    )
+    @CommandPermissions(value = "worldedit.queuestats", queued = false)
+    public void queueStats(
+            Actor actor,
+            @Switch(name = 'r', desc = "Reset the recorded latencies and per player statistics afterwards")
+                    boolean reset
+    ) {
+        QueueHandler queueHandler = Fawe.instance().getQueueHandler();
+        CommitMetrics metrics = queueHandler.getCommitMetrics();
+        AdaptiveTickBudget budget = queueHandler.getTickBudget();
+        actor.printDebug(TextComponent.of(String.format(
+                Locale.ROOT,
+                "Tick: %.1fms, budget: %.1fms, used: %.1fms, pending commits: %d",
+                budget.getTickMillis(),
+                budget.getBudgetMillis(),
+                budget.getUsedMillis(),
+                queueHandler.getPendingCommits()
+        )));
+        for (String line : metrics.toString().split("\n")) {
+            actor.printDebug(TextComponent.of(line));
+        }
+        for (CommitOwner owner : queueHandler.getCommitOwners()) {
+            actor.printDebug(TextComponent.of(String.format(
+                    Locale.ROOT,
+                    "%s: %d pending, %d committed, mean wait %.1fms, max wait %.1fms",
+                    owner.getName(),
+                    owner.getPending(),
+                    owner.getCommitted(),
+                    owner.getMeanWaitNanos() / 1e6,
+                    owner.getMaxWaitNanos() / 1e6
+            )));
+        }
+        if (reset) {
+            metrics.reset();
+            for (CommitOwner owner : queueHandler.getCommitOwners()) {
+                owner.reset();
+            }
+        }
+    }
     //FAWE end
 
     @Command(
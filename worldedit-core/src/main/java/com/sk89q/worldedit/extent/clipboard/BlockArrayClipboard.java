@@ -68,6 +68,7 @@ public class BlockArrayClipboard implements Clipboard {
      * {@link com.fastasyncworldedit.core.extent.clipboard.DiskOptimizedClipboard}
      * {@link com.fastasyncworldedit.core.extent.clipboard.MemoryOptimizedClipboard}
      * {@link com.fastasyncworldedit.core.extent.clipboard.CPUOptimizedClipboard}
+     * {@link com.fastasyncworldedit.core.extent.clipboard.PaletteOptimizedClipboard}
      * <p>
      * If using clipboard-on-disk, the clipboard should be flushed {@link Clipboard#flush()} before use.
      *
@@ -104,6 +105,7 @@ public BlockArrayClipboard(SimpleClipboard parent, BlockVector3 offset) {
      * {@link com.fastasyncworldedit.core.extent.clipboard.DiskOptimizedClipboard}
      * {@link com.fastasyncworldedit.core.extent.clipboard.MemoryOptimizedClipboard}
      * {@link com.fastasyncworldedit.core.extent.clipboard.CPUOptimizedClipboard}
+     * {@link com.fastasyncworldedit.core.extent.clipboard.PaletteOptimizedClipboard}
      * <p>
      * If using clipboard-on-disk, the clipboard should be flushed ({@link Clipboard#flush()}) before use.
      *
@@ -21,8 +21,10 @@
 
 import com.fastasyncworldedit.core.configuration.Settings;
 import com.fastasyncworldedit.core.extent.clipboard.CPUOptimizedClipboard;
+import com.fastasyncworldedit.core.extent.clipboard.ChunkStreamPaste;
 import com.fastasyncworldedit.core.extent.clipboard.DiskOptimizedClipboard;
 import com.fastasyncworldedit.core.extent.clipboard.MemoryOptimizedClipboard;
+import com.fastasyncworldedit.core.extent.clipboard.PaletteOptimizedClipboard;
 import com.fastasyncworldedit.core.extent.clipboard.ReadOnlyClipboard;
 import com.fastasyncworldedit.core.function.visitor.Order;
 import com.fastasyncworldedit.core.queue.Filter;
@@ -95,10 +97,13 @@ static Clipboard create(Region region) {
      *  - {@link DiskOptimizedClipboard}
      *  - {@link CPUOptimizedClipboard}
      *  - {@link MemoryOptimizedClipboard}
+     *  - {@link PaletteOptimizedClipboard}
      */
     static Clipboard create(Region region, UUID uuid) {
         if (Settings.settings().CLIPBOARD.USE_DISK) {
             return new DiskOptimizedClipboard(region, uuid);
+        } else if (Settings.settings().CLIPBOARD.PALETTE) {
+            return new PaletteOptimizedClipboard(region);
         } else if (Settings.settings().CLIPBOARD.COMPRESSION_LEVEL == 0) {
             return new CPUOptimizedClipboard(region);
         } else {
@@ -283,6 +288,16 @@ default EditSession paste(
         }
         Extent extent = this;
         Mask sourceMask = editSession.getSourceMask();
+        if (sourceMask == null && Settings.settings().CLIPBOARD.STREAM_PASTE) {
+            try {
+                Operations.completeLegacy(new ChunkStreamPaste(this, editSession, to, pasteAir, hasBiomes(), pasteEntities,
+                        transform
+                ));
+            } finally {
+                editSession.close();
+            }
+            return editSession;
+        }
         if (transform != null && !transform.isIdentity()) {
             extent = new BlockTransformExtent(this, transform);
         } else if (sourceMask == null) {
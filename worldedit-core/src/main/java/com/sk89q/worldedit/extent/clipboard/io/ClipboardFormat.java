@@ -19,13 +19,21 @@
 
 package com.sk89q.worldedit.extent.clipboard.io;
 
+import com.fastasyncworldedit.core.configuration.Settings;
 import com.fastasyncworldedit.core.extent.clipboard.URIClipboardHolder;
+import com.fastasyncworldedit.core.extent.clipboard.io.FastSchematicReader;
 import com.fastasyncworldedit.core.util.MainUtil;
 import com.fastasyncworldedit.core.util.task.RunnableVal;
+import com.sk89q.worldedit.EditSession;
 import com.sk89q.worldedit.LocalSession;
 import com.sk89q.worldedit.WorldEdit;
+import com.sk89q.worldedit.WorldEditException;
 import com.sk89q.worldedit.extension.platform.Actor;
 import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.function.operation.Operations;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.math.transform.Transform;
+import com.sk89q.worldedit.session.ClipboardHolder;
 import org.anarres.parallelgzip.ParallelGZIPOutputStream;
 
 import java.io.File;
@@ -134,6 +142,48 @@ default Clipboard load(InputStream stream) throws IOException {
         return getReader(stream).read();
     }
 
+    /**
+     * Read a schematic and paste it into an edit session. Sponge schematics read by {@link FastSchematicReader} are
+     * pasted without loading them into a clipboard, unless stream pasting is disabled or the edit session has a source
+     * mask.
+     *
+     * @param stream        the input stream
+     * @param editSession   the edit session to paste to
+     * @param to            position the schematic origin is pasted at
+     * @param pasteAir      if air should be pasted
+     * @param pasteEntities if entities should be pasted
+     * @param transform     transform to apply
+     * @throws IOException        thrown on I/O error
+     * @throws WorldEditException thrown if the paste fails
+     */
+    default void paste(
+            InputStream stream, EditSession editSession, BlockVector3 to, boolean pasteAir, boolean pasteEntities,
+            Transform transform
+    ) throws IOException, WorldEditException {
+        checkNotNull(stream);
+        checkNotNull(editSession);
+        checkNotNull(to);
+        checkNotNull(transform);
+        try (ClipboardReader reader = getReader(stream)) {
+            if (reader instanceof FastSchematicReader fastReader && Settings.settings().CLIPBOARD.STREAM_PASTE
+                    && editSession.getSourceMask() == null) {
+                fastReader.paste(editSession, to, pasteAir, pasteEntities, transform);
+                return;
+            }
+            try (Clipboard clipboard = reader.read()) {
+                ClipboardHolder holder = new ClipboardHolder(clipboard);
+                holder.setTransform(transform);
+                Operations.complete(holder
+                        .createPaste(editSession)
+                        .to(to)
+                        .ignoreAirBlocks(!pasteAir)
+                        .copyEntities(pasteEntities)
+                        .copyBiomes(clipboard.hasBiomes())
+                        .build());
+            }
+        }
+    }
+
     default URL upload(final Clipboard clipboard) {
         return MainUtil.upload(null, null, getPrimaryFileExtension(), new RunnableVal<>() {
             @Override
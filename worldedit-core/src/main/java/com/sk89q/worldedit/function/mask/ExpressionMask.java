@@ -19,10 +19,12 @@
 
 package com.sk89q.worldedit.function.mask;
 
+import com.sk89q.worldedit.WorldEdit;
 import com.sk89q.worldedit.internal.expression.EvaluationException;
 import com.sk89q.worldedit.internal.expression.Expression;
 import com.sk89q.worldedit.internal.expression.ExpressionException;
 import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.Region;
 import com.sk89q.worldedit.regions.shape.WorldEditExpressionEnvironment;
 
 import javax.annotation.Nullable;
@@ -40,6 +42,13 @@ public class ExpressionMask extends AbstractMask {
 
     private final Expression expression;
     private final IntSupplier timeout;
+    //FAWE start - values of the last chunk section evaluated at once
+    private double[] section;
+    private boolean sectionValid;
+    private int sectionX;
+    private int sectionY;
+    private int sectionZ;
+    //FAWE end
 
     /**
      * Create a new instance.
@@ -92,6 +101,43 @@ public Mask2D toMask2D() {
     }
 
     //FAWE start
+    /**
+     * Test a block, evaluating the expression for the blocks of its chunk section inside the given region at once when
+     * the section is first tested. Meant for filters that go through the blocks of a region section by section, which
+     * have to call {@link #resetSection()} when done with a chunk so no values are kept between passes.
+     *
+     * @param vector the block
+     * @param region the region the filter goes through, or null if it goes through whole sections
+     * @return true if the expression is greater than 0 for the block
+     */
+    public boolean testSection(BlockVector3 vector, @Nullable Region region) {
+        int x = vector.getX();
+        int y = vector.getY();
+        int z = vector.getZ();
+        if (!sectionValid || x >> 4 != sectionX || y >> 4 != sectionY || z >> 4 != sectionZ) {
+            if (section == null) {
+                section = new double[4096];
+            }
+            sectionX = x >> 4;
+            sectionY = y >> 4;
+            sectionZ = z >> 4;
+            int time = timeout == null
+                    ? WorldEdit.getInstance().getConfiguration().calculationTimeout
+                    : timeout.getAsInt();
+            expression.evaluateSection(x & ~15, y & ~15, z & ~15, region, section, time);
+            sectionValid = true;
+        }
+        return section[(y & 15) << 8 | (z & 15) << 4 | x & 15] > 0;
+    }
+
+    /**
+     * Drop the values of the section evaluated by {@link #testSection(BlockVector3, Region)}, so the next section tested
+     * is evaluated again.
+     */
+    public void resetSection() {
+        sectionValid = false;
+    }
+
     @Override
     public Mask copy() {
         return new ExpressionMask(expression.clone(), timeout);
@@ -21,11 +21,17 @@
 
 import com.fastasyncworldedit.core.configuration.Caption;
 import com.fastasyncworldedit.core.configuration.Settings;
+import com.fastasyncworldedit.core.math.BlockVectorQueue;
 import com.fastasyncworldedit.core.math.BlockVectorSet;
 import com.fastasyncworldedit.core.math.MutableBlockVector3;
+import com.fastasyncworldedit.core.math.SectionBitSet;
+import com.fastasyncworldedit.core.queue.IQueueChunk;
+import com.fastasyncworldedit.core.queue.IQueueExtent;
 import com.fastasyncworldedit.core.queue.implementation.ParallelQueueExtent;
 import com.fastasyncworldedit.core.queue.implementation.SingleThreadQueueExtent;
 import com.fastasyncworldedit.core.util.ExtentTraverser;
+import com.fastasyncworldedit.core.util.MathMan;
+import com.fastasyncworldedit.core.util.TaskManager;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
 import com.sk89q.worldedit.WorldEdit;
@@ -39,12 +45,20 @@
 import com.sk89q.worldedit.util.Direction;
 import com.sk89q.worldedit.util.formatting.text.Component;
 import com.sk89q.worldedit.util.formatting.text.TextComponent;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -91,10 +105,14 @@ public abstract class BreadthFirstSearch implements Operation {
     //FAWE end
 
     private final RegionFunction function;
-    //FAWE start - allow chunk preloading and BVS > Queue<BV3>, Set<BV3>, List<BV3>
+    //FAWE start - allow chunk preloading and packed positions > Queue<BV3>, Set<BV3>, List<BV3>
     private final SingleThreadQueueExtent singleQueue;
-    private BlockVectorSet queue = new BlockVectorSet();
-    private BlockVectorSet visited = new BlockVectorSet();
+    @Nullable
+    private final ParallelQueueExtent parallelQueue;
+    private BlockVectorQueue queue = new BlockVectorQueue();
+    private final SectionBitSet visited = new SectionBitSet();
+    // kept up to date with visited once set or requested, for callers that want a BlockVectorSet
+    private BlockVectorSet visitedSet;
     private BlockVector3[] directions;
     //FAWE end
     protected final int minY;
@@ -104,6 +122,9 @@ public abstract class BreadthFirstSearch implements Operation {
     private int currentDepth = 0;
     private final int maxDepth;
     private int maxBranch = Integer.MAX_VALUE;
+    // levels smaller than this are not worth splitting over several threads
+    private static final int PARALLEL_THRESHOLD = 4096;
+    private boolean parallel;
 
     /**
      * Create a new instance.
@@ -151,8 +172,10 @@ public BreadthFirstSearch(RegionFunction function, int maxDepth, int minY, int m
         if (extent != null) {
             ExtentTraverser<ParallelQueueExtent> queueTraverser = new ExtentTraverser<>(extent).find(ParallelQueueExtent.class);
             this.singleQueue = queueTraverser != null ? (SingleThreadQueueExtent) queueTraverser.get().getExtent() : null;
+            this.parallelQueue = queueTraverser != null ? queueTraverser.get() : null;
         } else {
             this.singleQueue = null;
+            this.parallelQueue = null;
         }
     }
 
@@ -228,11 +251,16 @@ public void addDiagonal() {
      * @param position the position
      */
     public void visit(BlockVector3 position) {
-        if (!visited.contains(position)) {
+        //FAWE start - primitive coordinates
+        int x = position.getBlockX();
+        int y = position.getBlockY();
+        int z = position.getBlockZ();
+        if (!visited.contains(x, y, z)) {
             isVisitable(position, position); // Ignore this, just to initialize mask on this point
-            queue.add(position);
-            visited.add(position);
+            queue.add(x, y, z);
+            markVisited(x, y, z);
         }
+        //FAWE end
     }
 
     /**
@@ -242,30 +270,92 @@ public void visit(BlockVector3 position) {
      * @param to   the block under question
      */
     private void visit(BlockVector3 from, BlockVector3 to) {
-        if (!visited.contains(to)) {
-            visited.add(to);
+        //FAWE start - primitive coordinates
+        int x = to.getBlockX();
+        int y = to.getBlockY();
+        int z = to.getBlockZ();
+        if (markVisited(x, y, z)) {
             if (isVisitable(from, to)) {
-                queue.add(to);
+                queue.add(x, y, z);
             }
         }
+        //FAWE end
     }
 
     //FAWE start
+    /**
+     * Set the positions already visited. The given set is also filled with the positions visited from then on.
+     *
+     * @param set the visited positions
+     */
     public void setVisited(BlockVectorSet set) {
-        this.visited = set;
+        visited.clear();
+        for (BlockVector3 pos : set) {
+            visited.add(pos.getBlockX(), pos.getBlockY(), pos.getBlockZ());
+        }
+        this.visitedSet = set;
     }
 
+    /**
+     * Get the positions visited so far, as a set that is also filled with the positions visited from then on.
+     *
+     * @return the visited positions
+     */
     public BlockVectorSet getVisited() {
-        return visited;
+        if (visitedSet == null) {
+            BlockVectorSet set = new BlockVectorSet();
+            visited.forEach((x, y, z, index) -> set.add(x, y, z));
+            visitedSet = set;
+        }
+        return visitedSet;
     }
 
     public boolean isVisited(BlockVector3 pos) {
-        return visited.contains(pos);
+        return visited.contains(pos.getBlockX(), pos.getBlockY(), pos.getBlockZ());
+    }
+
+    private boolean markVisited(int x, int y, int z) {
+        if (!visited.add(x, y, z)) {
+            return false;
+        }
+        if (visitedSet != null) {
+            visitedSet.add(x, y, z);
+        }
+        return true;
     }
 
     public void setMaxBranch(int maxBranch) {
         this.maxBranch = maxBranch;
     }
+
+    /**
+     * Set whether to test the neighbours of large levels on several threads, split by chunk. Each worker reads blocks
+     * through its own queue and the test from {@link #forkVisitable(Extent)}, and the level is then merged on the calling
+     * thread in queue order, so blocks are visited in the same order as without it. The function is only ever applied on
+     * the calling thread.
+     * <p>
+     * Has no effect unless the search was created with an extent backed by a {@link ParallelQueueExtent} and
+     * {@link #forkVisitable(Extent)} returns a test. Workers read the world, not the changes queued by the edit, so only
+     * enable this for an edit that has not changed any blocks yet, with a function that only changes the block it is
+     * applied to.
+     *
+     * @param parallel if large levels should be tested in parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Get a test equivalent to {@link #isVisitable(BlockVector3, BlockVector3)} that only reads blocks from the given
+     * extent, for a single worker thread of {@link #setParallel(boolean)}.
+     *
+     * @param extent the extent of the worker, only used by the worker
+     * @return the test, or null if the search can not be tested in parallel
+     */
+    @Nullable
+    protected BiPredicate<BlockVector3, BlockVector3> forkVisitable(Extent extent) {
+        return null;
+    }
     //FAWE end
 
     /**
@@ -291,16 +381,21 @@ public int getAffected() {
     public Operation resume(RunContext run) throws WorldEditException {
         //FAWE start - directions, visited and preloading
         MutableBlockVector3 mutable = new MutableBlockVector3();
+        MutableBlockVector3 from = new MutableBlockVector3();
         BlockVector3[] dirs = directions;
-        BlockVectorSet tempQueue = new BlockVectorSet();
+        BlockVectorQueue tempQueue = new BlockVectorQueue();
         BlockVectorSet chunkLoadSet = new BlockVectorSet();
+        // Only asks whether the search can be tested in parallel, the test itself is not used
+        boolean parallel = this.parallel && parallelQueue != null && dirs.length <= Long.SIZE
+                && Settings.settings().QUEUE.PARALLEL_THREADS > 1 && forkVisitable(parallelQueue) != null;
         for (currentDepth = 0; !queue.isEmpty() && currentDepth <= maxDepth; currentDepth++) {
             int loadCount = 0;
             if (singleQueue != null && Settings.settings().QUEUE.PRELOAD_CHUNK_COUNT > 1) {
                 int cx = Integer.MIN_VALUE;
                 int cz = Integer.MIN_VALUE;
                 outer:
-                for (BlockVector3 from : queue) {
+                for (int index = 0; index < queue.size(); index++) {
+                    from.setComponents(queue.getX(index), queue.getY(index), queue.getZ(index));
                     for (BlockVector3 direction : dirs) {
                         if (loadCount > Settings.settings().QUEUE.PRELOAD_CHUNK_COUNT) {
                             break outer;
@@ -323,23 +418,28 @@ public Operation resume(RunContext run) throws WorldEditException {
                     singleQueue.addChunkLoad(chunk.getBlockX(), chunk.getBlockZ());
                 }
             }
-            for (BlockVector3 from : queue) {
-                if (function.apply(from)) {
-                    affected++;
-                }
-                for (int i = 0, j = 0; i < dirs.length && j < maxBranch; i++) {
-                    BlockVector3 direction = dirs[i];
-                    int y = from.getBlockY() + direction.getY();
-                    if (y < minY || y > maxY) {
-                        continue;
+            if (parallel && queue.size() >= PARALLEL_THRESHOLD) {
+                resumeParallel(dirs, tempQueue);
+            } else {
+                for (int index = 0; index < queue.size(); index++) {
+                    from.setComponents(queue.getX(index), queue.getY(index), queue.getZ(index));
+                    if (function.apply(from)) {
+                        affected++;
                     }
-                    int x = from.getBlockX() + direction.getX();
-                    int z = from.getBlockZ() + direction.getZ();
-                    if (!visited.contains(x, y, z)) {
-                        if (isVisitable(from, mutable.setComponents(x, y, z))) {
-                            j++;
-                            visited.add(x, y, z);
-                            tempQueue.add(x, y, z);
+                    for (int i = 0, j = 0; i < dirs.length && j < maxBranch; i++) {
+                        BlockVector3 direction = dirs[i];
+                        int y = from.getBlockY() + direction.getY();
+                        if (y < minY || y > maxY) {
+                            continue;
+                        }
+                        int x = from.getBlockX() + direction.getX();
+                        int z = from.getBlockZ() + direction.getZ();
+                        if (!visited.contains(x, y, z)) {
+                            if (isVisitable(from, mutable.setComponents(x, y, z))) {
+                                j++;
+                                markVisited(x, y, z);
+                                tempQueue.add(x, y, z);
+                            }
                         }
                     }
                 }
@@ -347,7 +447,7 @@ public Operation resume(RunContext run) throws WorldEditException {
             if (currentDepth == maxDepth) {
                 break;
             }
-            BlockVectorSet tmp = queue;
+            BlockVectorQueue tmp = queue;
             queue = tempQueue;
             tmp.clear();
             tempQueue = tmp;
@@ -358,6 +458,92 @@ public Operation resume(RunContext run) throws WorldEditException {
     }
 
     //FAWE start
+    /**
+     * Visit the current level, testing neighbours on the shared pool with one task per worker, each taking whole chunks
+     * of the level. Workers only read {@link #visited} and record which directions were visitable, so the level is then
+     * merged in queue order exactly as {@link #resume(RunContext)} would have visited it.
+     */
+    private void resumeParallel(BlockVector3[] dirs, BlockVectorQueue next) throws WorldEditException {
+        int size = queue.size();
+        Long2ObjectLinkedOpenHashMap<IntArrayList> chunks = new Long2ObjectLinkedOpenHashMap<>();
+        for (int index = 0; index < size; index++) {
+            chunks.computeIfAbsent(MathMan.pairInt(queue.getX(index) >> 4, queue.getZ(index) >> 4), k -> new IntArrayList())
+                    .add(index);
+        }
+        IntArrayList[] chunkIndices = chunks.values().toArray(new IntArrayList[0]);
+        AtomicInteger nextChunk = new AtomicInteger();
+        long[] visitable = new long[size];
+        int workers = Math.min(chunkIndices.length, Settings.settings().QUEUE.PARALLEL_THREADS);
+        List<Callable<Void>> tasks = new ArrayList<>(workers);
+        for (int worker = 0; worker < workers; worker++) {
+            tasks.add(() -> {
+                // Queues are bound to the thread creating them
+                IQueueExtent<IQueueChunk> extent = parallelQueue.createReadQueue();
+                BiPredicate<BlockVector3, BlockVector3> test = forkVisitable(extent);
+                MutableBlockVector3 from = new MutableBlockVector3();
+                MutableBlockVector3 to = new MutableBlockVector3();
+                int chunk;
+                while ((chunk = nextChunk.getAndIncrement()) < chunkIndices.length) {
+                    IntArrayList indices = chunkIndices[chunk];
+                    for (int k = 0; k < indices.size(); k++) {
+                        int index = indices.getInt(k);
+                        from.setComponents(queue.getX(index), queue.getY(index), queue.getZ(index));
+                        long directions = 0;
+                        for (int i = 0; i < dirs.length; i++) {
+                            BlockVector3 direction = dirs[i];
+                            int y = from.getBlockY() + direction.getY();
+                            if (y < minY || y > maxY) {
+                                continue;
+                            }
+                            int x = from.getBlockX() + direction.getX();
+                            int z = from.getBlockZ() + direction.getZ();
+                            if (!visited.contains(x, y, z) && test.test(from, to.setComponents(x, y, z))) {
+                                directions |= 1L << i;
+                            }
+                        }
+                        visitable[index] = directions;
+                    }
+                }
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> future : TaskManager.taskManager().getPublicForkJoinPool().invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        MutableBlockVector3 from = new MutableBlockVector3();
+        for (int index = 0; index < size; index++) {
+            from.setComponents(queue.getX(index), queue.getY(index), queue.getZ(index));
+            if (function.apply(from)) {
+                affected++;
+            }
+            long directions = visitable[index];
+            for (int i = 0, j = 0; i < dirs.length && j < maxBranch; i++) {
+                if ((directions & 1L << i) == 0) {
+                    continue;
+                }
+                BlockVector3 direction = dirs[i];
+                int x = from.getBlockX() + direction.getX();
+                int y = from.getBlockY() + direction.getY();
+                int z = from.getBlockZ() + direction.getZ();
+                // May have been reached from an earlier block of this level
+                if (markVisited(x, y, z)) {
+                    j++;
+                    next.add(x, y, z);
+                }
+            }
+        }
+    }
+
     public int getDepth() {
         return currentDepth;
     }
@@ -368,6 +554,9 @@ public void cancel() {
         //FAWE start
         queue.clear();
         visited.clear();
+        if (visitedSet != null) {
+            visitedSet.clear();
+        }
         affected = 0;
         //FAWE emd
     }
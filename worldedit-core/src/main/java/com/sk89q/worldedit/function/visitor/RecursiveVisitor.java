@@ -19,12 +19,30 @@
 
 package com.sk89q.worldedit.function.visitor;
 
+import com.fastasyncworldedit.core.function.mask.ABlockMask;
+import com.fastasyncworldedit.core.function.mask.InverseMask;
+import com.fastasyncworldedit.core.function.mask.MaskUnion;
 import com.sk89q.worldedit.WorldEdit;
 import com.sk89q.worldedit.extension.platform.Capability;
 import com.sk89q.worldedit.extent.Extent;
 import com.sk89q.worldedit.function.RegionFunction;
+import com.sk89q.worldedit.function.mask.AbstractExtentMask;
+import com.sk89q.worldedit.function.mask.BlockTypeMask;
+import com.sk89q.worldedit.function.mask.BoundedHeightMask;
+import com.sk89q.worldedit.function.mask.ExistingBlockMask;
 import com.sk89q.worldedit.function.mask.Mask;
+import com.sk89q.worldedit.function.mask.MaskIntersection;
+import com.sk89q.worldedit.function.mask.Masks;
+import com.sk89q.worldedit.function.mask.RegionMask;
 import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.CylinderRegion;
+import com.sk89q.worldedit.regions.EllipsoidRegion;
+import com.sk89q.worldedit.regions.Region;
+
+import javax.annotation.Nullable;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -89,4 +107,65 @@ protected boolean isVisitable(BlockVector3 from, BlockVector3 to) {
         return mask.test(to);
     }
 
+    //FAWE start - parallel levels
+    @Nullable
+    @Override
+    protected BiPredicate<BlockVector3, BlockVector3> forkVisitable(Extent extent) {
+        // Subclasses test more than the mask
+        if (getClass() != RecursiveVisitor.class) {
+            return null;
+        }
+        Predicate<BlockVector3> test = forkMask(mask, extent);
+        return test == null ? null : (from, to) -> test.test(to);
+    }
+
+    /**
+     * Get a test of a mask that reads blocks from the given extent only. Only masks that test nothing but the block at the
+     * position and keep no state between tests are supported, as well as intersections, unions and inversions of them.
+     *
+     * @return the test, or null if the mask is not supported
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private static Predicate<BlockVector3> forkMask(Mask mask, Extent extent) {
+        if (mask instanceof ABlockMask || mask instanceof BlockTypeMask || mask instanceof ExistingBlockMask) {
+            AbstractExtentMask extentMask = (AbstractExtentMask) mask;
+            return position -> extentMask.test(extent, position);
+        }
+        if (mask instanceof BoundedHeightMask || mask == Masks.alwaysTrue()) {
+            return mask::test;
+        }
+        if (mask instanceof RegionMask regionMask) {
+            Region region = regionMask.getRegion();
+            if (region instanceof CuboidRegion || region instanceof EllipsoidRegion || region instanceof CylinderRegion) {
+                return region::contains;
+            }
+            return null;
+        }
+        if (mask.getClass() == InverseMask.class) {
+            Predicate<BlockVector3> inverse = forkMask(mask.inverse(), extent);
+            return inverse == null ? null : inverse.negate();
+        }
+        if (mask.getClass() == MaskIntersection.class || mask.getClass() == MaskUnion.class) {
+            Mask[] masks = ((MaskIntersection) mask).getMasksArray();
+            Predicate<BlockVector3>[] tests = new Predicate[masks.length];
+            for (int i = 0; i < masks.length; i++) {
+                if ((tests[i] = forkMask(masks[i], extent)) == null) {
+                    return null;
+                }
+            }
+            boolean union = mask instanceof MaskUnion;
+            return position -> {
+                for (Predicate<BlockVector3> test : tests) {
+                    if (test.test(position) == union) {
+                        return union;
+                    }
+                }
+                return !union && tests.length != 0;
+            };
+        }
+        return null;
+    }
+    //FAWE end
+
 }
@@ -19,23 +19,32 @@
 
 package com.sk89q.worldedit.internal.expression;
 
+import com.fastasyncworldedit.core.math.MutableVector3;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.sk89q.worldedit.WorldEdit;
 import com.sk89q.worldedit.antlr.ExpressionLexer;
 import com.sk89q.worldedit.antlr.ExpressionParser;
+import com.sk89q.worldedit.internal.expression.invoke.BytecodeCompiler;
 import com.sk89q.worldedit.internal.expression.invoke.ExpressionCompiler;
+import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.regions.shape.WorldEditExpressionEnvironment;
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 
+import javax.annotation.Nullable;
 import java.time.Instant;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
 /**
  * Compiles and evaluates expressions.
  *
@@ -73,6 +82,12 @@ public class Expression implements Cloneable {
     private final CompiledExpression compiledExpression;
     //FAWE start
     private final String initialExpression;
+    // evaluations before the expression is compiled to bytecode
+    private static final int COMPILE_THRESHOLD = 32;
+    private int compileThreshold = COMPILE_THRESHOLD;
+    private PrimitiveExpression primitiveExpression;
+    private int evaluations;
+    private boolean compiled;
     //FAWE end
 
     public static Expression compile(String expression, String... variableNames) throws ExpressionException {
@@ -156,6 +171,17 @@ public double evaluate(double... values) throws EvaluationException {
     }
 
     public double evaluate(double[] values, int timeout) throws EvaluationException {
+        //FAWE start - evaluate hot expressions on primitive doubles
+        if (primitiveExpression != null) {
+            return primitiveExpression.evaluate(values, timeout);
+        }
+        if (!compiled && compileThreshold >= 0 && ++evaluations >= compileThreshold) {
+            compilePrimitive();
+            if (primitiveExpression != null) {
+                return primitiveExpression.evaluate(values, timeout);
+            }
+        }
+        //FAWE end
         for (int i = 0; i < values.length; ++i) {
             String slotName = providedSlots.get(i);
             LocalSlot.Variable slot = slots.getVariable(slotName)
@@ -177,9 +203,80 @@ public double evaluate(double[] values, int timeout) throws EvaluationException
     }
 
     public void optimize() {
-        // TODO optimizing
+        //FAWE start - compile to bytecode right away instead of waiting for the expression to get hot
+        if (!compiled && compileThreshold >= 0) {
+            compilePrimitive();
+        }
+        //FAWE end
     }
 
+    //FAWE start
+    /**
+     * Evaluate the expression for every block of a 16x16x16 chunk section, with the first three provided slots set to
+     * the coordinates of the block. Values are written in section index order, {@code (y << 8) | (z << 4) | x}. Blocks
+     * outside the given region are not evaluated, they and blocks the expression fails for get {@link Double#NaN}.
+     *
+     * @param minX    the x coordinate of the first block
+     * @param minY    the y coordinate of the first block
+     * @param minZ    the z coordinate of the first block
+     * @param region  the region to evaluate the expression in, or null for the whole section
+     * @param out     the array to write 4096 values to
+     * @param timeout time limit for each block, in milliseconds
+     */
+    public void evaluateSection(int minX, int minY, int minZ, @Nullable Region region, double[] out, int timeout) {
+        checkState(providedSlots.size() >= 3, "Expression does not take coordinates");
+        checkArgument(out.length >= 4096, "Output array is too small");
+        if (!compiled && compileThreshold >= 0) {
+            compilePrimitive();
+        }
+        MutableVector3 current = null;
+        if (getEnvironment() instanceof WorldEditExpressionEnvironment environment) {
+            current = new MutableVector3();
+            environment.setCurrentBlock(current);
+        }
+        double[] values = new double[3];
+        for (int y = 0, index = 0; y < 16; y++) {
+            values[1] = minY + y;
+            for (int z = 0; z < 16; z++) {
+                values[2] = minZ + z;
+                for (int x = 0; x < 16; x++, index++) {
+                    if (region != null && !region.contains(minX + x, minY + y, minZ + z)) {
+                        out[index] = Double.NaN;
+                        continue;
+                    }
+                    values[0] = minX + x;
+                    if (current != null) {
+                        current.setComponents(minX + x, minY + y, minZ + z);
+                    }
+                    try {
+                        out[index] = primitiveExpression != null
+                                ? primitiveExpression.evaluate(values, timeout)
+                                : evaluate(values, timeout);
+                    } catch (EvaluationException e) {
+                        out[index] = Double.NaN;
+                    }
+                }
+            }
+        }
+    }
+
+    private void compilePrimitive() {
+        compiled = true;
+        primitiveExpression = new BytecodeCompiler().compileExpression(root, functions, slots, providedSlots);
+    }
+
+    /**
+     * Set the number of evaluations before the expression is compiled to bytecode, or a negative number to only use the
+     * method handle backend. {@link #optimize()} compiles it right away unless the number is negative.
+     *
+     * @param compileThreshold the number of evaluations
+     */
+    @VisibleForTesting
+    void setCompileThreshold(int compileThreshold) {
+        this.compileThreshold = compileThreshold;
+    }
+    //FAWE end
+
     @Override
     public String toString() {
         return root.toString();
@@ -0,0 +1,18 @@
+package com.sk89q.worldedit.internal.expression;
+
+/**
+ * An expression compiled to bytecode, which keeps its variables in primitive locals while it runs.
+ */
+public interface PrimitiveExpression {
+
+    /**
+     * Evaluate the expression.
+     *
+     * @param values  values of the provided slots, in the order they were given when compiling
+     * @param timeout time limit for loops, in milliseconds
+     * @return the result
+     * @throws EvaluationException if the expression fails or produces no value
+     */
+    double evaluate(double[] values, int timeout) throws EvaluationException;
+
+}
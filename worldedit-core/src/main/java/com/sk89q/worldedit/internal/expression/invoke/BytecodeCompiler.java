@@ -0,0 +1,95 @@
+package com.sk89q.worldedit.internal.expression.invoke;
+
+import com.sk89q.worldedit.antlr.ExpressionParser;
+import com.sk89q.worldedit.internal.expression.EvaluationException;
+import com.sk89q.worldedit.internal.expression.Functions;
+import com.sk89q.worldedit.internal.expression.PrimitiveExpression;
+import com.sk89q.worldedit.internal.expression.SlotTable;
+import com.sk89q.worldedit.internal.util.LogManagerCompat;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Compiles an expression from an AST into a hidden class working on primitive doubles, as an alternative to the
+ * {@link java.lang.invoke.MethodHandle}s of {@link ExpressionCompiler}.
+ * <p>
+ * Identifiers are resolved when compiling: constants are inlined and every variable gets a local, so evaluating does
+ * not look up slots by name, box values or allocate. Constant parts of the expression are folded.
+ * <p>
+ * A variable that did not exist yet is bound when compiling, so it can only be compiled if it is assigned on every path
+ * before it is used. Otherwise the expression is left to the method handle backend, which fails if it is not
+ * initialized yet on evaluation.
+ */
+public class BytecodeCompiler {
+
+    private static final Logger LOGGER = LogManagerCompat.getLogger();
+
+    /**
+     * Compile an expression that has been validated and compiled by {@link ExpressionCompiler}.
+     *
+     * @param root          the AST
+     * @param functions     functions of the expression
+     * @param slots         slots of the expression
+     * @param providedSlots names of the slots whose values are passed on evaluation, in order
+     * @return the compiled expression, or null if it can not be compiled to bytecode
+     */
+    @Nullable
+    public PrimitiveExpression compileExpression(
+            ExpressionParser.AllStatementsContext root,
+            Functions functions,
+            SlotTable slots,
+            List<String> providedSlots
+    ) {
+        TreeBuilder builder = new TreeBuilder(functions, slots, providedSlots);
+        List<Node.Var> vars;
+        Node program;
+        try {
+            program = root.accept(builder).fold();
+            vars = builder.getVars();
+        } catch (TreeBuilder.UnsupportedException e) {
+            return null;
+        }
+        PrimitiveExpression compiled;
+        try {
+            compiled = new BytecodeGenerator(vars).generate(program);
+        } catch (Throwable t) {
+            LOGGER.debug("Could not compile expression to bytecode", t);
+            return null;
+        }
+        List<Node.Var> late = vars.stream().filter(var -> var.late).toList();
+        return late.isEmpty() ? compiled : new LateSlots(compiled, slots, late);
+    }
+
+    /**
+     * Adds the variables the expression creates to the slot table when it is first evaluated, rather than when it is
+     * compiled, as the method handle backend adds them when it runs.
+     */
+    private static final class LateSlots implements PrimitiveExpression {
+
+        private final PrimitiveExpression expression;
+        private final SlotTable slots;
+        @Nullable
+        private List<Node.Var> vars;
+
+        private LateSlots(PrimitiveExpression expression, SlotTable slots, List<Node.Var> vars) {
+            this.expression = expression;
+            this.slots = slots;
+            this.vars = vars;
+        }
+
+        @Override
+        public double evaluate(double[] values, int timeout) throws EvaluationException {
+            if (vars != null) {
+                for (Node.Var var : vars) {
+                    slots.putSlot(var.name, var.slot);
+                }
+                vars = null;
+            }
+            return expression.evaluate(values, timeout);
+        }
+
+    }
+
+}
@@ -0,0 +1,800 @@
+package com.sk89q.worldedit.internal.expression.invoke;
+
+import com.sk89q.worldedit.internal.expression.LocalSlot;
+import com.sk89q.worldedit.internal.expression.PrimitiveExpression;
+import com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.Code;
+import com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.Label;
+
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.sk89q.worldedit.antlr.ExpressionLexer.ASSIGN;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.DIVIDE;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.DIVIDE_ASSIGN;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.EQUAL;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.GREATER_THAN;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.GREATER_THAN_OR_EQUAL;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.LEFT_SHIFT;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.LESS_THAN;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.LESS_THAN_OR_EQUAL;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.MINUS;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.MINUS_ASSIGN;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.MODULO;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.MODULO_ASSIGN;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.NEAR;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.NOT_EQUAL;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.PLUS;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.PLUS_ASSIGN;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.POWER;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.POWER_ASSIGN;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.RIGHT_SHIFT;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.TIMES;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.TIMES_ASSIGN;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.AALOAD;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.ACC_FINAL;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.ACC_PRIVATE;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.ACC_PUBLIC;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.ACC_STATIC;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.ALOAD;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.ARRAYLENGTH;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.ASTORE;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.ATHROW;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.CHECKCAST;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.D2L;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DADD;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DALOAD;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DCMPG;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DCMPL;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DCONST_0;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DCONST_1;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DDIV;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DLOAD;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DMUL;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DNEG;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DREM;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DRETURN;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DSTORE;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DSUB;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DUP;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DUP2;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.GETSTATIC;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.GOTO;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.I2L;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.IAND;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.ICONST_0;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.ICONST_1;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.IFEQ;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.IFGE;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.IFGT;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.IFLE;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.IFLT;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.IFNE;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.IF_ICMPLE;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.ILOAD;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.INVOKESPECIAL;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.INVOKESTATIC;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.INVOKEVIRTUAL;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.ISTORE;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.L2D;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.L2I;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.LADD;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.LCMP;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.LCONST_0;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.LLOAD;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.LMUL;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.LSHL;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.LSHR;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.LSTORE;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.LSUB;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.LXOR;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.NEW;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.POP2;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.PUTSTATIC;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.RETURN;
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Emits a {@link Node} tree as a hidden class implementing {@link PrimitiveExpression}.
+ * <p>
+ * Every variable lives in a double local of {@code evaluate}. Provided values are read straight from the argument
+ * array, other variables from their slot on entry, and the variables that may change are written back to their slots
+ * on exit, including when an exception is thrown. The slots, and the function handles, are {@code static final} fields
+ * of the hidden class, so the JIT treats them as constants. Loops check the time limit every
+ * {@value #DEADLINE_CHECK_INTERVAL} iterations in total, rather than on every iteration.
+ */
+final class BytecodeGenerator {
+
+    private static final int DEADLINE_CHECK_INTERVAL = 64;
+
+    private static final String PACKAGE = "com/sk89q/worldedit/internal/expression/";
+    private static final String CLASS_NAME = PACKAGE + "invoke/GeneratedExpression";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String VARIABLE = PACKAGE + "LocalSlot$Variable";
+    private static final String VARIABLE_DESC = "L" + VARIABLE + ";";
+    private static final String LOCAL_SLOT_DESC = "L" + PACKAGE + "LocalSlot;";
+    private static final String CONSTANT = PACKAGE + "LocalSlot$Constant";
+    private static final String METHOD_HANDLE = "java/lang/invoke/MethodHandle";
+    private static final String METHOD_HANDLE_DESC = "L" + METHOD_HANDLE + ";";
+    private static final String RUNTIME = PACKAGE + "invoke/BytecodeRuntime";
+    private static final String VISITOR = PACKAGE + "invoke/CompilingVisitor";
+    private static final String EVALUATION_EXCEPTION_DESC = "L" + PACKAGE + "EvaluationException;";
+
+    /**
+     * Pair of locals holding the value of a statement, and if it has one.
+     */
+    private static final class Register {
+
+        final int value;
+        final int present;
+
+        Register(int value, int present) {
+            this.value = value;
+            this.present = present;
+        }
+
+    }
+
+    /**
+     * Where {@code break} and {@code continue} go, for the innermost loop or switch.
+     */
+    private static final class Target {
+
+        final Label breakLabel;
+        /**
+         * Where to continue, or null for a switch, where continuing is an error.
+         */
+        @Nullable
+        final Label continueLabel;
+        final int position;
+
+        Target(Label breakLabel, @Nullable Label continueLabel, int position) {
+            this.breakLabel = breakLabel;
+            this.continueLabel = continueLabel;
+            this.position = position;
+        }
+
+    }
+
+    private final ClassFileWriter writer = new ClassFileWriter(
+            CLASS_NAME, OBJECT, PACKAGE + "PrimitiveExpression"
+    );
+    private final List<Object> classData = new ArrayList<>();
+    private final List<String> fieldDescriptors = new ArrayList<>();
+    private final Map<Node.Var, String> varFields = new IdentityHashMap<>();
+    private final Map<Object, String> constantFields = new IdentityHashMap<>();
+    private final List<Node.Var> vars;
+    private final Deque<Target> targets = new ArrayDeque<>();
+    /**
+     * Locals to clear on entry, with their type as {@code I}, {@code J} or {@code D}.
+     */
+    private final List<int[]> locals = new ArrayList<>();
+    private Code code;
+    private Register result;
+    private Label exit;
+    private int deadline = -1;
+    private int ticks = -1;
+
+    BytecodeGenerator(List<Node.Var> vars) {
+        this.vars = vars;
+    }
+
+    /**
+     * Generate and define the class.
+     *
+     * @param program the folded program
+     * @return an instance of the class
+     * @throws Throwable if the class could not be generated or defined
+     */
+    PrimitiveExpression generate(Node program) throws Throwable {
+        for (Node.Var var : vars) {
+            varFields.put(var, field(var.slot, VARIABLE_DESC));
+        }
+        Code constructor = writer.addMethod(ACC_PUBLIC, "<init>", "()V");
+        constructor.varInsn(ALOAD, 0);
+        constructor.methodInsn(INVOKESPECIAL, OBJECT, "<init>", "()V");
+        constructor.insn(RETURN);
+
+        generateEvaluate(program);
+        generateStaticInit();
+
+        byte[] bytes = writer.toByteArray();
+        MethodHandles.Lookup lookup = MethodHandles.lookup()
+                .defineHiddenClassWithClassData(bytes, classData.toArray(), true);
+        return (PrimitiveExpression) lookup.findConstructor(lookup.lookupClass(), methodType(void.class)).invoke();
+    }
+
+    private String field(Object value, String descriptor) {
+        String name = "c" + classData.size();
+        classData.add(value);
+        fieldDescriptors.add(descriptor);
+        writer.addField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, name, descriptor);
+        return name;
+    }
+
+    private String constantField(Object value, String descriptor) {
+        return constantFields.computeIfAbsent(value, v -> field(v, descriptor));
+    }
+
+    private void generateStaticInit() {
+        Code init = writer.addMethod(ACC_STATIC, "<clinit>", "()V");
+        int data = init.newLocal(1);
+        init.methodInsn(INVOKESTATIC, "java/lang/invoke/MethodHandles", "lookup",
+                "()Ljava/lang/invoke/MethodHandles$Lookup;"
+        );
+        init.pushString("_");
+        init.pushClass("[L" + OBJECT + ";");
+        init.methodInsn(INVOKESTATIC, "java/lang/invoke/MethodHandles", "classData",
+                "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;)L" + OBJECT + ";"
+        );
+        init.typeInsn(CHECKCAST, "[L" + OBJECT + ";");
+        init.varInsn(ASTORE, data);
+        for (int i = 0; i < classData.size(); i++) {
+            String descriptor = fieldDescriptors.get(i);
+            init.varInsn(ALOAD, data);
+            init.pushInt(i);
+            init.insn(AALOAD);
+            init.typeInsn(CHECKCAST, descriptor.substring(1, descriptor.length() - 1));
+            init.fieldInsn(PUTSTATIC, CLASS_NAME, "c" + i, descriptor);
+        }
+        init.insn(RETURN);
+    }
+
+    private void generateEvaluate(Node program) {
+        code = writer.addMethod(ACC_PUBLIC | ACC_FINAL, "evaluate", "([DI)D");
+        int length = code.newLocal(1);
+        for (Node.Var var : vars) {
+            var.local = code.newLocal(2);
+        }
+        if (hasLoop(program)) {
+            deadline = code.newLocal(2);
+            ticks = newLocal('I');
+        }
+        result = newRegister();
+
+        Label init = new Label();
+        Label start = new Label();
+        Label handler = new Label();
+        exit = new Label();
+
+        // Locals are set up at the end, once all of them are known
+        code.jump(GOTO, init);
+        code.mark(start);
+        emitStatement(program, result);
+        code.mark(exit);
+        storeVariables();
+        Label hasValue = new Label();
+        code.varInsn(ILOAD, result.present);
+        code.jump(IFNE, hasValue);
+        code.methodInsn(INVOKESTATIC, RUNTIME, "noValue", "()" + EVALUATION_EXCEPTION_DESC);
+        code.insn(ATHROW);
+        code.mark(hasValue);
+        code.varInsn(DLOAD, result.value);
+        code.insn(DRETURN);
+
+        // Keep the variables changed so far when an exception is thrown, as the slots would have been
+        code.tryCatchAll(start, exit, handler);
+        code.mark(handler);
+        int thrown = code.newLocal(1);
+        code.varInsn(ASTORE, thrown);
+        storeVariables();
+        code.varInsn(ALOAD, thrown);
+        code.insn(ATHROW);
+
+        code.mark(init);
+        code.varInsn(ALOAD, 1);
+        code.insn(ARRAYLENGTH);
+        code.varInsn(ISTORE, length);
+        for (Node.Var var : vars) {
+            Label done = new Label();
+            if (var.provided >= 0) {
+                Label fromSlot = new Label();
+                code.varInsn(ILOAD, length);
+                code.pushInt(var.provided);
+                code.jump(IF_ICMPLE, fromSlot);
+                code.varInsn(ALOAD, 1);
+                code.pushInt(var.provided);
+                code.insn(DALOAD);
+                code.jump(GOTO, done);
+                code.mark(fromSlot);
+            }
+            code.fieldInsn(GETSTATIC, CLASS_NAME, varFields.get(var), VARIABLE_DESC);
+            code.methodInsn(INVOKEVIRTUAL, VARIABLE, "getValue", "()D");
+            code.mark(done);
+            code.varInsn(DSTORE, var.local);
+        }
+        for (int[] local : locals) {
+            switch (local[1]) {
+                case 'I' -> {
+                    code.insn(ICONST_0);
+                    code.varInsn(ISTORE, local[0]);
+                }
+                case 'J' -> {
+                    code.insn(LCONST_0);
+                    code.varInsn(LSTORE, local[0]);
+                }
+                default -> {
+                    code.insn(DCONST_0);
+                    code.varInsn(DSTORE, local[0]);
+                }
+            }
+        }
+        if (deadline >= 0) {
+            code.methodInsn(INVOKESTATIC, "java/lang/System", "nanoTime", "()J");
+            code.varInsn(ILOAD, 2);
+            code.insn(I2L);
+            code.pushLong(1_000_000L);
+            code.insn(LMUL);
+            code.insn(LADD);
+            code.varInsn(LSTORE, deadline);
+        }
+        code.jump(GOTO, start);
+    }
+
+    private static boolean hasLoop(Node node) {
+        if (node instanceof Node.Loop) {
+            return true;
+        }
+        if (node instanceof Node.Block block) {
+            return block.statements.stream().anyMatch(BytecodeGenerator::hasLoop);
+        }
+        if (node instanceof Node.If ifNode) {
+            return hasLoop(ifNode.trueBranch) || hasLoop(ifNode.falseBranch);
+        }
+        if (node instanceof Node.Switch switchNode) {
+            return switchNode.bodies.stream().anyMatch(BytecodeGenerator::hasLoop)
+                    || switchNode.defaultBody != null && hasLoop(switchNode.defaultBody);
+        }
+        // Loops are statements, so are never inside a value
+        return false;
+    }
+
+    private int newLocal(char type) {
+        int local = code.newLocal(type == 'I' ? 1 : 2);
+        locals.add(new int[]{local, type});
+        return local;
+    }
+
+    private Register newRegister() {
+        return new Register(newLocal('D'), newLocal('I'));
+    }
+
+    private void storeVariables() {
+        for (Node.Var var : vars) {
+            if (var.written || var.provided >= 0) {
+                code.fieldInsn(GETSTATIC, CLASS_NAME, varFields.get(var), VARIABLE_DESC);
+                code.varInsn(DLOAD, var.local);
+                code.methodInsn(INVOKEVIRTUAL, VARIABLE, "setValue", "(D)V");
+            }
+        }
+    }
+
+    private void setNone(Register register) {
+        code.insn(ICONST_0);
+        code.varInsn(ISTORE, register.present);
+    }
+
+    private void copy(Register from, Register to) {
+        code.varInsn(DLOAD, from.value);
+        code.varInsn(DSTORE, to.value);
+        code.varInsn(ILOAD, from.present);
+        code.varInsn(ISTORE, to.present);
+    }
+
+    /**
+     * Emit a statement, storing its value in a register.
+     */
+    private void emitStatement(Node node, Register register) {
+        if (node.isValue()) {
+            emitValue(node);
+            code.varInsn(DSTORE, register.value);
+            code.insn(ICONST_1);
+            code.varInsn(ISTORE, register.present);
+        } else if (node == Node.EMPTY || node == Node.NONE) {
+            setNone(register);
+        } else if (node instanceof Node.Block block) {
+            for (Node statement : block.statements) {
+                emitStatement(statement, register);
+            }
+        } else if (node instanceof Node.If ifNode) {
+            Label falseBranch = new Label();
+            Label end = new Label();
+            emitCondition(ifNode.condition, falseBranch);
+            emitStatement(ifNode.trueBranch, register);
+            code.jump(GOTO, end);
+            code.mark(falseBranch);
+            emitStatement(ifNode.falseBranch, register);
+            code.mark(end);
+        } else if (node instanceof Node.Loop loop) {
+            emitLoop(loop, register);
+        } else if (node instanceof Node.Switch switchNode) {
+            emitSwitch(switchNode, register);
+        } else if (node == Node.BREAK) {
+            Target target = targets.peek();
+            if (target == null) {
+                throwBreak(false);
+            } else {
+                code.jump(GOTO, target.breakLabel);
+            }
+        } else if (node == Node.CONTINUE) {
+            Target target = targets.peek();
+            if (target == null) {
+                throwBreak(true);
+            } else if (target.continueLabel == null) {
+                code.pushInt(target.position);
+                code.methodInsn(INVOKESTATIC, RUNTIME, "continueInSwitch", "(I)" + EVALUATION_EXCEPTION_DESC);
+                code.insn(ATHROW);
+            } else {
+                code.jump(GOTO, target.continueLabel);
+            }
+        } else if (node instanceof Node.Return returnNode) {
+            emitValue(returnNode.value);
+            code.varInsn(DSTORE, result.value);
+            code.insn(ICONST_1);
+            code.varInsn(ISTORE, result.present);
+            code.jump(GOTO, exit);
+        } else {
+            throw new IllegalStateException("Unknown statement " + node.getClass().getSimpleName());
+        }
+    }
+
+    private void throwBreak(boolean doContinue) {
+        code.pushInt(doContinue ? 1 : 0);
+        code.methodInsn(INVOKESTATIC, RUNTIME, "breakOutsideLoop", "(Z)Ljava/lang/RuntimeException;");
+        code.insn(ATHROW);
+    }
+
+    /**
+     * Emit a loop body, only keeping its value if it completes normally.
+     */
+    private void emitBody(Node body, Register register, Target target) {
+        Register inner = newRegister();
+        targets.push(target);
+        emitStatement(body, inner);
+        targets.pop();
+        copy(inner, register);
+    }
+
+    private void emitIterationChecks(int iterations, int position) {
+        Label belowLimit = new Label();
+        code.varInsn(ILOAD, iterations);
+        code.pushInt(256);
+        code.jump(IF_ICMPLE, belowLimit);
+        code.pushInt(position);
+        code.methodInsn(INVOKESTATIC, RUNTIME, "loopLimit", "(I)" + EVALUATION_EXCEPTION_DESC);
+        code.insn(ATHROW);
+        code.mark(belowLimit);
+
+        Label inTime = new Label();
+        code.varInsn(ILOAD, ticks);
+        code.pushInt(DEADLINE_CHECK_INTERVAL - 1);
+        code.insn(IAND);
+        code.iinc(ticks, 1);
+        code.jump(IFNE, inTime);
+        code.methodInsn(INVOKESTATIC, "java/lang/System", "nanoTime", "()J");
+        code.varInsn(LLOAD, deadline);
+        code.insn(LSUB);
+        code.insn(LCONST_0);
+        code.insn(LCMP);
+        code.jump(IFLE, inTime);
+        code.methodInsn(INVOKESTATIC, RUNTIME, "timeout",
+                "()L" + PACKAGE + "ExpressionTimeoutException;"
+        );
+        code.insn(ATHROW);
+        code.mark(inTime);
+
+        code.iinc(iterations, 1);
+    }
+
+    private void emitLoop(Node.Loop loop, Register register) {
+        Label top = new Label();
+        Label next = new Label();
+        Label end = new Label();
+        int iterations = newLocal('I');
+        code.insn(ICONST_0);
+        code.varInsn(ISTORE, iterations);
+        if (loop instanceof Node.While whileNode) {
+            setNone(register);
+            code.mark(top);
+            emitCondition(whileNode.condition, end);
+            emitIterationChecks(iterations, loop.position);
+            emitBody(loop.body, register, new Target(end, next, 0));
+            code.mark(next);
+            code.jump(GOTO, top);
+        } else if (loop instanceof Node.DoWhile doWhile) {
+            setNone(register);
+            code.mark(top);
+            emitIterationChecks(iterations, loop.position);
+            emitBody(loop.body, register, new Target(end, next, 0));
+            code.mark(next);
+            emitValue(doWhile.condition);
+            code.insn(DCONST_0);
+            code.insn(DCMPL);
+            code.jump(IFNE, top);
+        } else if (loop instanceof Node.For forNode) {
+            emitValue(forNode.init);
+            code.insn(POP2);
+            setNone(register);
+            code.mark(top);
+            emitCondition(forNode.condition, end);
+            emitIterationChecks(iterations, loop.position);
+            emitBody(loop.body, register, new Target(end, next, 0));
+            code.mark(next);
+            emitValue(forNode.update);
+            code.insn(POP2);
+            code.jump(GOTO, top);
+        } else if (loop instanceof Node.SimpleFor simpleFor) {
+            int counter = newLocal('D');
+            int last = newLocal('D');
+            emitValue(simpleFor.first);
+            code.varInsn(DSTORE, counter);
+            emitValue(simpleFor.last);
+            code.varInsn(DSTORE, last);
+            setNone(register);
+            code.mark(top);
+            code.varInsn(DLOAD, counter);
+            code.varInsn(DLOAD, last);
+            code.insn(DCMPG);
+            code.jump(IFGT, end);
+            emitIterationChecks(iterations, loop.position);
+            code.varInsn(DLOAD, counter);
+            code.varInsn(DSTORE, simpleFor.counter.local);
+            emitBody(loop.body, register, new Target(end, next, 0));
+            code.mark(next);
+            code.varInsn(DLOAD, counter);
+            code.insn(DCONST_1);
+            code.insn(DADD);
+            code.varInsn(DSTORE, counter);
+            code.jump(GOTO, top);
+        } else {
+            throw new IllegalStateException("Unknown loop " + loop.getClass().getSimpleName());
+        }
+        code.mark(end);
+    }
+
+    private void emitSwitch(Node.Switch switchNode, Register register) {
+        int target = newLocal('D');
+        emitValue(switchNode.target);
+        code.varInsn(DSTORE, target);
+        setNone(register);
+        Label[] cases = new Label[switchNode.keys.length];
+        Label defaultCase = new Label();
+        Label end = new Label();
+        for (int i = 0; i < cases.length; i++) {
+            cases[i] = new Label();
+            code.varInsn(DLOAD, target);
+            code.pushDouble(switchNode.keys[i]);
+            code.insn(DCMPL);
+            code.jump(IFEQ, cases[i]);
+        }
+        code.jump(GOTO, defaultCase);
+        // Matching cases fall through to the following ones and the default case, unless they break
+        for (int i = 0; i < cases.length; i++) {
+            code.mark(cases[i]);
+            emitBody(switchNode.bodies.get(i), register, new Target(end, null, switchNode.positions[i]));
+        }
+        code.mark(defaultCase);
+        if (switchNode.defaultBody != null) {
+            emitBody(switchNode.defaultBody, register, new Target(end, null, switchNode.defaultPosition));
+        }
+        code.mark(end);
+    }
+
+    /**
+     * Emit a condition, jumping to a label if it is false.
+     */
+    private void emitCondition(Node condition, Label ifFalse) {
+        emitValue(condition);
+        code.insn(DCONST_0);
+        code.insn(DCMPL);
+        code.jump(IFEQ, ifFalse);
+    }
+
+    /**
+     * Turn the int on the stack into 1 if a jump with the opcode would be taken, 0 otherwise.
+     */
+    private void emitBoolean(int jumpIfTrue) {
+        Label isTrue = new Label();
+        Label end = new Label();
+        code.jump(jumpIfTrue, isTrue);
+        code.insn(DCONST_0);
+        code.jump(GOTO, end);
+        code.mark(isTrue);
+        code.insn(DCONST_1);
+        code.mark(end);
+    }
+
+    /**
+     * Emit a value, leaving it on the stack.
+     */
+    private void emitValue(Node node) {
+        if (node instanceof Node.Constant constant) {
+            code.pushDouble(constant.value);
+        } else if (node instanceof Node.Load load) {
+            code.varInsn(DLOAD, load.var.local);
+        } else if (node instanceof Node.Store store) {
+            emitStore(store);
+        } else if (node instanceof Node.Crement crement) {
+            int local = crement.var.local;
+            code.varInsn(DLOAD, local);
+            if (!crement.prefix) {
+                code.insn(DUP2);
+            }
+            code.insn(DCONST_1);
+            code.insn(crement.increment ? DADD : DSUB);
+            if (crement.prefix) {
+                code.insn(DUP2);
+            }
+            code.varInsn(DSTORE, local);
+        } else if (node instanceof Node.Unary unary) {
+            emitValue(unary.operand);
+            switch (unary.op) {
+                case NEGATE -> code.insn(DNEG);
+                case NOT -> {
+                    code.insn(DCONST_0);
+                    code.insn(DCMPL);
+                    emitBoolean(IFEQ);
+                }
+                case COMPLEMENT -> {
+                    code.insn(D2L);
+                    code.pushLong(-1L);
+                    code.insn(LXOR);
+                    code.insn(L2D);
+                }
+                case FACTORIAL -> code.methodInsn(INVOKESTATIC, VISITOR, "factorial", "(D)D");
+            }
+        } else if (node instanceof Node.Binary binary) {
+            emitBinary(binary);
+        } else if (node instanceof Node.And and) {
+            Label isFalse = new Label();
+            Label end = new Label();
+            emitCondition(and.left, isFalse);
+            emitValue(and.right);
+            code.jump(GOTO, end);
+            code.mark(isFalse);
+            code.insn(DCONST_0);
+            code.mark(end);
+        } else if (node instanceof Node.Or or) {
+            Label end = new Label();
+            emitValue(or.left);
+            code.insn(DUP2);
+            code.insn(DCONST_0);
+            code.insn(DCMPL);
+            code.jump(IFNE, end);
+            code.insn(POP2);
+            emitValue(or.right);
+            code.mark(end);
+        } else if (node instanceof Node.Ternary ternary) {
+            Label falseBranch = new Label();
+            Label end = new Label();
+            emitCondition(ternary.condition, falseBranch);
+            emitValue(ternary.trueBranch);
+            code.jump(GOTO, end);
+            code.mark(falseBranch);
+            emitValue(ternary.falseBranch);
+            code.mark(end);
+        } else if (node instanceof Node.Call call) {
+            emitCall(call);
+        } else {
+            throw new IllegalStateException("Not a value: " + node.getClass().getSimpleName());
+        }
+    }
+
+    private void emitStore(Node.Store store) {
+        int local = store.var.local;
+        if (store.op == ASSIGN) {
+            emitValue(store.value);
+        } else {
+            // The argument is evaluated before the variable is read, like the method handle backend does
+            int argument = newLocal('D');
+            emitValue(store.value);
+            code.varInsn(DSTORE, argument);
+            code.varInsn(DLOAD, local);
+            code.varInsn(DLOAD, argument);
+            switch (store.op) {
+                case POWER_ASSIGN -> code.methodInsn(INVOKESTATIC, "java/lang/Math", "pow", "(DD)D");
+                case TIMES_ASSIGN -> code.insn(DMUL);
+                case DIVIDE_ASSIGN -> code.insn(DDIV);
+                case MODULO_ASSIGN -> code.insn(DREM);
+                case PLUS_ASSIGN -> code.insn(DADD);
+                case MINUS_ASSIGN -> code.insn(DSUB);
+                default -> throw new IllegalStateException("Unknown assignment operator " + store.op);
+            }
+        }
+        code.insn(DUP2);
+        code.varInsn(DSTORE, local);
+    }
+
+    private void emitBinary(Node.Binary binary) {
+        emitValue(binary.left);
+        boolean shift = binary.op == LEFT_SHIFT || binary.op == RIGHT_SHIFT;
+        if (shift) {
+            code.insn(D2L);
+        }
+        emitValue(binary.right);
+        switch (binary.op) {
+            case POWER -> code.methodInsn(INVOKESTATIC, "java/lang/Math", "pow", "(DD)D");
+            case TIMES -> code.insn(DMUL);
+            case DIVIDE -> code.insn(DDIV);
+            case MODULO -> code.insn(DREM);
+            case PLUS -> code.insn(DADD);
+            case MINUS -> code.insn(DSUB);
+            case LEFT_SHIFT, RIGHT_SHIFT -> {
+                code.insn(D2L);
+                code.insn(L2I);
+                code.insn(binary.op == LEFT_SHIFT ? LSHL : LSHR);
+                code.insn(L2D);
+            }
+            // dcmpg and dcmpl are picked so NaN compares false
+            case LESS_THAN -> {
+                code.insn(DCMPG);
+                emitBoolean(IFLT);
+            }
+            case LESS_THAN_OR_EQUAL -> {
+                code.insn(DCMPG);
+                emitBoolean(IFLE);
+            }
+            case GREATER_THAN -> {
+                code.insn(DCMPL);
+                emitBoolean(IFGT);
+            }
+            case GREATER_THAN_OR_EQUAL -> {
+                code.insn(DCMPL);
+                emitBoolean(IFGE);
+            }
+            case EQUAL -> {
+                code.insn(DCMPL);
+                emitBoolean(IFEQ);
+            }
+            case NOT_EQUAL -> {
+                code.insn(DCMPL);
+                emitBoolean(IFNE);
+            }
+            case NEAR -> {
+                code.methodInsn(INVOKESTATIC, VISITOR, "almostEqual2sComplement", "(DD)Z");
+                emitBoolean(IFNE);
+            }
+            default -> throw new IllegalStateException("Unknown binary operator " + binary.op);
+        }
+    }
+
+    private void emitCall(Node.Call call) {
+        code.fieldInsn(GETSTATIC, CLASS_NAME, constantField(call.handle, METHOD_HANDLE_DESC), METHOD_HANDLE_DESC);
+        Set<Node.Var> passed = new LinkedHashSet<>();
+        for (Node.Call.Arg arg : call.args) {
+            if (arg.var != null) {
+                code.fieldInsn(GETSTATIC, CLASS_NAME, varFields.get(arg.var), VARIABLE_DESC);
+                passed.add(arg.var);
+            } else if (arg.constant != null) {
+                code.fieldInsn(GETSTATIC, CLASS_NAME, constantField(arg.constant, LOCAL_SLOT_DESC), LOCAL_SLOT_DESC);
+            } else if (arg.wrap) {
+                code.typeInsn(NEW, CONSTANT);
+                code.insn(DUP);
+                emitValue(arg.value);
+                code.methodInsn(INVOKESPECIAL, CONSTANT, "<init>", "(D)V");
+            } else {
+                emitValue(arg.value);
+            }
+        }
+        // The function sees and may change the slots of the variables passed to it
+        for (Node.Var var : passed) {
+            code.fieldInsn(GETSTATIC, CLASS_NAME, varFields.get(var), VARIABLE_DESC);
+            code.varInsn(DLOAD, var.local);
+            code.methodInsn(INVOKEVIRTUAL, VARIABLE, "setValue", "(D)V");
+        }
+        code.methodInsn(INVOKEVIRTUAL, METHOD_HANDLE, "invokeExact", call.handle.type().toMethodDescriptorString());
+        for (Node.Var var : passed) {
+            code.fieldInsn(GETSTATIC, CLASS_NAME, varFields.get(var), VARIABLE_DESC);
+            code.methodInsn(INVOKEVIRTUAL, VARIABLE, "getValue", "()D");
+            code.varInsn(DSTORE, var.local);
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.sk89q.worldedit.internal.expression.invoke;
+
+import com.sk89q.worldedit.internal.expression.EvaluationException;
+import com.sk89q.worldedit.internal.expression.ExpressionTimeoutException;
+
+/**
+ * Static helpers called by expressions compiled by {@link BytecodeGenerator}. The messages match those of the method
+ * handle backend.
+ */
+final class BytecodeRuntime {
+
+    static EvaluationException loopLimit(int position) {
+        return new EvaluationException(position, "Loop exceeded 256 iterations");
+    }
+
+    static ExpressionTimeoutException timeout() {
+        return new ExpressionTimeoutException("Calculations exceeded time limit.");
+    }
+
+    static EvaluationException noValue() {
+        return new EvaluationException(-1, "Expression must result in a value");
+    }
+
+    static EvaluationException continueInSwitch(int position) {
+        return new EvaluationException(position, "Cannot continue in a switch");
+    }
+
+    static RuntimeException breakOutsideLoop(boolean doContinue) {
+        return doContinue ? BreakException.CONTINUE : BreakException.BREAK;
+    }
+
+    private BytecodeRuntime() {
+    }
+
+}
@@ -0,0 +1,631 @@
+package com.sk89q.worldedit.internal.expression.invoke;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the minimal subset of the class file format needed by {@link BytecodeGenerator}.
+ * <p>
+ * Classes are written with major version 49, so methods need no stack map frames and are checked by the type
+ * inferencing verifier instead. Only the instructions the generator emits are supported.
+ */
+final class ClassFileWriter {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+    static final int ACC_SYNTHETIC = 0x1000;
+
+    static final int ACONST_NULL = 0x01;
+    static final int ICONST_0 = 0x03;
+    static final int ICONST_1 = 0x04;
+    static final int LCONST_0 = 0x09;
+    static final int DCONST_0 = 0x0e;
+    static final int DCONST_1 = 0x0f;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC = 0x12;
+    static final int LDC_W = 0x13;
+    static final int LDC2_W = 0x14;
+    static final int ILOAD = 0x15;
+    static final int LLOAD = 0x16;
+    static final int DLOAD = 0x18;
+    static final int ALOAD = 0x19;
+    static final int DALOAD = 0x31;
+    static final int AALOAD = 0x32;
+    static final int ISTORE = 0x36;
+    static final int LSTORE = 0x37;
+    static final int DSTORE = 0x39;
+    static final int ASTORE = 0x3a;
+    static final int POP = 0x57;
+    static final int POP2 = 0x58;
+    static final int DUP = 0x59;
+    static final int DUP2 = 0x5c;
+    static final int DUP2_X2 = 0x5e;
+    static final int LADD = 0x61;
+    static final int DADD = 0x63;
+    static final int LSUB = 0x65;
+    static final int DSUB = 0x67;
+    static final int LMUL = 0x69;
+    static final int DMUL = 0x6b;
+    static final int DDIV = 0x6f;
+    static final int DREM = 0x73;
+    static final int DNEG = 0x77;
+    static final int LSHL = 0x79;
+    static final int LSHR = 0x7b;
+    static final int IAND = 0x7e;
+    static final int LXOR = 0x83;
+    static final int IINC = 0x84;
+    static final int I2L = 0x85;
+    static final int I2D = 0x87;
+    static final int L2I = 0x88;
+    static final int L2D = 0x8a;
+    static final int D2L = 0x8f;
+    static final int LCMP = 0x94;
+    static final int DCMPL = 0x97;
+    static final int DCMPG = 0x98;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IFGT = 0x9d;
+    static final int IFLE = 0x9e;
+    static final int IF_ICMPGT = 0xa3;
+    static final int IF_ICMPLE = 0xa4;
+    static final int GOTO = 0xa7;
+    static final int DRETURN = 0xaf;
+    static final int ARETURN = 0xb0;
+    static final int RETURN = 0xb1;
+    static final int GETSTATIC = 0xb2;
+    static final int PUTSTATIC = 0xb3;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int NEW = 0xbb;
+    static final int ARRAYLENGTH = 0xbe;
+    static final int ATHROW = 0xbf;
+    static final int CHECKCAST = 0xc0;
+    static final int WIDE = 0xc4;
+
+    private static final int VERSION = 49;
+
+    /**
+     * Change in operand stack size, in slots, of the instructions without operands.
+     */
+    private static final int[] STACK_DELTA = new int[256];
+
+    static {
+        STACK_DELTA[ACONST_NULL] = 1;
+        STACK_DELTA[ICONST_0] = 1;
+        STACK_DELTA[ICONST_1] = 1;
+        STACK_DELTA[LCONST_0] = 2;
+        STACK_DELTA[DCONST_0] = 2;
+        STACK_DELTA[DCONST_1] = 2;
+        STACK_DELTA[DALOAD] = 0;
+        STACK_DELTA[AALOAD] = -1;
+        STACK_DELTA[POP] = -1;
+        STACK_DELTA[POP2] = -2;
+        STACK_DELTA[DUP] = 1;
+        STACK_DELTA[DUP2] = 2;
+        STACK_DELTA[DUP2_X2] = 2;
+        STACK_DELTA[LADD] = -2;
+        STACK_DELTA[DADD] = -2;
+        STACK_DELTA[LSUB] = -2;
+        STACK_DELTA[DSUB] = -2;
+        STACK_DELTA[LMUL] = -2;
+        STACK_DELTA[DMUL] = -2;
+        STACK_DELTA[DDIV] = -2;
+        STACK_DELTA[DREM] = -2;
+        STACK_DELTA[DNEG] = 0;
+        STACK_DELTA[LSHL] = -1;
+        STACK_DELTA[LSHR] = -1;
+        STACK_DELTA[IAND] = -1;
+        STACK_DELTA[LXOR] = -2;
+        STACK_DELTA[I2L] = 1;
+        STACK_DELTA[I2D] = 1;
+        STACK_DELTA[L2I] = -1;
+        STACK_DELTA[L2D] = 0;
+        STACK_DELTA[D2L] = 0;
+        STACK_DELTA[LCMP] = -3;
+        STACK_DELTA[DCMPL] = -3;
+        STACK_DELTA[DCMPG] = -3;
+        STACK_DELTA[DRETURN] = -2;
+        STACK_DELTA[ARETURN] = -1;
+        STACK_DELTA[RETURN] = 0;
+        STACK_DELTA[ARRAYLENGTH] = 0;
+        STACK_DELTA[ATHROW] = -1;
+    }
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> poolIndices = new HashMap<>();
+    private int poolSize = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<Code> methods = new ArrayList<>();
+
+    ClassFileWriter(String name, String superName, String... interfaceNames) {
+        this.thisClass = classRef(name);
+        this.superClass = classRef(superName);
+        this.interfaces = new int[interfaceNames.length];
+        for (int i = 0; i < interfaceNames.length; i++) {
+            interfaces[i] = classRef(interfaceNames[i]);
+        }
+    }
+
+    private int constant(String key, int slots, PoolEntry entry) {
+        Integer index = poolIndices.get(key);
+        if (index != null) {
+            return index;
+        }
+        try {
+            entry.write(poolOut);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int added = poolSize;
+        poolSize += slots;
+        if (poolSize > 0xffff) {
+            throw new IllegalStateException("Too many constants");
+        }
+        poolIndices.put(key, added);
+        return added;
+    }
+
+    int utf8(String value) {
+        return constant("U" + value, 1, out -> {
+            out.writeByte(1);
+            out.writeUTF(value);
+        });
+    }
+
+    int classRef(String internalName) {
+        int name = utf8(internalName);
+        return constant("C" + internalName, 1, out -> {
+            out.writeByte(7);
+            out.writeShort(name);
+        });
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        return constant("N" + name + ' ' + descriptor, 1, out -> {
+            out.writeByte(12);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        return constant("M" + tag + owner + '.' + name + descriptor, 1, out -> {
+            out.writeByte(tag);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    private int stringConstant(String value) {
+        int utf8 = utf8(value);
+        return constant("S" + value, 1, out -> {
+            out.writeByte(8);
+            out.writeShort(utf8);
+        });
+    }
+
+    int intConstant(int value) {
+        return constant("I" + value, 1, out -> {
+            out.writeByte(3);
+            out.writeInt(value);
+        });
+    }
+
+    int longConstant(long value) {
+        return constant("J" + value, 2, out -> {
+            out.writeByte(5);
+            out.writeLong(value);
+        });
+    }
+
+    int doubleConstant(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        return constant("D" + bits, 2, out -> {
+            out.writeByte(6);
+            out.writeLong(bits);
+        });
+    }
+
+    void addField(int access, String name, String descriptor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    Code addMethod(int access, String name, String descriptor) {
+        Code code = new Code(access, utf8(name), utf8(descriptor), argumentSlots(descriptor)
+                + ((access & ACC_STATIC) == 0 ? 1 : 0));
+        methods.add(code);
+        return code;
+    }
+
+    byte[] toByteArray() {
+        int codeAttribute = utf8("Code");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolSize);
+            pool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for (int itf : interfaces) {
+                out.writeShort(itf);
+            }
+            out.writeShort(fields.size());
+            for (byte[] field : fields) {
+                out.write(field);
+            }
+            out.writeShort(methods.size());
+            for (Code method : methods) {
+                method.write(out, codeAttribute);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Get the number of local variable slots taken by the arguments of a method descriptor.
+     */
+    private static int argumentSlots(String descriptor) {
+        int slots = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            char c = descriptor.charAt(i);
+            if (c == 'J' || c == 'D') {
+                slots += 2;
+                i++;
+            } else {
+                slots++;
+                while (descriptor.charAt(i) == '[') {
+                    i++;
+                }
+                i = descriptor.charAt(i) == 'L' ? descriptor.indexOf(';', i) + 1 : i + 1;
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * Get the number of operand stack slots taken by a field or method return descriptor.
+     */
+    private static int typeSlots(String descriptor) {
+        return switch (descriptor.charAt(0)) {
+            case 'V' -> 0;
+            case 'J', 'D' -> 2;
+            default -> 1;
+        };
+    }
+
+    @FunctionalInterface
+    private interface PoolEntry {
+
+        void write(DataOutputStream out) throws IOException;
+
+    }
+
+    /**
+     * A branch target.
+     */
+    static final class Label {
+
+        private int position = -1;
+        private int stack = -1;
+        private final List<int[]> fixups = new ArrayList<>();
+
+    }
+
+    /**
+     * The code of a method. Tracks the operand stack depth of every instruction emitted.
+     */
+    final class Code {
+
+        private final int access;
+        private final int name;
+        private final int descriptor;
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private final List<Label> forward = new ArrayList<>();
+        private final List<Label[]> handlers = new ArrayList<>();
+        private int maxLocals;
+        private int stack;
+        private int maxStack;
+
+        private Code(int access, int name, int descriptor, int argumentSlots) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.maxLocals = argumentSlots;
+        }
+
+        /**
+         * Reserve local variable slots.
+         *
+         * @param size number of slots, 2 for a long or double
+         * @return the first reserved slot
+         */
+        int newLocal(int size) {
+            int local = maxLocals;
+            maxLocals += size;
+            return local;
+        }
+
+        private void adjust(int delta) {
+            if (stack < 0) {
+                // Unreachable code, only ever emitted at a statement boundary
+                stack = 0;
+            }
+            stack += delta;
+            if (stack < 0) {
+                throw new IllegalStateException("Operand stack underflow");
+            }
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private void u1(int value) {
+            code.write(value);
+        }
+
+        private void u2(int value) {
+            code.write(value >>> 8);
+            code.write(value);
+        }
+
+        void insn(int opcode) {
+            adjust(STACK_DELTA[opcode]);
+            u1(opcode);
+            if (opcode == ATHROW || opcode == RETURN || opcode == DRETURN || opcode == ARETURN) {
+                stack = -1;
+            }
+        }
+
+        void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                adjust(1);
+                u1(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                adjust(1);
+                u1(BIPUSH);
+                u1(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                adjust(1);
+                u1(SIPUSH);
+                u2(value);
+            } else {
+                ldc(intConstant(value));
+            }
+        }
+
+        private void ldc(int index) {
+            adjust(1);
+            if (index <= 0xff) {
+                u1(LDC);
+                u1(index);
+            } else {
+                u1(LDC_W);
+                u2(index);
+            }
+        }
+
+        void pushString(String value) {
+            ldc(stringConstant(value));
+        }
+
+        void pushClass(String internalName) {
+            ldc(classRef(internalName));
+        }
+
+        void pushLong(long value) {
+            if (value == 0) {
+                insn(LCONST_0);
+            } else {
+                adjust(2);
+                u1(LDC2_W);
+                u2(longConstant(value));
+            }
+        }
+
+        void pushDouble(double value) {
+            if (Double.doubleToRawLongBits(value) == 0L) {
+                insn(DCONST_0);
+            } else if (value == 1) {
+                insn(DCONST_1);
+            } else {
+                adjust(2);
+                u1(LDC2_W);
+                u2(doubleConstant(value));
+            }
+        }
+
+        void varInsn(int opcode, int local) {
+            switch (opcode) {
+                case ILOAD, ALOAD -> adjust(1);
+                case LLOAD, DLOAD -> adjust(2);
+                case ISTORE, ASTORE -> adjust(-1);
+                case LSTORE, DSTORE -> adjust(-2);
+                default -> throw new IllegalArgumentException("Not a local variable instruction: " + opcode);
+            }
+            if (local > 0xff) {
+                u1(WIDE);
+                u1(opcode);
+                u2(local);
+            } else {
+                u1(opcode);
+                u1(local);
+            }
+        }
+
+        void iinc(int local, int amount) {
+            if (local > 0xff || amount < Byte.MIN_VALUE || amount > Byte.MAX_VALUE) {
+                u1(WIDE);
+                u1(IINC);
+                u2(local);
+                u2(amount);
+            } else {
+                u1(IINC);
+                u1(local);
+                u1(amount);
+            }
+        }
+
+        void typeInsn(int opcode, String type) {
+            adjust(opcode == NEW ? 1 : 0);
+            u1(opcode);
+            u2(classRef(type));
+        }
+
+        void fieldInsn(int opcode, String owner, String name, String descriptor) {
+            int size = typeSlots(descriptor);
+            adjust(opcode == GETSTATIC ? size : -size);
+            u1(opcode);
+            u2(memberRef(9, owner, name, descriptor));
+        }
+
+        void methodInsn(int opcode, String owner, String name, String descriptor) {
+            int arguments = argumentSlots(descriptor) + (opcode == INVOKESTATIC ? 0 : 1);
+            adjust(-arguments);
+            adjust(typeSlots(descriptor.substring(descriptor.indexOf(')') + 1)));
+            u1(opcode);
+            u2(memberRef(10, owner, name, descriptor));
+        }
+
+        void jump(int opcode, Label label) {
+            switch (opcode) {
+                case IFEQ, IFNE, IFLT, IFGE, IFGT, IFLE -> adjust(-1);
+                case IF_ICMPGT, IF_ICMPLE -> adjust(-2);
+                case GOTO -> adjust(0);
+                default -> throw new IllegalArgumentException("Not a jump instruction: " + opcode);
+            }
+            if (label.stack < 0) {
+                label.stack = stack;
+            } else if (label.stack != stack) {
+                throw new IllegalStateException("Inconsistent operand stack at jump");
+            }
+            int at = code.size();
+            u1(opcode);
+            if (label.position >= 0) {
+                u2(offset(at, label.position));
+            } else {
+                if (label.fixups.isEmpty()) {
+                    forward.add(label);
+                }
+                label.fixups.add(new int[]{at, code.size()});
+                u2(0);
+            }
+            if (opcode == GOTO) {
+                stack = -1;
+            }
+        }
+
+        void mark(Label label) {
+            if (label.position >= 0) {
+                throw new IllegalStateException("Label already placed");
+            }
+            if (stack < 0) {
+                stack = Math.max(label.stack, 0);
+            } else if (label.stack >= 0 && label.stack != stack) {
+                throw new IllegalStateException("Inconsistent operand stack at label");
+            }
+            label.stack = stack;
+            label.position = code.size();
+        }
+
+        /**
+         * Add an exception handler catching everything thrown between two labels.
+         */
+        void tryCatchAll(Label start, Label end, Label handler) {
+            handler.stack = 1;
+            handlers.add(new Label[]{start, end, handler});
+        }
+
+        private void checkPlaced(Label label) {
+            if (label.position < 0) {
+                throw new IllegalStateException("Label never placed");
+            }
+        }
+
+        private int offset(int from, int to) {
+            int offset = to - from;
+            if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                throw new IllegalStateException("Method too large");
+            }
+            return offset;
+        }
+
+        private void write(DataOutputStream out, int codeAttribute) throws IOException {
+            byte[] bytes = code.toByteArray();
+            if (bytes.length == 0 || bytes.length > 0xffff) {
+                throw new IllegalStateException("Method too large");
+            }
+            for (Label label : forward) {
+                checkPlaced(label);
+                for (int[] fixup : label.fixups) {
+                    int offset = offset(fixup[0], label.position);
+                    bytes[fixup[1]] = (byte) (offset >>> 8);
+                    bytes[fixup[1] + 1] = (byte) offset;
+                }
+            }
+            for (Label[] handler : handlers) {
+                for (Label label : handler) {
+                    checkPlaced(label);
+                }
+            }
+            out.writeShort(access);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1);
+            out.writeShort(codeAttribute);
+            out.writeInt(12 + bytes.length + handlers.size() * 8);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeShort(handlers.size());
+            for (Label[] handler : handlers) {
+                out.writeShort(handler[0].position);
+                out.writeShort(handler[1].position);
+                out.writeShort(handler[2].position);
+                out.writeShort(0);
+            }
+            out.writeShort(0);
+        }
+
+    }
+
+}
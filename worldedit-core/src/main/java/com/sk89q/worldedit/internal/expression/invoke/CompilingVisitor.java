@@ -475,7 +475,9 @@ public MethodHandle visitEqualityExpr(ExpressionParser.EqualityExprContext ctx)
     }
 
     // Usable AlmostEqual function, based on http://www.cygnus-software.com/papers/comparingfloats/comparingfloats.htm
-    private static boolean almostEqual2sComplement(double a, double b) {
+    //FAWE start - package-private, shared with the bytecode backend
+    static boolean almostEqual2sComplement(double a, double b) {
+    //FAWE end
         // Make sure maxUlps is non-negative and small enough that the
         // default NAN won't compare as equal to anything.
         //assert(maxUlps > 0 && maxUlps < 4 * 1024 * 1024); // this is for floats, not doubles
@@ -519,7 +521,9 @@ public MethodHandle visitPostfixExpr(ExpressionParser.PostfixExprContext ctx) {
         }
     }
 
-    private static double factorial(double x) throws EvaluationException {
+    //FAWE start - package-private, shared with the bytecode backend
+    static double factorial(double x) throws EvaluationException {
+    //FAWE end
         final int n = (int) x;
 
         if (n < 0) {
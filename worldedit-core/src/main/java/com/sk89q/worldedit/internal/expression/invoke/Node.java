@@ -0,0 +1,743 @@
+package com.sk89q.worldedit.internal.expression.invoke;
+
+import com.google.common.collect.ImmutableSet;
+import com.sk89q.worldedit.internal.expression.LocalSlot;
+
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static com.sk89q.worldedit.antlr.ExpressionLexer.DIVIDE;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.EQUAL;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.GREATER_THAN;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.GREATER_THAN_OR_EQUAL;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.LEFT_SHIFT;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.LESS_THAN;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.LESS_THAN_OR_EQUAL;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.MINUS;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.MODULO;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.NEAR;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.NOT_EQUAL;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.PLUS;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.POWER;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.RIGHT_SHIFT;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.TIMES;
+
+/**
+ * Tree an expression is lowered to by {@link TreeBuilder} before {@link BytecodeGenerator} emits it.
+ * <p>
+ * Value nodes always produce a double. Statement nodes may produce no value, like the {@code null} results of the
+ * method handle backend, and only appear where the grammar allows statements.
+ */
+abstract class Node {
+
+    /**
+     * Statement without effect or value, skipped when it is part of a block.
+     */
+    static final Node EMPTY = new Empty();
+    /**
+     * Statement producing no value, e.g. an {@code if} whose condition is false and has no {@code else}.
+     */
+    static final Node NONE = new None();
+    static final Node BREAK = new Break();
+    static final Node CONTINUE = new Continue();
+
+    /**
+     * Functions that always return the same result for the same arguments and have no side effects.
+     */
+    private static final Set<String> PURE_FUNCTIONS = ImmutableSet.of(
+            "sin", "cos", "tan", "asin", "acos", "atan",
+            "sinh", "cosh", "tanh", "sqrt", "cbrt", "abs",
+            "ceil", "floor", "rint", "exp", "log", "log10",
+            "ln", "round", "atan2", "min", "max"
+    );
+
+    /**
+     * Get if this node always produces a value.
+     */
+    boolean isValue() {
+        return false;
+    }
+
+    /**
+     * Get if this node always leaves the current block, so anything after it is unreachable.
+     */
+    boolean isJump() {
+        return false;
+    }
+
+    /**
+     * Fold the constant parts of this node.
+     *
+     * @return the folded node, may be this node
+     */
+    Node fold() {
+        return this;
+    }
+
+    private static boolean isConstant(Node node) {
+        return node instanceof Constant;
+    }
+
+    private static double constant(Node node) {
+        return ((Constant) node).value;
+    }
+
+    private static boolean toBoolean(double value) {
+        return value != 0;
+    }
+
+    /**
+     * A variable, held in a local of the generated method while it runs.
+     */
+    static final class Var {
+
+        final String name;
+        final LocalSlot.Variable slot;
+        /**
+         * Index of the value passed for this variable on evaluation, or -1 if it is not a provided slot.
+         */
+        final int provided;
+        /**
+         * If the variable is not in the slot table yet, and is added once the compiled expression is first evaluated.
+         */
+        final boolean late;
+        boolean written;
+        int local = -1;
+
+        Var(String name, LocalSlot.Variable slot, int provided, boolean late) {
+            this.name = name;
+            this.slot = slot;
+            this.provided = provided;
+            this.late = late;
+        }
+
+    }
+
+    static final class Constant extends Node {
+
+        final double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        @Override
+        boolean isValue() {
+            return true;
+        }
+
+    }
+
+    static final class Load extends Node {
+
+        final Var var;
+
+        Load(Var var) {
+            this.var = var;
+        }
+
+        @Override
+        boolean isValue() {
+            return true;
+        }
+
+    }
+
+    /**
+     * Assignment, {@code op} is the lexer token type of the assignment operator.
+     */
+    static final class Store extends Node {
+
+        final Var var;
+        final int op;
+        final Node value;
+
+        Store(Var var, int op, Node value) {
+            this.var = var;
+            this.op = op;
+            this.value = value;
+        }
+
+        @Override
+        boolean isValue() {
+            return true;
+        }
+
+        @Override
+        Node fold() {
+            return new Store(var, op, value.fold());
+        }
+
+    }
+
+    static final class Crement extends Node {
+
+        final Var var;
+        final boolean increment;
+        final boolean prefix;
+
+        Crement(Var var, boolean increment, boolean prefix) {
+            this.var = var;
+            this.increment = increment;
+            this.prefix = prefix;
+        }
+
+        @Override
+        boolean isValue() {
+            return true;
+        }
+
+    }
+
+    static final class Unary extends Node {
+
+        enum Op {
+            NEGATE,
+            NOT,
+            COMPLEMENT,
+            FACTORIAL
+        }
+
+        final Op op;
+        final Node operand;
+
+        Unary(Op op, Node operand) {
+            this.op = op;
+            this.operand = operand;
+        }
+
+        @Override
+        boolean isValue() {
+            return true;
+        }
+
+        @Override
+        Node fold() {
+            Node operand = this.operand.fold();
+            if (isConstant(operand)) {
+                return new Constant(apply(op, constant(operand)));
+            }
+            return new Unary(op, operand);
+        }
+
+        static double apply(Op op, double value) {
+            return switch (op) {
+                case NEGATE -> -value;
+                case NOT -> ExpressionHandles.boolToDouble(!toBoolean(value));
+                case COMPLEMENT -> (double) ~(long) value;
+                case FACTORIAL -> CompilingVisitor.factorial(value);
+            };
+        }
+
+    }
+
+    /**
+     * Binary operator, {@code op} is the lexer token type of the operator.
+     */
+    static final class Binary extends Node {
+
+        final int op;
+        final Node left;
+        final Node right;
+
+        Binary(int op, Node left, Node right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean isValue() {
+            return true;
+        }
+
+        @Override
+        Node fold() {
+            Node left = this.left.fold();
+            Node right = this.right.fold();
+            if (isConstant(left) && isConstant(right)) {
+                return new Constant(apply(op, constant(left), constant(right)));
+            }
+            return new Binary(op, left, right);
+        }
+
+        static double apply(int op, double l, double r) {
+            return switch (op) {
+                case POWER -> Math.pow(l, r);
+                case TIMES -> l * r;
+                case DIVIDE -> l / r;
+                case MODULO -> l % r;
+                case PLUS -> l + r;
+                case MINUS -> l - r;
+                case LEFT_SHIFT -> (double) ((long) l << (long) r);
+                case RIGHT_SHIFT -> (double) ((long) l >> (long) r);
+                case LESS_THAN -> ExpressionHandles.boolToDouble(l < r);
+                case LESS_THAN_OR_EQUAL -> ExpressionHandles.boolToDouble(l <= r);
+                case GREATER_THAN -> ExpressionHandles.boolToDouble(l > r);
+                case GREATER_THAN_OR_EQUAL -> ExpressionHandles.boolToDouble(l >= r);
+                case EQUAL -> ExpressionHandles.boolToDouble(l == r);
+                case NOT_EQUAL -> ExpressionHandles.boolToDouble(l != r);
+                case NEAR -> ExpressionHandles.boolToDouble(CompilingVisitor.almostEqual2sComplement(l, r));
+                default -> throw new IllegalArgumentException("Unknown binary operator " + op);
+            };
+        }
+
+    }
+
+    static final class And extends Node {
+
+        final Node left;
+        final Node right;
+
+        And(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean isValue() {
+            return true;
+        }
+
+        @Override
+        Node fold() {
+            Node left = this.left.fold();
+            Node right = this.right.fold();
+            if (isConstant(left)) {
+                return toBoolean(constant(left)) ? right : new Constant(0);
+            }
+            return new And(left, right);
+        }
+
+    }
+
+    static final class Or extends Node {
+
+        final Node left;
+        final Node right;
+
+        Or(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean isValue() {
+            return true;
+        }
+
+        @Override
+        Node fold() {
+            Node left = this.left.fold();
+            Node right = this.right.fold();
+            if (isConstant(left)) {
+                return toBoolean(constant(left)) ? left : right;
+            }
+            return new Or(left, right);
+        }
+
+    }
+
+    static final class Ternary extends Node {
+
+        final Node condition;
+        final Node trueBranch;
+        final Node falseBranch;
+
+        Ternary(Node condition, Node trueBranch, Node falseBranch) {
+            this.condition = condition;
+            this.trueBranch = trueBranch;
+            this.falseBranch = falseBranch;
+        }
+
+        @Override
+        boolean isValue() {
+            return true;
+        }
+
+        @Override
+        Node fold() {
+            Node condition = this.condition.fold();
+            Node trueBranch = this.trueBranch.fold();
+            Node falseBranch = this.falseBranch.fold();
+            if (isConstant(condition)) {
+                return toBoolean(constant(condition)) ? trueBranch : falseBranch;
+            }
+            return new Ternary(condition, trueBranch, falseBranch);
+        }
+
+    }
+
+    /**
+     * Function call. The handle takes the primitive form of the arguments and returns a double.
+     */
+    static final class Call extends Node {
+
+        /**
+         * An argument passed to a function.
+         */
+        static final class Arg {
+
+            /**
+             * Value passed as a double, or wrapped in a {@link LocalSlot.Constant} if {@link #wrap} is set.
+             */
+            @Nullable
+            final Node value;
+            final boolean wrap;
+            /**
+             * Variable passed as its slot, for functions that read or write it.
+             */
+            @Nullable
+            final Var var;
+            /**
+             * Constant slot passed as is.
+             */
+            @Nullable
+            final LocalSlot constant;
+
+            private Arg(@Nullable Node value, boolean wrap, @Nullable Var var, @Nullable LocalSlot constant) {
+                this.value = value;
+                this.wrap = wrap;
+                this.var = var;
+                this.constant = constant;
+            }
+
+            static Arg value(Node value) {
+                return new Arg(value, false, null, null);
+            }
+
+            static Arg wrapped(Node value) {
+                return new Arg(value, true, null, null);
+            }
+
+            static Arg slot(Var var) {
+                return new Arg(null, false, var, null);
+            }
+
+            static Arg constant(LocalSlot constant) {
+                return new Arg(null, false, null, constant);
+            }
+
+            Arg fold() {
+                return value == null ? this : new Arg(value.fold(), wrap, null, null);
+            }
+
+        }
+
+        final String name;
+        final MethodHandle handle;
+        final List<Arg> args;
+
+        Call(String name, MethodHandle handle, List<Arg> args) {
+            this.name = name;
+            this.handle = handle;
+            this.args = args;
+        }
+
+        @Override
+        boolean isValue() {
+            return true;
+        }
+
+        @Override
+        Node fold() {
+            List<Arg> args = new ArrayList<>(this.args.size());
+            boolean constant = PURE_FUNCTIONS.contains(name);
+            for (Arg arg : this.args) {
+                Arg folded = arg.fold();
+                constant &= folded.value != null && !folded.wrap && isConstant(folded.value);
+                args.add(folded);
+            }
+            if (constant) {
+                Object[] values = new Object[args.size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = constant(args.get(i).value);
+                }
+                try {
+                    return new Constant((double) handle.invokeWithArguments(values));
+                } catch (Throwable ignored) {
+                    // leave it to fail when evaluated
+                }
+            }
+            return new Call(name, handle, args);
+        }
+
+    }
+
+    private static final class Empty extends Node {
+
+    }
+
+    private static final class None extends Node {
+
+    }
+
+    /**
+     * Statements in order, producing the value of the last one.
+     */
+    static final class Block extends Node {
+
+        final List<Node> statements;
+
+        private Block(List<Node> statements) {
+            this.statements = statements;
+        }
+
+        /**
+         * Create a block of statements, dropping empty statements and those after a jump.
+         */
+        static Node of(List<Node> statements) {
+            List<Node> kept = new ArrayList<>(statements.size());
+            for (Node statement : statements) {
+                if (statement instanceof Block block) {
+                    kept.addAll(block.statements);
+                } else if (statement != EMPTY) {
+                    kept.add(statement);
+                }
+            }
+            for (int i = 0; i < kept.size() - 1; i++) {
+                if (kept.get(i).isJump()) {
+                    kept.subList(i + 1, kept.size()).clear();
+                }
+            }
+            return switch (kept.size()) {
+                case 0 -> EMPTY;
+                case 1 -> kept.get(0);
+                default -> new Block(kept);
+            };
+        }
+
+        @Override
+        boolean isJump() {
+            return statements.get(statements.size() - 1).isJump();
+        }
+
+        @Override
+        Node fold() {
+            List<Node> folded = new ArrayList<>(statements.size());
+            for (int i = 0; i < statements.size(); i++) {
+                Node statement = statements.get(i).fold();
+                // A constant or missing value only matters as the value of the block
+                if (i == statements.size() - 1 || !isConstant(statement) && statement != NONE) {
+                    folded.add(statement);
+                }
+            }
+            return of(folded);
+        }
+
+    }
+
+    static final class If extends Node {
+
+        final Node condition;
+        final Node trueBranch;
+        final Node falseBranch;
+
+        /**
+         * Create an if statement, a missing branch should be {@link #NONE}.
+         */
+        If(Node condition, Node trueBranch, Node falseBranch) {
+            this.condition = condition;
+            this.trueBranch = trueBranch;
+            this.falseBranch = falseBranch;
+        }
+
+        @Override
+        Node fold() {
+            Node condition = this.condition.fold();
+            Node trueBranch = branch(this.trueBranch.fold());
+            Node falseBranch = branch(this.falseBranch.fold());
+            if (isConstant(condition)) {
+                return toBoolean(constant(condition)) ? trueBranch : falseBranch;
+            }
+            return new If(condition, trueBranch, falseBranch);
+        }
+
+    }
+
+    /**
+     * Get the statement to use as a branch, where an empty statement produces no value instead of being skipped.
+     */
+    static Node branch(Node node) {
+        return node == EMPTY ? NONE : node;
+    }
+
+    /**
+     * A loop. Every kind of loop produces the value of the last completed iteration of its body.
+     */
+    abstract static class Loop extends Node {
+
+        final Node body;
+        /**
+         * Position reported when the loop exceeds its iteration limit.
+         */
+        final int position;
+
+        Loop(Node body, int position) {
+            this.body = body;
+            this.position = position;
+        }
+
+    }
+
+    static final class While extends Loop {
+
+        final Node condition;
+
+        While(Node condition, Node body, int position) {
+            super(body, position);
+            this.condition = condition;
+        }
+
+        @Override
+        Node fold() {
+            Node condition = this.condition.fold();
+            if (isConstant(condition) && !toBoolean(constant(condition))) {
+                return NONE;
+            }
+            return new While(condition, branch(body.fold()), position);
+        }
+
+    }
+
+    static final class DoWhile extends Loop {
+
+        final Node condition;
+
+        DoWhile(Node body, Node condition, int position) {
+            super(body, position);
+            this.condition = condition;
+        }
+
+        @Override
+        Node fold() {
+            return new DoWhile(branch(body.fold()), condition.fold(), position);
+        }
+
+    }
+
+    static final class For extends Loop {
+
+        final Node init;
+        final Node condition;
+        final Node update;
+
+        For(Node init, Node condition, Node update, Node body, int position) {
+            super(body, position);
+            this.init = init;
+            this.condition = condition;
+            this.update = update;
+        }
+
+        @Override
+        Node fold() {
+            return new For(init.fold(), condition.fold(), update.fold(), branch(body.fold()), position);
+        }
+
+    }
+
+    static final class SimpleFor extends Loop {
+
+        final Var counter;
+        final Node first;
+        final Node last;
+
+        SimpleFor(Var counter, Node first, Node last, Node body, int position) {
+            super(body, position);
+            this.counter = counter;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        Node fold() {
+            return new SimpleFor(counter, first.fold(), last.fold(), branch(body.fold()), position);
+        }
+
+    }
+
+    private static final class Break extends Node {
+
+        @Override
+        boolean isJump() {
+            return true;
+        }
+
+    }
+
+    private static final class Continue extends Node {
+
+        @Override
+        boolean isJump() {
+            return true;
+        }
+
+    }
+
+    static final class Return extends Node {
+
+        final Node value;
+
+        Return(Node value) {
+            this.value = value;
+        }
+
+        @Override
+        boolean isJump() {
+            return true;
+        }
+
+        @Override
+        Node fold() {
+            return new Return(value.fold());
+        }
+
+    }
+
+    /**
+     * Switch statement. Cases are tested in order, and the default case always runs last, like
+     * {@link ExpressionHandles#switchStatement}.
+     */
+    static final class Switch extends Node {
+
+        final Node target;
+        final double[] keys;
+        final List<Node> bodies;
+        /**
+         * Positions reported for a {@code continue} in each body.
+         */
+        final int[] positions;
+        @Nullable
+        final Node defaultBody;
+        final int defaultPosition;
+
+        Switch(
+                Node target, double[] keys, List<Node> bodies, int[] positions,
+                @Nullable Node defaultBody, int defaultPosition
+        ) {
+            this.target = target;
+            this.keys = keys;
+            this.bodies = bodies;
+            this.positions = positions;
+            this.defaultBody = defaultBody;
+            this.defaultPosition = defaultPosition;
+        }
+
+        @Override
+        Node fold() {
+            List<Node> bodies = new ArrayList<>(this.bodies.size());
+            for (Node body : this.bodies) {
+                bodies.add(branch(body.fold()));
+            }
+            return new Switch(
+                    target.fold(), keys, bodies, positions,
+                    defaultBody == null ? null : branch(defaultBody.fold()), defaultPosition
+            );
+        }
+
+    }
+
+}
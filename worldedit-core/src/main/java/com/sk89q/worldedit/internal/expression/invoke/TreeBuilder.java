@@ -0,0 +1,386 @@
+package com.sk89q.worldedit.internal.expression.invoke;
+
+import com.sk89q.worldedit.antlr.ExpressionBaseVisitor;
+import com.sk89q.worldedit.antlr.ExpressionParser;
+import com.sk89q.worldedit.internal.expression.ExpressionHelper;
+import com.sk89q.worldedit.internal.expression.Functions;
+import com.sk89q.worldedit.internal.expression.LocalSlot;
+import com.sk89q.worldedit.internal.expression.SlotTable;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.RuleNode;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static com.sk89q.worldedit.antlr.ExpressionLexer.ASSIGN;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.EXCLAMATION_MARK;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.INCREMENT;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.MINUS;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.PLUS;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.POWER;
+import static com.sk89q.worldedit.internal.expression.ExpressionHelper.WRAPPED_CONSTANT;
+import static com.sk89q.worldedit.internal.expression.ExpressionHelper.getErrorPosition;
+
+/**
+ * Lowers a validated expression to a {@link Node} tree, resolving every identifier to a constant or a {@link Node.Var}
+ * up front. Mirrors {@link CompilingVisitor}.
+ */
+class TreeBuilder extends ExpressionBaseVisitor<Node> {
+
+    /**
+     * Thrown for an expression the bytecode backend does not handle, which is left to the method handle backend.
+     */
+    static final class UnsupportedException extends RuntimeException {
+
+        UnsupportedException(String message) {
+            super(message, null, false, false);
+        }
+
+    }
+
+    private final Functions functions;
+    private final SlotTable slots;
+    private final List<String> providedSlots;
+    private final Map<String, Node.Var> vars = new LinkedHashMap<>();
+    /**
+     * Variables not in the slot table that are assigned on every path to the part of the expression being built.
+     */
+    private Set<Node.Var> assigned = new HashSet<>();
+
+    TreeBuilder(Functions functions, SlotTable slots, List<String> providedSlots) {
+        this.functions = functions;
+        this.slots = slots;
+        this.providedSlots = providedSlots;
+    }
+
+    /**
+     * Get the variables used by the expression, after it has been built.
+     */
+    List<Node.Var> getVars() {
+        return new ArrayList<>(vars.values());
+    }
+
+    private Node.Var var(String text, boolean write) {
+        Node.Var var = vars.get(text);
+        if (var == null) {
+            Optional<LocalSlot> slot = slots.getSlot(text);
+            if (slot.isPresent() && !(slot.get() instanceof LocalSlot.Variable)) {
+                throw new UnsupportedException("'" + text + "' is not a variable");
+            }
+            var = slot.map(s -> new Node.Var(text, (LocalSlot.Variable) s, providedSlots.indexOf(text), false))
+                    .orElseGet(() -> new Node.Var(text, new LocalSlot.Variable(0), -1, true));
+            vars.put(text, var);
+        }
+        var.written |= write;
+        return var;
+    }
+
+    /**
+     * Get a variable whose value is used.
+     */
+    private Node.Var use(String text, boolean write) {
+        Node.Var var = var(text, write);
+        if (var.late && !assigned.contains(var)) {
+            // May not be initialized yet, which fails on evaluation
+            throw new UnsupportedException("'" + text + "' may not be initialized");
+        }
+        return var;
+    }
+
+    /**
+     * Get a variable that is assigned a value without reading it first.
+     */
+    private Node.Var define(Token name) {
+        Node.Var var = var(name.getText(), true);
+        assigned.add(var);
+        return var;
+    }
+
+    /**
+     * Build a part of the expression that is not always run, so the variables it assigns are not known to be assigned
+     * after it.
+     */
+    private Node maybe(Supplier<Node> part) {
+        Set<Node.Var> before = new HashSet<>(assigned);
+        try {
+            return part.get();
+        } finally {
+            assigned = before;
+        }
+    }
+
+    private Node value(ParserRuleContext ctx) {
+        Node node = ctx.accept(this);
+        if (!node.isValue()) {
+            throw new UnsupportedException("Expected a value");
+        }
+        return node;
+    }
+
+    private Node statement(ParserRuleContext ctx) {
+        return Node.branch(ctx.accept(this));
+    }
+
+    private static int position(ParserRuleContext ctx) {
+        return getErrorPosition(ctx.start);
+    }
+
+    @Override
+    public Node visitIfStatement(ExpressionParser.IfStatementContext ctx) {
+        return new Node.If(
+                value(ctx.condition),
+                maybe(() -> statement(ctx.trueBranch)),
+                ctx.falseBranch == null ? Node.NONE : maybe(() -> statement(ctx.falseBranch))
+        );
+    }
+
+    @Override
+    public Node visitTernaryExpr(ExpressionParser.TernaryExprContext ctx) {
+        return new Node.Ternary(
+                value(ctx.condition),
+                maybe(() -> value(ctx.trueBranch)),
+                maybe(() -> value(ctx.falseBranch))
+        );
+    }
+
+    @Override
+    public Node visitWhileStatement(ExpressionParser.WhileStatementContext ctx) {
+        return new Node.While(value(ctx.condition), maybe(() -> statement(ctx.body)), position(ctx.body));
+    }
+
+    @Override
+    public Node visitDoStatement(ExpressionParser.DoStatementContext ctx) {
+        // The body may be left by continue before it assigns anything, so the condition can not rely on it
+        return new Node.DoWhile(maybe(() -> statement(ctx.body)), value(ctx.condition), position(ctx.body));
+    }
+
+    @Override
+    public Node visitForStatement(ExpressionParser.ForStatementContext ctx) {
+        return new Node.For(
+                value(ctx.init),
+                value(ctx.condition),
+                maybe(() -> value(ctx.update)),
+                maybe(() -> statement(ctx.body)),
+                position(ctx.body)
+        );
+    }
+
+    @Override
+    public Node visitSimpleForStatement(ExpressionParser.SimpleForStatementContext ctx) {
+        Node first = value(ctx.first);
+        Node last = value(ctx.last);
+        Node.Var counter = define(ctx.counter);
+        return new Node.SimpleFor(counter, first, last, maybe(() -> statement(ctx.body)), position(ctx.body));
+    }
+
+    @Override
+    public Node visitBreakStatement(ExpressionParser.BreakStatementContext ctx) {
+        return Node.BREAK;
+    }
+
+    @Override
+    public Node visitContinueStatement(ExpressionParser.ContinueStatementContext ctx) {
+        return Node.CONTINUE;
+    }
+
+    @Override
+    public Node visitReturnStatement(ExpressionParser.ReturnStatementContext ctx) {
+        return new Node.Return(value(ctx.value));
+    }
+
+    @Override
+    public Node visitSwitchStatement(ExpressionParser.SwitchStatementContext ctx) {
+        // Duplicate cases were already rejected by the method handle backend
+        Node target = value(ctx.target);
+        List<Double> keys = new ArrayList<>();
+        List<Node> bodies = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        Node defaultBody = null;
+        int defaultPosition = -1;
+        for (int i = 0; i < ctx.labels.size(); i++) {
+            ExpressionParser.SwitchLabelContext label = ctx.labels.get(i);
+            ExpressionParser.StatementsContext body = ctx.bodies.get(i);
+            Node node = maybe(() -> statement(body));
+            if (label instanceof ExpressionParser.CaseContext caseContext) {
+                keys.add(Double.parseDouble(caseContext.constant.getText()));
+                bodies.add(node);
+                positions.add(position(body));
+            } else {
+                defaultBody = node;
+                defaultPosition = position(body);
+            }
+        }
+        return new Node.Switch(
+                target,
+                keys.stream().mapToDouble(Double::doubleValue).toArray(),
+                bodies,
+                positions.stream().mapToInt(Integer::intValue).toArray(),
+                defaultBody,
+                defaultPosition
+        );
+    }
+
+    @Override
+    public Node visitExpressionStatement(ExpressionParser.ExpressionStatementContext ctx) {
+        return value(ctx.expression());
+    }
+
+    @Override
+    public Node visitPostCrementExpr(ExpressionParser.PostCrementExprContext ctx) {
+        return new Node.Crement(use(ctx.target.getText(), true), ctx.op.getType() == INCREMENT, false);
+    }
+
+    @Override
+    public Node visitPreCrementExpr(ExpressionParser.PreCrementExprContext ctx) {
+        return new Node.Crement(use(ctx.target.getText(), true), ctx.op.getType() == INCREMENT, true);
+    }
+
+    @Override
+    public Node visitPlusMinusExpr(ExpressionParser.PlusMinusExprContext ctx) {
+        Node value = value(ctx.expr);
+        switch (ctx.op.getType()) {
+            case PLUS:
+                return value;
+            case MINUS:
+                return new Node.Unary(Node.Unary.Op.NEGATE, value);
+        }
+        throw ExpressionHelper.evalException(ctx, "Invalid text for plus/minus expr: " + ctx.op.getText());
+    }
+
+    @Override
+    public Node visitNotExpr(ExpressionParser.NotExprContext ctx) {
+        return new Node.Unary(Node.Unary.Op.NOT, value(ctx.expr));
+    }
+
+    @Override
+    public Node visitComplementExpr(ExpressionParser.ComplementExprContext ctx) {
+        return new Node.Unary(Node.Unary.Op.COMPLEMENT, value(ctx.expr));
+    }
+
+    @Override
+    public Node visitConditionalAndExpr(ExpressionParser.ConditionalAndExprContext ctx) {
+        return new Node.And(value(ctx.left), maybe(() -> value(ctx.right)));
+    }
+
+    @Override
+    public Node visitConditionalOrExpr(ExpressionParser.ConditionalOrExprContext ctx) {
+        return new Node.Or(value(ctx.left), maybe(() -> value(ctx.right)));
+    }
+
+    @Override
+    public Node visitPowerExpr(ExpressionParser.PowerExprContext ctx) {
+        return new Node.Binary(POWER, value(ctx.left), value(ctx.right));
+    }
+
+    @Override
+    public Node visitMultiplicativeExpr(ExpressionParser.MultiplicativeExprContext ctx) {
+        return new Node.Binary(ctx.op.getType(), value(ctx.left), value(ctx.right));
+    }
+
+    @Override
+    public Node visitAddExpr(ExpressionParser.AddExprContext ctx) {
+        return new Node.Binary(ctx.op.getType(), value(ctx.left), value(ctx.right));
+    }
+
+    @Override
+    public Node visitShiftExpr(ExpressionParser.ShiftExprContext ctx) {
+        return new Node.Binary(ctx.op.getType(), value(ctx.left), value(ctx.right));
+    }
+
+    @Override
+    public Node visitRelationalExpr(ExpressionParser.RelationalExprContext ctx) {
+        return new Node.Binary(ctx.op.getType(), value(ctx.left), value(ctx.right));
+    }
+
+    @Override
+    public Node visitEqualityExpr(ExpressionParser.EqualityExprContext ctx) {
+        return new Node.Binary(ctx.op.getType(), value(ctx.left), value(ctx.right));
+    }
+
+    @Override
+    public Node visitPostfixExpr(ExpressionParser.PostfixExprContext ctx) {
+        if (ctx.op.getType() == EXCLAMATION_MARK) {
+            return new Node.Unary(Node.Unary.Op.FACTORIAL, value(ctx.expr));
+        }
+        throw ExpressionHelper.evalException(ctx, "Invalid text for post-unary expr: " + ctx.op.getText());
+    }
+
+    @Override
+    public Node visitAssignment(ExpressionParser.AssignmentContext ctx) {
+        int type = ((TerminalNode) ctx.assignmentOperator().getChild(0)).getSymbol().getType();
+        Node value = value(ctx.expression());
+        return new Node.Store(type == ASSIGN ? define(ctx.target) : use(ctx.target.getText(), true), type, value);
+    }
+
+    @Override
+    public Node visitFunctionCall(ExpressionParser.FunctionCallContext ctx) {
+        MethodHandle handle = ExpressionHelper.resolveFunction(functions, ctx);
+        String fnName = ctx.name.getText();
+        MethodType type = handle.type();
+        List<Node.Call.Arg> args = new ArrayList<>(ctx.args.size());
+        for (int i = 0; i < ctx.args.size(); i++) {
+            ExpressionParser.ExpressionContext arg = ctx.args.get(i);
+            String handleName = ExpressionHelper.getArgumentHandleName(fnName, type, i, arg);
+            if (handleName == null) {
+                args.add(Node.Call.Arg.value(value(arg)));
+            } else if (handleName.equals(WRAPPED_CONSTANT)) {
+                args.add(Node.Call.Arg.wrapped(value(arg)));
+            } else {
+                Optional<LocalSlot> slot = slots.getSlot(handleName);
+                if (type.parameterType(i) == LocalSlot.class && slot.isPresent()
+                        && !(slot.get() instanceof LocalSlot.Variable)) {
+                    args.add(Node.Call.Arg.constant(slot.get()));
+                } else {
+                    args.add(Node.Call.Arg.slot(use(handleName, true)));
+                }
+            }
+        }
+        // Primitive doubles in and out, so it can be invoked exactly
+        return new Node.Call(fnName, handle.asType(type.unwrap()), args);
+    }
+
+    @Override
+    public Node visitConstantExpression(ExpressionParser.ConstantExpressionContext ctx) {
+        return new Node.Constant(Double.parseDouble(ctx.getText()));
+    }
+
+    @Override
+    public Node visitIdExpr(ExpressionParser.IdExprContext ctx) {
+        Optional<LocalSlot> slot = slots.getSlot(ctx.source.getText());
+        if (slot.isPresent() && !(slot.get() instanceof LocalSlot.Variable)) {
+            return new Node.Constant(slot.get().getValue());
+        }
+        return new Node.Load(use(ctx.source.getText(), false));
+    }
+
+    @Override
+    protected Node defaultResult() {
+        return Node.EMPTY;
+    }
+
+    @Override
+    public Node visitChildren(RuleNode node) {
+        List<Node> statements = new ArrayList<>();
+        int n = node.getChildCount();
+        for (int i = 0; i < n; i++) {
+            ParseTree c = node.getChild(i);
+            if (c instanceof TerminalNode && ((TerminalNode) c).getSymbol().getType() == Token.EOF) {
+                break;
+            }
+            statements.add(c.accept(this));
+        }
+        return Node.Block.of(statements);
+    }
+
+}
@@ -19,6 +19,8 @@
 
 package com.sk89q.worldedit.session;
 
+import com.fastasyncworldedit.core.configuration.Settings;
+import com.fastasyncworldedit.core.extent.clipboard.ChunkStreamPaste;
 import com.fastasyncworldedit.core.util.MaskTraverser;
 import com.sk89q.worldedit.EditSession;
 import com.sk89q.worldedit.extent.Extent;
@@ -142,6 +144,10 @@ public PasteBuilder filter(RegionFunction function) {
      */
     public Operation build() {
         //FAWE start
+        if (Settings.settings().CLIPBOARD.STREAM_PASTE && canApply == null && sourceMask == Masks.alwaysTrue()
+                && !(targetExtent instanceof EditSession editSession && editSession.getSourceMask() != null)) {
+            return new ChunkStreamPaste(clipboard, targetExtent, to, !ignoreAirBlocks, copyBiomes, copyEntities, transform);
+        }
         Extent extent = clipboard;
         if (!transform.isIdentity()) {
             extent = new BlockTransformExtent(extent, transform);
@@ -0,0 +1,124 @@
+package com.fastasyncworldedit.core.extent.clipboard;
+
+import com.sk89q.worldedit.extent.Extent;
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.math.Vector3;
+import com.sk89q.worldedit.math.transform.AffineTransform;
+import com.sk89q.worldedit.math.transform.CombinedTransform;
+import com.sk89q.worldedit.math.transform.Transform;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ChunkStreamPasteTest {
+
+    private static final BlockVector3 MIN = BlockVector3.at(-3, 10, 5);
+    private static final BlockVector3 MAX = BlockVector3.at(20, 30, 40);
+    private static final BlockVector3 ORIGIN = BlockVector3.at(0, 10, 0);
+    // Not chunk aligned, so clipboard rows straddle chunk columns
+    private static final BlockVector3 TO = BlockVector3.at(7, 64, -9);
+
+    private Clipboard clipboard;
+    private Extent destination;
+
+    @BeforeEach
+    public void setup() {
+        clipboard = mock(Clipboard.class);
+        when(clipboard.getRegion()).thenReturn(new CuboidRegion(MIN, MAX));
+        when(clipboard.getOrigin()).thenReturn(ORIGIN);
+        when(clipboard.hasBiomes()).thenReturn(false);
+        destination = mock(Extent.class);
+        when(destination.getMinY()).thenReturn(-64);
+        when(destination.getMaxY()).thenReturn(319);
+    }
+
+    /**
+     * Visit every chunk column around the paste, checking no destination position is visited twice.
+     */
+    private Map<BlockVector3, BlockVector3> visit(Transform transform) {
+        ChunkStreamPaste paste = new ChunkStreamPaste(clipboard, destination, TO, true, false, false, transform);
+        Map<BlockVector3, BlockVector3> visited = new HashMap<>();
+        for (int chunkX = -8; chunkX <= 8; chunkX++) {
+            for (int chunkZ = -8; chunkZ <= 8; chunkZ++) {
+                int cx = chunkX;
+                int cz = chunkZ;
+                paste.forEachInColumn(chunkX, chunkZ, (x, y, z, sx, sy, sz) -> {
+                    assertEquals(cx, x >> 4);
+                    assertEquals(cz, z >> 4);
+                    assertNull(visited.put(BlockVector3.at(x, y, z), BlockVector3.at(sx, sy, sz)), "visited twice");
+                });
+            }
+        }
+        return visited;
+    }
+
+    private static void assertCoversClipboard(Map<BlockVector3, BlockVector3> visited) {
+        Set<BlockVector3> sources = new HashSet<>(visited.values());
+        assertEquals(visited.size(), sources.size(), "source pasted twice");
+        assertEquals(new CuboidRegion(MIN, MAX).getVolume(), sources.size());
+        for (BlockVector3 source : sources) {
+            assertTrue(source.containedWithin(MIN, MAX), source.toString());
+        }
+    }
+
+    @Test
+    public void testIdentity() {
+        Map<BlockVector3, BlockVector3> visited = visit(null);
+        assertCoversClipboard(visited);
+        for (Map.Entry<BlockVector3, BlockVector3> entry : visited.entrySet()) {
+            assertEquals(entry.getKey().subtract(TO).add(ORIGIN), entry.getValue());
+        }
+    }
+
+    @Test
+    public void testTransformsMatchPerBlock() {
+        Transform[] transforms = {
+                new AffineTransform().rotateY(90),
+                new AffineTransform().rotateY(180),
+                new AffineTransform().rotateY(270),
+                new AffineTransform().scale(-1, 1, 1),
+                new AffineTransform().scale(1, -1, 1),
+                new AffineTransform().rotateY(90).scale(1, 1, -1),
+                // Not affine, so mapped per block
+                new CombinedTransform(new AffineTransform().rotateY(90), new AffineTransform().scale(-1, 1, 1))
+        };
+        for (Transform transform : transforms) {
+            Map<BlockVector3, BlockVector3> visited = visit(transform);
+            assertCoversClipboard(visited);
+            Transform inverse = transform.inverse();
+            for (Map.Entry<BlockVector3, BlockVector3> entry : visited.entrySet()) {
+                Vector3 source = inverse.apply(entry.getKey().subtract(TO).toVector3());
+                BlockVector3 expected = BlockVector3.at(
+                        Math.floor(source.getX() + 0.5),
+                        Math.floor(source.getY() + 0.5),
+                        Math.floor(source.getZ() + 0.5)
+                ).add(ORIGIN);
+                assertEquals(expected, entry.getValue(), transform.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testClampedToDestinationHeight() {
+        when(destination.getMaxY()).thenReturn(70);
+        Map<BlockVector3, BlockVector3> visited = visit(null);
+        int height = 70 - (MIN.getY() - ORIGIN.getY() + TO.getY()) + 1;
+        assertEquals((MAX.getX() - MIN.getX() + 1) * (MAX.getZ() - MIN.getZ() + 1) * height, visited.size());
+        for (BlockVector3 position : visited.keySet()) {
+            assertTrue(position.getY() <= 70);
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.fastasyncworldedit.core.extent.clipboard;
+
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.world.block.BlockTypesCache;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class PaletteOptimizedClipboardTest {
+
+    // Not a multiple of 16 on any axis, so the last sections are partial
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 21;
+    private static final int LENGTH = 18;
+
+    private static PaletteOptimizedClipboard create() {
+        return new PaletteOptimizedClipboard(new CuboidRegion(
+                BlockVector3.at(-10, -64, 5),
+                BlockVector3.at(-10 + WIDTH - 1, -64 + HEIGHT - 1, 5 + LENGTH - 1)
+        ));
+    }
+
+    private static int index(int x, int y, int z) {
+        return x + y * WIDTH * LENGTH + z * WIDTH;
+    }
+
+    private static void assertContents(PaletteOptimizedClipboard clipboard, char[] expected) {
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int z = 0; z < LENGTH; z++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    assertEquals(expected[index(x, y, z)], clipboard.getOrdinal(x, y, z), "at " + x + "," + y + "," + z);
+                }
+            }
+        }
+    }
+
+    private static void fill(PaletteOptimizedClipboard clipboard, char[] expected, Random random, int writes, int distinct) {
+        for (int i = 0; i < writes; i++) {
+            int x = random.nextInt(WIDTH);
+            int y = random.nextInt(HEIGHT);
+            int z = random.nextInt(LENGTH);
+            char ordinal = (char) (BlockTypesCache.ReservedIDs.AIR + random.nextInt(distinct));
+            clipboard.setOrdinal(x, y, z, ordinal);
+            expected[index(x, y, z)] = ordinal;
+        }
+    }
+
+    private static char[] air() {
+        char[] blocks = new char[WIDTH * HEIGHT * LENGTH];
+        Arrays.fill(blocks, (char) BlockTypesCache.ReservedIDs.AIR);
+        return blocks;
+    }
+
+    @Test
+    public void testEmpty() {
+        assertContents(create(), air());
+    }
+
+    @Test
+    public void testFewBlocks() {
+        PaletteOptimizedClipboard clipboard = create();
+        char[] expected = air();
+        fill(clipboard, expected, new Random(0), 2000, 3);
+        assertContents(clipboard, expected);
+        clipboard.flush();
+        assertContents(clipboard, expected);
+    }
+
+    @Test
+    public void testPaletteGrowth() {
+        PaletteOptimizedClipboard clipboard = create();
+        char[] expected = air();
+        Random random = new Random(1);
+        // Grows through every palette size
+        for (int distinct = 2; distinct <= 256; distinct <<= 1) {
+            fill(clipboard, expected, random, 4000, distinct);
+            assertContents(clipboard, expected);
+        }
+    }
+
+    @Test
+    public void testDirect() {
+        PaletteOptimizedClipboard clipboard = create();
+        char[] expected = air();
+        Random random = new Random(2);
+        // More distinct blocks than fit in a palette
+        fill(clipboard, expected, random, 30000, 1000);
+        assertContents(clipboard, expected);
+        clipboard.flush();
+        assertContents(clipboard, expected);
+        fill(clipboard, expected, random, 5000, 1000);
+        assertContents(clipboard, expected);
+    }
+
+    @Test
+    public void testFlushCollapsesUniformSections() {
+        PaletteOptimizedClipboard clipboard = create();
+        char[] expected = air();
+        char stone = (char) (BlockTypesCache.ReservedIDs.AIR + 1);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int z = 0; z < LENGTH; z++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    clipboard.setOrdinal(x, y, z, stone);
+                    expected[index(x, y, z)] = stone;
+                }
+            }
+        }
+        assertEquals(sectionCount(), clipboard.getPackedSectionCount());
+        clipboard.flush();
+        assertContents(clipboard, expected);
+        // Every section collapses, including the partial ones at the far edges
+        assertEquals(0, clipboard.getPackedSectionCount());
+        assertEquals(1, clipboard.getPaletteSize(0, 0, 0));
+        assertEquals(1, clipboard.getPaletteSize(WIDTH - 1, HEIGHT - 1, LENGTH - 1));
+        // Writing into a collapsed section turns it back into a palette section
+        Random random = new Random(3);
+        fill(clipboard, expected, random, 3000, 5);
+        assertContents(clipboard, expected);
+        clipboard.flush();
+        assertContents(clipboard, expected);
+    }
+
+    @Test
+    public void testFlushCollapsesEdgeSection() {
+        PaletteOptimizedClipboard clipboard = create();
+        char[] expected = air();
+        char stone = (char) (BlockTypesCache.ReservedIDs.AIR + 1);
+        // Only the last, partial section on every axis
+        for (int y = 16; y < HEIGHT; y++) {
+            for (int z = 16; z < LENGTH; z++) {
+                for (int x = 32; x < WIDTH; x++) {
+                    clipboard.setOrdinal(x, y, z, stone);
+                    expected[index(x, y, z)] = stone;
+                }
+            }
+        }
+        assertEquals(1, clipboard.getPackedSectionCount());
+        assertEquals(2, clipboard.getPaletteSize(WIDTH - 1, HEIGHT - 1, LENGTH - 1));
+        clipboard.flush();
+        assertContents(clipboard, expected);
+        assertEquals(0, clipboard.getPackedSectionCount());
+        assertEquals(1, clipboard.getPaletteSize(WIDTH - 1, HEIGHT - 1, LENGTH - 1));
+    }
+
+    private static int sectionCount() {
+        return ((WIDTH + 15) >> 4) * ((HEIGHT + 15) >> 4) * ((LENGTH + 15) >> 4);
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.fastasyncworldedit.core.history;
+
+import com.fastasyncworldedit.core.configuration.Settings;
+import com.fastasyncworldedit.core.history.change.MutableBlockChange;
+import com.fastasyncworldedit.core.history.change.MutableFullBlockChange;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.world.World;
+import com.sk89q.worldedit.world.block.BlockTypesCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ChunkIndexedBlockFileTest {
+
+    private static final UUID PLAYER = UUID.randomUUID();
+
+    @TempDir
+    File folder;
+
+    private World world;
+    private boolean chunkIndexed;
+    private boolean storeRedo;
+
+    private record Change(int x, int y, int z, int from, int to) {
+
+    }
+
+    private static final Change[] CHANGES = {
+            new Change(0, 64, 0, 1, 100),
+            new Change(15, -64, 15, 2, 101),
+            new Change(16, 0, 0, 3, 102),
+            new Change(-1, 319, -1, 4, 103),
+            new Change(-17, 10, 33, 5, 104),
+            new Change(1000, 70, -1000, 6, 105),
+            new Change(0, 65, 0, 7, 106)
+    };
+
+    @BeforeEach
+    public void setup() {
+        world = mock(World.class);
+        when(world.getMinY()).thenReturn(-64);
+        when(world.getMaxY()).thenReturn(319);
+        when(world.getName()).thenReturn("world");
+        chunkIndexed = Settings.settings().HISTORY.CHUNK_INDEXED;
+        storeRedo = Settings.settings().HISTORY.STORE_REDO;
+        Settings.settings().HISTORY.CHUNK_INDEXED = true;
+    }
+
+    @AfterEach
+    public void reset() {
+        Settings.settings().HISTORY.CHUNK_INDEXED = chunkIndexed;
+        Settings.settings().HISTORY.STORE_REDO = storeRedo;
+    }
+
+    private DiskStorageHistory write(boolean redo) throws IOException {
+        Settings.settings().HISTORY.STORE_REDO = redo;
+        DiskStorageHistory history = new DiskStorageHistory(folder, world, PLAYER, 0);
+        for (Change change : CHANGES) {
+            history.add(change.x(), change.y(), change.z(), change.from(), change.to());
+        }
+        history.close();
+        assertTrue(history.getBDCFile().exists());
+        assertFalse(history.getBDFile().exists());
+        DiskStorageHistory read = new DiskStorageHistory(folder, world, PLAYER, 0);
+        assertTrue(read.isChunkIndexed());
+        return read;
+    }
+
+    private static Set<Change> read(Iterator<MutableBlockChange> iterator) {
+        Set<Change> changes = new HashSet<>();
+        while (iterator.hasNext()) {
+            MutableBlockChange change = iterator.next();
+            changes.add(new Change(change.x, change.y, change.z, change.ordinal, change.ordinal));
+        }
+        return changes;
+    }
+
+    private static Set<Change> expected(boolean dir) {
+        Set<Change> changes = new HashSet<>();
+        for (Change change : CHANGES) {
+            int id = dir ? change.to() : change.from();
+            changes.add(new Change(change.x(), change.y(), change.z(), id, id));
+        }
+        return changes;
+    }
+
+    @Test
+    public void testRoundTripWithRedo() throws IOException {
+        DiskStorageHistory history = write(true);
+        assertEquals(expected(false), read(history.getBlockIterator(false)));
+        assertEquals(expected(true), read(history.getBlockIterator(true)));
+    }
+
+    @Test
+    public void testRoundTripWithoutRedo() throws IOException {
+        DiskStorageHistory history = write(false);
+        // Without redo both directions yield the previous block, as with .bd history
+        assertEquals(expected(false), read(history.getBlockIterator(false)));
+        assertEquals(expected(false), read(history.getBlockIterator(true)));
+        Iterator<MutableFullBlockChange> iterator = history.getFullBlockIterator(null, 0, true, null);
+        int count = 0;
+        while (iterator.hasNext()) {
+            assertEquals(BlockTypesCache.ReservedIDs.AIR, iterator.next().to);
+            count++;
+        }
+        assertEquals(CHANGES.length, count);
+    }
+
+    @Test
+    public void testPartialRead() throws IOException {
+        DiskStorageHistory history = write(true);
+        Region region = new CuboidRegion(BlockVector3.at(-16, -64, -16), BlockVector3.at(15, 319, 15));
+        Set<Change> changes = new HashSet<>();
+        Iterator<MutableFullBlockChange> iterator = history.getFullBlockIterator(null, 0, true, new Region[]{region});
+        while (iterator.hasNext()) {
+            MutableFullBlockChange change = iterator.next();
+            changes.add(new Change(change.x, change.y, change.z, change.from, change.to));
+        }
+        Set<Change> expected = new HashSet<>();
+        for (Change change : CHANGES) {
+            if (region.containsChunk(change.x() >> 4, change.z() >> 4)) {
+                expected.add(change);
+            }
+        }
+        assertEquals(4, expected.size());
+        assertEquals(expected, changes);
+    }
+
+    @Test
+    public void testReadRuns() throws IOException {
+        DiskStorageHistory history = write(true);
+        int total = 0;
+        try (ChunkIndexedBlockFile.Reader reader = new ChunkIndexedBlockFile.Reader(history.getBDCFile())) {
+            assertTrue(reader.getRunCount() > 0);
+            for (int run = 0; run < reader.getRunCount(); run++) {
+                total += reader.readRun(run, Integer.MAX_VALUE).length;
+            }
+            assertEquals(1, reader.readRun(0, 1).length);
+        }
+        // x and z, short y and one byte varints for both ids
+        assertEquals(CHANGES.length * 5, total);
+    }
+
+}
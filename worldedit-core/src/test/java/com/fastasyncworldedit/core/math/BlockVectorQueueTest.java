@@ -0,0 +1,65 @@
+package com.fastasyncworldedit.core.math;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BlockVectorQueueTest {
+
+    private static final int[][] POSITIONS = {
+            {0, 0, 0},
+            {1, 2, 3},
+            {-1, -1, -1},
+            {15, -64, -16},
+            {-17, 319, 16},
+            // Largest coordinates the packed form can hold
+            {(1 << 25) - 1, 2047, (1 << 25) - 1},
+            {-(1 << 25), -2048, -(1 << 25)},
+            {30000000, -2048, -30000000}
+    };
+
+    @Test
+    public void testRoundTrip() {
+        BlockVectorQueue queue = new BlockVectorQueue();
+        for (int[] pos : POSITIONS) {
+            queue.add(pos[0], pos[1], pos[2]);
+        }
+        assertEquals(POSITIONS.length, queue.size());
+        for (int i = 0; i < POSITIONS.length; i++) {
+            assertEquals(POSITIONS[i][0], queue.getX(i));
+            assertEquals(POSITIONS[i][1], queue.getY(i));
+            assertEquals(POSITIONS[i][2], queue.getZ(i));
+        }
+    }
+
+    @Test
+    public void testGrowKeepsOrder() {
+        BlockVectorQueue queue = new BlockVectorQueue();
+        // Past the initial capacity a few times
+        for (int i = 0; i < 1000; i++) {
+            queue.add(i - 500, (i & 255) - 64, 500 - i);
+        }
+        assertEquals(1000, queue.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i - 500, queue.getX(i));
+            assertEquals((i & 255) - 64, queue.getY(i));
+            assertEquals(500 - i, queue.getZ(i));
+        }
+    }
+
+    @Test
+    public void testClear() {
+        BlockVectorQueue queue = new BlockVectorQueue();
+        queue.add(1, 2, 3);
+        queue.add(-4, -5, -6);
+        queue.clear();
+        assertTrue(queue.isEmpty());
+        queue.add(-7, 8, -9);
+        assertEquals(1, queue.size());
+        assertEquals(-7, queue.getX(0));
+        assertEquals(8, queue.getY(0));
+        assertEquals(-9, queue.getZ(0));
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.fastasyncworldedit.core.math;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SectionBitSetTest {
+
+    private static final int[][] POSITIONS = {
+            {0, 0, 0},
+            {15, 15, 15},
+            {16, 16, 16},
+            {-1, -1, -1},
+            {-16, -16, -16},
+            {-17, -17, -17},
+            {15, 0, -16},
+            {-16, 319, 15},
+            {0, -64, 0},
+            {0, -65, 0},
+            {30000000, 100, -30000000},
+            {-30000000, -2048, 30000000}
+    };
+
+    @Test
+    public void testAddAndContains() {
+        SectionBitSet set = new SectionBitSet();
+        for (int[] pos : POSITIONS) {
+            assertFalse(set.contains(pos[0], pos[1], pos[2]));
+            assertTrue(set.add(pos[0], pos[1], pos[2]));
+            assertTrue(set.contains(pos[0], pos[1], pos[2]));
+        }
+        assertEquals(POSITIONS.length, set.size());
+        for (int[] pos : POSITIONS) {
+            assertFalse(set.add(pos[0], pos[1], pos[2]), "position added twice");
+            assertTrue(set.contains(pos[0], pos[1], pos[2]));
+        }
+        assertEquals(POSITIONS.length, set.size());
+    }
+
+    @Test
+    public void testSectionBoundaries() {
+        SectionBitSet set = new SectionBitSet();
+        set.add(-1, 0, 0);
+        // Neighbours across the section boundary are different positions
+        assertFalse(set.contains(0, 0, 0));
+        assertFalse(set.contains(15, 0, 0));
+        assertFalse(set.contains(-17, 0, 0));
+        set.add(0, -1, 0);
+        assertFalse(set.contains(0, 15, 0));
+        assertFalse(set.contains(0, 0, 0));
+        set.add(0, 0, -16);
+        assertFalse(set.contains(0, 0, 0));
+        assertFalse(set.contains(0, 0, -17));
+        assertTrue(set.contains(-1, 0, 0));
+        assertTrue(set.contains(0, -1, 0));
+        assertTrue(set.contains(0, 0, -16));
+        assertEquals(3, set.size());
+    }
+
+    @Test
+    public void testWholeSection() {
+        SectionBitSet set = new SectionBitSet();
+        for (int y = -16; y < 0; y++) {
+            for (int z = -16; z < 0; z++) {
+                for (int x = -16; x < 0; x++) {
+                    assertTrue(set.add(x, y, z));
+                }
+            }
+        }
+        assertEquals(4096, set.size());
+        for (int y = -17; y <= 0; y++) {
+            for (int z = -17; z <= 0; z++) {
+                for (int x = -17; x <= 0; x++) {
+                    boolean inside = x >= -16 && x < 0 && y >= -16 && y < 0 && z >= -16 && z < 0;
+                    assertEquals(inside, set.contains(x, y, z));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testClear() {
+        SectionBitSet set = new SectionBitSet();
+        for (int[] pos : POSITIONS) {
+            set.add(pos[0], pos[1], pos[2]);
+        }
+        set.clear();
+        assertTrue(set.isEmpty());
+        for (int[] pos : POSITIONS) {
+            assertFalse(set.contains(pos[0], pos[1], pos[2]));
+        }
+        // Usable again after clearing
+        assertTrue(set.add(-1, -1, -1));
+        assertTrue(set.contains(-1, -1, -1));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    public void testForEach() {
+        SectionBitSet set = new SectionBitSet();
+        Set<Position> expected = new HashSet<>();
+        for (int[] pos : POSITIONS) {
+            set.add(pos[0], pos[1], pos[2]);
+            expected.add(new Position(pos[0], pos[1], pos[2]));
+        }
+        Set<Position> visited = new HashSet<>();
+        set.forEach((x, y, z, index) -> assertTrue(visited.add(new Position(x, y, z))));
+        assertEquals(expected, visited);
+    }
+
+    private record Position(int x, int y, int z) {
+
+    }
+
+}
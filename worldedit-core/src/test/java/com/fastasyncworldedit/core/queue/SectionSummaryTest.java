@@ -0,0 +1,110 @@
+package com.fastasyncworldedit.core.queue;
+
+import com.sk89q.worldedit.world.block.BlockTypesCache;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SectionSummaryTest {
+
+    private static final char STONE = 10;
+    private static final char DIRT = 11;
+
+    private static char[] empty() {
+        return new char[4096];
+    }
+
+    private static int index(int x, int y, int z) {
+        return y << 8 | z << 4 | x;
+    }
+
+    @Test
+    public void testEmpty() {
+        assertNull(SectionSummary.of(empty()));
+    }
+
+    @Test
+    public void testFullUniform() {
+        char[] blocks = empty();
+        Arrays.fill(blocks, STONE);
+        SectionSummary summary = SectionSummary.of(blocks);
+        assertTrue(summary.isFull());
+        assertTrue(summary.isUniform());
+        assertEquals(STONE, summary.getUniform());
+        assertEquals(4096, summary.getCount());
+        assertEquals(0, summary.getMinY());
+        assertEquals(15, summary.getMaxY());
+        for (long word : summary.getChanged()) {
+            assertEquals(-1L, word);
+        }
+    }
+
+    @Test
+    public void testSingleBlock() {
+        char[] blocks = empty();
+        int index = index(15, 7, 3);
+        blocks[index] = DIRT;
+        SectionSummary summary = SectionSummary.of(blocks);
+        assertFalse(summary.isFull());
+        assertTrue(summary.isUniform());
+        assertEquals(DIRT, summary.getUniform());
+        assertEquals(1, summary.getCount());
+        assertEquals(7, summary.getMinY());
+        assertEquals(7, summary.getMaxY());
+        assertTrue(summary.isChanged(index));
+        assertFalse(summary.isChanged(index - 1));
+        assertEquals(index, summary.nextChanged(0));
+        assertEquals(index, summary.nextChanged(index));
+        assertEquals(-1, summary.nextChanged(index + 1));
+        assertEquals(-1, summary.nextChanged(4096));
+    }
+
+    @Test
+    public void testMixed() {
+        char[] blocks = empty();
+        blocks[index(0, 2, 0)] = STONE;
+        blocks[index(5, 12, 9)] = DIRT;
+        SectionSummary summary = SectionSummary.of(blocks);
+        assertFalse(summary.isUniform());
+        assertEquals(BlockTypesCache.ReservedIDs.__RESERVED__, summary.getUniform());
+        assertEquals(2, summary.getCount());
+        assertEquals(2, summary.getMinY());
+        assertEquals(12, summary.getMaxY());
+    }
+
+    @Test
+    public void testNextChangedMatchesBlocks() {
+        Random random = new Random(0);
+        char[] blocks = empty();
+        int expectedCount = 0;
+        for (int i = 0; i < 4096; i++) {
+            // Sparse, with runs crossing the 64 entry words
+            if (random.nextInt(7) == 0 || (i >= 1000 && i < 1200)) {
+                blocks[i] = (char) (STONE + random.nextInt(3));
+                expectedCount++;
+            }
+        }
+        SectionSummary summary = SectionSummary.of(blocks);
+        assertEquals(expectedCount, summary.getCount());
+        int visited = 0;
+        int expected = 0;
+        for (int index = summary.nextChanged(0); index != -1; index = summary.nextChanged(index + 1)) {
+            while (blocks[expected] == BlockTypesCache.ReservedIDs.__RESERVED__) {
+                expected++;
+            }
+            assertEquals(expected++, index);
+            visited++;
+        }
+        assertEquals(expectedCount, visited);
+        for (int i = 0; i < 4096; i++) {
+            assertEquals(blocks[i] != BlockTypesCache.ReservedIDs.__RESERVED__, summary.isChanged(i));
+        }
+    }
+
+}
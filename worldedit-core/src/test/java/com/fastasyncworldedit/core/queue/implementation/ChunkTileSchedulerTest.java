@@ -0,0 +1,162 @@
+package com.fastasyncworldedit.core.queue.implementation;
+
+import com.fastasyncworldedit.core.util.MathMan;
+import com.sk89q.worldedit.math.BlockVector2;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChunkTileSchedulerTest {
+
+    private static List<BlockVector2> square(int minX, int minZ, int size) {
+        List<BlockVector2> chunks = new ArrayList<>();
+        for (int z = minZ; z < minZ + size; z++) {
+            for (int x = minX; x < minX + size; x++) {
+                chunks.add(BlockVector2.at(x, z));
+            }
+        }
+        return chunks;
+    }
+
+    private static Set<Long> keys(List<BlockVector2> chunks) {
+        Set<Long> keys = new HashSet<>();
+        for (BlockVector2 chunk : chunks) {
+            keys.add(MathMan.pairInt(chunk.getX(), chunk.getZ()));
+        }
+        return keys;
+    }
+
+    @Test
+    public void testEveryChunkOnce() {
+        List<BlockVector2> chunks = square(-13, 7, 21);
+        ChunkTileScheduler scheduler = new ChunkTileScheduler(chunks, 3);
+        Set<Long> seen = new HashSet<>();
+        for (int worker = 0; worker < 3; worker++) {
+            long[] tile;
+            while ((tile = scheduler.next(worker)) != null) {
+                for (long chunk : tile) {
+                    assertTrue(seen.add(chunk), "chunk handed out twice");
+                }
+            }
+        }
+        assertEquals(keys(chunks), seen);
+    }
+
+    @Test
+    public void testTilesAreAligned() {
+        List<BlockVector2> chunks = square(-32, -32, 64);
+        ChunkTileScheduler scheduler = new ChunkTileScheduler(chunks, 2);
+        int size = scheduler.getTileSize();
+        assertEquals(4, size);
+        long[] tile;
+        while ((tile = scheduler.next(0)) != null) {
+            int tileX = Math.floorDiv(MathMan.unpairIntX(tile[0]) + 32, size);
+            int tileZ = Math.floorDiv(MathMan.unpairIntY(tile[0]) + 32, size);
+            assertEquals(size * size, tile.length);
+            for (long chunk : tile) {
+                assertEquals(tileX, Math.floorDiv(MathMan.unpairIntX(chunk) + 32, size));
+                assertEquals(tileZ, Math.floorDiv(MathMan.unpairIntY(chunk) + 32, size));
+            }
+        }
+    }
+
+    @Test
+    public void testMortonOrder() {
+        ChunkTileScheduler scheduler = new ChunkTileScheduler(square(0, 0, 8), 1);
+        assertEquals(4, scheduler.getTileSize());
+        long[] first = scheduler.next(0);
+        // Z-order inside the first tile
+        assertEquals(MathMan.pairInt(0, 0), first[0]);
+        assertEquals(MathMan.pairInt(1, 0), first[1]);
+        assertEquals(MathMan.pairInt(0, 1), first[2]);
+        assertEquals(MathMan.pairInt(1, 1), first[3]);
+        assertEquals(MathMan.pairInt(2, 0), first[4]);
+        // then the tiles along the curve: +x, +z, +x+z
+        assertEquals(MathMan.pairInt(4, 0), scheduler.next(0)[0]);
+        assertEquals(MathMan.pairInt(0, 4), scheduler.next(0)[0]);
+        assertEquals(MathMan.pairInt(4, 4), scheduler.next(0)[0]);
+        assertNull(scheduler.next(0));
+    }
+
+    @Test
+    public void testSmallOperationsUseSmallerTiles() {
+        assertEquals(1, new ChunkTileScheduler(square(0, 0, 4), 4).getTileSize());
+        assertEquals(2, new ChunkTileScheduler(square(0, 0, 8), 4).getTileSize());
+    }
+
+    @Test
+    public void testStealing() {
+        ChunkTileScheduler scheduler = new ChunkTileScheduler(square(0, 0, 16), 4);
+        long[] own = scheduler.next(0);
+        int count = own.length;
+        long[] tile;
+        while ((tile = scheduler.next(0)) != null) {
+            count += tile.length;
+        }
+        // worker 0 took every tile, most of them from the other workers
+        assertEquals(256, count);
+        assertTrue(scheduler.getTilesStolen(0) > 0);
+        for (int worker = 1; worker < 4; worker++) {
+            assertNull(scheduler.next(worker));
+            assertEquals(0, scheduler.getTilesStolen(worker));
+        }
+    }
+
+    @Test
+    public void testStealsFromTheOtherEnd() {
+        // 16 tiles of 4x4 chunks, the first 8 along the curve for worker 0 and the last 8 for worker 1
+        ChunkTileScheduler scheduler = new ChunkTileScheduler(square(0, 0, 16), 2);
+        assertEquals(MathMan.pairInt(0, 8), scheduler.next(1)[0]);
+        for (int i = 0; i < 8; i++) {
+            scheduler.next(0);
+        }
+        assertEquals(0, scheduler.getTilesStolen(0));
+        // The stolen tile is the last of worker 1's run, the farthest from where worker 1 is working
+        assertEquals(MathMan.pairInt(12, 12), scheduler.next(0)[0]);
+        assertEquals(1, scheduler.getTilesStolen(0));
+    }
+
+    @Test
+    public void testConcurrentWorkers() throws InterruptedException {
+        List<BlockVector2> chunks = square(-50, -50, 100);
+        int workers = 8;
+        ChunkTileScheduler scheduler = new ChunkTileScheduler(chunks, workers);
+        Set<Long> seen = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(workers);
+        for (int i = 0; i < workers; i++) {
+            final int worker = i;
+            new Thread(() -> {
+                long[] tile;
+                while ((tile = scheduler.next(worker)) != null) {
+                    for (long chunk : tile) {
+                        if (!seen.add(chunk)) {
+                            duplicates.incrementAndGet();
+                        }
+                    }
+                    scheduler.complete(worker, tile.length, 1);
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        assertEquals(0, duplicates.get());
+        assertEquals(keys(chunks), seen);
+        long processed = 0;
+        for (int worker = 0; worker < workers; worker++) {
+            processed += scheduler.getChunksProcessed(worker);
+        }
+        assertEquals(chunks.size(), processed);
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.fastasyncworldedit.core.util;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictTrainer;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ZstdDictionaryTest {
+
+    private static ZstdDictionary dictionary;
+
+    /**
+     * Small samples sharing most of their content, like the headers and palettes of many small edits.
+     */
+    private static byte[] sample(Random random) {
+        StringBuilder builder = new StringBuilder("{\"palette\":[\"minecraft:air\",\"minecraft:stone\",\"minecraft:dirt\"");
+        builder.append(",\"minecraft:oak_log[axis=").append("xyz".charAt(random.nextInt(3))).append("]\"],\"blocks\":[");
+        for (int i = 0; i < 64; i++) {
+            builder.append(random.nextInt(4)).append(',');
+        }
+        return builder.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @BeforeAll
+    public static void train() {
+        Random random = new Random(0);
+        ZstdDictTrainer trainer = new ZstdDictTrainer(1 << 20, 1 << 12);
+        for (int i = 0; i < 2048; i++) {
+            trainer.addSample(sample(random));
+        }
+        dictionary = new ZstdDictionary(ZstdDictionary.Kind.HISTORY, 1, trainer.trainSamples());
+    }
+
+    @Test
+    public void testRoundTrip() {
+        byte[] bytes = sample(new Random(1));
+        byte[] compressed = dictionary.compress(bytes, ZstdDictionary.toZstdLevel(3));
+        assertArrayEquals(bytes, dictionary.decompress(compressed, null, bytes.length));
+        byte[] buffer = new byte[bytes.length];
+        assertSame(buffer, dictionary.decompress(compressed, buffer, bytes.length));
+        assertArrayEquals(bytes, buffer);
+    }
+
+    @Test
+    public void testSmallerThanWithoutDictionary() {
+        byte[] bytes = sample(new Random(2));
+        int level = ZstdDictionary.toZstdLevel(3);
+        assertTrue(dictionary.compress(bytes, level).length < Zstd.compress(bytes, level).length);
+    }
+
+    @Test
+    public void testSharedCodecs() {
+        assertSame(dictionary.getCompressor(5), dictionary.getCompressor(5));
+        assertSame(dictionary.getDecompressor(), dictionary.getDecompressor());
+    }
+
+    @Test
+    public void testLevels() {
+        assertEquals(3, ZstdDictionary.toZstdLevel(1));
+        assertEquals(1, ZstdDictionary.toZstdLevel(-5));
+        assertEquals(Zstd.maxCompressionLevel(), ZstdDictionary.toZstdLevel(100));
+    }
+
+}
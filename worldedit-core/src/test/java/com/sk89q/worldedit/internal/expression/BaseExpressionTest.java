@@ -121,8 +121,20 @@ public int getBlockDataRel(double x, double y, double z) {
 
     Expression compile(String expressionString, String... variableNames) throws ExpressionException {
         final Expression expression = Expression.compile(expressionString, variableNames);
+        //FAWE start - run with the method handle backend unless compiling to bytecode is forced
+        expression.setCompileThreshold(compileToBytecode() ? 0 : -1);
+        //FAWE end
         expression.optimize();
         return expression;
     }
 
+    //FAWE start
+    /**
+     * If expressions are compiled to bytecode by {@link Expression#optimize()}, or only run by the method handle backend.
+     */
+    boolean compileToBytecode() {
+        return false;
+    }
+    //FAWE end
+
 }
@@ -0,0 +1,13 @@
+package com.sk89q.worldedit.internal.expression;
+
+/**
+ * Runs every case of {@link ExpressionTest} with the expressions compiled to bytecode.
+ */
+class CompiledExpressionTest extends ExpressionTest {
+
+    @Override
+    boolean compileToBytecode() {
+        return true;
+    }
+
+}
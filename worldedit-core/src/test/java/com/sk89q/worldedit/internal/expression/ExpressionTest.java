@@ -92,6 +92,32 @@ void testVariables() {
 
     }
 
+    //FAWE start
+    @Test
+    void testLateVariables() {
+        assertEquals(10, simpleEval("a = 2; a *= 5"), 0);
+        assertEquals(2, simpleEval("for (i = 0, 2) { b = i; } i"), 0);
+
+        // only assigned on some paths
+        EvaluationException ex = assertThrows(
+                EvaluationException.class,
+                () -> simpleEval("if (0) a = 1; a")
+        );
+        assertTrue(ex.getMessage().contains("not initialized yet"));
+        ex = assertThrows(
+                EvaluationException.class,
+                () -> simpleEval("0 && (a = 1); a++")
+        );
+        assertTrue(ex.getMessage().contains("not initialized yet"));
+
+        // added to the slots when evaluated
+        Expression expression = compile("c = x * 2; c + 1", "x");
+        assertTrue(expression.getSlots().getSlotValue("c").isEmpty());
+        assertEquals(7, expression.evaluate(3D), 0);
+        assertEquals(6, readSlot(expression, "c"), 0);
+    }
+    //FAWE end
+
     @TestFactory
     Stream<DynamicNode> testModifyConstants() {
         return Stream.of("e", "pi", "true", "false").map(constant ->
@@ -10,6 +10,7 @@
 import com.fastasyncworldedit.core.Fawe;
 import com.fastasyncworldedit.core.IFawe;
 import com.fastasyncworldedit.core.queue.implementation.QueueHandler;
+import com.fastasyncworldedit.core.queue.implementation.preloader.AsyncPreloader;
 import com.fastasyncworldedit.core.queue.implementation.preloader.Preloader;
 import com.fastasyncworldedit.core.regions.FaweMaskManager;
 import com.fastasyncworldedit.core.util.TaskManager;
@@ -36,6 +37,7 @@ public class FawePNX implements IFawe, Listener {
 
     private static final Logger LOGGER = LogManagerCompat.getLogger();
     private final Plugin plugin;
+    private Preloader preloader;
 
     public FawePNX(Plugin plugin) {
         this.plugin = plugin;
@@ -200,7 +202,10 @@ public String getName(UUID uuid) {
 
     @Override
     public Preloader getPreloader(boolean initialise) {
-        return null;
+        if (preloader == null && initialise) {
+            return preloader = new AsyncPreloader();
+        }
+        return preloader;
     }
 
     @Override
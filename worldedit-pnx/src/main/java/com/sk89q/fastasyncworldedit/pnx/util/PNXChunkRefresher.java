@@ -0,0 +1,161 @@
+package com.sk89q.fastasyncworldedit.pnx.util;
+
+import cn.nukkit.Player;
+import cn.nukkit.level.Level;
+import cn.nukkit.level.Position;
+import com.fastasyncworldedit.core.configuration.Settings;
+import com.fastasyncworldedit.core.util.MathMan;
+import com.fastasyncworldedit.core.util.TaskManager;
+import com.sk89q.worldedit.pnx.PNXWorldEditPlugin;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resends edited chunks to the players that can see them.
+ * <p>
+ * Chunks can be queued from any thread and are collected until the next tick. They are then matched against the players
+ * of their level using a coarse grid of player positions, instead of checking every player for every chunk. Each player
+ * keeps a de-duplicated queue of chunks to resend, of which at most {@code queue.chunk-resends-per-player} are sent per
+ * tick, so a large edit doesn't flood a client with chunk packets all at once. A queue belongs to one level and is
+ * dropped when the player changes level.
+ */
+public final class PNXChunkRefresher implements Runnable {
+
+    public static final PNXChunkRefresher INSTANCE = new PNXChunkRefresher();
+
+    // Written from any thread, guarded by this
+    private Map<Level, LongOpenHashSet> dirty = new HashMap<>();
+    private int taskId = -1;
+    // Main thread only
+    private final Map<Player, PendingChunks> pending = new HashMap<>();
+
+    private PNXChunkRefresher() {
+    }
+
+    /**
+     * Queue a chunk to be resent to all players that have it in view.
+     *
+     * @param level  level of the chunk
+     * @param chunkX chunk X coordinate
+     * @param chunkZ chunk Z coordinate
+     */
+    public synchronized void refresh(Level level, int chunkX, int chunkZ) {
+        dirty.computeIfAbsent(level, l -> new LongOpenHashSet()).add(MathMan.pairInt(chunkX, chunkZ));
+        if (taskId == -1) {
+            taskId = TaskManager.taskManager().repeat(this, 1);
+        }
+    }
+
+    @Override
+    public void run() {
+        final Map<Level, LongOpenHashSet> toIndex;
+        synchronized (this) {
+            if (dirty.isEmpty() && pending.isEmpty()) {
+                TaskManager.taskManager().cancel(taskId);
+                taskId = -1;
+                return;
+            }
+            toIndex = dirty;
+            dirty = new HashMap<>();
+        }
+        final int maxView = PNXWorldEditPlugin.getInstance().getServer().getViewDistance();
+        for (Map.Entry<Level, LongOpenHashSet> entry : toIndex.entrySet()) {
+            assign(entry.getKey(), entry.getValue(), Math.max(1, maxView));
+        }
+        send();
+    }
+
+    private void assign(Level level, LongOpenHashSet chunks, int cellSize) {
+        // A player sees chunks at most cellSize away, so only the 3x3 cells around a chunk's cell can contain viewers
+        final Long2ObjectOpenHashMap<List<Player>> cells = new Long2ObjectOpenHashMap<>();
+        for (Player player : level.getPlayers().values()) {
+            final Position pos = player.getPosition();
+            final int cellX = Math.floorDiv(pos.getFloorX() >> 4, cellSize);
+            final int cellZ = Math.floorDiv(pos.getFloorZ() >> 4, cellSize);
+            cells.computeIfAbsent(MathMan.pairInt(cellX, cellZ), k -> new ArrayList<>()).add(player);
+        }
+        if (cells.isEmpty()) {
+            return;
+        }
+        final LongIterator iter = chunks.iterator();
+        while (iter.hasNext()) {
+            final long key = iter.nextLong();
+            final int chunkX = MathMan.unpairIntX(key);
+            final int chunkZ = MathMan.unpairIntY(key);
+            final int cellX = Math.floorDiv(chunkX, cellSize);
+            final int cellZ = Math.floorDiv(chunkZ, cellSize);
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    final List<Player> players = cells.get(MathMan.pairInt(cellX + dx, cellZ + dz));
+                    if (players == null) {
+                        continue;
+                    }
+                    for (Player player : players) {
+                        if (isInView(player, chunkX, chunkZ)) {
+                            PendingChunks queue = pending.get(player);
+                            if (queue == null || queue.level != level) {
+                                pending.put(player, queue = new PendingChunks(level));
+                            }
+                            queue.chunks.add(key);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void send() {
+        final int limit = Math.max(1, Settings.settings().QUEUE.CHUNK_RESENDS_PER_PLAYER);
+        final Iterator<Map.Entry<Player, PendingChunks>> iter = pending.entrySet().iterator();
+        while (iter.hasNext()) {
+            final Map.Entry<Player, PendingChunks> entry = iter.next();
+            final Player player = entry.getKey();
+            final Level level = entry.getValue().level;
+            final LongLinkedOpenHashSet chunks = entry.getValue().chunks;
+            // The player can't see chunks of a level it has left
+            if (!player.isOnline() || player.getLevel() != level) {
+                iter.remove();
+                continue;
+            }
+            for (int sent = 0; sent < limit && !chunks.isEmpty(); ) {
+                final long key = chunks.removeFirstLong();
+                final int chunkX = MathMan.unpairIntX(key);
+                final int chunkZ = MathMan.unpairIntY(key);
+                // The player may have moved away since the chunk was queued
+                if (isInView(player, chunkX, chunkZ)) {
+                    level.requestChunk(chunkX, chunkZ, player);
+                    sent++;
+                }
+            }
+            if (chunks.isEmpty()) {
+                iter.remove();
+            }
+        }
+    }
+
+    private static boolean isInView(Player player, int chunkX, int chunkZ) {
+        final Position pos = player.getPosition();
+        final int view = player.getViewDistance();
+        return Math.abs((pos.getFloorX() >> 4) - chunkX) <= view && Math.abs((pos.getFloorZ() >> 4) - chunkZ) <= view;
+    }
+
+    private static final class PendingChunks {
+
+        private final Level level;
+        private final LongLinkedOpenHashSet chunks = new LongLinkedOpenHashSet();
+
+        private PendingChunks(Level level) {
+            this.level = level;
+        }
+
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.sk89q.pnx.util.mappings.populator;
+
+import cn.nukkit.block.BlockAir;
+import cn.nukkit.registry.Registries;
+
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary cache of the resolved block mappings, so the JSON mapping doesn't have to be parsed and every state run through
+ * the block state updaters on each start.
+ * <p>
+ * The file stores, in mapping order, each FAWE state string with the hash of the PNX block state it resolved to. It is
+ * only used if it was written for the same cache version, i.e. the same PNX build and mapping file.
+ */
+final class BlockMappingCache {
+
+    private static final int MAGIC = 0x46415745; // "FAWE"
+    private static final int FORMAT_VERSION = 1;
+
+    private final Path file;
+    private final String version;
+
+    BlockMappingCache(Path file, String version) {
+        this.file = file;
+        this.version = version;
+    }
+
+    /**
+     * Resolved mappings, in the order of the mapping file. A {@code null} PNX state means the block has no PNX equivalent.
+     */
+    record Entries(String[] faweStates, cn.nukkit.block.BlockState[] pnxStates) {
+
+    }
+
+    /**
+     * Read the cache.
+     *
+     * @return the cached mappings, or {@code null} if there is no usable cache
+     */
+    @Nullable
+    Entries read() {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION || !version.equals(readString(buffer))) {
+                return null;
+            }
+            final int count = buffer.getInt();
+            final String[] faweStates = new String[count];
+            final cn.nukkit.block.BlockState[] pnxStates = new cn.nukkit.block.BlockState[count];
+            for (int i = 0; i < count; i++) {
+                faweStates[i] = readString(buffer);
+                if (buffer.get() != 0) {
+                    final cn.nukkit.block.BlockState state = Registries.BLOCKSTATE.get(buffer.getInt());
+                    pnxStates[i] = state == null ? BlockAir.STATE : state;
+                }
+            }
+            return new Entries(faweStates, pnxStates);
+        } catch (IOException | RuntimeException e) {
+            // Corrupt or truncated, it is rebuilt from the mapping file
+            return null;
+        }
+    }
+
+    /**
+     * Write the cache, replacing any existing one.
+     *
+     * @param entries resolved mappings
+     * @throws IOException if the cache could not be written
+     */
+    void write(Entries entries) throws IOException {
+        Files.createDirectories(file.getParent());
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            writeString(out, version);
+            out.writeInt(entries.faweStates().length);
+            for (int i = 0; i < entries.faweStates().length; i++) {
+                writeString(out, entries.faweStates()[i]);
+                final cn.nukkit.block.BlockState state = entries.pnxStates()[i];
+                if (state == null) {
+                    out.writeByte(0);
+                } else {
+                    out.writeByte(1);
+                    out.writeInt(state.blockStateHash());
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.sk89q.pnx.util.mappings.populator;
 
+import cn.nukkit.Server;
 import cn.nukkit.block.BlockAir;
 import cn.nukkit.block.BlockFlowingLava;
 import cn.nukkit.block.property.CommonBlockProperties;
@@ -21,11 +22,17 @@
 import com.sk89q.worldedit.world.block.BlockState;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
 
 
 /**
@@ -62,58 +69,115 @@ static Remapper of(Updater... updaters) {
         BlockStateUpdater_1_20_70.INSTANCE
     );
 
+    private static final String CACHE_FILE = "cache/block-mappings.bin";
+
+    /**
+     * Mappings resolved by {@link #registerBlockMappings()}, kept until {@link #initMapping2(BlockMappings)} has used them.
+     */
+    private static BlockMappingCache.Entries resolved;
+
     public static void initMapping2(BlockMappings blockMappings) {
-        try (InputStream stream = PNXWorldEditPlugin.
-                getInstance().
-                getInternalPlatform().
-                getResourceLoader().
-                getRootResource("mappings/blocks.json").openStream()) {
-            Map<String, Map<String, Object>> blocks = MappingRegistries.JSON_MAPPER.fromJson(
-                    new InputStreamReader(stream),
-                    Map.class
-            );
-            Object2ObjectOpenHashMap<cn.nukkit.block.BlockState, com.sk89q.worldedit.world.block.BlockState> PNX2FAWE = new Object2ObjectOpenHashMap<>();
-            blocks.forEach((k, v) -> {
-                final TreeMapCompoundTag treeMapCompoundTag = new TreeMapCompoundTag();
-                var name = v.get("bedrock_identifier").toString();
-                treeMapCompoundTag.putString("name", name);
-                final TreeMapCompoundTag stateTag = new TreeMapCompoundTag();
-                if (v.containsKey("bedrock_states")) {
-                    Map<String, Object> states = (Map<String, Object>) v.get("bedrock_states");
-                    states.forEach((key, value) -> {
-                        final String valueString = value.toString();
-                        if (valueString.equals("true") || valueString.equals("false")) {
-                            stateTag.putBoolean(key, Boolean.parseBoolean(valueString));
-                        } else if (value instanceof Number number) {
-                            stateTag.putInt(key, number.intValue());
-                        } else {
-                            stateTag.putString(key, value.toString());
-                        }
-                    });
-                }
-                treeMapCompoundTag.putCompound("states", stateTag);
-                treeMapCompoundTag.putString("version", "18087936");
+        final BlockMappingCache.Entries entries = resolve();
+        Object2ObjectOpenHashMap<cn.nukkit.block.BlockState, com.sk89q.worldedit.world.block.BlockState> PNX2FAWE = new Object2ObjectOpenHashMap<>();
+        for (int i = 0; i < entries.faweStates().length; i++) {
+            PNX2FAWE.put(entries.pnxStates()[i], BlockState.get(entries.faweStates()[i]));
+        }
+        final cn.nukkit.block.BlockState i = BlockFlowingLava.PROPERTIES.getBlockState(CommonBlockProperties.LIQUID_DEPTH.createValue(
+                0));
+        PNX2FAWE.put(i, BlockState.get("minecraft:lava[level=0]"));
+        PNX2FAWE.trim();
+        blockMappings.setMapping2(PNX2FAWE);
+        blockMappings.buildOrdinalTables();
+        synchronized (BlockRegistryPopulator.class) {
+            resolved = null;
+        }
+    }
 
-                final CompoundTag remappedTag = mapper.remap(treeMapCompoundTag);
-                final int i = HashUtils.fnv1a_32_nbt(remappedTag);
-                cn.nukkit.block.BlockState pnxBlockState = Registries.BLOCKSTATE.get(i);
-                if (pnxBlockState == null && !experimentalBlocks.contains(remappedTag.getString("name"))) {
-                    PNXWorldEditPlugin
-                            .getInstance()
-                            .getLogger()
-                            .error("cant find block state for %s".formatted(remappedTag.toSNBT()));
-                    pnxBlockState = BlockAir.STATE;
-                }
-                PNX2FAWE.put(pnxBlockState, BlockState.get(k));
-            });
-            final cn.nukkit.block.BlockState i = BlockFlowingLava.PROPERTIES.getBlockState(CommonBlockProperties.LIQUID_DEPTH.createValue(
-                    0));
-            PNX2FAWE.put(i, BlockState.get("minecraft:lava[level=0]"));
-            PNX2FAWE.trim();
-            blockMappings.setMapping2(PNX2FAWE);
+    /**
+     * Resolve the PNX block state of every FAWE block state in the mapping file. Uses the binary cache if it was written
+     * for the same PNX build and mapping file, otherwise parses the mapping file, resolving states in parallel, and
+     * writes the cache.
+     */
+    private static synchronized BlockMappingCache.Entries resolve() {
+        if (resolved != null) {
+            return resolved;
+        }
+        final PNXWorldEditPlugin plugin = PNXWorldEditPlugin.getInstance();
+        final byte[] json;
+        try (InputStream stream = plugin.getInternalPlatform().getResourceLoader().getRootResource("mappings/blocks.json")
+                .openStream()) {
+            json = stream.readAllBytes();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        final CRC32 crc = new CRC32();
+        crc.update(json);
+        final String version = Server.getInstance().getNukkitVersion() + "/" + Long.toHexString(crc.getValue());
+        final BlockMappingCache cache = new BlockMappingCache(plugin.getDataFolder().toPath().resolve(CACHE_FILE), version);
+
+        BlockMappingCache.Entries entries = cache.read();
+        if (entries == null) {
+            entries = parse(json);
+            try {
+                cache.write(entries);
+            } catch (IOException e) {
+                plugin.getLogger().warning("Unable to write block mapping cache: " + e.getMessage());
+            }
+        }
+        return resolved = entries;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BlockMappingCache.Entries parse(byte[] json) {
+        Map<String, Map<String, Object>> blocks = MappingRegistries.JSON_MAPPER.fromJson(
+                new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8),
+                Map.class
+        );
+        final List<Map.Entry<String, Map<String, Object>>> list = new ArrayList<>(blocks.entrySet());
+        final String[] faweStates = new String[list.size()];
+        final cn.nukkit.block.BlockState[] pnxStates = new cn.nukkit.block.BlockState[list.size()];
+        // Each state is independent, results are written by index to keep the file order
+        IntStream.range(0, list.size()).parallel().forEach(index -> {
+            final Map.Entry<String, Map<String, Object>> entry = list.get(index);
+            faweStates[index] = entry.getKey();
+            pnxStates[index] = toPNXState(entry.getValue());
+        });
+        return new BlockMappingCache.Entries(faweStates, pnxStates);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static cn.nukkit.block.BlockState toPNXState(Map<String, Object> v) {
+        final TreeMapCompoundTag treeMapCompoundTag = new TreeMapCompoundTag();
+        var name = v.get("bedrock_identifier").toString();
+        treeMapCompoundTag.putString("name", name);
+        final TreeMapCompoundTag stateTag = new TreeMapCompoundTag();
+        if (v.containsKey("bedrock_states")) {
+            Map<String, Object> states = (Map<String, Object>) v.get("bedrock_states");
+            states.forEach((key, value) -> {
+                final String valueString = value.toString();
+                if (valueString.equals("true") || valueString.equals("false")) {
+                    stateTag.putBoolean(key, Boolean.parseBoolean(valueString));
+                } else if (value instanceof Number number) {
+                    stateTag.putInt(key, number.intValue());
+                } else {
+                    stateTag.putString(key, value.toString());
+                }
+            });
+        }
+        treeMapCompoundTag.putCompound("states", stateTag);
+        treeMapCompoundTag.putString("version", "18087936");
+
+        final CompoundTag remappedTag = mapper.remap(treeMapCompoundTag);
+        final int i = HashUtils.fnv1a_32_nbt(remappedTag);
+        cn.nukkit.block.BlockState pnxBlockState = Registries.BLOCKSTATE.get(i);
+        if (pnxBlockState == null && !experimentalBlocks.contains(remappedTag.getString("name"))) {
+            PNXWorldEditPlugin
+                    .getInstance()
+                    .getLogger()
+                    .error("cant find block state for %s".formatted(remappedTag.toSNBT()));
+            pnxBlockState = BlockAir.STATE;
+        }
+        return pnxBlockState;
     }
 
     static final Set<String> experimentalBlocks = Set.of(
@@ -305,59 +369,18 @@ public static void initMapping2(BlockMappings blockMappings) {
 
 
     public static BlockMappings registerBlockMappings() {
-        try (InputStream stream = PNXWorldEditPlugin.
-                getInstance().
-                getInternalPlatform().
-                getResourceLoader().
-                getRootResource("mappings/blocks.json").openStream()) {
-            Map<String, Map<String, Object>> blocks = MappingRegistries.JSON_MAPPER.fromJson(
-                    new InputStreamReader(stream),
-                    Map.class
-            );
-            Object2ObjectOpenHashMap<String, cn.nukkit.block.BlockState> FAWE2PNX = new Object2ObjectOpenHashMap<>();
-            blocks.forEach((k, v) -> {
-                final TreeMapCompoundTag treeMapCompoundTag = new TreeMapCompoundTag();
-                var name = v.get("bedrock_identifier").toString();
-                treeMapCompoundTag.putString("name", name);
-                final TreeMapCompoundTag stateTag = new TreeMapCompoundTag();
-                if (v.containsKey("bedrock_states")) {
-                    Map<String, Object> states = (Map<String, Object>) v.get("bedrock_states");
-                    states.forEach((key, value) -> {
-                        final String valueString = value.toString();
-                        if (valueString.equals("true") || valueString.equals("false")) {
-                            stateTag.putBoolean(key, Boolean.parseBoolean(valueString));
-                        } else if (value instanceof Number number) {
-                            stateTag.putInt(key, number.intValue());
-                        } else {
-                            stateTag.putString(key, value.toString());
-                        }
-                    });
-                }
-                treeMapCompoundTag.putCompound("states", stateTag);
-                treeMapCompoundTag.putString("version", "18087936");
-
-                final CompoundTag remappedTag = mapper.remap(treeMapCompoundTag);
-                final int i = HashUtils.fnv1a_32_nbt(remappedTag);
-                cn.nukkit.block.BlockState pnxBlockState = Registries.BLOCKSTATE.get(i);
-                if (pnxBlockState == null && !experimentalBlocks.contains(remappedTag.getString("name"))) {
-                    PNXWorldEditPlugin
-                            .getInstance()
-                            .getLogger()
-                            .error("cant find block state for %s".formatted(remappedTag.toSNBT()));
-                    pnxBlockState = BlockAir.STATE;
-                }
-                FAWE2PNX.put(k, pnxBlockState);
-            });
-            final cn.nukkit.block.BlockState i = BlockFlowingLava.PROPERTIES.getBlockState(CommonBlockProperties.LIQUID_DEPTH.createValue(
-                    0));
-            FAWE2PNX.put("minecraft:lava[level=0]", i);
-            FAWE2PNX.trim();
-            return BlockMappings.builder()
-                    .mapping1(FAWE2PNX)
-                    .build();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        final BlockMappingCache.Entries entries = resolve();
+        Object2ObjectOpenHashMap<String, cn.nukkit.block.BlockState> FAWE2PNX = new Object2ObjectOpenHashMap<>();
+        for (int i = 0; i < entries.faweStates().length; i++) {
+            FAWE2PNX.put(entries.faweStates()[i], entries.pnxStates()[i]);
         }
+        final cn.nukkit.block.BlockState i = BlockFlowingLava.PROPERTIES.getBlockState(CommonBlockProperties.LIQUID_DEPTH.createValue(
+                0));
+        FAWE2PNX.put("minecraft:lava[level=0]", i);
+        FAWE2PNX.trim();
+        return BlockMappings.builder()
+                .mapping1(FAWE2PNX)
+                .build();
     }
 
 }
@@ -3,10 +3,14 @@
 
 import cn.nukkit.block.BlockAir;
 import cn.nukkit.block.BlockState;
+import com.sk89q.worldedit.world.block.BlockTypesCache;
+import it.unimi.dsi.fastutil.ints.Int2CharOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import lombok.Builder;
 import lombok.Data;
 
+import java.util.Arrays;
+
 @Builder
 @Data
 public class BlockMappings {
@@ -14,6 +18,16 @@ public class BlockMappings {
     Object2ObjectOpenHashMap<String, cn.nukkit.block.BlockState> mapping1;
     Object2ObjectOpenHashMap<cn.nukkit.block.BlockState, com.sk89q.worldedit.world.block.BlockState> mapping2;
 
+    /**
+     * FAWE ordinal -> PNX block state. Populated by {@code BlockRegistryPopulator#initMapping2} once the FAWE block
+     * states are known, {@code null} before that.
+     */
+    cn.nukkit.block.BlockState[] ordinalToPNX;
+    /**
+     * PNX block state hash -> FAWE ordinal. Unknown hashes return {@link BlockTypesCache.ReservedIDs#AIR}.
+     */
+    Int2CharOpenHashMap pnxHashToOrdinal;
+
     public cn.nukkit.block.BlockState getPNXBlock(String faweBlockState) {
         final BlockState blockState = mapping1.get(faweBlockState);
         if (blockState == null) {
@@ -23,7 +37,28 @@ public cn.nukkit.block.BlockState getPNXBlock(String faweBlockState) {
         }
     }
 
+    public cn.nukkit.block.BlockState getPNXBlock(com.sk89q.worldedit.world.block.BlockState faweBlockState) {
+        final cn.nukkit.block.BlockState[] table = ordinalToPNX;
+        if (table == null) {
+            return getPNXBlock(faweBlockState.getAsString());
+        }
+        return table[faweBlockState.getOrdinal()];
+    }
+
+    /**
+     * Get the PNX block state for a FAWE ordinal. Only valid once the ordinal tables have been built.
+     *
+     * @param ordinal FAWE block state ordinal
+     * @return the PNX block state, {@link BlockAir#STATE} if there is no mapping
+     */
+    public cn.nukkit.block.BlockState getPNXBlock(char ordinal) {
+        return ordinalToPNX[ordinal];
+    }
+
     public com.sk89q.worldedit.world.block.BlockState getFAWEBlock(cn.nukkit.block.BlockState pnxBlockState) {
+        if (pnxHashToOrdinal != null) {
+            return BlockTypesCache.states[pnxHashToOrdinal.get(pnxBlockState.blockStateHash())];
+        }
         final com.sk89q.worldedit.world.block.BlockState faweBlockState = mapping2.get(pnxBlockState);
         if (faweBlockState == null) {
             return com.sk89q.worldedit.world.block.BlockState.get("minecraft:air");
@@ -32,4 +67,40 @@ public com.sk89q.worldedit.world.block.BlockState getFAWEBlock(cn.nukkit.block.B
         }
     }
 
+    /**
+     * Get the FAWE ordinal for a PNX block state. Only valid once the ordinal tables have been built.
+     *
+     * @param pnxBlockState PNX block state
+     * @return the FAWE ordinal, {@link BlockTypesCache.ReservedIDs#AIR} if there is no mapping
+     */
+    public char getFAWEOrdinal(cn.nukkit.block.BlockState pnxBlockState) {
+        return pnxHashToOrdinal.get(pnxBlockState.blockStateHash());
+    }
+
+    /**
+     * Build the ordinal tables from the string and PNX state mappings. Must be called after the FAWE block states have
+     * been initialised.
+     */
+    public void buildOrdinalTables() {
+        final cn.nukkit.block.BlockState[] toPNX = new cn.nukkit.block.BlockState[BlockTypesCache.states.length];
+        Arrays.fill(toPNX, BlockAir.STATE);
+        mapping1.forEach((key, pnxState) -> {
+            if (pnxState != null) {
+                toPNX[com.sk89q.worldedit.world.block.BlockState.get(key).getOrdinal()] = pnxState;
+            }
+        });
+        final Int2CharOpenHashMap toFAWE = new Int2CharOpenHashMap(mapping2.size());
+        toFAWE.defaultReturnValue((char) BlockTypesCache.ReservedIDs.AIR);
+        mapping2.forEach((pnxState, faweState) -> {
+            if (pnxState != null) {
+                toFAWE.put(pnxState.blockStateHash(), faweState.getOrdinalChar());
+            }
+        });
+        // air, cave_air and void_air all map to the same PNX state, always read it back as plain air
+        toFAWE.put(BlockAir.STATE.blockStateHash(), (char) BlockTypesCache.ReservedIDs.AIR);
+        toFAWE.trim();
+        this.ordinalToPNX = toPNX;
+        this.pnxHashToOrdinal = toFAWE;
+    }
+
 }
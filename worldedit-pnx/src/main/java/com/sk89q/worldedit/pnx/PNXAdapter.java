@@ -56,7 +56,9 @@
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Arrays;
 import java.util.Locale;
+import java.util.Map;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -376,16 +378,56 @@ public static cn.nukkit.block.BlockState adapt(BlockType blockType) {
      * @return WorldEdit BiomeType
      */
     public static BiomeType adapt(int biome) {
+        final BiomeType[] table = getBiomeTables().toFAWE;
+        if (biome >= 0 && biome < table.length) {
+            return table[biome];
+        }
         return MappingRegistries.BIOME.get().get(biome);
     }
 
     public static int adapt(BiomeType biomeType) {
+        final int[] table = getBiomeTables().toPNX;
+        final int internalId = biomeType.getInternalId();
+        if (internalId < table.length && table[internalId] != -1) {
+            return table[internalId];
+        }
         if (!biomeType.getId().startsWith("minecraft:")) {
             throw new IllegalArgumentException("PNX only supports vanilla biomes");
         }
         return MappingRegistries.BIOME.get().inverse().get(biomeType);
     }
 
+    /**
+     * Biome lookups indexed by FAWE biome internal id and by PNX biome id, built from the biome mapping on first use.
+     */
+    private record BiomeTables(int[] toPNX, BiomeType[] toFAWE) {
+
+    }
+
+    private static volatile BiomeTables biomeTables;
+
+    private static BiomeTables getBiomeTables() {
+        BiomeTables tables = biomeTables;
+        if (tables == null) {
+            final Map<Integer, BiomeType> mapping = MappingRegistries.BIOME.get();
+            int maxInternalId = -1;
+            int maxPNXId = -1;
+            for (Map.Entry<Integer, BiomeType> entry : mapping.entrySet()) {
+                maxInternalId = Math.max(maxInternalId, entry.getValue().getInternalId());
+                maxPNXId = Math.max(maxPNXId, entry.getKey());
+            }
+            final int[] toPNX = new int[maxInternalId + 1];
+            Arrays.fill(toPNX, -1);
+            final BiomeType[] toFAWE = new BiomeType[maxPNXId + 1];
+            for (Map.Entry<Integer, BiomeType> entry : mapping.entrySet()) {
+                toPNX[entry.getValue().getInternalId()] = entry.getKey();
+                toFAWE[entry.getKey()] = entry.getValue();
+            }
+            biomeTables = tables = new BiomeTables(toPNX, toFAWE);
+        }
+        return tables;
+    }
+
     /**
      * Create a WorldEdit EntityType from a PNX one.
      *
@@ -455,7 +497,7 @@ public static BlockState adapt(@Nonnull cn.nukkit.block.BlockState blockData) {
      * @return The PNX BlockState
      */
     public static cn.nukkit.block.BlockState adapt(@Nonnull BlockState block) {
-        return MappingRegistries.BLOCKS.getPNXBlock(block.getAsString());
+        return MappingRegistries.BLOCKS.getPNXBlock(block);
     }
 
     /**
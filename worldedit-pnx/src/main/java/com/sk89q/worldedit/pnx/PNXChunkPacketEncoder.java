@@ -0,0 +1,204 @@
+package com.sk89q.worldedit.pnx;
+
+import cn.nukkit.level.Level;
+import cn.nukkit.network.protocol.LevelChunkPacket;
+import com.fastasyncworldedit.core.queue.IBlocks;
+import com.fastasyncworldedit.core.queue.IChunkGet;
+import com.fastasyncworldedit.core.queue.implementation.packet.ChunkPacket;
+import com.sk89q.pnx.util.mappings.MappingRegistries;
+import com.sk89q.pnx.util.mappings.type.BlockMappings;
+import com.sk89q.worldedit.world.biome.BiomeType;
+import com.sk89q.worldedit.world.biome.BiomeTypes;
+import com.sk89q.worldedit.world.block.BlockTypesCache;
+import it.unimi.dsi.fastutil.chars.Char2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Serializes a FAWE {@link ChunkPacket} into a Bedrock {@link LevelChunkPacket}.
+ * <p>
+ * Sections that are completely defined by the packet are encoded once and cached for the lifetime of the packet, so a
+ * preview chunk can be sent to any number of viewers, or moved with {@link ChunkPacket#setPosition(int, int)}, without
+ * encoding its blocks again. The assembled packet itself is cached as the packet's native packet.
+ */
+final class PNXChunkPacketEncoder {
+
+    private static final int SUB_CHUNK_VERSION = 9;
+    private static final int[] BITS_PER_ENTRY = {1, 2, 3, 4, 5, 6, 8, 16};
+    /**
+     * Storage header telling the client to repeat the previous storage.
+     */
+    private static final int COPY_LAST_HEADER = 0x7F << 1 | 1;
+
+    private static final Map<ChunkPacket, byte[][]> SECTION_CACHE = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private PNXChunkPacketEncoder() {
+    }
+
+    /**
+     * Get the Bedrock packet for the given FAWE packet, encoding it if required. Only packets of full chunks are kept
+     * as a whole, others are encoded again each time from their cached sections and the current world.
+     *
+     * @param packet FAWE chunk packet
+     * @param world  world the packet is sent in, used for sections not replaced by the packet
+     * @return the native packet
+     */
+    static LevelChunkPacket getPacket(ChunkPacket packet, PNXWorld world) {
+        synchronized (packet) {
+            if (packet.getNativePacket() instanceof LevelChunkPacket nativePacket) {
+                return nativePacket;
+            }
+            final Level level = world.getWorld();
+            final int minSection = level.getDimensionData().getMinSectionY();
+            final int maxSection = level.getDimensionData().getMaxSectionY();
+            final int sectionCount = maxSection - minSection + 1;
+            final IBlocks chunk = packet.getChunk();
+            final byte[][] cached = SECTION_CACHE.computeIfAbsent(packet, p -> new byte[sectionCount][]);
+            IChunkGet worldChunk = null;
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(sectionCount * 512);
+            for (int layer = minSection; layer <= maxSection; layer++) {
+                final int sectionIndex = layer - minSection;
+                byte[] payload = cached[sectionIndex];
+                if (payload == null) {
+                    final char[] blocks = chunk.loadIfPresent(layer);
+                    if (packet.isFull() || (blocks != null && PNXChunkSections.isFull(blocks))) {
+                        // Independent of the world, safe to keep around
+                        payload = cached[sectionIndex] = encodeSection(layer, blocks);
+                    } else {
+                        if (worldChunk == null) {
+                            worldChunk = world.get(packet.getChunkX(), packet.getChunkZ());
+                        }
+                        payload = encodeSection(layer, overlay(worldChunk.load(layer), blocks));
+                    }
+                }
+                out.writeBytes(payload);
+            }
+
+            int lastBiome = -1;
+            for (int layer = minSection; layer <= maxSection; layer++) {
+                BiomeType biome = chunk.getBiomeType(8, (layer << 4) + 8, 8);
+                if (biome == null) {
+                    if (worldChunk == null) {
+                        worldChunk = world.get(packet.getChunkX(), packet.getChunkZ());
+                    }
+                    biome = worldChunk.getBiomeType(8, (layer << 4) + 8, 8);
+                }
+                final int biomeId = PNXAdapter.adapt(biome == null ? BiomeTypes.PLAINS : biome);
+                if (biomeId == lastBiome) {
+                    out.write(COPY_LAST_HEADER);
+                } else {
+                    // Single entry storage, zero bits per entry and no palette length
+                    out.write(1);
+                    writeVarInt(out, biomeId);
+                    lastBiome = biomeId;
+                }
+            }
+            out.write(0); // border blocks
+
+            final LevelChunkPacket nativePacket = new LevelChunkPacket();
+            nativePacket.chunkX = packet.getChunkX();
+            nativePacket.chunkZ = packet.getChunkZ();
+            nativePacket.dimension = level.getDimension();
+            nativePacket.subChunkCount = sectionCount;
+            nativePacket.cacheEnabled = false;
+            nativePacket.data = out.toByteArray();
+            if (packet.isFull()) {
+                // Otherwise parts were taken from the world, and may be stale by the time the packet is sent again
+                packet.setNativePacket(nativePacket);
+            }
+            return nativePacket;
+        }
+    }
+
+    private static char[] overlay(char[] base, char[] blocks) {
+        final char[] result = base.clone();
+        if (blocks != null) {
+            for (int i = 0; i < 4096; i++) {
+                if (blocks[i] != BlockTypesCache.ReservedIDs.__RESERVED__) {
+                    result[i] = blocks[i];
+                }
+            }
+        }
+        return result;
+    }
+
+    private static byte[] encodeSection(int sectionY, char[] blocks) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(SUB_CHUNK_VERSION);
+        out.write(1); // storage count
+        out.write(sectionY);
+        if (blocks == null) {
+            out.write(1);
+            writeVarInt(out, MappingRegistries.BLOCKS.getPNXBlock((char) BlockTypesCache.ReservedIDs.AIR).blockStateHash());
+            return out.toByteArray();
+        }
+
+        final BlockMappings mappings = MappingRegistries.BLOCKS;
+        final Char2IntOpenHashMap paletteIndex = new Char2IntOpenHashMap();
+        paletteIndex.defaultReturnValue(-1);
+        final IntArrayList palette = new IntArrayList();
+        final int[] indices = new int[4096];
+        for (int index = 0; index < 4096; index++) {
+            char ordinal = blocks[index];
+            if (ordinal == BlockTypesCache.ReservedIDs.__RESERVED__) {
+                ordinal = BlockTypesCache.ReservedIDs.AIR;
+            }
+            int paletteId = paletteIndex.get(ordinal);
+            if (paletteId == -1) {
+                paletteId = palette.size();
+                paletteIndex.put(ordinal, paletteId);
+                palette.add(mappings.getPNXBlock(ordinal).blockStateHash());
+            }
+            indices[PNXChunkSections.toPNXIndex(index)] = paletteId;
+        }
+
+        if (palette.size() == 1) {
+            out.write(1);
+            writeVarInt(out, palette.getInt(0));
+            return out.toByteArray();
+        }
+        int bits = BITS_PER_ENTRY[BITS_PER_ENTRY.length - 1];
+        for (int candidate : BITS_PER_ENTRY) {
+            if (1 << candidate >= palette.size()) {
+                bits = candidate;
+                break;
+            }
+        }
+        final int perWord = 32 / bits;
+        final int wordCount = (4096 + perWord - 1) / perWord;
+        out.write(bits << 1 | 1);
+        for (int word = 0, index = 0; word < wordCount; word++) {
+            int value = 0;
+            for (int i = 0; i < perWord && index < 4096; i++, index++) {
+                value |= indices[index] << (i * bits);
+            }
+            out.write(value);
+            out.write(value >>> 8);
+            out.write(value >>> 16);
+            out.write(value >>> 24);
+        }
+        writeVarInt(out, palette.size());
+        for (int i = 0; i < palette.size(); i++) {
+            writeVarInt(out, palette.getInt(i));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Write a zigzag encoded signed var int.
+     */
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        int encoded = (value << 1) ^ (value >> 31);
+        while ((encoded & ~0x7F) != 0) {
+            out.write((encoded & 0x7F) | 0x80);
+            encoded >>>= 7;
+        }
+        out.write(encoded);
+    }
+
+}
@@ -0,0 +1,306 @@
+package com.sk89q.worldedit.pnx;
+
+import cn.nukkit.block.BlockAir;
+import cn.nukkit.level.format.ChunkSection;
+import cn.nukkit.level.format.palette.Palette;
+import cn.nukkit.level.util.NibbleArray;
+import com.sk89q.pnx.util.mappings.MappingRegistries;
+import com.sk89q.pnx.util.mappings.type.BlockMappings;
+import com.sk89q.worldedit.world.biome.BiomeType;
+import com.sk89q.worldedit.world.block.BlockTypesCache;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * Bulk transfer between FAWE {@code char[]} section layers and PNX {@link ChunkSection}s.
+ * <p>
+ * FAWE layers are indexed {@code y << 8 | z << 4 | x}, PNX palettes {@code x << 8 | z << 4 | y}.
+ */
+final class PNXChunkSections {
+
+    private PNXChunkSections() {
+    }
+
+    /**
+     * Index into a PNX section palette for the given FAWE section index.
+     *
+     * @param index FAWE section index
+     * @return PNX section index
+     */
+    static int toPNXIndex(int index) {
+        return (index & 15) << 8 | (index & 0xF0) | index >> 8;
+    }
+
+    /**
+     * Check if every entry of a FAWE layer is set, i.e. contains no {@link BlockTypesCache.ReservedIDs#__RESERVED__}.
+     *
+     * @param blocks FAWE layer
+     * @return true if the layer replaces the whole section
+     */
+    static boolean isFull(char[] blocks) {
+        for (char ordinal : blocks) {
+            if (ordinal == BlockTypesCache.ReservedIDs.__RESERVED__) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Build a new section from a FAWE layer, building the block palette straight from the ordinals. Reserved entries are
+     * left as air. Biomes, light and the liquid layer are copied from the existing section, if present, so the result
+     * can be swapped in place of it. No block, biome or light data is shared with the existing section, which may still
+     * be read for history.
+     * <p>
+     * The block change counter of the existing section is deliberately shared. It holds no block data, so history is
+     * unaffected. Sharing it keeps the section's change count going across the swap instead of restarting at zero. A
+     * write that still lands on the old section object after the swap also bumps the counter that
+     * {@code PNXGetBlocks} compares before swapping in a section prepared against the new one.
+     *
+     * @param sectionY section Y coordinate
+     * @param blocks   FAWE layer
+     * @param existing the section being replaced, may be null
+     * @return the new section
+     */
+    @SuppressWarnings("unchecked")
+    static ChunkSection newSection(int sectionY, char[] blocks, @Nullable ChunkSection existing) {
+        final BlockMappings mappings = MappingRegistries.BLOCKS;
+        final Palette<cn.nukkit.block.BlockState> palette = new Palette<>(BlockAir.STATE);
+        char lastOrdinal = BlockTypesCache.ReservedIDs.AIR;
+        cn.nukkit.block.BlockState lastState = BlockAir.STATE;
+        for (int index = 0; index < 4096; index++) {
+            final char ordinal = blocks[index];
+            if (ordinal <= BlockTypesCache.ReservedIDs.VOID_AIR) {
+                // reserved or air, the palette is already filled with air
+                continue;
+            }
+            if (ordinal != lastOrdinal) {
+                lastOrdinal = ordinal;
+                lastState = mappings.getPNXBlock(ordinal);
+            }
+            palette.set(toPNXIndex(index), lastState);
+        }
+        if (existing == null) {
+            return new ChunkSection((byte) sectionY, new Palette[]{palette, new Palette<>(BlockAir.STATE)});
+        }
+        return new ChunkSection(
+                (byte) sectionY,
+                new Palette[]{palette, existing.blockLayer()[1].copy()},
+                existing.biomes().copy(),
+                existing.blockLights().copy(),
+                existing.skyLights().copy(),
+                existing.blockChanges()
+        );
+    }
+
+    /**
+     * Write every non-reserved entry of a FAWE layer into an existing section in a single pass.
+     *
+     * @param section section to write to
+     * @param blocks  FAWE layer
+     */
+    static void mergeSection(ChunkSection section, char[] blocks) {
+        final BlockMappings mappings = MappingRegistries.BLOCKS;
+        char lastOrdinal = BlockTypesCache.ReservedIDs.AIR;
+        cn.nukkit.block.BlockState lastState = BlockAir.STATE;
+        for (int y = 0, index = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++, index++) {
+                    final char ordinal = blocks[index];
+                    if (ordinal == BlockTypesCache.ReservedIDs.__RESERVED__) {
+                        continue;
+                    }
+                    if (ordinal != lastOrdinal) {
+                        lastOrdinal = ordinal;
+                        lastState = mappings.getPNXBlock(ordinal);
+                    }
+                    section.setBlockState(x, y, z, lastState, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the block layer of a section into a FAWE layer.
+     *
+     * @param section section to read
+     * @param data    FAWE layer to fill
+     * @return the given layer
+     */
+    static char[] readSection(ChunkSection section, char[] data) {
+        final BlockMappings mappings = MappingRegistries.BLOCKS;
+        // Sections are dominated by a handful of states, so only hit the hash table when the state changes
+        cn.nukkit.block.BlockState last = null;
+        char lastOrdinal = BlockTypesCache.ReservedIDs.AIR;
+        for (int y = 0, index = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++, index++) {
+                    final cn.nukkit.block.BlockState state = section.getBlockState(x, y, z);
+                    if (state != last) {
+                        last = state;
+                        lastOrdinal = mappings.getFAWEOrdinal(state);
+                    }
+                    data[index] = lastOrdinal;
+                }
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Write FAWE biomes, 4x4x4 cells indexed {@code y << 4 | z << 2 | x}, into a copy of the biomes of a section. Null
+     * cells keep the biome of the given section. If every cell is set to the same biome, a single entry palette is used
+     * instead. The given section is not modified, the returned section has to be swapped in place of it.
+     *
+     * @param section section to take the other biomes, blocks and light from
+     * @param biomes  FAWE biomes of the section
+     * @return a new section holding the new biomes
+     */
+    static ChunkSection writeBiomes(ChunkSection section, BiomeType[] biomes) {
+        final BiomeType first = biomes[0];
+        boolean uniform = first != null;
+        for (int i = 1; uniform && i < biomes.length; i++) {
+            uniform = biomes[i] == first;
+        }
+        final Palette<Integer> palette;
+        if (uniform) {
+            palette = new Palette<>(PNXAdapter.adapt(first));
+        } else {
+            palette = section.biomes().copy();
+            fillBiomes(palette, biomes);
+        }
+        return new ChunkSection(
+                section.y(),
+                section.blockLayer(),
+                palette,
+                section.blockLights(),
+                section.skyLights(),
+                section.blockChanges()
+        );
+    }
+
+    /**
+     * Copy a section with its own light, so light can be written to the copy while the given section stays in use. The
+     * block and biome palettes are shared with the given section, the returned section has to be swapped in place of it.
+     *
+     * @param section section to copy
+     * @return a new section holding a copy of the light
+     */
+    static ChunkSection copyLight(ChunkSection section) {
+        return new ChunkSection(
+                section.y(),
+                section.blockLayer(),
+                section.biomes(),
+                section.blockLights().copy(),
+                section.skyLights().copy(),
+                section.blockChanges()
+        );
+    }
+
+    private static void fillBiomes(Palette<Integer> palette, BiomeType[] biomes) {
+        BiomeType lastBiome = null;
+        Integer lastId = null;
+        for (int y = 0, index = 0; y < 4; y++) {
+            for (int z = 0; z < 4; z++) {
+                for (int x = 0; x < 4; x++, index++) {
+                    final BiomeType biome = biomes[index];
+                    if (biome == null) {
+                        continue;
+                    }
+                    if (biome != lastBiome) {
+                        lastBiome = biome;
+                        lastId = PNXAdapter.adapt(biome);
+                    }
+                    // Fill the 4x4x4 cell
+                    final int base = x << 10 | z << 6 | y << 2;
+                    for (int dx = 0; dx < 4; dx++) {
+                        for (int dz = 0; dz < 4; dz++) {
+                            final int column = base | dx << 8 | dz << 4;
+                            for (int dy = 0; dy < 4; dy++) {
+                                palette.set(column | dy, lastId);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the biomes of a section at FAWE's 4x4x4 cell resolution.
+     *
+     * @param section section to read
+     * @return FAWE biomes of the section, indexed {@code y << 4 | z << 2 | x}
+     */
+    static BiomeType[] readBiomes(ChunkSection section) {
+        final Palette<Integer> palette = section.biomes();
+        final BiomeType[] biomes = new BiomeType[64];
+        for (int y = 0, index = 0; y < 4; y++) {
+            for (int z = 0; z < 4; z++) {
+                for (int x = 0; x < 4; x++, index++) {
+                    biomes[index] = PNXAdapter.adapt(palette.get(x << 10 | z << 6 | y << 2));
+                }
+            }
+        }
+        return biomes;
+    }
+
+    /**
+     * Set every light value of a section to zero.
+     *
+     * @param section section to clear
+     * @param sky    if sky light should be cleared as well as block light
+     */
+    static void clearLight(ChunkSection section, boolean sky) {
+        Arrays.fill(section.blockLights().getData(), (byte) 0);
+        if (sky) {
+            Arrays.fill(section.skyLights().getData(), (byte) 0);
+        }
+    }
+
+    /**
+     * Copy a FAWE light layer into a PNX light nibble array. Values of 16 and above mean "unset" in FAWE and leave the
+     * existing value untouched.
+     *
+     * @param target PNX light storage
+     * @param light  FAWE light layer
+     */
+    static void importLight(NibbleArray target, char[] light) {
+        final byte[] data = target.getData();
+        final char first = light[0];
+        if (first < 16) {
+            boolean uniform = true;
+            for (char value : light) {
+                if (value != first) {
+                    uniform = false;
+                    break;
+                }
+            }
+            if (uniform) {
+                Arrays.fill(data, (byte) (first << 4 | first));
+                return;
+            }
+        }
+        // Two vertically adjacent values share a byte in PNX order
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                final int column = z << 4 | x;
+                final int base = (x << 8 | z << 4) >> 1;
+                for (int y = 0; y < 16; y += 2) {
+                    final char lower = light[y << 8 | column];
+                    final char upper = light[(y + 1) << 8 | column];
+                    final int i = base + (y >> 1);
+                    if (lower < 16 && upper < 16) {
+                        data[i] = (byte) (upper << 4 | lower);
+                    } else if (lower < 16) {
+                        data[i] = (byte) (data[i] & 0xF0 | lower);
+                    } else if (upper < 16) {
+                        data[i] = (byte) (data[i] & 0x0F | upper << 4);
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -1,22 +1,23 @@
 package com.sk89q.worldedit.pnx;
 
-import cn.nukkit.block.BlockAir;
 import cn.nukkit.blockentity.BlockEntity;
 import cn.nukkit.entity.Entity;
 import cn.nukkit.level.Level;
 import cn.nukkit.level.Location;
 import cn.nukkit.level.format.ChunkSection;
 import cn.nukkit.level.format.IChunk;
-import cn.nukkit.level.format.palette.Palette;
 import com.fastasyncworldedit.core.Fawe;
 import com.fastasyncworldedit.core.FaweCache;
 import com.fastasyncworldedit.core.configuration.Settings;
 import com.fastasyncworldedit.core.extent.processor.heightmap.HeightMapType;
 import com.fastasyncworldedit.core.queue.IChunkGet;
 import com.fastasyncworldedit.core.queue.IChunkSet;
+import com.fastasyncworldedit.core.queue.implementation.CommitMetrics;
+import com.fastasyncworldedit.core.queue.implementation.CommitSource;
 import com.fastasyncworldedit.core.queue.implementation.QueueHandler;
 import com.fastasyncworldedit.core.queue.implementation.blocks.CharGetBlocks;
 import com.google.common.base.Preconditions;
+import com.sk89q.fastasyncworldedit.pnx.util.PNXChunkRefresher;
 import com.sk89q.jnbt.CompoundTag;
 import com.sk89q.jnbt.ListTag;
 import com.sk89q.jnbt.StringTag;
@@ -24,14 +25,13 @@
 import com.sk89q.worldedit.internal.util.LogManagerCompat;
 import com.sk89q.worldedit.math.BlockVector3;
 import com.sk89q.worldedit.world.biome.BiomeType;
-import com.sk89q.worldedit.world.biome.BiomeTypes;
 import com.sk89q.worldedit.world.block.BaseBlock;
 import com.sk89q.worldedit.world.block.BlockState;
-import com.sk89q.worldedit.world.block.BlockTypes;
 import com.sk89q.worldedit.world.block.BlockTypesCache;
 import com.sk89q.worldedit.world.entity.EntityType;
 import org.apache.logging.log4j.Logger;
 
+import javax.annotation.Nullable;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -54,6 +54,7 @@ public class PNXGetBlocks extends CharGetBlocks {
     private final int minHeight;
     private final int maxHeight;
     private boolean createCopy = false;
+    private CommitSource commitSource;
     private PNXGetBlocks_Copy copy = null;
     private boolean forceLoadSections = true;
     private boolean lightUpdate = false;
@@ -61,20 +62,32 @@ public class PNXGetBlocks extends CharGetBlocks {
     private IChunk pnxChunk;
 
     public PNXGetBlocks(Level serverLevel, int chunkX, int chunkZ) {
+        this(serverLevel, loadChunk(serverLevel, chunkX, chunkZ));
+    }
+
+    /**
+     * Wrap a chunk that is not necessarily part of the level, e.g. a scratch chunk produced by the level's generator.
+     *
+     * @param serverLevel the level the chunk belongs to
+     * @param chunk       the chunk
+     */
+    PNXGetBlocks(Level serverLevel, IChunk chunk) {
         super(serverLevel.getDimensionData().getMinSectionY(), serverLevel.getDimensionData().getMaxSectionY());
         this.serverLevel = serverLevel;
-        this.chunkX = chunkX;
-        this.chunkZ = chunkZ;
+        this.chunkX = chunk.getX();
+        this.chunkZ = chunk.getZ();
         this.minHeight = serverLevel.getMinHeight();
         this.maxHeight = serverLevel.getMaxHeight();
+        this.pnxChunk = chunk;
+        this.pnxChunkSections = this.pnxChunk.getSections();
+    }
 
+    private static IChunk loadChunk(Level serverLevel, int chunkX, int chunkZ) {
         IChunk chunk = serverLevel.getChunk(chunkX, chunkZ);
         if (chunk == null) {
             chunk = serverLevel.getChunk(chunkX, chunkZ, true);
         }
-
-        this.pnxChunk = chunk;
-        this.pnxChunkSections = this.pnxChunk.getSections();
+        return chunk;
     }
 
     @Override
@@ -109,6 +122,11 @@ public void setCreateCopy(boolean createCopy) {
         this.createCopy = createCopy;
     }
 
+    @Override
+    public void setCommitSource(CommitSource commitSource) {
+        this.commitSource = commitSource;
+    }
+
     @Override
     public IChunkGet getCopy() {
         return copy;
@@ -171,22 +189,7 @@ public void removeSectionLighting(int layer, boolean sky) {
         layer -= getMinSectionPosition();
         if (this.pnxChunkSections[layer] != null && !(this.pnxChunkSections[layer].isEmpty())) {
             lightUpdate = true;
-                for (int x = 0; x < 16; x++) {
-                    for (int y = 0; y < 16; y++) {
-                        for (int z = 0; z < 16; z++) {
-                            this.pnxChunkSections[layer].setBlockLight(x, y, z, (byte) 0);
-                        }
-                    }
-                }
-            if (sky) {
-                    for (int x = 0; x < 16; x++) {
-                        for (int y = 0; y < 16; y++) {
-                            for (int z = 0; z < 16; z++) {
-                                this.pnxChunkSections[layer].setBlockSkyLight(x, y, z, (byte) 0);
-                            }
-                        }
-                    }
-            }
+            PNXChunkSections.clearLight(this.pnxChunkSections[layer], sky);
         }
     }
 
@@ -247,393 +250,457 @@ private void removeEntity(Entity entity) {
     public IChunk ensureLoaded(Level nmsWorld, int chunkX, int chunkZ) {
         return nmsWorld.getChunkIfLoaded(chunkX, chunkZ);
     }
-
-    private void setChunkBlocks(final IChunkSet set) {
-        for (int x = 0; x < 16; x++) {
-            for (int y = set.getMinSectionPosition() * 16; y < set.getMaxSectionPosition() * 16 + 16; y++) {
-                for (int z = 0; z < 16; z++) {
-                    BlockState combined = set.getBlock(x, y, z);
-                    if (combined.getBlockType() == BlockTypes.__RESERVED__) {
-                        continue;
-                    }
-                    if (combined.getBlockType() == BlockTypes.AIR ||
-                            combined.getBlockType() == BlockTypes.CAVE_AIR ||
-                            combined.getBlockType() == BlockTypes.VOID_AIR) {
-                        pnxChunk.setBlockState(x, y, z, BlockAir.STATE);
-                    } else {
-                        pnxChunk.setBlockState(x, y, z, PNXAdapter.adapt(combined));
-                    }
-                }
-            }
-        }
-    }
-
-    private void setSectionBlocks(final IChunkSet set) {
-        for (int x = 0; x < 16; x++) {
-            for (int y = set.getMinSectionPosition() * 16; y < set.getMaxSectionPosition() * 16 + 16; y++) {
-                for (int z = 0; z < 16; z++) {
-                    BlockState combined = set.getBlock(x, y, z);
-                    if (combined.getBlockType() == BlockTypes.__RESERVED__) {
-                        continue;
-                    }
-                    if (combined.getBlockType() == BlockTypes.AIR ||
-                            combined.getBlockType() == BlockTypes.CAVE_AIR ||
-                            combined.getBlockType() == BlockTypes.VOID_AIR) {
-                        pnxChunk.setBlockState(x, y, z, BlockAir.STATE);
-                    } else {
-                        pnxChunk.setBlockState(x, y, z, PNXAdapter.adapt(combined));
-                    }
-                }
-            }
-        }
-    }
-
+    /**
+     * Commit a chunk set in stages. The new sections, including merged blocks, biomes and light, are prepared here on the
+     * calling worker thread. Only swapping them into the chunk, tiles, entities and heightmaps are left for the main
+     * thread, which commits prepared chunks within a time slice each tick, in order for each chunk, see
+     * {@link QueueHandler#syncCommit(CommitSource, Object, Callable)}. Marking the chunk changed, refreshing it and the
+     * finalizer then run async again.
+     */
     @Override
     @SuppressWarnings("rawtypes")
     public synchronized <T extends Future<T>> T call(IChunkSet set, Runnable finalizer) {
         forceLoadSections = false;
         copy = createCopy ? new PNXGetBlocks_Copy(serverLevel, pnxChunk) : null;
+        final PNXGetBlocks_Copy copy = this.copy;
+        final CommitSource commitSource = this.commitSource;
+        final QueueHandler queueHandler = Fawe.instance().getQueueHandler();
+        final CommitMetrics metrics = queueHandler.getCommitMetrics();
+        final long prepareStart = System.nanoTime();
         try {
             Level nmsWorld = serverLevel;
             IChunk nmsChunk = ensureLoaded(nmsWorld, chunkX, chunkZ);
-            // Remove existing tiles. Create a copy so that we can remove blocks
-            Map<Long, BlockEntity> chunkTiles = new HashMap<>(nmsChunk.getBlockEntities());
-            if (!chunkTiles.isEmpty()) {
-                for (Map.Entry<Long, BlockEntity> entry : chunkTiles.entrySet()) {
-                    final cn.nukkit.math.BlockVector3 pos = entry.getValue().getLocation().asBlockVector3();
-                    final int lx = pos.getX() & 15;
-                    final int ly = pos.getY();
-                    final int lz = pos.getZ() & 15;
-                    final int layer = ly >> 4;
-                    if (!set.hasSection(layer)) {
-                        continue;
-                    }
-
-                    int ordinal = set.getBlock(lx, ly, lz).getOrdinal();
-                    if (ordinal != 0) {
-                        BlockEntity tile = entry.getValue();
-                        nmsChunk.removeBlockEntity(tile);
-                        if (createCopy) {
-                            copy.storeTile(tile);
-                        }
-                    }
-                }
-            }
             final BiomeType[][] biomes = set.getBiomes();
+            final int sectionCount = getMaxSectionPosition() - getMinSectionPosition() + 1;
+            // Sections to swap in, the sections they were prepared against, and what they were built from
+            final ChunkSection[] prepared = new ChunkSection[sectionCount];
+            final ChunkSection[] replaced = new ChunkSection[sectionCount];
+            final long[] replacedChanges = new long[sectionCount];
+            final boolean[] sharedLight = new boolean[sectionCount];
+            final char[][] setLayers = new char[sectionCount][];
+            final char[][] mergedLayers = new char[sectionCount][];
+            final BiomeType[][] setBiomes = new BiomeType[sectionCount][];
+            final char[][] setBlockLight = new char[sectionCount][];
+            final char[][] setSkyLight = new char[sectionCount][];
             int bitMask = 0;
             synchronized (nmsChunk) {
-                //set section biome
+                final ChunkSection[] liveSections = nmsChunk.getSections();
                 for (int layerNo = getMinSectionPosition(); layerNo <= getMaxSectionPosition(); layerNo++) {
                     int getSectionIndex = layerNo - getMinSectionPosition();
                     int setSectionIndex = layerNo - set.getMinSectionPosition();
-                    int sectionIndex = sectionCount - getMinSectionPosition();
-                    //store section
-                    copy.storeSection(getSectionIndex, loadPrivately(layerNo));
+                    final BiomeType[] biome;
+                    if (biomes == null || layerNo < set.getMinSectionPosition() || layerNo > set.getMaxSectionPosition()) {
+                        biome = null;
+                    } else {
+                        biome = biomes[setSectionIndex];
+                    }
+                    setBiomes[getSectionIndex] = biome;
                     if (!set.hasSection(layerNo)) {
-                        if (biomes == null) {
-                            continue;
-                        }
-                        if (layerNo < set.getMinSectionPosition() || layerNo > set.getMaxSectionPosition()) {
-                            continue;
-                        }
-                        final BiomeType[] biome = biomes[setSectionIndex];
                         if (biome != null) {
                             synchronized (super.sectionLocks[getSectionIndex]) {
-                                var existingSection = pnxChunkSections[getSectionIndex];
+                                var existingSection = liveSections[getSectionIndex];
                                 if (existingSection == null) {
-                                    var newSection = new ChunkSection((byte) layerNo);
-                                    setSectionBiomes(biome, newSection);
-                                    updateGet(pnxChunk, pnxChunkSections, newSection, new char[4096], getSectionIndex);
-                                } else {
-                                    setSectionBiomes(biome, existingSection);
-                                }
-                                if (createCopy) {
-                                    assert existingSection != null;
-                                    copy.storeBiomes(
-                                            getSectionIndex,
-                                            get3DBiomeDataArray(existingSection.biomes())
+                                    prepared[getSectionIndex] = PNXChunkSections.writeBiomes(
+                                            new ChunkSection((byte) layerNo),
+                                            biome
                                     );
+                                } else {
+                                    replacedChanges[getSectionIndex] = existingSection.blockChanges().get();
+                                    if (createCopy) {
+                                        copy.storeBiomes(getSectionIndex, PNXChunkSections.readBiomes(existingSection));
+                                    }
+                                    // The biomes go into a copy, which shares the blocks and light of the live section
+                                    prepared[getSectionIndex] = PNXChunkSections.writeBiomes(existingSection, biome);
+                                    replaced[getSectionIndex] = existingSection;
+                                    sharedLight[getSectionIndex] = true;
                                 }
                             }
                         }
                         continue;
                     }
-                    bitMask |= 1 << sectionIndex;
+                    bitMask |= 1 << getSectionIndex;
 
                     char[] tmp = set.load(layerNo);
                     char[] setArr = new char[4096];
                     System.arraycopy(tmp, 0, setArr, 0, 4096);
+                    setLayers[getSectionIndex] = setArr;
 
                     synchronized (super.sectionLocks[getSectionIndex]) {
-                        var existingSection = pnxChunkSections[getSectionIndex];
-
-                        if (createCopy) {
-                            copy.storeSection(getSectionIndex, loadPrivately(layerNo));
-                            if (biomes != null && existingSection != null) {
-                                copy.storeBiomes(getSectionIndex, get3DBiomeDataArray(existingSection.biomes()));
-                            }
+                        var existingSection = liveSections[getSectionIndex];
+                        if (existingSection != null) {
+                            // Before reading the section, so any block set from now on is seen on commit
+                            replacedChanges[getSectionIndex] = existingSection.blockChanges().get();
                         }
-
-                        if (existingSection == null) {
-                            BiomeType[] biomeData;
-                            if (biomes == null) {
-                                biomeData = new BiomeType[64];
-                                Arrays.fill(biomeData, BiomeTypes.PLAINS);
+                        if (createCopy) {
+                            if (existingSection != null) {
+                                // Only prepared copies are written to, the live section is swapped out on commit and
+                                // the copy can keep it as is
+                                copy.storeSection(getSectionIndex, existingSection);
                             } else {
-                                biomeData = biomes[setSectionIndex];
+                                copy.storeSection(getSectionIndex, loadPrivately(layerNo));
                             }
-                            var newSection = new ChunkSection((byte) layerNo);
-                            if (biomeData != null) {
-                                setSectionBiomes(biomeData, newSection);
-                                for (int y = 0, index = 0; y < 16; y++) {
-                                    for (int z = 0; z < 16; z++) {
-                                        for (int x = 0; x < 16; x++, index++) {
-                                            BlockState combined = BlockState.getFromOrdinal(setArr[index]);
-                                            if (combined.getBlockType() == BlockTypes.__RESERVED__) {
-                                                continue;
-                                            }
-                                            if (combined.getBlockType() == BlockTypes.AIR ||
-                                                    combined.getBlockType() == BlockTypes.CAVE_AIR ||
-                                                    combined.getBlockType() == BlockTypes.VOID_AIR) {
-                                                pnxChunk.setBlockState(x, y, z, BlockAir.STATE);
-                                            } else {
-                                                pnxChunk.setBlockState(x, y, z, PNXAdapter.adapt(combined));
-                                            }
-                                        }
-                                    }
-                                }
+                            if (biome != null && existingSection != null) {
+                                copy.storeBiomes(getSectionIndex, PNXChunkSections.readBiomes(existingSection));
                             }
-                            updateGet(pnxChunk, pnxChunkSections, newSection, setArr, getSectionIndex);
                         }
-                        //同步
-                        try {
-                            sectionLock.writeLock().lock();
-                            if (this.getChunk() != nmsChunk) {
-                                this.pnxChunk = nmsChunk;
-                                this.pnxChunkSections = null;
-                                this.reset();
-                            } else if (existingSection != getSections(false)[getSectionIndex]) {
-                                this.pnxChunkSections[getSectionIndex] = existingSection;
-                                this.reset();
-                            } else if (!Arrays.equals(update(getSectionIndex, new char[4096], true), loadPrivately(layerNo))) {
-                                this.reset(layerNo);
-                            }
-                        } finally {
-                            sectionLock.writeLock().unlock();
+                        final char[] merged = mergeLayer(existingSection, setArr);
+                        ChunkSection newSection = PNXChunkSections.newSection(layerNo, merged, existingSection);
+                        if (biome != null) {
+                            newSection = PNXChunkSections.writeBiomes(newSection, biome);
                         }
+                        prepared[getSectionIndex] = newSection;
+                        replaced[getSectionIndex] = existingSection;
+                        mergedLayers[getSectionIndex] = merged;
                     }
                 }
-                //set block and state
-                setChunkBlocks(set);
-                //set Height Map
-                Map<HeightMapType, int[]> heightMaps = set.getHeightMaps();
-                for (Map.Entry<HeightMapType, int[]> entry : heightMaps.entrySet()) {
-                    this.setHeightmapToGet(entry.getKey(), entry.getValue());
-                }
-                //set Lighting
-                this.setLightingToGet(
-                        set.getLight(),
-                        set.getMinSectionPosition(),
-                        set.getMaxSectionPosition()
-                );
-                //set SkyLighting
-                this.setSkyLightingToGet(
-                        set.getSkyLight(),
-                        set.getMinSectionPosition(),
-                        set.getMaxSectionPosition()
-                );
-
-                Runnable[] syncTasks = new Runnable[3];
-                int bx = chunkX << 4;
-                int bz = chunkZ << 4;
-
-                //Remove Entity
-                Set<UUID> entityRemoves = set.getEntityRemoves();
-                if (entityRemoves != null && !entityRemoves.isEmpty()) {
-                    syncTasks[2] = () -> {
-                        Set<UUID> entitiesRemoved = new HashSet<>();
-                        final var entities = nmsChunk.getEntities().values().iterator();
-                        while (entities.hasNext()) {
-                            var entity = entities.next();
-                            var uuid = entity.getUniqueId();
-                            if (entityRemoves.contains(uuid)) {
-                                if (createCopy) {
-                                    copy.storeEntity(entity);
+                // Light only goes into prepared sections, sections that get nothing else are copied to hold it
+                final char[][] light = set.getLight();
+                final char[][] skyLight = set.getSkyLight();
+                if (light != null || skyLight != null) {
+                    lightUpdate = true;
+                    final int minLayer = Math.max(getMinSectionPosition(), set.getMinSectionPosition());
+                    final int maxLayer = Math.min(getMaxSectionPosition(), set.getMaxSectionPosition());
+                    for (int layerNo = minLayer; layerNo <= maxLayer; layerNo++) {
+                        final int getSectionIndex = layerNo - getMinSectionPosition();
+                        final int setSectionIndex = layerNo - set.getMinSectionPosition();
+                        final char[] blockLight = light == null ? null : light[setSectionIndex];
+                        final char[] sectionSkyLight = skyLight == null ? null : skyLight[setSectionIndex];
+                        if (blockLight == null && sectionSkyLight == null) {
+                            continue;
+                        }
+                        setBlockLight[getSectionIndex] = blockLight;
+                        setSkyLight[getSectionIndex] = sectionSkyLight;
+                        synchronized (super.sectionLocks[getSectionIndex]) {
+                            ChunkSection section = prepared[getSectionIndex];
+                            if (section == null) {
+                                final ChunkSection existingSection = liveSections[getSectionIndex];
+                                if (existingSection == null || existingSection.isEmpty()) {
+                                    continue;
                                 }
-                                removeEntity(entity);
+                                replacedChanges[getSectionIndex] = existingSection.blockChanges().get();
+                                replaced[getSectionIndex] = existingSection;
+                                section = PNXChunkSections.copyLight(existingSection);
+                            } else if (sharedLight[getSectionIndex]) {
+                                section = PNXChunkSections.copyLight(section);
+                            }
+                            prepared[getSectionIndex] = section;
+                            importLight(section, blockLight, sectionSkyLight);
+                        }
+                    }
+                }
+            }
+
+            Runnable[] syncTasks = new Runnable[3];
+            int bx = chunkX << 4;
+            int bz = chunkZ << 4;
+
+            //Remove Entity
+            Set<UUID> entityRemoves = set.getEntityRemoves();
+            if (entityRemoves != null && !entityRemoves.isEmpty()) {
+                syncTasks[2] = () -> {
+                    Set<UUID> entitiesRemoved = new HashSet<>();
+                    final var entities = nmsChunk.getEntities().values().iterator();
+                    while (entities.hasNext()) {
+                        var entity = entities.next();
+                        var uuid = entity.getUniqueId();
+                        if (entityRemoves.contains(uuid)) {
+                            if (createCopy) {
+                                copy.storeEntity(entity);
+                            }
+                            removeEntity(entity);
+                            entitiesRemoved.add(uuid);
+                            entityRemoves.remove(uuid);
+                            entities.remove();
+                        }
+                    }
+                    if (Settings.settings().EXPERIMENTAL.REMOVE_ENTITY_FROM_WORLD_ON_CHUNK_FAIL) {
+                        for (UUID uuid : entityRemoves) {
+                            Entity entity = Arrays.stream(nmsWorld.getEntities()).filter(entity1 -> entity1
+                                    .getUniqueId()
+                                    .equals(uuid)).toList().get(0);
+                            if (entity != null) {
                                 entitiesRemoved.add(uuid);
-                                entityRemoves.remove(uuid);
-                                entities.remove();
+                                removeEntity(entity);
                             }
                         }
-                        if (Settings.settings().EXPERIMENTAL.REMOVE_ENTITY_FROM_WORLD_ON_CHUNK_FAIL) {
-                            for (UUID uuid : entityRemoves) {
-                                Entity entity = Arrays.stream(nmsWorld.getEntities()).filter(entity1 -> entity1
-                                        .getUniqueId()
-                                        .equals(uuid)).toList().get(0);
-                                if (entity != null) {
-                                    entitiesRemoved.add(uuid);
-                                    removeEntity(entity);
-                                }
+                    }
+                    // Only save entities that were actually removed to history
+                    set.getEntityRemoves().clear();
+                    set.getEntityRemoves().addAll(entitiesRemoved);
+                };
+            }
+
+            //set Entity
+            Set<CompoundTag> entities = set.getEntities();
+            if (entities != null && !entities.isEmpty()) {
+                syncTasks[1] = () -> {
+                    for (final CompoundTag nativeTag : entities) {
+                        final Map<String, Tag> entityTagMap = nativeTag.getValue();
+                        final StringTag idTag = (StringTag) entityTagMap.get("Id");
+                        final ListTag posTag = (ListTag) entityTagMap.get("Pos");
+                        final ListTag rotTag = (ListTag) entityTagMap.get("Rotation");
+                        if (idTag == null || posTag == null || rotTag == null) {
+                            LOGGER.error("Unknown entity tag: {}", nativeTag);
+                            continue;
+                        }
+                        final double x = posTag.getDouble(0);
+                        final double y = posTag.getDouble(1);
+                        final double z = posTag.getDouble(2);
+                        final float yaw = rotTag.getFloat(0);
+                        final float pitch = rotTag.getFloat(1);
+                        final String id = idTag.getValue();
+
+                        final EntityType entityType = EntityType.REGISTRY.get(id);
+                        if (entityType != null) {
+                            Entity entity = PNXAdapter.adaptEntityType(entityType);
+                            if (entity != null) {
+                                entity.setPosition(new Location(x, y, z, yaw, pitch, nmsWorld));
+                                entity.spawnToAll();
                             }
                         }
-                        // Only save entities that were actually removed to history
-                        set.getEntityRemoves().clear();
-                        set.getEntityRemoves().addAll(entitiesRemoved);
-                    };
-                }
+                    }
+                };
+            }
 
-                //set Entity
-                Set<CompoundTag> entities = set.getEntities();
-                if (entities != null && !entities.isEmpty()) {
-                    syncTasks[1] = () -> {
-                        for (final CompoundTag nativeTag : entities) {
-                            final Map<String, Tag> entityTagMap = nativeTag.getValue();
-                            final StringTag idTag = (StringTag) entityTagMap.get("Id");
-                            final ListTag posTag = (ListTag) entityTagMap.get("Pos");
-                            final ListTag rotTag = (ListTag) entityTagMap.get("Rotation");
-                            if (idTag == null || posTag == null || rotTag == null) {
-                                LOGGER.error("Unknown entity tag: {}", nativeTag);
-                                continue;
+            // set tiles
+            Map<BlockVector3, CompoundTag> tiles = set.getTiles();
+            if (tiles != null && !tiles.isEmpty()) {
+                syncTasks[0] = () -> {
+                    for (final Map.Entry<BlockVector3, CompoundTag> entry : tiles.entrySet()) {
+                        final CompoundTag nativeTag = entry.getValue();
+                        final BlockVector3 blockHash = entry.getKey();
+                        final int x = blockHash.getX() + bx;
+                        final int y = blockHash.getY();
+                        final int z = blockHash.getZ() + bz;
+                        final cn.nukkit.math.BlockVector3 pos = new cn.nukkit.math.BlockVector3(x, y, z);
+
+                        synchronized (nmsWorld) {
+                            BlockEntity tileEntity = nmsWorld.getBlockEntity(pos);
+                            if (tileEntity == null || tileEntity.closed) {
+                                nmsWorld.removeBlockEntity(tileEntity);
+                                tileEntity = nmsWorld.getBlockEntity(pos);
                             }
-                            final double x = posTag.getDouble(0);
-                            final double y = posTag.getDouble(1);
-                            final double z = posTag.getDouble(2);
-                            final float yaw = rotTag.getFloat(0);
-                            final float pitch = rotTag.getFloat(1);
-                            final String id = idTag.getValue();
-
-                            final EntityType entityType = EntityType.REGISTRY.get(id);
-                            if (entityType != null) {
-                                Entity entity = PNXAdapter.adaptEntityType(entityType);
-                                if (entity != null) {
-                                    entity.setPosition(new Location(x, y, z, yaw, pitch, nmsWorld));
-                                    entity.spawnToAll();
+                            if (tileEntity != null) {
+                                cn.nukkit.nbt.tag.CompoundTag tag = (cn.nukkit.nbt.tag.CompoundTag) NBTConverter.toNative(
+                                        nativeTag.asBinaryTag());
+                                String tileId = tag.getString("id");
+                                Map<String, cn.nukkit.nbt.tag.Tag> map = new HashMap<>();
+                                map.put("x", new cn.nukkit.nbt.tag.IntTag(x));
+                                map.put("y", new cn.nukkit.nbt.tag.IntTag(y));
+                                map.put("z", new cn.nukkit.nbt.tag.IntTag(z));
+                                BlockEntity ent = BlockEntity.createBlockEntity(
+                                        tileId,
+                                        nmsChunk,
+                                        new cn.nukkit.nbt.tag.CompoundTag(map)
+                                );
+                                if (ent != null) {
+                                    nmsChunk.addBlockEntity(ent);
                                 }
                             }
                         }
-                    };
-                }
+                    }
+                };
+            }
 
-                // set tiles
-                Map<BlockVector3, CompoundTag> tiles = set.getTiles();
-                if (tiles != null && !tiles.isEmpty()) {
-                    syncTasks[0] = () -> {
-                        for (final Map.Entry<BlockVector3, CompoundTag> entry : tiles.entrySet()) {
-                            final CompoundTag nativeTag = entry.getValue();
-                            final BlockVector3 blockHash = entry.getKey();
-                            final int x = blockHash.getX() + bx;
-                            final int y = blockHash.getY();
-                            final int z = blockHash.getZ() + bz;
-                            final cn.nukkit.math.BlockVector3 pos = new cn.nukkit.math.BlockVector3(x, y, z);
-
-                            synchronized (nmsWorld) {
-                                BlockEntity tileEntity = nmsWorld.getBlockEntity(pos);
-                                if (tileEntity == null || tileEntity.closed) {
-                                    nmsWorld.removeBlockEntity(tileEntity);
-                                    tileEntity = nmsWorld.getBlockEntity(pos);
-                                }
-                                if (tileEntity != null) {
-                                    cn.nukkit.nbt.tag.CompoundTag tag = (cn.nukkit.nbt.tag.CompoundTag) NBTConverter.toNative(
-                                            nativeTag.asBinaryTag());
-                                    String tileId = tag.getString("id");
-                                    Map<String, cn.nukkit.nbt.tag.Tag> map = new HashMap<>();
-                                    map.put("x", new cn.nukkit.nbt.tag.IntTag(x));
-                                    map.put("y", new cn.nukkit.nbt.tag.IntTag(y));
-                                    map.put("z", new cn.nukkit.nbt.tag.IntTag(z));
-                                    BlockEntity ent = BlockEntity.createBlockEntity(
-                                            tileId,
+            Runnable callback;
+            if (bitMask == 0 && set.getBiomes() == null && !lightUpdate) {
+                callback = null;
+            } else {
+                callback = () -> {
+                    final long finalizeStart = System.nanoTime();
+                    // Set Modified
+                    nmsChunk.setChanged(true);
+                    PNXChunkRefresher.INSTANCE.refresh(nmsWorld, chunkX, chunkZ);
+                    if (finalizer != null) {
+                        finalizer.run();
+                    }
+                    metrics.record(CommitMetrics.Stage.FINALIZE, System.nanoTime() - finalizeStart);
+                };
+            }
+            final Map<HeightMapType, int[]> heightMaps = set.getHeightMaps();
+            // Swap the prepared sections in, then run the sync tasks and the callback
+            Callable<Future> commit = () -> {
+                try {
+                    removeReplacedTiles(nmsChunk, set, copy);
+                    synchronized (nmsChunk) {
+                        final ChunkSection[] liveSections = nmsChunk.getSections();
+                        for (int i = 0; i < sectionCount; i++) {
+                            if (prepared[i] == null) {
+                                continue;
+                            }
+                            synchronized (super.sectionLocks[i]) {
+                                if (isUnchanged(liveSections[i], replaced[i], replacedChanges[i])) {
+                                    liveSections[i] = prepared[i];
+                                    updateGet(nmsChunk, liveSections, prepared[i], mergedLayers[i], i);
+                                } else {
+                                    commitReplaced(
                                             nmsChunk,
-                                            new cn.nukkit.nbt.tag.CompoundTag(map)
+                                            liveSections,
+                                            i,
+                                            setLayers[i],
+                                            setBiomes[i],
+                                            setBlockLight[i],
+                                            setSkyLight[i],
+                                            copy
                                     );
-                                    if (ent != null) {
-                                        nmsChunk.addBlockEntity(ent);
-                                    }
                                 }
                             }
                         }
-                    };
-                }
-
-                Runnable callback;
-                if (bitMask == 0 && set.getBiomes() == null && !lightUpdate) {
-                    callback = null;
-                } else {
-                    callback = () -> {
-                        // Set Modified
-                        nmsChunk.setChanged(true);
+                    }
+                    //set Height Map
+                    for (Map.Entry<HeightMapType, int[]> entry : heightMaps.entrySet()) {
+                        this.setHeightmapToGet(entry.getKey(), entry.getValue());
+                    }
+                    // Run the sync tasks
+                    for (Runnable task : syncTasks) {
+                        if (task != null) {
+                            task.run();
+                        }
+                    }
+                    if (callback == null) {
                         if (finalizer != null) {
                             finalizer.run();
                         }
-                    };
-                }
-                QueueHandler queueHandler = Fawe.instance().getQueueHandler();
-                // Chain the sync tasks and the callback
-                Callable<Future> chain = () -> {
-                    try {
-                        // Run the sync tasks
-                        for (Runnable task : syncTasks) {
-                            if (task != null) {
-                                task.run();
-                            }
-                        }
-                        if (callback == null) {
-                            if (finalizer != null) {
-                                finalizer.run();
-                            }
-                            return null;
-                        } else {
-                            return queueHandler.async(callback, null);
-                        }
-                    } catch (Throwable e) {
-                        e.printStackTrace();
-                        throw e;
+                        return null;
+                    } else {
+                        return queueHandler.async(callback, null);
                     }
-                };
-                //noinspection unchecked - required at compile time
-                return (T) (Future) queueHandler.sync(chain);
-            }
+                } catch (Throwable e) {
+                    LOGGER.error("Unable to commit chunk {}, {}", chunkX, chunkZ, e);
+                    throw e;
+                }
+            };
+            metrics.record(CommitMetrics.Stage.PREPARE, System.nanoTime() - prepareStart);
+            //noinspection unchecked - required at compile time
+            return (T) (Future) queueHandler.syncCommit(commitSource, nmsChunk, commit);
         } catch (Throwable e) {
-            e.printStackTrace();
+            LOGGER.error("Unable to prepare chunk {}, {}", chunkX, chunkZ, e);
             return null;
         } finally {
             forceLoadSections = true;
         }
     }
 
-    private void setSectionBiomes(final BiomeType[] biomes, final ChunkSection newSection) {
-        for (int y = 0, index = 0; y < 4; y++) {
-            for (int z = 0; z < 4; z++) {
-                for (int x = 0; x < 4; x++, index++) {
-                    BiomeType biomeType = biomes[index];
-                    if (biomeType == null) {
-                        continue;
-                    }
-                    for (int i = 0; i < 4; i++) {
-                        newSection.setBiomeId(
-                                x * 4 + i,
-                                y * 4 + i,
-                                z * 4 + i,
-                                (byte) PNXAdapter.adapt(biomeType)
-                        );
-                    }
-                }
+    /**
+     * Build the full layer a section will have once a FAWE layer is written to it. Reserved entries keep the block of the
+     * existing section, or air if there is none.
+     *
+     * @param existing the section being written to, may be null
+     * @param blocks   FAWE layer
+     * @return the merged layer, the given layer itself if it has no reserved entries
+     */
+    private static char[] mergeLayer(@Nullable ChunkSection existing, char[] blocks) {
+        if (PNXChunkSections.isFull(blocks)) {
+            return blocks;
+        }
+        final char[] merged;
+        if (existing == null) {
+            merged = new char[4096];
+            Arrays.fill(merged, (char) BlockTypesCache.ReservedIDs.AIR);
+        } else {
+            merged = PNXChunkSections.readSection(existing, new char[4096]);
+        }
+        for (int i = 0; i < 4096; i++) {
+            final char ordinal = blocks[i];
+            if (ordinal != BlockTypesCache.ReservedIDs.__RESERVED__) {
+                merged[i] = ordinal;
             }
         }
+        return merged;
+    }
+
+    /**
+     * Check if a section can be swapped for the one prepared against it, i.e. the chunk still holds the same section and
+     * no block was set in it since. Biome and light changes made by the server in between are not detected.
+     *
+     * @param live     the section now in the chunk
+     * @param replaced the section the prepared section was built from
+     * @param changes  block changes of the replaced section when it was read
+     * @return true if the prepared section can be swapped in
+     */
+    private static boolean isUnchanged(@Nullable ChunkSection live, @Nullable ChunkSection replaced, long changes) {
+        return live == replaced && (live == null || live.blockChanges().get() == changes);
+    }
+
+    /**
+     * Write FAWE light layers into the light of a section. Empty sections are left without light, as PNX does not keep it.
+     */
+    private static void importLight(ChunkSection section, @Nullable char[] blockLight, @Nullable char[] skyLight) {
+        if (section.isEmpty()) {
+            return;
+        }
+        if (blockLight != null) {
+            PNXChunkSections.importLight(section.blockLights(), blockLight);
+        }
+        if (skyLight != null) {
+            PNXChunkSections.importLight(section.skyLights(), skyLight);
+        }
     }
 
-    private byte[] get3DBiomeDataArray(Palette<Integer> biomesPalette) {
-        final byte[] array = new byte[4096];
-        for (int y = 0; y < 16; y++) {
-            for (int z = 0; z < 16; z++) {
-                for (int x = 0; x < 16; x++) {
-                    final int i = y << 8 | z << 4 | x;
-                    final int d = biomesPalette.get(i);
-                    array[d] = (byte) d;
+    /**
+     * Remove the tiles of the chunk at positions the set replaces. Main thread only.
+     */
+    private void removeReplacedTiles(IChunk nmsChunk, IChunkSet set, @Nullable PNXGetBlocks_Copy copy) {
+        // Create a copy so that we can remove blocks
+        Map<Long, BlockEntity> chunkTiles = new HashMap<>(nmsChunk.getBlockEntities());
+        for (Map.Entry<Long, BlockEntity> entry : chunkTiles.entrySet()) {
+            final cn.nukkit.math.BlockVector3 pos = entry.getValue().getLocation().asBlockVector3();
+            final int lx = pos.getX() & 15;
+            final int ly = pos.getY();
+            final int lz = pos.getZ() & 15;
+            final int layer = ly >> 4;
+            if (!set.hasSection(layer)) {
+                continue;
+            }
+
+            int ordinal = set.getBlock(lx, ly, lz).getOrdinal();
+            if (ordinal != 0) {
+                BlockEntity tile = entry.getValue();
+                nmsChunk.removeBlockEntity(tile);
+                if (copy != null) {
+                    copy.storeTile(tile);
                 }
             }
         }
-        return array;
+    }
+
+    /**
+     * Commit a layer whose section was replaced or had blocks set after it was prepared, e.g. by an earlier edit of the same
+     * chunk being committed in between, or by the server. The blocks, biomes and light are merged into the section now in
+     * the chunk instead, on the main thread.
+     */
+    private void commitReplaced(
+            IChunk nmsChunk,
+            ChunkSection[] liveSections,
+            int index,
+            @Nullable char[] blocks,
+            @Nullable BiomeType[] biome,
+            @Nullable char[] blockLight,
+            @Nullable char[] skyLight,
+            @Nullable PNXGetBlocks_Copy copy
+    ) {
+        final int layerNo = index + getMinSectionPosition();
+        final ChunkSection existingSection = liveSections[index];
+        ChunkSection newSection;
+        char[] merged = null;
+        if (blocks != null) {
+            if (copy != null && existingSection != null) {
+                copy.storeSection(index, existingSection);
+            }
+            merged = mergeLayer(existingSection, blocks);
+            newSection = PNXChunkSections.newSection(layerNo, merged, existingSection);
+        } else {
+            newSection = existingSection == null ? new ChunkSection((byte) layerNo) : existingSection;
+        }
+        if (biome != null) {
+            newSection = PNXChunkSections.writeBiomes(newSection, biome);
+        }
+        // On the main thread, the light may be written to the section in the chunk
+        importLight(newSection, blockLight, skyLight);
+        if (newSection != existingSection) {
+            liveSections[index] = newSection;
+            updateGet(nmsChunk, liveSections, newSection, merged, index);
+        }
     }
 
     private char[] loadPrivately(int layer) {
@@ -668,19 +735,7 @@ public char[] update(int layer, char[] data, boolean aggressive) {
             Arrays.fill(data, (char) BlockTypesCache.ReservedIDs.AIR);
         }
 
-        for (int y = 0, index = 0; y < 16; y++) {
-            for (int z = 0; z < 16; z++) {
-                for (int x = 0; x < 16; x++, index++) {
-                    var state = section.getBlockState(x, y, z);
-                    if (state == BlockAir.STATE) {
-                        data[index] = 0;
-                    } else {
-                        data[index] = PNXAdapter.adapt(section.getBlockState(x, y, z)).getOrdinalChar();
-                    }
-                }
-            }
-        }
-        return data;
+        return PNXChunkSections.readSection(section, data);
     }
 
     private void updateGet(
@@ -748,31 +803,21 @@ public IChunk getChunk() {
     }
 
     private void fillLightNibble(char[][] light, LightLayer lightLayer, int minSectionPosition, int maxSectionPosition) {
-        for (int Y = 0; Y <= maxSectionPosition - minSectionPosition; Y++) {
-            if (light[Y] == null || this.pnxChunkSections[Y] == null) {
+        final ChunkSection[] sections = this.pnxChunkSections;
+        for (int layer = minSectionPosition; layer <= maxSectionPosition; layer++) {
+            final char[] layerLight = light[layer - minSectionPosition];
+            final int sectionIndex = layer - getMinSectionPosition();
+            if (layerLight == null || sectionIndex < 0 || sectionIndex >= sections.length) {
                 continue;
             }
-            if (this.pnxChunkSections[Y].isEmpty()) {
+            final ChunkSection section = sections[sectionIndex];
+            if (section == null || section.isEmpty()) {
                 continue;
             }
             if (lightLayer == LightLayer.BLOCK) {
-                for (int x = 0; x < 16; x++) {
-                    for (int y = 0; y < 16; y++) {
-                        for (int z = 0; z < 16; z++) {
-                            int i = y << 8 | z << 4 | x;
-                            this.pnxChunkSections[Y].setBlockLight(x, y, z, (byte) (light[Y][i] & 15));
-                        }
-                    }
-                }
+                PNXChunkSections.importLight(section.blockLights(), layerLight);
             } else if (lightLayer == LightLayer.SKY) {
-                for (int x = 0; x < 16; x++) {
-                    for (int y = 0; y < 16; y++) {
-                        for (int z = 0; z < 16; z++) {
-                            int i = y << 8 | z << 4 | x;
-                            this.pnxChunkSections[Y].setBlockSkyLight(x, y, z, (byte) (light[Y][i] & 15));
-                        }
-                    }
-                }
+                PNXChunkSections.importLight(section.skyLights(), layerLight);
             }
         }
     }
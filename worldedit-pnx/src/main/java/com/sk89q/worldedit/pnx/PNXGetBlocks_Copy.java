@@ -3,6 +3,7 @@
 import cn.nukkit.blockentity.BlockEntity;
 import cn.nukkit.entity.Entity;
 import cn.nukkit.level.Level;
+import cn.nukkit.level.format.ChunkSection;
 import cn.nukkit.level.format.IChunk;
 import com.fastasyncworldedit.core.extent.processor.heightmap.HeightMapType;
 import com.fastasyncworldedit.core.queue.IBlocks;
@@ -33,11 +34,16 @@ public class PNXGetBlocks_Copy implements IChunkGet {
     private final Map<BlockVector3, CompoundTag> tiles = new HashMap<>();
     private final Set<CompoundTag> entities = new HashSet<>();
     private final char[][] blocks;
+    /**
+     * Sections that were swapped out of the chunk whole. They are no longer written to, so they are only decoded into
+     * {@link #blocks} when read.
+     */
+    private final ChunkSection[] sections;
     private final int minHeight;
     private final int maxHeight;
     final Level serverLevel;
     final IChunk levelChunk;
-    private byte[][] biomes;
+    private final BiomeType[][] biomes;
 
     protected PNXGetBlocks_Copy(Level serverLevel, IChunk levelChunk) {
         this.levelChunk = levelChunk;
@@ -45,7 +51,8 @@ protected PNXGetBlocks_Copy(Level serverLevel, IChunk levelChunk) {
         this.minHeight = serverLevel.getMinHeight() + 1;
         this.maxHeight = serverLevel.getMaxHeight();
         this.blocks = new char[getSectionCount()][];
-        this.biomes = new byte[getSectionCount()][4096];
+        this.sections = new ChunkSection[getSectionCount()];
+        this.biomes = new BiomeType[getSectionCount()][];
     }
 
     protected void storeTile(BlockEntity blockEntity) {
@@ -133,6 +140,10 @@ public int getMinSectionPosition() {
 
     @Override
     public BiomeType getBiomeType(int x, int y, int z) {
+        final BiomeType[] sectionBiomes = biomes[(y >> 4) - getMinSectionPosition()];
+        if (sectionBiomes != null) {
+            return sectionBiomes[(y & 12) << 2 | (z & 12) | (x & 12) >> 2];
+        }
         return PNXAdapter.adapt(serverLevel.getBiomeId(x, y, z));
     }
 
@@ -163,9 +174,34 @@ protected void storeSection(int layer, char[] data) {
         blocks[layer] = data;
     }
 
-    protected void storeBiomes(int layer, byte[] biomeData) {
-        Preconditions.checkArgument(biomeData.length == 4096);
-        System.arraycopy(biomeData, 0, this.biomes[layer], 0, 4096);
+    /**
+     * Keep a reference to a section that has been replaced in the chunk. The section must not be modified afterwards.
+     */
+    protected void storeSection(int layer, ChunkSection section) {
+        sections[layer] = section;
+    }
+
+    /**
+     * Store the biomes of a section, 4x4x4 cells as read by {@link PNXChunkSections#readBiomes}. The array is kept, not
+     * copied.
+     */
+    protected void storeBiomes(int layer, BiomeType[] biomeData) {
+        Preconditions.checkArgument(biomeData.length == 64);
+        this.biomes[layer] = biomeData;
+    }
+
+    private char[] getSection(int layer) {
+        char[] data = blocks[layer];
+        if (data == null && sections[layer] != null) {
+            synchronized (sections) {
+                data = blocks[layer];
+                if (data == null) {
+                    data = blocks[layer] = PNXChunkSections.readSection(sections[layer], new char[4096]);
+                    sections[layer] = null;
+                }
+            }
+        }
+        return data;
     }
 
     @Override
@@ -177,19 +213,19 @@ public BaseBlock getFullBlock(int x, int y, int z) {
     @Override
     public boolean hasSection(int layer) {
         layer -= getMinSectionPosition();
-        return blocks[layer] != null;
+        return blocks[layer] != null || sections[layer] != null;
     }
 
     @Override
     public char[] load(int layer) {
         layer -= getMinSectionPosition();
-        return blocks[layer];
+        return getSection(layer);
     }
 
     @Override
     public char[] loadIfPresent(int layer) {
         layer -= getMinSectionPosition();
-        return blocks[layer];
+        return getSection(layer);
     }
 
     @Override
@@ -220,7 +256,7 @@ public <T extends Future<T>> T call(IChunkSet set, Runnable finalize) {
     public char get(int x, int y, int z) {
         final int layer = (y >> 4) - getMinSectionPosition();
         final int index = (y & 15) << 8 | z << 4 | x;
-        return blocks[layer][index];
+        return getSection(layer)[index];
     }
 
 
@@ -0,0 +1,110 @@
+package com.sk89q.worldedit.pnx;
+
+import cn.nukkit.level.Level;
+import cn.nukkit.level.format.IChunk;
+import com.fastasyncworldedit.core.configuration.Settings;
+import com.fastasyncworldedit.core.util.MathMan;
+import com.sk89q.worldedit.MaxChangedBlocksException;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.extent.Extent;
+import com.sk89q.worldedit.function.pattern.Pattern;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.world.RegenOptions;
+import com.sk89q.worldedit.world.biome.BiomeType;
+import com.sk89q.worldedit.world.block.BaseBlock;
+import com.sk89q.worldedit.world.block.BlockTypesCache;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+
+/**
+ * Regenerates a region of a PNX level without touching the level's own chunks.
+ * <p>
+ * Replacement chunks are generated on demand, on whichever (async) thread applies the edit, into detached scratch chunks
+ * wrapped as {@link PNXGetBlocks}. PNX generators are not known to be thread safe, so only one chunk is generated at a
+ * time. Only blocks inside the region are copied to the target extent, so the change goes through the normal queue,
+ * limits and history like any other edit. Only a small window of generated chunks is kept in memory at any time.
+ * <p>
+ * PNX generators are bound to their level, so a custom seed given by {@link RegenOptions#getSeed()} is not supported and
+ * is rejected by {@link PNXWorld#regenerate}.
+ */
+final class PNXRegenerator {
+
+    private final Level level;
+    private final Region region;
+    private final Extent target;
+    private final RegenOptions options;
+    private final Long2ObjectLinkedOpenHashMap<PNXGetBlocks> generated = new Long2ObjectLinkedOpenHashMap<>();
+    private final int cacheSize;
+
+    PNXRegenerator(Level level, Region region, Extent target, RegenOptions options) {
+        this.level = level;
+        this.region = region;
+        this.target = target;
+        this.options = options;
+        this.cacheSize = Math.max(16, Settings.settings().QUEUE.PARALLEL_THREADS * 4);
+    }
+
+    boolean regenerate() throws MaxChangedBlocksException {
+        target.setBlocks(region, new PlacementPattern());
+        return true;
+    }
+
+    private PNXGetBlocks getSource(int chunkX, int chunkZ) {
+        final long key = MathMan.pairInt(chunkX, chunkZ);
+        synchronized (generated) {
+            final PNXGetBlocks source = generated.getAndMoveToLast(key);
+            if (source != null) {
+                return source;
+            }
+        }
+        final IChunk chunk = level.getProvider().getEmptyChunk(chunkX, chunkZ);
+        // Workers may look up cached chunks meanwhile, but the generator is used by one of them at a time
+        final var generator = level.getGenerator();
+        synchronized (generator) {
+            generator.syncGenerate(chunk);
+        }
+        final PNXGetBlocks source = new PNXGetBlocks(level, chunk);
+        synchronized (generated) {
+            final PNXGetBlocks existing = generated.putIfAbsent(key, source);
+            while (generated.size() > cacheSize) {
+                generated.removeFirst();
+            }
+            return existing != null ? existing : source;
+        }
+    }
+
+    private final class PlacementPattern implements Pattern {
+
+        private final boolean regenBiomes = options.shouldRegenBiomes();
+        private final BiomeType biome = options.getBiomeType();
+
+        @Override
+        public BaseBlock applyBlock(final BlockVector3 position) {
+            final PNXGetBlocks source = getSource(position.getX() >> 4, position.getZ() >> 4);
+            return BlockTypesCache.states[source.get(position.getX() & 15, position.getY(), position.getZ() & 15)]
+                    .toBaseBlock();
+        }
+
+        @Override
+        public boolean apply(final Extent extent, final BlockVector3 get, final BlockVector3 set) throws WorldEditException {
+            final PNXGetBlocks source = getSource(get.getX() >> 4, get.getZ() >> 4);
+            final int x = get.getX() & 15;
+            final int y = get.getY();
+            final int z = get.getZ() & 15;
+            final boolean result = extent.setBlock(
+                    set.getX(),
+                    set.getY(),
+                    set.getZ(),
+                    BlockTypesCache.states[source.get(x, y, z)].toBaseBlock()
+            );
+            if (biome != null) {
+                extent.setBiome(set.getX(), set.getY(), set.getZ(), biome);
+            } else if (regenBiomes) {
+                extent.setBiome(set.getX(), set.getY(), set.getZ(), source.getBiomeType(x, y, z));
+            }
+            return result;
+        }
+
+    }
+
+}
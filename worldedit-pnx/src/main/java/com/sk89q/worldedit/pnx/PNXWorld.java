@@ -26,9 +26,13 @@
 import cn.nukkit.level.Level;
 import cn.nukkit.level.Position;
 import cn.nukkit.level.particle.PunchBlockParticle;
+import cn.nukkit.network.protocol.LevelChunkPacket;
+import com.fastasyncworldedit.core.configuration.Caption;
+import com.fastasyncworldedit.core.internal.exception.FaweException;
 import com.fastasyncworldedit.core.queue.IChunkGet;
 import com.fastasyncworldedit.core.queue.implementation.packet.ChunkPacket;
 import com.google.common.collect.ImmutableSet;
+import com.sk89q.fastasyncworldedit.pnx.util.PNXChunkRefresher;
 import com.sk89q.jnbt.CompoundTag;
 import com.sk89q.pnx.util.WorldUnloadedException;
 import com.sk89q.worldedit.EditSession;
@@ -203,55 +207,17 @@ public int getBlockLightLevel(BlockVector3 pt) {
 
     @Override
     public boolean regenerate(Region region, Extent extent, RegenOptions options) {
-        var maxY = region.getMaximumY();
-        var minY = region.getMinimumY();
-        BaseBlock[] history = new BaseBlock[16 * 16 * maxY];
-
-        for (BlockVector2 chunk : region.getChunks()) {
-            BlockVector3 min = BlockVector3.at(chunk.getBlockX() << 4, minY, chunk.getBlockZ() << 4);
-
-            // First save all the blocks inside
-            for (int x = 0; x < 16; ++x) {
-                for (int y = 0; y < maxY; ++y) {
-                    for (int z = 0; z < 16; ++z) {
-                        BlockVector3 pt = min.add(x, y, z);
-                        int index = y * 16 * 16 + z * 16 + x;
-                        history[index] = extent.getBlock(pt).toBaseBlock();
-                    }
-                }
-            }
-
-            try {
-                getLevel().regenerateChunk(chunk.getBlockX(), chunk.getBlockZ());
-            } catch (Throwable t) {
-                PNXWorldEditPlugin.getInstance().getLogger().warning(
-                        "Chunk generation via Nukkit raised an error",
-                        t
-                );
-            }
-
-            // Then restore
-            for (int x = 0; x < 16; ++x) {
-                for (int y = 0; y < maxY; ++y) {
-                    for (int z = 0; z < 16; ++z) {
-                        BlockVector3 pt = min.add(x, y, z);
-                        int index = y * 16 * 16 + z * 16 + x;
-//todo 弄明白怎么写
-//                        // We have to restore the block if it was outside
-//                        if (!region.contains(pt)) {
-//                            extent.setBlock(pt.getBlockX(), pt.getBlockY(), pt.getBlockZ(), history[index]);
-//                        } else { // Otherwise fool with history
-//                            extent.enableHistory(new BlockBagChangeSet())
-//                            editSession.rememberChange(pt, history[index],
-//                                    editSession.rawGetBlock(pt)
-//                            );
-//                        }
-                    }
-                }
-            }
+        //FAWE start - generate off-thread into scratch chunks and copy through the extent
+        if (options.getSeed().isPresent()) {
+            // PNX generators are bound to their level and its seed
+            throw new FaweException(Caption.of("fawe.regen.seed.unsupported"));
         }
-
-        return true;
+        try {
+            return new PNXRegenerator(getWorldChecked(), region, extent, options).regenerate();
+        } catch (Exception e) {
+            throw new IllegalStateException("Regen failed.", e);
+        }
+        //FAWE end
     }
 
     @Override
@@ -291,9 +257,14 @@ public void dropItem(Vector3 pt, BaseItemStack item) {
     public void checkLoadedChunk(BlockVector3 pt) {
         Level world = getLevel();
 
-        if (!world.isChunkLoaded(pt.getBlockX() >> 4, pt.getBlockZ() >> 4)) {
-            world.loadChunk(pt.getBlockX() >> 4, pt.getBlockZ() >> 4);
+        //FAWE start - generate if required, and keep it loaded until the edit reaches it
+        int chunkX = pt.getBlockX() >> 4;
+        int chunkZ = pt.getBlockZ() >> 4;
+        if (!world.isChunkLoaded(chunkX, chunkZ)) {
+            world.loadChunk(chunkX, chunkZ, true);
         }
+        world.cancelUnloadChunkRequest(chunkX, chunkZ);
+        //FAWE end
     }
 
     @Override
@@ -513,17 +484,7 @@ public boolean setBiome(int x, int y, int z, BiomeType biome) {
 
     @Override
     public void refreshChunk(int chunkX, int chunkZ) {
-        Collection<cn.nukkit.Player> players = PNXWorldEditPlugin.getInstance().getServer().getOnlinePlayers().values();
-        int view = PNXWorldEditPlugin.getInstance().getServer().getViewDistance();
-        for (cn.nukkit.Player player : players) {
-            Position pos = player.getPosition();
-            int pcx = pos.getFloorX() >> 4;
-            int pcz = pos.getFloorZ() >> 4;
-            if (Math.abs(pcx - chunkX) > view || Math.abs(pcz - chunkZ) > view) {
-                continue;
-            }
-            getWorld().requestChunk(chunkX, chunkZ, player);
-        }
+        PNXChunkRefresher.INSTANCE.refresh(getWorld(), chunkX, chunkZ);
     }
 
     @Override
@@ -533,7 +494,24 @@ public IChunkGet get(final int x, final int z) {
 
     @Override
     public void sendFakeChunk(@Nullable final Player player, final ChunkPacket packet) {
-
+        final LevelChunkPacket nativePacket = PNXChunkPacketEncoder.getPacket(packet, this);
+        if (player != null) {
+            final cn.nukkit.Player pnxPlayer = PNXAdapter.adapt(player);
+            if (pnxPlayer != null) {
+                pnxPlayer.dataPacket(nativePacket);
+            }
+            return;
+        }
+        int view = PNXWorldEditPlugin.getInstance().getServer().getViewDistance();
+        for (cn.nukkit.Player viewer : getWorld().getPlayers().values()) {
+            Position pos = viewer.getPosition();
+            int pcx = pos.getFloorX() >> 4;
+            int pcz = pos.getFloorZ() >> 4;
+            if (Math.abs(pcx - packet.getChunkX()) > view || Math.abs(pcz - packet.getChunkZ()) > view) {
+                continue;
+            }
+            viewer.dataPacket(nativePacket);
+        }
     }
     //FAWE end
 }